@@ -0,0 +1,165 @@
+package com.cdpproxy.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.cdpproxy.proxy.BrowserBackend;
+import com.cdpproxy.proxy.BrowserConnectionPool;
+import com.cdpproxy.proxy.BrowserConnector;
+import com.cdpproxy.proxy.BrowserDiscovery;
+import com.cdpproxy.proxy.BrowserHealthChecker;
+import com.cdpproxy.proxy.BrowserRouter;
+import com.cdpproxy.proxy.CircuitBreaker;
+import com.cdpproxy.proxy.CompressionMeter;
+import com.cdpproxy.proxy.MeteredDeflateExtension;
+
+/**
+ * Upstream browsers, shared by both engines: discovery, routing, health
+ * probes, and the connection pools of the servlet engine
+ */
+@Configuration
+public class BrowserConfig {
+
+    /** Browser connections being set up at the same time */
+    @Value("${cdp.connect.max-concurrent:8}")
+    private int connectMaxConcurrent;
+
+    /** Connects waiting for a slot before new sessions are refused */
+    @Value("${cdp.connect.queue-capacity:256}")
+    private int connectQueueCapacity;
+
+    /** Follows the startup thread mode unless set on its own */
+    @Value("${cdp.connect.virtual-threads:${spring.threads.virtual.enabled:false}}")
+    private boolean connectVirtualThreads;
+
+    @Value("${cdp.connect.timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${cdp.browser.http.url:http://localhost:9222}")
+    private String browserHttpUrl;
+
+    /** Comma-separated upstream browsers; cdp.browser.http.url is used when empty */
+    @Value("${cdp.browser.http.urls:}")
+    private String browserHttpUrls;
+
+    @Value("${cdp.routing.strategy:LEAST_SESSIONS}")
+    private BrowserRouter.Strategy routingStrategy;
+
+    /** Reuse a discovered browser endpoint for this long */
+    @Value("${cdp.discovery.cache-ttl-ms:30000}")
+    private long discoveryCacheTtlMs;
+
+    @Value("${cdp.discovery.timeout-ms:5000}")
+    private long discoveryTimeoutMs;
+
+    /** Open connections kept ready for new sessions (0 disables the pool) */
+    @Value("${cdp.pool.min-idle:0}")
+    private int poolMinIdle;
+
+    /** The reactive engine opens its own connections, so pools are only warmed for the servlet one */
+    @Value("${spring.main.web-application-type:servlet}")
+    private String webApplicationType;
+
+    @Value("${cdp.pool.max-size:8}")
+    private int poolMaxSize;
+
+    /** Replace idle connections after this long (0 = keep them) */
+    @Value("${cdp.pool.max-idle-ms:300000}")
+    private long poolMaxIdleMs;
+
+    @Value("${cdp.pool.maintenance-interval-ms:1000}")
+    private long poolMaintenanceIntervalMs;
+
+    /** Time between health probes of each browser (0 disables probing) */
+    @Value("${cdp.health.interval-ms:5000}")
+    private long healthIntervalMs;
+
+    @Value("${cdp.health.timeout-ms:2000}")
+    private long healthTimeoutMs;
+
+    /** Probes slower than this count as failures (0 = no limit) */
+    @Value("${cdp.health.degraded-latency-ms:1000}")
+    private long healthDegradedLatencyMs;
+
+    /** Consecutive failures that take a browser out of routing */
+    @Value("${cdp.circuit.failure-threshold:3}")
+    private int circuitFailureThreshold;
+
+    @Value("${cdp.circuit.open-ms:10000}")
+    private long circuitOpenMs;
+
+    @Value("${cdp.circuit.max-open-ms:60000}")
+    private long circuitMaxOpenMs;
+
+    /** Share one browser connection between all sessions routed to a browser */
+    @Value("${cdp.multiplex.enabled:false}")
+    private boolean multiplexEnabled;
+
+    /** Offer permessage-deflate to upstream browsers */
+    @Value("${cdp.upstream.compression.enabled:false}")
+    private boolean upstreamCompressionEnabled;
+
+    /** Deflater level, 1 (fastest) to 9 (smallest), -1 for the default */
+    @Value("${cdp.upstream.compression.level:-1}")
+    private int upstreamCompressionLevel;
+
+    /** Messages to the browser below this size are sent uncompressed */
+    @Value("${cdp.upstream.compression.threshold-bytes:1024}")
+    private int upstreamCompressionThresholdBytes;
+
+    /**
+     * Upstream browsers, each with its own discovery and connection pool
+     * (pre-opened when a minimum idle count is set and the servlet engine runs)
+     */
+    @Bean(destroyMethod = "close")
+    public BrowserRouter browserRouter(BrowserConnector browserConnector) {
+        int minIdle = "reactive".equalsIgnoreCase(webApplicationType.trim()) ? 0 : poolMinIdle;
+        List<BrowserBackend> backends = new ArrayList<>();
+        for (String url : (browserHttpUrls.isBlank() ? browserHttpUrl : browserHttpUrls).split(",")) {
+            if (url.isBlank()) {
+                continue;
+            }
+            BrowserDiscovery discovery = new BrowserDiscovery(url.trim(), discoveryCacheTtlMs, discoveryTimeoutMs);
+            BrowserConnectionPool pool = new BrowserConnectionPool(browserConnector, discovery, connectTimeoutMs,
+                    minIdle, poolMaxSize, poolMaxIdleMs, poolMaintenanceIntervalMs);
+            if (upstreamCompressionEnabled) {
+                pool.compression(new MeteredDeflateExtension(upstreamCompressionLevel,
+                        upstreamCompressionThresholdBytes, upstreamCompressionMeter()));
+            }
+            backends.add(new BrowserBackend(url.trim(), pool,
+                    new CircuitBreaker(circuitFailureThreshold, circuitOpenMs, circuitMaxOpenMs), multiplexEnabled));
+        }
+        return new BrowserRouter(backends, routingStrategy);
+    }
+
+    /**
+     * Background probes that take degraded browsers out of routing and put them back
+     */
+    @Bean(destroyMethod = "close")
+    public BrowserHealthChecker browserHealthChecker(BrowserRouter browserRouter) {
+        if (healthIntervalMs <= 0) {
+            return new BrowserHealthChecker(List.of(), 1, healthTimeoutMs, healthDegradedLatencyMs);
+        }
+        return new BrowserHealthChecker(browserRouter.backends(), healthIntervalMs, healthTimeoutMs,
+                healthDegradedLatencyMs);
+    }
+
+    /**
+     * Compression on the browser leg, measured on every frame
+     */
+    @Bean
+    public CompressionMeter upstreamCompressionMeter() {
+        return new CompressionMeter();
+    }
+
+    /**
+     * Executor that browser connections are set up on
+     */
+    @Bean(destroyMethod = "close")
+    public BrowserConnector browserConnector() {
+        return new BrowserConnector(connectMaxConcurrent, connectQueueCapacity, connectVirtualThreads);
+    }
+}
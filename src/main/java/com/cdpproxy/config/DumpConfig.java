@@ -0,0 +1,106 @@
+package com.cdpproxy.config;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.cdpproxy.dump.BinaryDumpFormat;
+import com.cdpproxy.dump.DumpFormat;
+import com.cdpproxy.dump.DumpQuery;
+import com.cdpproxy.dump.DumpSegments;
+import com.cdpproxy.dump.DumpWriter;
+import com.cdpproxy.dump.RecordCodec;
+import com.cdpproxy.util.CDPMessageDumper;
+
+@Configuration
+@ConditionalOnProperty(name = "cdp.dump.enabled", havingValue = "true", matchIfMissing = true)
+public class DumpConfig {
+
+    @Value("${cdp.dump.file:cdp-messages-dump.log}")
+    private String dumpFile;
+
+    /** text (human-readable) or binary (compact, read back with DumpTool) */
+    @Value("${cdp.dump.format:text}")
+    private String format;
+
+    /** Roll to a new segment at this size, 0 disables size-based rotation */
+    @Value("${cdp.dump.rotation.max-bytes:0}")
+    private long rotationMaxBytes;
+
+    /** Roll to a new segment at this age, 0 disables time-based rotation */
+    @Value("${cdp.dump.rotation.max-age-ms:0}")
+    private long rotationMaxAgeMs;
+
+    @Value("${cdp.dump.rotation.retention:10}")
+    private int rotationRetention;
+
+    @Value("${cdp.dump.rotation.compress:true}")
+    private boolean rotationCompress;
+
+    /** none, or deflate for per-record compression of binary dumps */
+    @Value("${cdp.dump.compression:none}")
+    private String compression;
+
+    @Value("${cdp.dump.compression.level:4}")
+    private int compressionLevel;
+
+    /** Preset dictionary built with DumpTool build-dictionary (optional) */
+    @Value("${cdp.dump.compression.dictionary:}")
+    private String compressionDictionary;
+
+    /** Keep an offset index next to each binary segment for /proxy/dump/records */
+    @Value("${cdp.dump.index:true}")
+    private boolean index;
+
+    @Value("${cdp.dump.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${cdp.dump.batch-size:256}")
+    private int batchSize;
+
+    @Value("${cdp.dump.overflow-policy:DROP_OLDEST}")
+    private DumpWriter.OverflowPolicy overflowPolicy;
+
+    @Value("${cdp.dump.lag-threshold-ms:1000}")
+    private long lagThresholdMs;
+
+    @Value("${cdp.dump.sync-on-flush:false}")
+    private boolean syncOnFlush;
+
+    /**
+     * Background dump writer, drained and closed with the application context
+     */
+    @Bean(destroyMethod = "close")
+    public DumpWriter cdpDumpWriter() throws IOException {
+        DumpSegments segments = new DumpSegments(Paths.get(dumpFile), dumpFormat(),
+                rotationMaxBytes, rotationMaxAgeMs, rotationRetention, rotationCompress, index);
+        DumpWriter writer = new DumpWriter(segments, queueCapacity, batchSize, overflowPolicy,
+                lagThresholdMs, syncOnFlush);
+        CDPMessageDumper.install(writer);
+        return writer;
+    }
+
+    /**
+     * Indexed lookups over the segments of the dump writer
+     */
+    @Bean
+    public DumpQuery cdpDumpQuery(DumpWriter cdpDumpWriter) throws IOException {
+        return new DumpQuery(cdpDumpWriter.segments(),
+                compressionDictionary.isEmpty() ? null : Files.readAllBytes(Paths.get(compressionDictionary)));
+    }
+
+    private DumpFormat dumpFormat() throws IOException {
+        if (!"deflate".equalsIgnoreCase(compression)) {
+            return DumpFormat.forName(format);
+        }
+        if (!"binary".equalsIgnoreCase(format)) {
+            throw new IllegalStateException("cdp.dump.compression=deflate requires cdp.dump.format=binary");
+        }
+        return new BinaryDumpFormat(RecordCodec.withDictionaryFile(
+                compressionDictionary.isEmpty() ? null : Paths.get(compressionDictionary), compressionLevel));
+    }
+}
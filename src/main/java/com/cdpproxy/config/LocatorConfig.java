@@ -0,0 +1,28 @@
+package com.cdpproxy.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.cdpproxy.util.LocatorDetector;
+import com.cdpproxy.util.SelectorCache;
+
+@Configuration
+@ConditionalOnProperty(name = "cdp.locator.cache.enabled", havingValue = "true", matchIfMissing = true)
+public class LocatorConfig {
+
+    /** Slots of the direct-mapped cache, rounded up to a power of two */
+    @Value("${cdp.locator.cache.entries:1024}")
+    private int cacheEntries;
+
+    /**
+     * Cache of Runtime.callFunctionOn selector extraction, shared by every session
+     */
+    @Bean
+    public SelectorCache selectorCache() {
+        SelectorCache cache = new SelectorCache(cacheEntries);
+        LocatorDetector.installCache(cache);
+        return cache;
+    }
+}
@@ -0,0 +1,92 @@
+package com.cdpproxy.config;
+
+import java.util.Map;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.server.WebSocketService;
+import org.springframework.web.reactive.socket.server.support.HandshakeWebSocketService;
+import org.springframework.web.reactive.socket.server.upgrade.ReactorNettyRequestUpgradeStrategy;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.WebsocketClientSpec;
+import reactor.netty.http.server.WebsocketServerSpec;
+import reactor.netty.resources.ConnectionProvider;
+
+import com.cdpproxy.proxy.Backoff;
+import com.cdpproxy.proxy.BrowserRouter;
+import com.cdpproxy.reactive.ReactiveProxyHandler;
+
+/**
+ * Reactive engine (cdp.engine=reactive): the /cdp endpoint and the browser
+ * connections on Reactor Netty, without a thread per connection on either leg
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveEngineConfig implements WebFluxConfigurer {
+
+    /** Largest message relayed, in either direction */
+    @Value("${websocket.max.text.buffer.size:5242880}")
+    private int maxFramePayloadLength;
+
+    @Value("${cdp.connect.timeout-ms:10000}")
+    private long connectTimeoutMs;
+
+    @Value("${cdp.client.compression.enabled:true}")
+    private boolean clientCompressionEnabled;
+
+    @Value("${cdp.upstream.compression.enabled:false}")
+    private boolean upstreamCompressionEnabled;
+
+    @Value("${cdp.reconnect.base-delay-ms:200}")
+    private long reconnectBaseDelayMs;
+
+    @Value("${cdp.reconnect.max-delay-ms:5000}")
+    private long reconnectMaxDelayMs;
+
+    @Value("${cdp.reconnect.max-attempts:5}")
+    private int reconnectMaxAttempts;
+
+    /**
+     * Netty rather than Tomcat, which is also on the classpath and would otherwise be picked
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public ReactiveProxyHandler reactiveProxyHandler(BrowserRouter browserRouter) {
+        // Unpooled: an upgraded connection is held for the whole session, so a pool would cap the sessions
+        HttpClient http = HttpClient.create(ConnectionProvider.newConnection())
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeoutMs);
+        ReactorNettyWebSocketClient browsers = new ReactorNettyWebSocketClient(http,
+                () -> WebsocketClientSpec.builder()
+                        .maxFramePayloadLength(maxFramePayloadLength)
+                        .compress(upstreamCompressionEnabled));
+        return new ReactiveProxyHandler(browserRouter, browsers,
+                new Backoff(reconnectBaseDelayMs, reconnectMaxDelayMs), reconnectMaxAttempts);
+    }
+
+    /**
+     * Main CDP proxy endpoint, ahead of the annotated controllers
+     */
+    @Bean
+    public HandlerMapping cdpHandlerMapping(ReactiveProxyHandler reactiveProxyHandler) {
+        return new SimpleUrlHandlerMapping(Map.of("/cdp", reactiveProxyHandler), -1);
+    }
+
+    @Override
+    public WebSocketService getWebSocketService() {
+        return new HandshakeWebSocketService(new ReactorNettyRequestUpgradeStrategy(
+                () -> WebsocketServerSpec.builder()
+                        .maxFramePayloadLength(maxFramePayloadLength)
+                        .compress(clientCompressionEnabled)));
+    }
+}
@@ -0,0 +1,20 @@
+package com.cdpproxy.config;
+
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Applies the thread mode (spring.threads.virtual.enabled) to the proxy's own
+ * threads before any bean is created, since some of them are started from
+ * static state rather than by beans. Registered in META-INF/spring.factories.
+ */
+public class ThreadModeInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+    @Override
+    public void initialize(ConfigurableApplicationContext context) {
+        ProxyThreads.useVirtualThreads(
+                context.getEnvironment().getProperty("spring.threads.virtual.enabled", Boolean.class, false));
+    }
+}
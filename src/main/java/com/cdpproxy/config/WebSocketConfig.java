@@ -1,6 +1,7 @@
 package com.cdpproxy.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -8,36 +9,125 @@ import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
 import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
+import com.cdpproxy.proxy.Backoff;
+import com.cdpproxy.proxy.BrowserRouter;
+import com.cdpproxy.proxy.ClientHandshakeHandler;
+import com.cdpproxy.proxy.ClientSendBuffer;
+import com.cdpproxy.proxy.CompressionMeter;
+import com.cdpproxy.proxy.PendingQueue;
 import com.cdpproxy.proxy.WebSocketHandler;
 
+/**
+ * Servlet engine (cdp.engine=servlet): the /cdp endpoint on Tomcat's
+ * WebSocket container, one Java-WebSocket connection per session upstream
+ */
 @Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
 
+    private final BrowserRouter browserRouter;
+
     @Value("${websocket.max.text.buffer.size:5242880}")  // 5MB default
     private Integer maxTextBufferSize;
 
     @Value("${websocket.max.binary.buffer.size:5242880}")  // 5MB default
     private Integer maxBinaryBufferSize;
 
+    /** Messages a session may queue while its browser connection is down (0 = unlimited) */
+    @Value("${cdp.pending.max-messages:1000}")
+    private int pendingMaxMessages;
+
+    @Value("${cdp.pending.max-bytes:16777216}")
+    private long pendingMaxBytes;
+
+    /** A saturated queue accepts messages again once drained to this fraction of the limits */
+    @Value("${cdp.pending.low-water-ratio:0.5}")
+    private double pendingLowWaterRatio;
+
+    @Value("${cdp.pending.overflow-policy:PAUSE}")
+    private PendingQueue.OverflowPolicy pendingOverflowPolicy;
+
+    /** Frames waiting for a slow Playwright client, in bytes */
+    @Value("${cdp.client.send-buffer-bytes:16777216}")
+    private long clientSendBufferBytes;
+
+    /** Longest a single write to a Playwright client may take */
+    @Value("${cdp.client.send-time-limit-ms:10000}")
+    private long clientSendTimeLimitMs;
+
+    @Value("${cdp.client.overflow-policy:TERMINATE}")
+    private ClientSendBuffer.OverflowPolicy clientOverflowPolicy;
+
+    /** Relay messages that arrive in parts (larger than the text buffer) without assembling them */
+    @Value("${cdp.streaming.enabled:true}")
+    private boolean streamingEnabled;
+
+    /** Characters of a streamed message kept for the dump and for error replies */
+    @Value("${cdp.streaming.inspect-prefix-chars:65536}")
+    private int streamingInspectPrefixChars;
+
+    /** Relay frames as bytes, sending browser frames to clients as binary frames */
+    @Value("${cdp.relay.binary-frames:false}")
+    private boolean relayBinaryFrames;
+
+    /** Negotiate permessage-deflate with Playwright clients that offer it */
+    @Value("${cdp.client.compression.enabled:true}")
+    private boolean clientCompressionEnabled;
+
+    /** Estimate client compression from every n-th frame sent (0 = never) */
+    @Value("${cdp.client.compression.sample-interval:100}")
+    private int clientCompressionSampleInterval;
+
+    @Value("${cdp.reconnect.base-delay-ms:200}")
+    private long reconnectBaseDelayMs;
+
+    @Value("${cdp.reconnect.max-delay-ms:5000}")
+    private long reconnectMaxDelayMs;
+
+    @Value("${cdp.reconnect.max-attempts:5}")
+    private int reconnectMaxAttempts;
+
+    public WebSocketConfig(BrowserRouter browserRouter) {
+        this.browserRouter = browserRouter;
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         // Main CDP proxy endpoint
         registry.addHandler(cdpWebSocketHandler(), "/cdp")
+                .setHandshakeHandler(new ClientHandshakeHandler(clientCompressionEnabled))
                 .setAllowedOrigins("*");
 
 
     }
 
-    @Bean
+    @Bean(destroyMethod = "close")
     public WebSocketHandler cdpWebSocketHandler() {
-        return new WebSocketHandler();
+        WebSocketHandler handler = new WebSocketHandler(browserRouter,
+                new Backoff(reconnectBaseDelayMs, reconnectMaxDelayMs), reconnectMaxAttempts,
+                () -> new PendingQueue(pendingMaxMessages, pendingMaxBytes, pendingLowWaterRatio),
+                pendingOverflowPolicy, session -> new ClientSendBuffer(session, clientSendBufferBytes,
+                        clientSendTimeLimitMs, clientOverflowPolicy)
+                        .compressionSampling(clientCompressionMeter(), clientCompressionSampleInterval));
+        if (streamingEnabled) {
+            handler.streamLargeMessages(streamingInspectPrefixChars);
+        }
+        handler.relayBinaryFrames(relayBinaryFrames);
+        return handler;
     }
 
-
+    /**
+     * Compression on the Playwright leg: sessions that negotiated it, and estimates from sampled frames
+     */
+    @Bean
+    public CompressionMeter clientCompressionMeter() {
+        return new CompressionMeter();
+    }
 
     /**
-     * Configure WebSocket container to handle large messages
+     * Configure WebSocket container to handle large messages. With streaming
+     * enabled the text buffer is the size of the parts messages are relayed in.
      */
     @Bean
     public ServletServerContainerFactoryBean createWebSocketContainer() {
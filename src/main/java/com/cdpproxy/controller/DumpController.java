@@ -0,0 +1,77 @@
+package com.cdpproxy.controller;
+
+import java.io.IOException;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.cdpproxy.dump.DumpFilter;
+import com.cdpproxy.dump.DumpQuery;
+import com.cdpproxy.dump.DumpRecord;
+import com.cdpproxy.dump.DumpSegments;
+import com.cdpproxy.dump.DumpWriter;
+
+@RestController
+public class DumpController {
+
+    private final ObjectProvider<DumpWriter> dumpWriter;
+    private final ObjectProvider<DumpQuery> dumpQuery;
+
+    public DumpController(ObjectProvider<DumpWriter> dumpWriter, ObjectProvider<DumpQuery> dumpQuery) {
+        this.dumpWriter = dumpWriter;
+        this.dumpQuery = dumpQuery;
+    }
+
+    /**
+     * Dump segments holding records between two epoch-millisecond times (all segments by default)
+     */
+    @GetMapping("/proxy/dump/segments")
+    public String getSegments(@RequestParam(defaultValue = "" + Long.MIN_VALUE) long from,
+                              @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to) {
+        JSONArray result = new JSONArray();
+        DumpWriter writer = dumpWriter.getIfAvailable();
+        if (writer != null) {
+            List<DumpSegments.SegmentInfo> segments = writer.segments().covering(from, to);
+            for (DumpSegments.SegmentInfo segment : segments) {
+                result.put(segment.toJson());
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Dumped records matching all given criteria, looked up through the segment indexes
+     */
+    @GetMapping("/proxy/dump/records")
+    public String getRecords(@RequestParam(required = false) Integer id,
+                             @RequestParam(required = false) String method,
+                             @RequestParam(required = false) String session,
+                             @RequestParam(required = false) String direction,
+                             @RequestParam(defaultValue = "" + Long.MIN_VALUE) long from,
+                             @RequestParam(defaultValue = "" + Long.MAX_VALUE) long to,
+                             @RequestParam(defaultValue = "100") int limit) throws IOException {
+        JSONArray result = new JSONArray();
+        DumpQuery query = dumpQuery.getIfAvailable();
+        if (query == null) {
+            return result.toString();
+        }
+        DumpFilter filter = DumpFilter.all().id(id).method(method).sessionId(session).direction(direction)
+                .between(from, to);
+        for (DumpQuery.Match match : query.find(filter, limit)) {
+            DumpRecord record = match.record;
+            JSONObject json = new JSONObject();
+            json.put("segment", match.segment.sequence);
+            json.put("offset", record.offset);
+            json.put("timestamp", record.epochMillis);
+            json.put("direction", record.direction);
+            json.put("sessionId", record.sessionId == null ? JSONObject.NULL : record.sessionId);
+            json.put("message", record.message().isObject() ? record.message().json() : record.payload());
+            result.put(json);
+        }
+        return result.toString();
+    }
+}
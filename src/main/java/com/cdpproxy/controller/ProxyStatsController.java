@@ -0,0 +1,298 @@
+package com.cdpproxy.controller;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.cdpproxy.dump.DumpWriter;
+import com.cdpproxy.proxy.BrowserBackend;
+import com.cdpproxy.proxy.BrowserConnectionPool;
+import com.cdpproxy.proxy.BrowserConnector;
+import com.cdpproxy.proxy.BrowserDiscovery;
+import com.cdpproxy.proxy.BrowserMultiplexer;
+import com.cdpproxy.proxy.BrowserRouter;
+import com.cdpproxy.proxy.ClientSendBuffer;
+import com.cdpproxy.proxy.CompressionMeter;
+import com.cdpproxy.proxy.WebSocketHandler;
+import com.cdpproxy.reactive.ReactiveProxyHandler;
+import com.cdpproxy.util.CDPMessageDumper;
+import com.cdpproxy.util.LocatorDetector;
+import com.cdpproxy.util.LocatorVerificationTracker;
+import com.cdpproxy.util.ProxyThreads;
+import com.cdpproxy.util.SelectorCache;
+
+@RestController
+public class ProxyStatsController {
+
+    private final BrowserConnector browserConnector;
+    private final BrowserRouter browserRouter;
+    /** The engine's handler: one of the two is present */
+    private final WebSocketHandler webSocketHandler;
+    private final ReactiveProxyHandler reactiveProxyHandler;
+    private final CompressionMeter clientCompressionMeter;
+    private final CompressionMeter upstreamCompressionMeter;
+
+    public ProxyStatsController(BrowserConnector browserConnector, BrowserRouter browserRouter,
+                                ObjectProvider<WebSocketHandler> webSocketHandler,
+                                ObjectProvider<ReactiveProxyHandler> reactiveProxyHandler,
+                                @Qualifier("clientCompressionMeter")
+                                ObjectProvider<CompressionMeter> clientCompressionMeter,
+                                @Qualifier("upstreamCompressionMeter") CompressionMeter upstreamCompressionMeter) {
+        this.browserConnector = browserConnector;
+        this.browserRouter = browserRouter;
+        this.webSocketHandler = webSocketHandler.getIfAvailable();
+        this.reactiveProxyHandler = reactiveProxyHandler.getIfAvailable();
+        this.clientCompressionMeter = clientCompressionMeter.getIfAvailable();
+        this.upstreamCompressionMeter = upstreamCompressionMeter;
+    }
+
+    @GetMapping("/proxy/stats")
+    public String getStats() {
+        JSONObject stats = new JSONObject();
+        stats.put("dump", dumpStats());
+        stats.put("locatorCache", locatorCacheStats());
+        stats.put("locators", locatorStats());
+        stats.put("connector", connectorStats());
+        stats.put("backends", backendStats());
+        stats.put("engine", webSocketHandler != null ? "servlet" : "reactive");
+        stats.put("threads", threadStats());
+        stats.put("sessions", webSocketHandler != null ? sessionStats() : reactiveSessionStats());
+        JSONObject compression = new JSONObject();
+        // Reactor Netty compresses without reporting on it
+        if (webSocketHandler != null) {
+            compression.put("client", compressionStats(clientCompressionMeter));
+            compression.put("upstream", compressionStats(upstreamCompressionMeter));
+        }
+        stats.put("compression", compression);
+        return stats.toString();
+    }
+
+    private JSONObject locatorCacheStats() {
+        JSONObject cache = new JSONObject();
+        SelectorCache.Stats stats = LocatorDetector.cacheStats();
+        cache.put("enabled", stats != null);
+        if (stats != null) {
+            cache.put("capacity", stats.capacity);
+            cache.put("size", stats.size);
+            cache.put("hits", stats.hits);
+            cache.put("misses", stats.misses);
+            cache.put("evictions", stats.evictions);
+            cache.put("hitRate", stats.hitRate());
+        }
+        return cache;
+    }
+
+    private JSONObject locatorStats() {
+        LocatorVerificationTracker.Stats stats = LocatorVerificationTracker.stats();
+        JSONObject locators = new JSONObject();
+        locators.put("sessions", stats.sessions);
+        locators.put("tracked", stats.locators);
+        locators.put("internedStrings", stats.internedStrings);
+        return locators;
+    }
+
+    private JSONObject threadStats() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        JSONObject threads = new JSONObject();
+        threads.put("virtual", ProxyThreads.virtual());
+        // Virtual threads are not counted
+        threads.put("platformLive", threadBean.getThreadCount());
+        threads.put("platformPeak", threadBean.getPeakThreadCount());
+        return threads;
+    }
+
+    private JSONObject compressionStats(CompressionMeter meter) {
+        CompressionMeter.Stats stats = meter.stats();
+        JSONObject compression = new JSONObject();
+        compression.put("negotiated", stats.negotiated);
+        compression.put("deflatedFrames", stats.deflatedFrames);
+        compression.put("deflateInputBytes", stats.deflateInputBytes);
+        compression.put("deflateOutputBytes", stats.deflateOutputBytes);
+        compression.put("deflateRatio", stats.deflateRatio());
+        compression.put("deflateCpuUs", stats.deflateCpuMicros);
+        compression.put("inflatedFrames", stats.inflatedFrames);
+        compression.put("inflateInputBytes", stats.inflateInputBytes);
+        compression.put("inflateOutputBytes", stats.inflateOutputBytes);
+        compression.put("inflateRatio", stats.inflateRatio());
+        compression.put("inflateCpuUs", stats.inflateCpuMicros);
+        return compression;
+    }
+
+    private JSONArray reactiveSessionStats() {
+        JSONArray sessions = new JSONArray();
+        reactiveProxyHandler.sessionStats().forEach((sessionId, stats) -> {
+            JSONObject session = new JSONObject();
+            session.put("id", sessionId);
+            session.put("backend", stats.backend);
+            session.put("connected", stats.connected);
+            session.put("commands", stats.commands);
+            session.put("responses", stats.responses);
+            session.put("events", stats.events);
+            sessions.put(session);
+        });
+        return sessions;
+    }
+
+    private JSONArray sessionStats() {
+        JSONArray sessions = new JSONArray();
+        Map<String, ClientSendBuffer.Stats> outbound = webSocketHandler.outboundStats();
+        webSocketHandler.pendingStats().forEach((sessionId, stats) -> {
+            JSONObject session = new JSONObject();
+            session.put("id", sessionId);
+            BrowserBackend backend = webSocketHandler.backendOf(sessionId);
+            if (backend != null) {
+                session.put("backend", backend.httpUrl());
+            }
+            session.put("paused", webSocketHandler.isPaused(sessionId));
+            session.put("pendingMessages", stats.depth);
+            session.put("pendingBytes", stats.bytes);
+            session.put("maxPendingMessages", stats.maxDepth);
+            session.put("queued", stats.enqueued);
+            session.put("rejected", stats.rejected);
+            session.put("saturations", stats.saturations);
+            session.put("saturated", stats.saturated);
+            ClientSendBuffer.Stats sendStats = outbound.get(sessionId);
+            if (sendStats != null) {
+                JSONObject send = new JSONObject();
+                send.put("buffered", sendStats.buffered);
+                send.put("bufferedBytes", sendStats.bufferedBytes);
+                send.put("maxBufferedBytes", sendStats.maxBufferedBytes);
+                send.put("sent", sendStats.sent);
+                send.put("sentParts", sendStats.sentParts);
+                send.put("sentBinary", sendStats.sentBinary);
+                send.put("dropped", sendStats.dropped);
+                send.put("maxSendMs", sendStats.maxSendMillis);
+                send.put("outstandingMs", sendStats.outstandingMillis);
+                send.put("terminated", sendStats.terminated);
+                session.put("outbound", send);
+            }
+            sessions.put(session);
+        });
+        return sessions;
+    }
+
+    private JSONArray backendStats() {
+        JSONArray backends = new JSONArray();
+        for (BrowserBackend backend : browserRouter.backends()) {
+            JSONObject entry = new JSONObject();
+            entry.put("httpUrl", backend.httpUrl());
+            entry.put("activeSessions", backend.activeSessions());
+            entry.put("totalSessions", backend.totalSessions());
+            entry.put("healthy", backend.isHealthy());
+            entry.put("latencyMs", backend.latencyMs());
+            entry.put("health", healthStats(backend));
+            entry.put("pool", poolStats(backend.pool()));
+            entry.put("discovery", discoveryStats(backend.pool().discovery()));
+            if (backend.multiplexer() != null) {
+                entry.put("multiplex", multiplexStats(backend.multiplexer()));
+            }
+            backends.put(entry);
+        }
+        return backends;
+    }
+
+    private JSONObject multiplexStats(BrowserMultiplexer multiplexer) {
+        BrowserMultiplexer.Stats stats = multiplexer.stats();
+        JSONObject multiplex = new JSONObject();
+        multiplex.put("channels", stats.channels);
+        multiplex.put("ownedSessions", stats.ownedSessions);
+        multiplex.put("ownedContexts", stats.ownedContexts);
+        multiplex.put("upstreamConnections", stats.upstreamConnections);
+        multiplex.put("commands", stats.commands);
+        multiplex.put("responses", stats.responses);
+        multiplex.put("events", stats.events);
+        multiplex.put("broadcasts", stats.broadcasts);
+        multiplex.put("dropped", stats.dropped);
+        return multiplex;
+    }
+
+    private JSONObject healthStats(BrowserBackend backend) {
+        BrowserBackend.HealthStats stats = backend.healthStats();
+        JSONObject health = new JSONObject();
+        health.put("circuit", stats.circuit.name());
+        health.put("circuitOpened", stats.circuitOpened);
+        health.put("probes", stats.probes);
+        health.put("probeFailures", stats.probeFailures);
+        health.put("versionLatencyMs", stats.versionLatencyMs);
+        health.put("roundTripLatencyMs", stats.roundTripLatencyMs);
+        health.put("lastProbeAt", stats.lastProbeAt);
+        if (stats.lastProbeError != null) {
+            health.put("lastProbeError", stats.lastProbeError);
+        }
+        return health;
+    }
+
+    private JSONObject discoveryStats(BrowserDiscovery browserDiscovery) {
+        BrowserDiscovery.Stats stats = browserDiscovery.stats();
+        JSONObject discovery = new JSONObject();
+        discovery.put("lookups", stats.lookups);
+        discovery.put("cacheHits", stats.cacheHits);
+        discovery.put("failures", stats.failures);
+        discovery.put("invalidations", stats.invalidations);
+        discovery.put("lastLookupMs", stats.lastLookupMs);
+        return discovery;
+    }
+
+    private JSONObject poolStats(BrowserConnectionPool connectionPool) {
+        BrowserConnectionPool.Stats stats = connectionPool.stats();
+        JSONObject pool = new JSONObject();
+        pool.put("idle", stats.idle);
+        pool.put("warming", stats.warming);
+        pool.put("minIdle", stats.minIdle);
+        pool.put("maxSize", stats.maxSize);
+        pool.put("hits", stats.hits);
+        pool.put("misses", stats.misses);
+        pool.put("created", stats.created);
+        pool.put("evicted", stats.evicted);
+        pool.put("validationFailures", stats.validationFailures);
+        pool.put("connectFailures", stats.connectFailures);
+        return pool;
+    }
+
+    private JSONObject connectorStats() {
+        BrowserConnector.Stats stats = browserConnector.stats();
+        JSONObject connector = new JSONObject();
+        connector.put("virtualThreads", stats.virtualThreads);
+        connector.put("submitted", stats.submitted);
+        connector.put("succeeded", stats.succeeded);
+        connector.put("failed", stats.failed);
+        connector.put("rejected", stats.rejected);
+        connector.put("active", stats.active);
+        connector.put("queueDepth", stats.queueDepth);
+        connector.put("avgConnectMs", stats.avgConnectMs);
+        connector.put("maxConnectMs", stats.maxConnectMs);
+        connector.put("lastConnectMs", stats.lastConnectMs);
+        connector.put("avgQueueWaitMs", stats.avgQueueWaitMs);
+        return connector;
+    }
+
+    private JSONObject dumpStats() {
+        JSONObject dump = new JSONObject();
+        DumpWriter.Stats stats = CDPMessageDumper.stats();
+        dump.put("enabled", stats != null);
+        if (stats != null) {
+            dump.put("submitted", stats.submitted);
+            dump.put("written", stats.written);
+            dump.put("dropped", stats.dropped);
+            dump.put("lagging", stats.lagging);
+            dump.put("queueDepth", stats.queueDepth);
+            dump.put("flushes", stats.flushes);
+            dump.put("bytesWritten", stats.bytesWritten);
+            dump.put("maxLagMs", stats.maxLagMs);
+            dump.put("overflowPolicy", stats.overflowPolicy.name());
+            dump.put("format", stats.format);
+            if (stats.payloadBytes > 0) {
+                dump.put("payloadBytes", stats.payloadBytes);
+                dump.put("storedPayloadBytes", stats.storedPayloadBytes);
+                dump.put("compressionRatio", (double) stats.payloadBytes / Math.max(1, stats.storedPayloadBytes));
+            }
+        }
+        return dump;
+    }
+}
@@ -0,0 +1,222 @@
+package com.cdpproxy.dump;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact length-prefixed dump layout. Payloads are stored once, exactly as
+ * relayed, instead of being pretty-printed twice.
+ *
+ * <pre>
+ * header: int magic "CDPD" | short version | short flags | long startEpochMillis | long startNanos
+ *         [int dictionaryId, when FLAG_DICTIONARY is set]
+ * record: int length | long nanoTime | byte direction | short sessionIdLength | sessionId | payload
+ * </pre>
+ * {@code length} counts the bytes following it, so readers can skip records
+ * without decoding them. With {@link #FLAG_DEFLATE} the payload is stored as
+ * {@code int rawLength | deflated bytes}, see {@link RecordCodec}.
+ */
+public class BinaryDumpFormat implements DumpFormat {
+    public static final int MAGIC = 0x43445044; // "CDPD"
+    public static final short VERSION = 1;
+    /** Size of the header without the optional dictionary id */
+    public static final int HEADER_SIZE = 24;
+
+    public static final short FLAG_DEFLATE = 1;
+    public static final short FLAG_DICTIONARY = 2;
+    /** Bytes in front of the session id: length, nanoTime, direction, sessionIdLength */
+    static final int RECORD_PREFIX = 4 + 8 + 1 + 2;
+
+    static final byte DIRECTION_FROM_PLAYWRIGHT = 0;
+    static final byte DIRECTION_FROM_BROWSER = 1;
+
+    private final RecordCodec codec;
+    private volatile long payloadBytes;
+    private volatile long storedPayloadBytes;
+
+    public BinaryDumpFormat() {
+        this(null);
+    }
+
+    /**
+     * @param codec per-record compression, or null to store payloads as-is
+     */
+    public BinaryDumpFormat(RecordCodec codec) {
+        this.codec = codec;
+    }
+
+    @Override
+    public void writeHeader(DumpBuffer out, long startMillis, long startNanos) {
+        short flags = 0;
+        if (codec != null) {
+            flags |= FLAG_DEFLATE;
+            if (codec.hasDictionary()) {
+                flags |= FLAG_DICTIONARY;
+            }
+        }
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(flags);
+        out.writeLong(startMillis);
+        out.writeLong(startNanos);
+        if ((flags & FLAG_DICTIONARY) != 0) {
+            out.writeInt(codec.dictionaryId());
+        }
+    }
+
+    @Override
+    public void writeRecord(DumpBuffer out, DumpEntry entry) {
+        byte[] session = entry.sessionId == null ? new byte[0] : entry.sessionId.getBytes(StandardCharsets.UTF_8);
+        byte[] payload = entry.message.getBytes(StandardCharsets.UTF_8);
+
+        int lengthPosition = out.size();
+        out.writeInt(0);
+        out.writeLong(entry.nanoTime);
+        out.write(encodeDirection(entry.direction));
+        out.writeShort(session.length);
+        out.writeBytes(session);
+        int stored;
+        if (codec == null) {
+            out.writeBytes(payload);
+            stored = payload.length;
+        } else {
+            out.writeInt(payload.length);
+            stored = 4 + codec.compress(payload, out);
+        }
+        out.putInt(lengthPosition, out.size() - lengthPosition - 4);
+
+        payloadBytes += payload.length;
+        storedPayloadBytes += stored;
+    }
+
+    /**
+     * @return payload bytes handed to the format so far
+     */
+    public long payloadBytes() {
+        return payloadBytes;
+    }
+
+    /**
+     * @return payload bytes actually stored (after compression) so far
+     */
+    public long storedPayloadBytes() {
+        return storedPayloadBytes;
+    }
+
+    static byte encodeDirection(String direction) {
+        if (DumpEntry.FROM_PLAYWRIGHT.equals(direction)) {
+            return DIRECTION_FROM_PLAYWRIGHT;
+        }
+        if (DumpEntry.FROM_BROWSER.equals(direction)) {
+            return DIRECTION_FROM_BROWSER;
+        }
+        throw new IllegalArgumentException("Unknown dump direction: " + direction);
+    }
+
+    static String decodeDirection(byte code) throws IOException {
+        switch (code) {
+            case DIRECTION_FROM_PLAYWRIGHT:
+                return DumpEntry.FROM_PLAYWRIGHT;
+            case DIRECTION_FROM_BROWSER:
+                return DumpEntry.FROM_BROWSER;
+            default:
+                throw new IOException("Corrupt dump record: unknown direction " + code);
+        }
+    }
+
+    /**
+     * Header fields of a binary dump file
+     */
+    public static final class Header {
+        public final short version;
+        public final short flags;
+        public final long startMillis;
+        public final long startNanos;
+        public final int dictionaryId;
+
+        Header(short version, short flags, long startMillis, long startNanos, int dictionaryId) {
+            this.version = version;
+            this.flags = flags;
+            this.startMillis = startMillis;
+            this.startNanos = startNanos;
+            this.dictionaryId = dictionaryId;
+        }
+
+        public boolean isCompressed() {
+            return (flags & FLAG_DEFLATE) != 0;
+        }
+
+        public boolean usesDictionary() {
+            return (flags & FLAG_DICTIONARY) != 0;
+        }
+
+        /**
+         * @return encoded header size, i.e. the offset of the first record
+         */
+        public int size() {
+            return usesDictionary() ? HEADER_SIZE + 4 : HEADER_SIZE;
+        }
+
+        /**
+         * Convert a monotonic record timestamp to wall-clock millis
+         */
+        public long toEpochMillis(long nanoTime) {
+            return startMillis + (nanoTime - startNanos) / 1_000_000L;
+        }
+    }
+
+    public static Header readHeader(DataInput in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a binary CDP dump (bad magic)");
+        }
+        short version = in.readShort();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary CDP dump version " + version);
+        }
+        short flags = in.readShort();
+        long startMillis = in.readLong();
+        long startNanos = in.readLong();
+        int dictionaryId = (flags & FLAG_DICTIONARY) != 0 ? in.readInt() : 0;
+        return new Header(version, flags, startMillis, startNanos, dictionaryId);
+    }
+
+    /**
+     * @param codec decompressor for compressed dumps, ignored otherwise
+     * @return the next record, or null at a clean end of file
+     */
+    public static DumpRecord readRecord(DataInput in, Header header, RecordCodec codec, long offset)
+            throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < RECORD_PREFIX - 4) {
+            throw new IOException("Corrupt dump record at offset " + offset);
+        }
+        long nanoTime = in.readLong();
+        String direction = decodeDirection(in.readByte());
+        int sessionLength = in.readUnsignedShort();
+        byte[] session = new byte[sessionLength];
+        in.readFully(session);
+        int storedLength = length - (RECORD_PREFIX - 4) - sessionLength;
+        byte[] payload;
+        if (header.isCompressed()) {
+            int rawLength = in.readInt();
+            byte[] compressed = new byte[storedLength - 4];
+            in.readFully(compressed);
+            payload = codec.decompress(compressed, rawLength);
+        } else {
+            payload = new byte[storedLength];
+            in.readFully(payload);
+        }
+
+        return new DumpRecord(offset, 4 + length, nanoTime,
+                header.toEpochMillis(nanoTime), direction,
+                sessionLength == 0 ? null : new String(session, StandardCharsets.UTF_8), payload);
+    }
+}
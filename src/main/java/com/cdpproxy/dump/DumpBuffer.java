@@ -0,0 +1,48 @@
+package com.cdpproxy.dump;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Growable byte buffer that a batch of dump records is encoded into
+ */
+public final class DumpBuffer extends ByteArrayOutputStream {
+
+    public DumpBuffer(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * @return a view of the buffered bytes, without copying
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(buf, 0, count);
+    }
+
+    public void writeShort(int value) {
+        write(value >>> 8);
+        write(value);
+    }
+
+    public void writeInt(int value) {
+        write(value >>> 24);
+        write(value >>> 16);
+        write(value >>> 8);
+        write(value);
+    }
+
+    public void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    /**
+     * Overwrite four bytes at an earlier position (used to back-fill length prefixes)
+     */
+    public void putInt(int position, int value) {
+        buf[position] = (byte) (value >>> 24);
+        buf[position + 1] = (byte) (value >>> 16);
+        buf[position + 2] = (byte) (value >>> 8);
+        buf[position + 3] = (byte) value;
+    }
+}
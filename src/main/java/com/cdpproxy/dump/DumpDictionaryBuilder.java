@@ -0,0 +1,193 @@
+package com.cdpproxy.dump;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Builds a deflate preset dictionary from sampled CDP traffic.
+ * <p>
+ * Candidates are JSON string literals together with the structure around
+ * them ({@code "method":"Runtime.callFunctionOn"}, {@code {"v":"css","k":"name"}}
+ * fragments, the utility-script {@code functionDeclaration} bodies...). Each
+ * candidate is scored by length times the number of sampled messages it
+ * appears in, and the best ones are packed into the dictionary with the most
+ * valuable last, since deflate reaches the end of the dictionary cheapest.
+ */
+public class DumpDictionaryBuilder {
+    /** Deflate cannot look back further than its 32 KB window */
+    public static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+
+    private DumpDictionaryBuilder() {
+    }
+
+    public static byte[] build(List<String> samples, int maxSize) {
+        int limit = Math.min(maxSize, MAX_DICTIONARY_SIZE);
+        Map<String, Integer> messageCounts = new HashMap<>();
+        for (String sample : samples) {
+            for (String candidate : candidates(sample)) {
+                messageCounts.merge(candidate, 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> ranked = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : messageCounts.entrySet()) {
+            if (entry.getValue() >= 2) {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort((a, b) -> Long.compare(score(b), score(a)));
+
+        // Pick the best candidates that still fit, skipping ones already covered
+        List<byte[]> picked = new ArrayList<>();
+        StringBuilder covered = new StringBuilder();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : ranked) {
+            String candidate = entry.getKey();
+            byte[] bytes = candidate.getBytes(StandardCharsets.UTF_8);
+            if (size > limit - 6) {
+                break;
+            }
+            if (size + bytes.length > limit || covered.indexOf(candidate) >= 0) {
+                continue;
+            }
+            picked.add(bytes);
+            covered.append(candidate).append('\n');
+            size += bytes.length;
+        }
+
+        // Lowest score first, so the most valuable strings sit at the end
+        byte[] dictionary = new byte[size];
+        int position = 0;
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            byte[] bytes = picked.get(i);
+            System.arraycopy(bytes, 0, dictionary, position, bytes.length);
+            position += bytes.length;
+        }
+        return dictionary;
+    }
+
+    private static long score(Map.Entry<String, Integer> entry) {
+        return (long) entry.getKey().length() * entry.getValue();
+    }
+
+    /**
+     * Distinct candidate strings of one message
+     */
+    static Set<String> candidates(String message) {
+        Set<String> candidates = new HashSet<>();
+        int length = message.length();
+        int previousEnd = -1;
+        int i = 0;
+        while (i < length) {
+            if (message.charAt(i) != '"') {
+                i++;
+                continue;
+            }
+            int end = skipString(message, i);
+            if (end < 0) {
+                break;
+            }
+            // Include the punctuation before the literal and the separator after it
+            int start = Math.max(previousEnd, Math.max(0, i - 2));
+            int stop = Math.min(length, end + 1);
+            if (end < length && message.charAt(end) == ':' && end + 1 < length && message.charAt(end + 1) == '"') {
+                // key:"value" pairs are kept together
+                int valueEnd = skipString(message, end + 1);
+                if (valueEnd > 0) {
+                    stop = Math.min(length, valueEnd + 1);
+                }
+            }
+            if (stop - start >= 6) {
+                candidates.add(message.substring(start, stop));
+            }
+            previousEnd = end;
+            i = end;
+        }
+        return candidates;
+    }
+
+    private static int skipString(String s, int quote) {
+        for (int j = quote + 1; j < s.length(); j++) {
+            char c = s.charAt(j);
+            if (c == '\\') {
+                j++;
+            } else if (c == '"') {
+                return j + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read sample payloads from a binary dump or from a text cdp-messages-dump.log
+     */
+    public static List<String> samplesFromDump(Path dump, int maxSamples) throws IOException {
+        if (isBinaryDump(dump)) {
+            List<String> samples = new ArrayList<>();
+            try (DumpReader reader = new DumpReader(dump)) {
+                DumpRecord record;
+                while (samples.size() < maxSamples && (record = reader.next()) != null) {
+                    samples.add(record.payload());
+                }
+            }
+            return samples;
+        }
+        try (InputStream in = open(dump)) {
+            return samplesFromTextDump(new String(in.readAllBytes(), StandardCharsets.UTF_8), maxSamples);
+        }
+    }
+
+    /**
+     * Recover compact messages from the "Full:" sections of a text dump
+     */
+    static List<String> samplesFromTextDump(String content, int maxSamples) {
+        List<String> samples = new ArrayList<>();
+        int position = 0;
+        while (samples.size() < maxSamples) {
+            int full = content.indexOf("\nFull: ", position);
+            if (full < 0) {
+                break;
+            }
+            int start = full + 7;
+            int next = content.indexOf("\n\n=== ", start);
+            int end = next < 0 ? content.length() : next;
+            try {
+                Object value = new JSONTokener(content.substring(start, end)).nextValue();
+                if (value instanceof JSONObject) {
+                    samples.add(value.toString());
+                }
+            } catch (Exception ignored) {
+                // Entries that are not JSON were dumped raw; skip them
+            }
+            position = end;
+        }
+        return samples;
+    }
+
+    private static boolean isBinaryDump(Path dump) throws IOException {
+        try (DataInputStream in = new DataInputStream(open(dump))) {
+            return in.readInt() == BinaryDumpFormat.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static InputStream open(Path dump) throws IOException {
+        InputStream in = Files.newInputStream(dump);
+        return dump.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+}
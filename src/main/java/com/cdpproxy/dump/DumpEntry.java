@@ -0,0 +1,25 @@
+package com.cdpproxy.dump;
+
+/**
+ * A CDP message captured on the proxy path, waiting to be written to the dump
+ */
+public final class DumpEntry {
+    public static final String FROM_PLAYWRIGHT = "FROM_PLAYWRIGHT";
+    public static final String FROM_BROWSER = "FROM_BROWSER";
+
+    public final long timestampMillis;
+    /** Monotonic capture time, also used to measure queueing lag */
+    public final long nanoTime;
+    public final String direction;
+    /** Proxy-side WebSocket session the message belongs to (may be null) */
+    public final String sessionId;
+    public final String message;
+
+    public DumpEntry(String direction, String sessionId, String message) {
+        this.timestampMillis = System.currentTimeMillis();
+        this.nanoTime = System.nanoTime();
+        this.direction = direction;
+        this.sessionId = sessionId;
+        this.message = message;
+    }
+}
@@ -0,0 +1,92 @@
+package com.cdpproxy.dump;
+
+import java.util.function.Predicate;
+import com.cdpproxy.util.CDPMessageEnvelope;
+
+/**
+ * Record filter for dump readers. Unset criteria match everything; the
+ * payload is only decoded when a method or id criterion is set.
+ */
+public class DumpFilter implements Predicate<DumpRecord> {
+    private String direction;
+    private String sessionId;
+    private String method;
+    private Integer id;
+    private long fromMillis = Long.MIN_VALUE;
+    private long toMillis = Long.MAX_VALUE;
+
+    public static DumpFilter all() {
+        return new DumpFilter();
+    }
+
+    public DumpFilter direction(String direction) {
+        this.direction = direction;
+        return this;
+    }
+
+    public DumpFilter sessionId(String sessionId) {
+        this.sessionId = sessionId;
+        return this;
+    }
+
+    public DumpFilter method(String method) {
+        this.method = method;
+        return this;
+    }
+
+    public DumpFilter id(Integer id) {
+        this.id = id;
+        return this;
+    }
+
+    public DumpFilter between(long fromMillis, long toMillis) {
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        return this;
+    }
+
+    public String direction() {
+        return direction;
+    }
+
+    public String sessionId() {
+        return sessionId;
+    }
+
+    public String method() {
+        return method;
+    }
+
+    public Integer id() {
+        return id;
+    }
+
+    public long fromMillis() {
+        return fromMillis;
+    }
+
+    public long toMillis() {
+        return toMillis;
+    }
+
+    @Override
+    public boolean test(DumpRecord record) {
+        if (direction != null && !direction.equals(record.direction)) {
+            return false;
+        }
+        if (sessionId != null && !sessionId.equals(record.sessionId)) {
+            return false;
+        }
+        if (record.epochMillis < fromMillis || record.epochMillis > toMillis) {
+            return false;
+        }
+        if (method == null && id == null) {
+            return true;
+        }
+        CDPMessageEnvelope message = record.message();
+        if (method != null && !method.equals(message.method())) {
+            return false;
+        }
+        return id == null || (message.hasId() && message.id() == id);
+    }
+}
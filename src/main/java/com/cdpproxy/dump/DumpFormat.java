@@ -0,0 +1,30 @@
+package com.cdpproxy.dump;
+
+import java.io.IOException;
+
+/**
+ * Encoding of dump files. Implementations are only used from the writer thread.
+ */
+public interface DumpFormat {
+
+    /**
+     * Bytes written once at the start of every dump file
+     */
+    void writeHeader(DumpBuffer out, long startMillis, long startNanos) throws IOException;
+
+    void writeRecord(DumpBuffer out, DumpEntry entry) throws IOException;
+
+    /**
+     * Resolve a format from its configuration name
+     */
+    static DumpFormat forName(String name) {
+        switch (name.toLowerCase()) {
+            case "text":
+                return new TextDumpFormat();
+            case "binary":
+                return new BinaryDumpFormat();
+            default:
+                throw new IllegalArgumentException("Unknown dump format: " + name);
+        }
+    }
+}
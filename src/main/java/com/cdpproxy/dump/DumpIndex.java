@@ -0,0 +1,135 @@
+package com.cdpproxy.dump;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Sidecar offset index of a binary dump segment ({@code dump.000042.bin.idx}).
+ * <p>
+ * The index is a fixed-width table, appended by {@link DumpIndexWriter} as
+ * batches reach the segment, so a lookup scans 32 bytes per record instead of
+ * decoding whole records. Methods and session ids are stored as hashes; callers
+ * confirm candidates against the records themselves.
+ *
+ * <pre>
+ * header: int magic "CDPI" | int version | long segmentStartMillis
+ * entry:  long offset | long id | int methodHash | int sessionHash | int millisSinceStart | byte direction | 3 spare
+ * </pre>
+ */
+public final class DumpIndex {
+    public static final int MAGIC = 0x43445049; // "CDPI"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int ENTRY_SIZE = 32;
+    public static final String SUFFIX = ".idx";
+
+    /** Stored id of records without one */
+    static final long NO_ID = Long.MIN_VALUE;
+    static final byte NO_DIRECTION = -1;
+
+    private final ByteBuffer entries;
+    private final long startMillis;
+
+    private DumpIndex(ByteBuffer entries, long startMillis) {
+        this.entries = entries;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Index file of a segment; compressed segments keep the index of the original file
+     */
+    public static Path pathFor(Path segment) {
+        String name = segment.getFileName().toString();
+        if (name.endsWith(".gz")) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return segment.resolveSibling(name + SUFFIX);
+    }
+
+    /**
+     * Map the entries written so far; entries appended later are not visible
+     */
+    public static DumpIndex open(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Truncated dump index " + indexFile);
+            }
+            // Ignore a trailing entry the writer has not finished yet
+            long complete = HEADER_SIZE + (size - HEADER_SIZE) / ENTRY_SIZE * ENTRY_SIZE;
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, complete);
+            if (mapped.getInt(0) != MAGIC || mapped.getInt(4) != VERSION) {
+                throw new IOException("Not a CDP dump index: " + indexFile);
+            }
+            return new DumpIndex(mapped, mapped.getLong(8));
+        }
+    }
+
+    public int size() {
+        return (entries.limit() - HEADER_SIZE) / ENTRY_SIZE;
+    }
+
+    /**
+     * @return ascending offsets of the records that may match the filter
+     */
+    public long[] candidates(DumpFilter filter) {
+        long id = filter.id() == null ? NO_ID : filter.id();
+        int methodHash = filter.method() == null ? 0 : filter.method().hashCode();
+        int sessionHash = filter.sessionId() == null ? 0 : filter.sessionId().hashCode();
+        byte direction = filter.direction() == null ? NO_DIRECTION : BinaryDumpFormat.encodeDirection(filter.direction());
+        long from = filter.fromMillis() == Long.MIN_VALUE ? Long.MIN_VALUE : filter.fromMillis() - startMillis;
+        long to = filter.toMillis() == Long.MAX_VALUE ? Long.MAX_VALUE : filter.toMillis() - startMillis;
+
+        long[] offsets = new long[16];
+        int count = 0;
+        for (int position = HEADER_SIZE; position < entries.limit(); position += ENTRY_SIZE) {
+            if (filter.id() != null && entries.getLong(position + 8) != id) {
+                continue;
+            }
+            if (filter.method() != null && entries.getInt(position + 16) != methodHash) {
+                continue;
+            }
+            if (filter.sessionId() != null && entries.getInt(position + 20) != sessionHash) {
+                continue;
+            }
+            int millis = entries.getInt(position + 24);
+            if (millis < from || millis > to) {
+                continue;
+            }
+            if (direction != NO_DIRECTION && entries.get(position + 28) != direction) {
+                continue;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = entries.getLong(position);
+        }
+        return Arrays.copyOf(offsets, count);
+    }
+
+    /**
+     * Rebuild the index sidecar of an existing binary segment
+     *
+     * @return the number of records indexed
+     */
+    public static long rebuild(Path segment, byte[] dictionary) throws IOException {
+        long count = 0;
+        try (DumpReader reader = new DumpReader(segment, dictionary);
+             DumpIndexWriter index = new DumpIndexWriter(pathFor(segment), reader.header().startMillis)) {
+            DumpRecord record;
+            while ((record = reader.next()) != null) {
+                index.add(record.offset, record.epochMillis, record.direction, record.sessionId,
+                        record.message().hasId() ? record.message().id() : NO_ID, record.message().method());
+                if (++count % 4096 == 0) {
+                    index.flush();
+                }
+            }
+        }
+        return count;
+    }
+}
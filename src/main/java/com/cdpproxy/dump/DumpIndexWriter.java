@@ -0,0 +1,73 @@
+package com.cdpproxy.dump;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import com.cdpproxy.util.CDPMessageEnvelope;
+
+/**
+ * Appends {@link DumpIndex} entries for one segment. Entries are buffered per
+ * batch and written after the records they point to, so every offset in the
+ * file is already readable. Only used from the dump writer thread.
+ */
+class DumpIndexWriter implements Closeable {
+    private final FileChannel channel;
+    private final long startMillis;
+    private ByteBuffer pending = ByteBuffer.allocate(256 * DumpIndex.ENTRY_SIZE);
+
+    DumpIndexWriter(Path indexFile, long startMillis) throws IOException {
+        this.channel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.startMillis = startMillis;
+        ByteBuffer header = ByteBuffer.allocate(DumpIndex.HEADER_SIZE);
+        header.putInt(DumpIndex.MAGIC).putInt(DumpIndex.VERSION).putLong(startMillis).flip();
+        writeFully(header);
+    }
+
+    void add(long offset, DumpEntry entry) {
+        CDPMessageEnvelope message = CDPMessageEnvelope.parse(entry.message);
+        add(offset, entry.timestampMillis, entry.direction, entry.sessionId,
+                message.hasId() ? message.id() : DumpIndex.NO_ID, message.method());
+    }
+
+    void add(long offset, long epochMillis, String direction, String sessionId, long id, String method) {
+        if (pending.remaining() < DumpIndex.ENTRY_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        long millis = Math.max(0, Math.min(Integer.MAX_VALUE, epochMillis - startMillis));
+        pending.putLong(offset)
+                .putLong(id)
+                .putInt(method == null ? 0 : method.hashCode())
+                .putInt(sessionId == null ? 0 : sessionId.hashCode())
+                .putInt((int) millis)
+                .put(BinaryDumpFormat.encodeDirection(direction))
+                .put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+
+    void flush() throws IOException {
+        pending.flip();
+        writeFully(pending);
+        pending.clear();
+    }
+
+    private void writeFully(ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
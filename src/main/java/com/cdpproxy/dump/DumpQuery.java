@@ -0,0 +1,196 @@
+package com.cdpproxy.dump;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Looks up dump records through the {@link DumpIndex} sidecars: candidate
+ * offsets come from the index, and only those records are read, from a
+ * memory-mapped segment (or by skipping through a gzip-compressed one).
+ * Segments without an index are scanned sequentially.
+ */
+public class DumpQuery {
+    private final DumpSegments segments;
+    private final byte[] dictionary;
+
+    /**
+     * @param dictionary preset dictionary the dump is written with, if any
+     */
+    public DumpQuery(DumpSegments segments, byte[] dictionary) {
+        this.segments = segments;
+        this.dictionary = dictionary;
+    }
+
+    /**
+     * A record together with the segment it was found in
+     */
+    public static final class Match {
+        public final DumpSegments.SegmentInfo segment;
+        public final DumpRecord record;
+
+        Match(DumpSegments.SegmentInfo segment, DumpRecord record) {
+            this.segment = segment;
+            this.record = record;
+        }
+    }
+
+    /**
+     * @return up to {@code limit} matching records, oldest first
+     */
+    public List<Match> find(DumpFilter filter, int limit) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        for (DumpSegments.SegmentInfo segment : segments.covering(filter.fromMillis(), filter.toMillis())) {
+            if (matches.size() >= limit) {
+                break;
+            }
+            List<DumpRecord> records;
+            try {
+                records = find(segment.path, dictionary, filter, limit - matches.size());
+            } catch (NoSuchFileException e) {
+                // Compressed while we were looking it up
+                records = find(segment.path.resolveSibling(segment.path.getFileName() + ".gz"), dictionary,
+                        filter, limit - matches.size());
+            }
+            for (DumpRecord record : records) {
+                matches.add(new Match(segment, record));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Look up matching records in a single binary segment
+     */
+    public static List<DumpRecord> find(Path segment, byte[] dictionary, DumpFilter filter, int limit)
+            throws IOException {
+        Path indexFile = DumpIndex.pathFor(segment);
+        if (!Files.exists(indexFile)) {
+            return scan(segment, dictionary, filter, limit);
+        }
+        long[] offsets = DumpIndex.open(indexFile).candidates(filter);
+        if (offsets.length == 0) {
+            return new ArrayList<>();
+        }
+        if (segment.getFileName().toString().endsWith(".gz")) {
+            return skipThrough(segment, dictionary, offsets, filter, limit);
+        }
+        return readMapped(segment, dictionary, offsets, filter, limit);
+    }
+
+    private static List<DumpRecord> readMapped(Path segment, byte[] dictionary, long[] offsets, DumpFilter filter,
+                                               int limit) throws IOException {
+        List<DumpRecord> records = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+            long size = channel.size();
+            // A mapping is capped at 2 GB; larger segments map each candidate record on its own
+            ByteBuffer whole = size <= Integer.MAX_VALUE ? channel.map(FileChannel.MapMode.READ_ONLY, 0, size) : null;
+            ByteBuffer head = whole != null ? whole.duplicate()
+                    : channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, BinaryDumpFormat.HEADER_SIZE + 4));
+            BinaryDumpFormat.Header header = BinaryDumpFormat.readHeader(new DataInputStream(new ByteBufferInput(head)));
+            RecordCodec codec = DumpReader.codecFor(header, dictionary);
+
+            for (long offset : offsets) {
+                ByteBuffer bytes;
+                if (whole != null) {
+                    bytes = whole.duplicate().position((int) offset);
+                } else {
+                    int length = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4).getInt(0);
+                    bytes = channel.map(FileChannel.MapMode.READ_ONLY, offset, 4L + length);
+                }
+                DumpRecord record = BinaryDumpFormat.readRecord(new DataInputStream(new ByteBufferInput(bytes)),
+                        header, codec, offset);
+                if (record != null && filter.test(record)) {
+                    records.add(record);
+                    if (records.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    private static List<DumpRecord> skipThrough(Path segment, byte[] dictionary, long[] offsets, DumpFilter filter,
+                                                int limit) throws IOException {
+        List<DumpRecord> records = new ArrayList<>();
+        try (DumpReader reader = new DumpReader(segment, dictionary)) {
+            for (long offset : offsets) {
+                reader.seek(offset);
+                DumpRecord record = reader.next();
+                if (record != null && filter.test(record)) {
+                    records.add(record);
+                    if (records.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    private static List<DumpRecord> scan(Path segment, byte[] dictionary, DumpFilter filter, int limit)
+            throws IOException {
+        List<DumpRecord> records = new ArrayList<>();
+        if (!isBinary(segment)) {
+            // Text segments have no record structure to return
+            return records;
+        }
+        try (DumpReader reader = new DumpReader(segment, dictionary)) {
+            DumpRecord record;
+            while (records.size() < limit && (record = reader.next(filter)) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static boolean isBinary(Path segment) throws IOException {
+        try (DataInputStream in = new DataInputStream(open(segment))) {
+            return in.readInt() == BinaryDumpFormat.MAGIC;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    private static InputStream open(Path segment) throws IOException {
+        InputStream in = Files.newInputStream(segment);
+        return segment.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in) : in;
+    }
+
+    /**
+     * Reads a (mapped) buffer from its current position
+     */
+    private static final class ByteBufferInput extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+    }
+}
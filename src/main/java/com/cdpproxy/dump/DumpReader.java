@@ -0,0 +1,153 @@
+package com.cdpproxy.dump;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Sequential reader for binary CDP dumps (plain or gzip-compressed segments)
+ */
+public class DumpReader implements Iterable<DumpRecord>, Closeable {
+    private final DataInputStream in;
+    private final BinaryDumpFormat.Header header;
+    private final RecordCodec codec;
+    private long offset;
+
+    public DumpReader(Path file) throws IOException {
+        this(file, null);
+    }
+
+    /**
+     * @param dictionary preset dictionary the dump was written with, if any
+     */
+    public DumpReader(Path file, byte[] dictionary) throws IOException {
+        InputStream raw = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            // Rotated segments are gzip-compressed once closed
+            raw = new GZIPInputStream(raw, 64 * 1024);
+        }
+        this.in = new DataInputStream(new BufferedInputStream(raw, 256 * 1024));
+        try {
+            this.header = BinaryDumpFormat.readHeader(in);
+            this.codec = codecFor(header, dictionary);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        this.offset = header.size();
+    }
+
+    /**
+     * Decompressor for a dump with this header, null when its records are stored as-is
+     */
+    static RecordCodec codecFor(BinaryDumpFormat.Header header, byte[] dictionary) throws IOException {
+        if (header.usesDictionary()) {
+            if (dictionary == null) {
+                throw new IOException("Dump was written with a preset dictionary; pass it to the reader");
+            }
+            if (RecordCodec.dictionaryId(dictionary) != header.dictionaryId) {
+                throw new IOException("Dictionary does not match the one the dump was written with");
+            }
+        }
+        return header.isCompressed() ? new RecordCodec(header.usesDictionary() ? dictionary : null, 0) : null;
+    }
+
+    public BinaryDumpFormat.Header header() {
+        return header;
+    }
+
+    /**
+     * @return the next record, or null at end of file
+     */
+    public DumpRecord next() throws IOException {
+        DumpRecord record = BinaryDumpFormat.readRecord(in, header, codec, offset);
+        if (record != null) {
+            offset += record.size;
+        }
+        return record;
+    }
+
+    /**
+     * Skip forward to the record starting at {@code recordOffset}
+     */
+    public void seek(long recordOffset) throws IOException {
+        if (recordOffset < offset) {
+            throw new IOException("Cannot seek backwards in a dump stream");
+        }
+        in.skipNBytes(recordOffset - offset);
+        offset = recordOffset;
+    }
+
+    /**
+     * @return the next record accepted by the filter, or null at end of file
+     */
+    public DumpRecord next(DumpFilter filter) throws IOException {
+        DumpRecord record;
+        while ((record = next()) != null) {
+            if (filter.test(record)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write the matching records in the human-readable text dump layout
+     *
+     * @return the number of records written
+     */
+    public long writeText(Writer out, DumpFilter filter) throws IOException {
+        TextDumpFormat text = new TextDumpFormat();
+        out.write(text.header(header.startMillis));
+        long count = 0;
+        DumpRecord record;
+        while ((record = next(filter)) != null) {
+            out.write(text.format(record.epochMillis, record.direction, record.payload()));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public Iterator<DumpRecord> iterator() {
+        return new Iterator<>() {
+            private DumpRecord pending;
+
+            @Override
+            public boolean hasNext() {
+                if (pending == null) {
+                    try {
+                        pending = DumpReader.this.next();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return pending != null;
+            }
+
+            @Override
+            public DumpRecord next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                DumpRecord record = pending;
+                pending = null;
+                return record;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,49 @@
+package com.cdpproxy.dump;
+
+import java.nio.charset.StandardCharsets;
+import com.cdpproxy.util.CDPMessageEnvelope;
+
+/**
+ * A record read back from a binary dump
+ */
+public final class DumpRecord {
+    /** Position of the record (its length prefix) in the dump file */
+    public final long offset;
+    /** Encoded size of the record, prefix included */
+    public final int size;
+    public final long nanoTime;
+    public final long epochMillis;
+    public final String direction;
+    public final String sessionId;
+    private final byte[] payload;
+    private CDPMessageEnvelope envelope;
+
+    DumpRecord(long offset, int size, long nanoTime, long epochMillis, String direction, String sessionId,
+               byte[] payload) {
+        this.offset = offset;
+        this.size = size;
+        this.nanoTime = nanoTime;
+        this.epochMillis = epochMillis;
+        this.direction = direction;
+        this.sessionId = sessionId;
+        this.payload = payload;
+    }
+
+    public byte[] payloadBytes() {
+        return payload;
+    }
+
+    public String payload() {
+        return message().raw();
+    }
+
+    /**
+     * @return the payload scanned as a CDP message (decoded once)
+     */
+    public CDPMessageEnvelope message() {
+        if (envelope == null) {
+            envelope = CDPMessageEnvelope.parse(new String(payload, StandardCharsets.UTF_8));
+        }
+        return envelope;
+    }
+}
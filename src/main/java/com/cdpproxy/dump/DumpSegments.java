@@ -0,0 +1,406 @@
+package com.cdpproxy.dump;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * The files a dump is written to. With rotation disabled this is the single
+ * configured file, truncated at startup. With rotation enabled the dump rolls
+ * to a new numbered segment ({@code cdp-messages-dump.000042.log}) by size
+ * and by age, closed segments are gzip-compressed on a low-priority thread,
+ * and only the newest {@code retention} segments are kept.
+ * <p>
+ * A segment list ({@code cdp-messages-dump.segments.json}) is maintained next
+ * to the dump so that tools can find the segment covering a time range, and
+ * binary segments can carry a {@link DumpIndex} sidecar for lookups by id,
+ * method and session.
+ * Writing methods are only called from the dump writer thread.
+ */
+public class DumpSegments implements Closeable {
+    private static final Logger logger = Logger.getLogger(DumpSegments.class.getName());
+
+    private final Path baseFile;
+    private final DumpFormat format;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final int retention;
+    private final boolean compress;
+    private final boolean rotating;
+    private final boolean indexed;
+    private final Path indexFile;
+    private final ExecutorService compressor;
+
+    private final List<SegmentInfo> segments = new ArrayList<>();
+    private SegmentInfo active;
+    private FileChannel channel;
+    private DumpIndexWriter index;
+    private long nextSequence = 1;
+
+    /**
+     * @param maxBytes     roll once a segment reaches this size (0 = no size limit)
+     * @param maxAgeMillis roll once a segment is this old (0 = no age limit)
+     * @param retention    segments to keep, the active one included (0 = keep all)
+     */
+    public DumpSegments(Path baseFile, DumpFormat format, long maxBytes, long maxAgeMillis, int retention,
+                        boolean compress) {
+        this(baseFile, format, maxBytes, maxAgeMillis, retention, compress, false);
+    }
+
+    /**
+     * @param index maintain a {@link DumpIndex} next to each segment (binary format only)
+     */
+    public DumpSegments(Path baseFile, DumpFormat format, long maxBytes, long maxAgeMillis, int retention,
+                        boolean compress, boolean index) {
+        this.baseFile = baseFile.toAbsolutePath();
+        this.format = format;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        this.retention = retention;
+        this.compress = compress;
+        this.rotating = maxBytes > 0 || maxAgeMillis > 0;
+        this.indexed = index && format instanceof BinaryDumpFormat;
+        this.indexFile = sibling(stem() + ".segments.json");
+
+        this.compressor = Executors.newSingleThreadExecutor(
+                ProxyThreads.named("CDPDumpCompressor", Thread.MIN_PRIORITY));
+
+        if (rotating) {
+            loadIndex();
+        }
+    }
+
+    public DumpFormat format() {
+        return format;
+    }
+
+    /**
+     * Channel of the active segment, rolling first when a limit has been reached
+     */
+    public FileChannel channelFor(long nowMillis) throws IOException {
+        if (channel == null) {
+            open(nowMillis);
+        } else if (rotating && shouldRoll(nowMillis)) {
+            roll(nowMillis);
+        }
+        return channel;
+    }
+
+    /**
+     * Roll an idle segment that has outlived its age limit
+     */
+    public void rollIfExpired(long nowMillis) throws IOException {
+        if (channel != null && maxAgeMillis > 0 && active.records > 0
+                && nowMillis - active.startMillis >= maxAgeMillis) {
+            roll(nowMillis);
+        }
+    }
+
+    /**
+     * Index writer of the active segment, or null when indexing is off
+     */
+    DumpIndexWriter index() {
+        return index;
+    }
+
+    /**
+     * @return bytes in the active segment, i.e. the offset the next write lands at
+     */
+    public synchronized long activeBytes() {
+        return active == null ? 0 : active.bytes;
+    }
+
+    /**
+     * Account for a batch appended to the active segment
+     */
+    public synchronized void recordWritten(long bytes, int records, long lastTimestampMillis) {
+        active.bytes += bytes;
+        active.records += records;
+        active.endMillis = lastTimestampMillis;
+    }
+
+    private boolean shouldRoll(long nowMillis) {
+        if (active.records == 0) {
+            return false;
+        }
+        return (maxBytes > 0 && active.bytes >= maxBytes)
+                || (maxAgeMillis > 0 && nowMillis - active.startMillis >= maxAgeMillis);
+    }
+
+    private void open(long nowMillis) throws IOException {
+        Path path = rotating ? sibling(String.format("%s.%06d%s", stem(), nextSequence, extension())) : baseFile;
+        // Create or clear the segment file
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        DumpBuffer header = new DumpBuffer(64);
+        format.writeHeader(header, nowMillis, System.nanoTime());
+        ByteBuffer bytes = header.asByteBuffer();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        if (indexed) {
+            index = new DumpIndexWriter(DumpIndex.pathFor(path), nowMillis);
+        }
+
+        synchronized (this) {
+            active = new SegmentInfo(nextSequence++, path, nowMillis);
+            active.bytes = header.size();
+            segments.add(active);
+            applyRetention();
+        }
+        saveIndex();
+        logger.info("Created CDP messages dump file: " + path);
+    }
+
+    private void roll(long nowMillis) throws IOException {
+        SegmentInfo closed = closeActive();
+        if (compress && closed != null) {
+            compressor.submit(() -> compressSegment(closed));
+        }
+        open(nowMillis);
+    }
+
+    private SegmentInfo closeActive() throws IOException {
+        if (channel == null) {
+            return null;
+        }
+        channel.close();
+        channel = null;
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+        synchronized (this) {
+            SegmentInfo closed = active;
+            closed.active = false;
+            active = null;
+            return closed;
+        }
+    }
+
+    private void compressSegment(SegmentInfo segment) {
+        Path source = segment.path;
+        Path target = source.resolveSibling(source.getFileName() + ".gz");
+        Path temp = source.resolveSibling(source.getFileName() + ".gz.tmp");
+        try {
+            try (InputStream in = Files.newInputStream(source);
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+                in.transferTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            boolean retained;
+            synchronized (this) {
+                segment.path = target;
+                segment.compressed = true;
+                retained = segments.contains(segment);
+            }
+            Files.deleteIfExists(source);
+            if (!retained) {
+                // Retention dropped the segment while it was being compressed
+                Files.deleteIfExists(target);
+                return;
+            }
+            saveIndex();
+        } catch (IOException e) {
+            logger.warning("Failed to compress dump segment " + source + ": " + e.getMessage());
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void applyRetention() {
+        if (retention <= 0) {
+            return;
+        }
+        while (segments.size() > retention) {
+            SegmentInfo oldest = segments.remove(0);
+            try {
+                Files.deleteIfExists(oldest.path);
+                // A compression running concurrently may still leave either file behind
+                Files.deleteIfExists(oldest.path.resolveSibling(oldest.path.getFileName() + ".gz"));
+                Files.deleteIfExists(DumpIndex.pathFor(oldest.path));
+            } catch (IOException e) {
+                logger.warning("Failed to delete old dump segment " + oldest.path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of all retained segments, oldest first
+     */
+    public synchronized List<SegmentInfo> segments() {
+        List<SegmentInfo> copy = new ArrayList<>(segments.size());
+        for (SegmentInfo segment : segments) {
+            copy.add(segment.copy());
+        }
+        return copy;
+    }
+
+    /**
+     * @return the segments holding records between the two wall-clock times
+     */
+    public synchronized List<SegmentInfo> covering(long fromMillis, long toMillis) {
+        List<SegmentInfo> matching = new ArrayList<>();
+        for (SegmentInfo segment : segments) {
+            long end = segment.active ? Long.MAX_VALUE : segment.endMillis;
+            if (segment.startMillis <= toMillis && end >= fromMillis) {
+                matching.add(segment.copy());
+            }
+        }
+        return matching;
+    }
+
+    private void loadIndex() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            JSONArray entries = new JSONArray(Files.readString(indexFile, StandardCharsets.UTF_8));
+            for (int i = 0; i < entries.length(); i++) {
+                SegmentInfo segment = SegmentInfo.fromJson(entries.getJSONObject(i));
+                nextSequence = Math.max(nextSequence, segment.sequence + 1);
+                if (!Files.exists(segment.path)) {
+                    continue;
+                }
+                segment.active = false;
+                segments.add(segment);
+                if (compress && !segment.compressed) {
+                    // Left over from a previous run that stopped before compressing it
+                    compressor.submit(() -> compressSegment(segment));
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Could not read dump segment index " + indexFile + ": " + e.getMessage());
+        }
+    }
+
+    private void saveIndex() {
+        if (!rotating) {
+            return;
+        }
+        JSONArray entries = new JSONArray();
+        synchronized (this) {
+            for (SegmentInfo segment : segments) {
+                entries.put(segment.toJson());
+            }
+        }
+        Path temp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        synchronized (indexFile) {
+            try {
+                Files.writeString(temp, entries.toString(2), StandardCharsets.UTF_8);
+                Files.move(temp, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                logger.warning("Failed to write dump segment index: " + e.getMessage());
+            }
+        }
+    }
+
+    private String stem() {
+        String name = baseFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    private String extension() {
+        String name = baseFile.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(dot) : "";
+    }
+
+    private Path sibling(String name) {
+        return baseFile.resolveSibling(name);
+    }
+
+    /**
+     * Close the active segment and finish pending compressions
+     */
+    @Override
+    public void close() throws IOException {
+        SegmentInfo closed = closeActive();
+        if (compress && rotating && closed != null && closed.records > 0) {
+            compressor.submit(() -> compressSegment(closed));
+        }
+        saveIndex();
+        compressor.shutdown();
+        try {
+            compressor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Location and time span of one dump segment
+     */
+    public static final class SegmentInfo {
+        public final long sequence;
+        public volatile Path path;
+        public final long startMillis;
+        public volatile long endMillis;
+        public volatile long records;
+        public volatile long bytes;
+        public volatile boolean compressed;
+        public volatile boolean active = true;
+
+        SegmentInfo(long sequence, Path path, long startMillis) {
+            this.sequence = sequence;
+            this.path = path;
+            this.startMillis = startMillis;
+            this.endMillis = startMillis;
+        }
+
+        SegmentInfo copy() {
+            SegmentInfo copy = new SegmentInfo(sequence, path, startMillis);
+            copy.endMillis = endMillis;
+            copy.records = records;
+            copy.bytes = bytes;
+            copy.compressed = compressed;
+            copy.active = active;
+            return copy;
+        }
+
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("sequence", sequence);
+            json.put("file", path.toString());
+            json.put("startMillis", startMillis);
+            json.put("endMillis", endMillis);
+            json.put("records", records);
+            json.put("bytes", bytes);
+            json.put("compressed", compressed);
+            json.put("active", active);
+            return json;
+        }
+
+        static SegmentInfo fromJson(JSONObject json) {
+            SegmentInfo segment = new SegmentInfo(json.getLong("sequence"), Path.of(json.getString("file")),
+                    json.getLong("startMillis"));
+            segment.endMillis = json.getLong("endMillis");
+            segment.records = json.getLong("records");
+            segment.bytes = json.getLong("bytes");
+            segment.compressed = json.getBoolean("compressed");
+            segment.active = json.optBoolean("active", false);
+            return segment;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.cdpproxy.dump;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Offline command line tool for binary CDP dumps.
+ *
+ * <pre>
+ * java -cp demo.jar -Dloader.main=com.cdpproxy.dump.DumpTool \
+ *      org.springframework.boot.loader.launch.PropertiesLauncher &lt;command&gt; ...
+ *
+ *   cat     &lt;dump&gt; [filters]          print matching records in the text dump layout
+ *   convert &lt;dump&gt; &lt;out.log&gt; [filters] write matching records to a text dump
+ *   stats   &lt;dump&gt; [filters]          record counts and payload bytes per method
+ *   index   &lt;dump&gt;                    (re)build the offset index sidecar of a binary segment
+ *   build-dictionary &lt;dump&gt; &lt;out.dict&gt; [--max-bytes N] [--samples N]
+ *                                      build a deflate preset dictionary from a text or binary dump
+ *
+ * filters: --direction FROM_PLAYWRIGHT|FROM_BROWSER --session &lt;id&gt; --method &lt;name&gt;
+ *          --id &lt;n&gt; --from &lt;epochMillis&gt; --to &lt;epochMillis&gt;
+ *          --dictionary &lt;file&gt; (for dumps written with a preset dictionary)
+ * </pre>
+ */
+public class DumpTool {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        List<String> rest = new ArrayList<>(List.of(args).subList(1, args.length));
+        String command = args[0];
+        Path dump = Paths.get(rest.remove(0));
+        byte[] dictionary = null;
+        int dictionaryOption = rest.indexOf("--dictionary");
+        if (dictionaryOption >= 0 && dictionaryOption + 1 < rest.size()) {
+            dictionary = Files.readAllBytes(Paths.get(rest.get(dictionaryOption + 1)));
+            rest.subList(dictionaryOption, dictionaryOption + 2).clear();
+        }
+
+        switch (command) {
+            case "cat": {
+                DumpFilter filter = parseFilter(rest);
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                try (DumpReader reader = new DumpReader(dump, dictionary)) {
+                    reader.writeText(out, filter);
+                }
+                out.flush();
+                break;
+            }
+            case "convert": {
+                if (rest.isEmpty()) {
+                    usage();
+                    return;
+                }
+                Path target = Paths.get(rest.remove(0));
+                DumpFilter filter = parseFilter(rest);
+                long count;
+                try (DumpReader reader = new DumpReader(dump, dictionary);
+                     Writer out = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                    count = reader.writeText(out, filter);
+                }
+                System.out.println("Converted " + count + " records to " + target.toAbsolutePath());
+                break;
+            }
+            case "stats":
+                printStats(dump, dictionary, parseFilter(rest));
+                break;
+            case "index":
+                long indexed = DumpIndex.rebuild(dump, dictionary);
+                System.out.println("Indexed " + indexed + " records into " + DumpIndex.pathFor(dump));
+                break;
+            case "build-dictionary":
+                buildDictionary(dump, rest);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static void buildDictionary(Path dump, List<String> args) throws IOException {
+        if (args.isEmpty()) {
+            usage();
+            return;
+        }
+        Path target = Paths.get(args.get(0));
+        int maxBytes = DumpDictionaryBuilder.MAX_DICTIONARY_SIZE;
+        int maxSamples = 5000;
+        for (int i = 1; i + 1 < args.size(); i += 2) {
+            if (args.get(i).equals("--max-bytes")) {
+                maxBytes = Integer.parseInt(args.get(i + 1));
+            } else if (args.get(i).equals("--samples")) {
+                maxSamples = Integer.parseInt(args.get(i + 1));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + args.get(i));
+            }
+        }
+
+        List<String> samples = DumpDictionaryBuilder.samplesFromDump(dump, maxSamples);
+        byte[] dictionary = DumpDictionaryBuilder.build(samples, maxBytes);
+        Files.write(target, dictionary);
+
+        // Report what the dictionary buys on the sampled traffic
+        long raw = 0;
+        long plain = 0;
+        long primed = 0;
+        RecordCodec withoutDictionary = new RecordCodec(null, 6);
+        RecordCodec withDictionary = new RecordCodec(dictionary, 6);
+        DumpBuffer scratch = new DumpBuffer(64 * 1024);
+        for (String sample : samples) {
+            byte[] payload = sample.getBytes(StandardCharsets.UTF_8);
+            raw += payload.length;
+            plain += withoutDictionary.compress(payload, scratch);
+            primed += withDictionary.compress(payload, scratch);
+            scratch.reset();
+        }
+        System.out.println("Wrote " + dictionary.length + "-byte dictionary (id "
+                + Integer.toHexString(RecordCodec.dictionaryId(dictionary)) + ") from " + samples.size()
+                + " messages to " + target.toAbsolutePath());
+        System.out.printf("per-record deflate: %.1fx without dictionary, %.1fx with dictionary%n",
+                ratio(raw, plain), ratio(raw, primed));
+    }
+
+    private static double ratio(long raw, long compressed) {
+        return compressed == 0 ? 0 : (double) raw / compressed;
+    }
+
+    private static void printStats(Path dump, byte[] dictionary, DumpFilter filter) throws IOException {
+        Map<String, long[]> perMethod = new TreeMap<>();
+        long records = 0;
+        long payloadBytes = 0;
+        try (DumpReader reader = new DumpReader(dump, dictionary)) {
+            DumpRecord record;
+            while ((record = reader.next(filter)) != null) {
+                String method = record.message().method();
+                long[] counters = perMethod.computeIfAbsent(method == null ? "(response)" : method, k -> new long[2]);
+                counters[0]++;
+                counters[1] += record.payloadBytes().length;
+                records++;
+                payloadBytes += record.payloadBytes().length;
+            }
+        }
+        System.out.println("records=" + records + " payloadBytes=" + payloadBytes + " fileBytes=" + Files.size(dump));
+        for (Map.Entry<String, long[]> entry : perMethod.entrySet()) {
+            System.out.println(entry.getKey() + " count=" + entry.getValue()[0] + " bytes=" + entry.getValue()[1]);
+        }
+    }
+
+    static DumpFilter parseFilter(List<String> args) {
+        DumpFilter filter = DumpFilter.all();
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        for (int i = 0; i + 1 < args.size(); i += 2) {
+            String value = args.get(i + 1);
+            switch (args.get(i)) {
+                case "--direction":
+                    filter.direction(value);
+                    break;
+                case "--session":
+                    filter.sessionId(value);
+                    break;
+                case "--method":
+                    filter.method(value);
+                    break;
+                case "--id":
+                    filter.id(Integer.parseInt(value));
+                    break;
+                case "--from":
+                    from = Long.parseLong(value);
+                    break;
+                case "--to":
+                    to = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args.get(i));
+            }
+        }
+        return filter.between(from, to);
+    }
+
+    private static void usage() {
+        System.err.println("Usage: DumpTool cat|convert|stats <dump> [<out.log>] "
+                + "[--direction D] [--session S] [--method M] [--id N] [--from MS] [--to MS] [--dictionary F]");
+        System.err.println("       DumpTool index <dump> [--dictionary F]");
+        System.err.println("       DumpTool build-dictionary <dump> <out.dict> [--max-bytes N] [--samples N]");
+    }
+}
@@ -0,0 +1,246 @@
+package com.cdpproxy.dump;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Background writer for the CDP dump. Producers (the WebSocket I/O threads)
+ * only enqueue; a single thread encodes queued entries with the configured
+ * {@link DumpFormat} and appends them in batches to the long-lived
+ * {@link FileChannel} of the active {@link DumpSegments} segment.
+ */
+public class DumpWriter implements Closeable {
+    private static final Logger logger = Logger.getLogger(DumpWriter.class.getName());
+
+    /**
+     * What producers do when the queue is full
+     */
+    public enum OverflowPolicy {
+        /** Wait for room; dump completeness over forwarding latency */
+        BLOCK,
+        /** Evict the oldest queued entry to make room */
+        DROP_OLDEST,
+        /** Discard the entry being submitted */
+        DROP_NEWEST
+    }
+
+    private final DumpSegments segments;
+    private final BlockingQueue<DumpEntry> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final int batchSize;
+    private final long lagThresholdNanos;
+    private final boolean syncOnFlush;
+    private final Thread writerThread;
+    /** Position of each batch record in the encoded buffer */
+    private final int[] recordStarts;
+    private volatile boolean running = true;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong lagging = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private volatile long maxLagNanos;
+
+    public DumpWriter(DumpSegments segments, int queueCapacity, int batchSize, OverflowPolicy overflowPolicy,
+                      long lagThresholdMs, boolean syncOnFlush) throws IOException {
+        this.segments = segments;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.lagThresholdNanos = TimeUnit.MILLISECONDS.toNanos(lagThresholdMs);
+        this.syncOnFlush = syncOnFlush;
+        this.recordStarts = new int[batchSize];
+
+        // Create or clear the dump file at startup
+        segments.channelFor(System.currentTimeMillis());
+
+        this.writerThread = ProxyThreads.start("CDPDumpWriter", this::drainLoop);
+    }
+
+    /**
+     * Queue an entry according to the overflow policy; never does disk I/O
+     *
+     * @return false when the entry was dropped
+     */
+    public boolean submit(DumpEntry entry) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        submitted.incrementAndGet();
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(entry);
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    return false;
+                }
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                return true;
+            case DROP_NEWEST:
+            default:
+                if (queue.offer(entry)) {
+                    return true;
+                }
+                dropped.incrementAndGet();
+                return false;
+        }
+    }
+
+    private void drainLoop() {
+        List<DumpEntry> batch = new ArrayList<>(batchSize);
+        DumpBuffer buffer = new DumpBuffer(64 * 1024);
+        while (running || !queue.isEmpty()) {
+            try {
+                DumpEntry first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    segments.rollIfExpired(System.currentTimeMillis());
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                writeBatch(batch, buffer);
+            } catch (InterruptedException e) {
+                // Only close() stops the loop, so whatever is queued still gets written
+                Thread.interrupted();
+            } catch (Exception e) {
+                // The batch is not retried, so it counts as lost
+                dropped.addAndGet(batch.size());
+                logger.severe("Failed to dump " + batch.size() + " CDP messages: " + e.getMessage());
+            } finally {
+                batch.clear();
+                buffer.reset();
+            }
+        }
+    }
+
+    private void writeBatch(List<DumpEntry> batch, DumpBuffer buffer) throws IOException {
+        long now = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+            DumpEntry entry = batch.get(i);
+            recordStarts[i] = buffer.size();
+            long lag = now - entry.nanoTime;
+            if (lag > lagThresholdNanos) {
+                lagging.incrementAndGet();
+            }
+            if (lag > maxLagNanos) {
+                maxLagNanos = lag;
+            }
+            segments.format().writeRecord(buffer, entry);
+        }
+
+        // One write (and optionally one sync) for the whole batch
+        DumpEntry last = batch.get(batch.size() - 1);
+        FileChannel channel = segments.channelFor(last.timestampMillis);
+        long base = segments.activeBytes();
+        writeFully(channel, buffer.asByteBuffer());
+        if (syncOnFlush) {
+            channel.force(false);
+        }
+        segments.recordWritten(buffer.size(), batch.size(), last.timestampMillis);
+
+        // Index entries only after the records they point to are in the file
+        DumpIndexWriter index = segments.index();
+        if (index != null) {
+            for (int i = 0; i < batch.size(); i++) {
+                index.add(base + recordStarts[i], batch.get(i));
+            }
+            index.flush();
+        }
+        written.addAndGet(batch.size());
+        flushes.incrementAndGet();
+    }
+
+    private void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            bytesWritten.addAndGet(channel.write(bytes));
+        }
+    }
+
+    /**
+     * Stop accepting entries, write out everything already queued and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        running = false;
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segments.close();
+    }
+
+    public DumpSegments segments() {
+        return segments;
+    }
+
+    public Stats stats() {
+        DumpFormat format = segments.format();
+        long payloadBytes = 0;
+        long storedPayloadBytes = 0;
+        if (format instanceof BinaryDumpFormat) {
+            payloadBytes = ((BinaryDumpFormat) format).payloadBytes();
+            storedPayloadBytes = ((BinaryDumpFormat) format).storedPayloadBytes();
+        }
+        return new Stats(submitted.get(), written.get(), dropped.get(), lagging.get(), queue.size(),
+                flushes.get(), bytesWritten.get(), TimeUnit.NANOSECONDS.toMillis(maxLagNanos), overflowPolicy,
+                format.getClass().getSimpleName(), payloadBytes, storedPayloadBytes);
+    }
+
+    /**
+     * Point-in-time writer counters
+     */
+    public static final class Stats {
+        public final long submitted;
+        public final long written;
+        public final long dropped;
+        public final long lagging;
+        public final int queueDepth;
+        public final long flushes;
+        public final long bytesWritten;
+        public final long maxLagMs;
+        public final OverflowPolicy overflowPolicy;
+        public final String format;
+        /** Binary formats only: payload bytes before and after record compression */
+        public final long payloadBytes;
+        public final long storedPayloadBytes;
+
+        Stats(long submitted, long written, long dropped, long lagging, int queueDepth,
+              long flushes, long bytesWritten, long maxLagMs, OverflowPolicy overflowPolicy,
+              String format, long payloadBytes, long storedPayloadBytes) {
+            this.submitted = submitted;
+            this.written = written;
+            this.dropped = dropped;
+            this.lagging = lagging;
+            this.queueDepth = queueDepth;
+            this.flushes = flushes;
+            this.bytesWritten = bytesWritten;
+            this.maxLagMs = maxLagMs;
+            this.overflowPolicy = overflowPolicy;
+            this.format = format;
+            this.payloadBytes = payloadBytes;
+            this.storedPayloadBytes = storedPayloadBytes;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.cdpproxy.dump;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming per-record deflate with an optional preset dictionary. Every
+ * record is compressed independently (so records stay individually
+ * addressable), and the dictionary primes each one with the strings CDP
+ * traffic keeps repeating. Instances are not thread-safe.
+ */
+public class RecordCodec {
+    private final byte[] dictionary;
+    private final int dictionaryId;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private byte[] chunk = new byte[16 * 1024];
+
+    /**
+     * @param dictionary preset dictionary, or null to deflate without one
+     * @param level      {@link Deflater} compression level
+     */
+    public RecordCodec(byte[] dictionary, int level) {
+        this.dictionary = dictionary;
+        this.dictionaryId = dictionary == null ? 0 : dictionaryId(dictionary);
+        this.deflater = new Deflater(level, true);
+    }
+
+    public static RecordCodec withDictionaryFile(Path dictionaryFile, int level) throws IOException {
+        return new RecordCodec(dictionaryFile == null ? null : Files.readAllBytes(dictionaryFile), level);
+    }
+
+    public boolean hasDictionary() {
+        return dictionary != null;
+    }
+
+    /**
+     * Identifier stored in dump headers so readers can check they use the same dictionary
+     */
+    public int dictionaryId() {
+        return dictionaryId;
+    }
+
+    public static int dictionaryId(byte[] dictionary) {
+        Adler32 adler = new Adler32();
+        adler.update(dictionary);
+        return (int) adler.getValue();
+    }
+
+    /**
+     * Deflate {@code payload} and append the compressed bytes to {@code out}
+     *
+     * @return the number of compressed bytes appended
+     */
+    public int compress(byte[] payload, DumpBuffer out) {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(payload);
+        deflater.finish();
+        int total = 0;
+        while (!deflater.finished()) {
+            int n = deflater.deflate(chunk);
+            out.write(chunk, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    public byte[] decompress(byte[] compressed, int rawLength) throws IOException {
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(compressed);
+        byte[] raw = new byte[rawLength];
+        try {
+            int filled = 0;
+            while (filled < rawLength) {
+                int n = inflater.inflate(raw, filled, rawLength - filled);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                filled += n;
+            }
+            if (filled != rawLength) {
+                throw new IOException("Corrupt compressed dump record: expected " + rawLength + " bytes, got " + filled);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed dump record: " + e.getMessage(), e);
+        }
+        return raw;
+    }
+}
@@ -0,0 +1,33 @@
+package com.cdpproxy.dump;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import com.cdpproxy.util.CDPMessageEnvelope;
+import com.cdpproxy.util.CDPMessageFormatter;
+
+/**
+ * The human-readable cdp-messages-dump.log layout
+ */
+public class TextDumpFormat implements DumpFormat {
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+    @Override
+    public void writeHeader(DumpBuffer out, long startMillis, long startNanos) {
+        out.writeBytes(header(startMillis).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String header(long startMillis) {
+        return "--- CDP Messages Dump Started: " + dateFormat.format(new Date(startMillis)) + " ---\n\n";
+    }
+
+    @Override
+    public void writeRecord(DumpBuffer out, DumpEntry entry) {
+        out.writeBytes(format(entry.timestampMillis, entry.direction, entry.message).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public String format(long timestampMillis, String direction, String message) {
+        return CDPMessageFormatter.formatEntry(dateFormat.format(new Date(timestampMillis)), direction,
+                CDPMessageEnvelope.parse(message));
+    }
+}
@@ -0,0 +1,30 @@
+package com.cdpproxy.proxy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with jitter: attempt {@code n} waits a random delay
+ * between half and all of {@code base * 2^n}, capped at {@code max}, so
+ * clients that failed together do not retry together.
+ */
+public class Backoff {
+    private final long baseMillis;
+    private final long maxMillis;
+
+    public Backoff(long baseMillis, long maxMillis) {
+        this.baseMillis = Math.max(1, baseMillis);
+        this.maxMillis = Math.max(this.baseMillis, maxMillis);
+    }
+
+    /**
+     * @param attempt retries made so far (0 for the first)
+     */
+    public long delayMillis(int attempt) {
+        long ceiling = baseMillis << Math.min(Math.max(attempt, 0), 30);
+        if (ceiling <= 0 || ceiling > maxMillis) {
+            ceiling = maxMillis;
+        }
+        long half = ceiling / 2;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1);
+    }
+}
@@ -0,0 +1,169 @@
+package com.cdpproxy.proxy;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import com.cdpproxy.util.PendingSelectors;
+
+/**
+ * One upstream browser: its connection pool, the Playwright sessions routed to
+ * it, and the circuit breaker fed by connect results and health probes
+ */
+public class BrowserBackend implements Closeable {
+    /** Consecutive failures after which the backend is taken out of routing */
+    static final int FAILURE_THRESHOLD = 3;
+
+    private final String httpUrl;
+    private final BrowserConnectionPool pool;
+    private final CircuitBreaker circuitBreaker;
+    private final BrowserMultiplexer multiplexer;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong totalSessions = new AtomicLong();
+
+    private final AtomicLong probes = new AtomicLong();
+    private final AtomicLong probeFailures = new AtomicLong();
+    private volatile long versionLatencyMs;
+    private volatile long roundTripLatencyMs;
+    private volatile long lastProbeAt;
+    private volatile String lastProbeError;
+
+    public BrowserBackend(String httpUrl, BrowserConnectionPool pool) {
+        this(httpUrl, pool, new CircuitBreaker(FAILURE_THRESHOLD, 10000, 60000));
+    }
+
+    public BrowserBackend(String httpUrl, BrowserConnectionPool pool, CircuitBreaker circuitBreaker) {
+        this(httpUrl, pool, circuitBreaker, false);
+    }
+
+    /**
+     * @param multiplex share one browser connection between all sessions routed here
+     */
+    public BrowserBackend(String httpUrl, BrowserConnectionPool pool, CircuitBreaker circuitBreaker,
+                          boolean multiplex) {
+        this.httpUrl = httpUrl;
+        this.pool = pool;
+        this.circuitBreaker = circuitBreaker;
+        this.multiplexer = multiplex ? new BrowserMultiplexer(pool) : null;
+        pool.circuitBreaker(circuitBreaker);
+    }
+
+    /**
+     * Connect a Playwright session: a pooled connection of its own, or a
+     * channel of the shared connection when multiplexing
+     */
+    public CompletableFuture<BrowserLink> connect(ClientSendBuffer outbound, PendingSelectors pendingSelectors) {
+        if (multiplexer != null) {
+            return multiplexer.open(new PlaywrightRelay(outbound, pendingSelectors));
+        }
+        return pool.acquire().thenApply(client -> {
+            client.attach(outbound, pendingSelectors);
+            return client;
+        });
+    }
+
+    public String httpUrl() {
+        return httpUrl;
+    }
+
+    public BrowserConnectionPool pool() {
+        return pool;
+    }
+
+    /**
+     * @return the shared connection's multiplexer, or null when sessions get their own connections
+     */
+    public BrowserMultiplexer multiplexer() {
+        return multiplexer;
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public int activeSessions() {
+        return activeSessions.get();
+    }
+
+    public long totalSessions() {
+        return totalSessions.get();
+    }
+
+    void sessionOpened() {
+        activeSessions.incrementAndGet();
+        totalSessions.incrementAndGet();
+    }
+
+    void sessionClosed() {
+        activeSessions.decrementAndGet();
+    }
+
+    public boolean isHealthy() {
+        return circuitBreaker.allowsTraffic();
+    }
+
+    /**
+     * @return the last CDP round trip measured by a health probe, or the
+     * recent connect latency before the first probe
+     */
+    public double latencyMs() {
+        long roundTrip = roundTripLatencyMs;
+        return roundTrip > 0 ? roundTrip : pool.connectLatencyMs();
+    }
+
+    void probeSucceeded(long versionMs, long roundTripMs) {
+        probes.incrementAndGet();
+        versionLatencyMs = versionMs;
+        roundTripLatencyMs = Math.max(1, roundTripMs);
+        lastProbeAt = System.currentTimeMillis();
+        lastProbeError = null;
+        circuitBreaker.recordSuccess();
+    }
+
+    void probeFailed(String error) {
+        probes.incrementAndGet();
+        probeFailures.incrementAndGet();
+        lastProbeAt = System.currentTimeMillis();
+        lastProbeError = error;
+        circuitBreaker.recordFailure();
+    }
+
+    public HealthStats healthStats() {
+        return new HealthStats(circuitBreaker.state(), circuitBreaker.opened(), probes.get(), probeFailures.get(),
+                versionLatencyMs, roundTripLatencyMs, lastProbeAt, lastProbeError);
+    }
+
+    @Override
+    public void close() {
+        if (multiplexer != null) {
+            multiplexer.close();
+        }
+        pool.close();
+    }
+
+    /**
+     * Point-in-time health of the backend; latencies come from the last successful probe
+     */
+    public static final class HealthStats {
+        public final CircuitBreaker.State circuit;
+        public final long circuitOpened;
+        public final long probes;
+        public final long probeFailures;
+        public final long versionLatencyMs;
+        public final long roundTripLatencyMs;
+        public final long lastProbeAt;
+        public final String lastProbeError;
+
+        HealthStats(CircuitBreaker.State circuit, long circuitOpened, long probes, long probeFailures,
+                    long versionLatencyMs, long roundTripLatencyMs, long lastProbeAt, String lastProbeError) {
+            this.circuit = circuit;
+            this.circuitOpened = circuitOpened;
+            this.probes = probes;
+            this.probeFailures = probeFailures;
+            this.versionLatencyMs = versionLatencyMs;
+            this.roundTripLatencyMs = roundTripLatencyMs;
+            this.lastProbeAt = lastProbeAt;
+            this.lastProbeError = lastProbeError;
+        }
+    }
+}
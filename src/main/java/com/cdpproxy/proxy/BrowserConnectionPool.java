@@ -0,0 +1,278 @@
+package com.cdpproxy.proxy;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Keeps already-open upstream browser connections ready for new Playwright
+ * sessions, so session start does not wait for discovery and a handshake.
+ * <p>
+ * Connections are single-use: a session leaves browser-side state behind
+ * (attached targets, enabled domains), so its connection is closed with it
+ * rather than returned. A maintenance task validates idle connections, evicts
+ * the ones that have been idle too long, and opens new ones on the
+ * {@link BrowserConnector} until {@code minIdle} are ready, never holding more
+ * than {@code maxSize} idle or opening at once.
+ */
+public class BrowserConnectionPool implements Closeable {
+    private static final Logger logger = Logger.getLogger(BrowserConnectionPool.class.getName());
+
+    private final BrowserConnector connector;
+    private final BrowserDiscovery discovery;
+    private final long connectTimeoutMs;
+    private final int minIdle;
+    private final int maxSize;
+    private final long maxIdleMillis;
+    private final ScheduledExecutorService maintainer;
+
+    private final Deque<Idle> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger warming = new AtomicInteger();
+    private volatile boolean closed;
+    private volatile boolean lastWarmFailed;
+    private volatile double connectLatencyMs;
+    private volatile CircuitBreaker circuitBreaker;
+    private volatile MeteredDeflateExtension compression;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong connectFailures = new AtomicLong();
+
+    /**
+     * @param minIdle       connections to keep open and unused (0 disables warming)
+     * @param maxSize       upper bound for idle plus opening connections
+     * @param maxIdleMillis close idle connections older than this (0 = never)
+     */
+    public BrowserConnectionPool(BrowserConnector connector, BrowserDiscovery discovery, long connectTimeoutMs,
+                                 int minIdle, int maxSize, long maxIdleMillis, long maintenanceIntervalMillis) {
+        this.connector = connector;
+        this.discovery = discovery;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.minIdle = Math.min(minIdle, maxSize);
+        this.maxSize = maxSize;
+        this.maxIdleMillis = maxIdleMillis;
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(ProxyThreads.named("BrowserPoolMaintainer"));
+        if (this.minIdle > 0) {
+            maintainer.scheduleWithFixedDelay(this::maintain, 0, maintenanceIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static final class Idle {
+        final BrowserWebSocketClient client;
+        final long since = System.currentTimeMillis();
+
+        Idle(BrowserWebSocketClient client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * A connection for a new session: a validated idle one when available,
+     * otherwise one opened on demand
+     */
+    public CompletableFuture<BrowserWebSocketClient> acquire() {
+        Idle entry;
+        // Newest first, so the older ones age out through eviction
+        while ((entry = idle.pollLast()) != null) {
+            if (entry.client.isConnected()) {
+                hits.incrementAndGet();
+                refillSoon();
+                return CompletableFuture.completedFuture(entry.client);
+            }
+            validationFailures.incrementAndGet();
+            entry.client.close();
+        }
+        misses.incrementAndGet();
+        refillSoon();
+        return connector.submit(this::open);
+    }
+
+    /**
+     * Discover the endpoint and complete a handshake
+     */
+    BrowserWebSocketClient open() throws Exception {
+        long start = System.nanoTime();
+        try {
+            String url = discovery.discoverWebSocketUrl();
+            BrowserWebSocketClient client = new BrowserWebSocketClient(new URI(url), compression);
+            if (!client.connectBlocking(connectTimeoutMs, TimeUnit.MILLISECONDS)) {
+                client.close();
+                // The browser may have restarted with a new endpoint
+                discovery.invalidate(url);
+                throw new TimeoutException("Timed out waiting for browser connection");
+            }
+            created.incrementAndGet();
+            CircuitBreaker circuit = circuitBreaker;
+            if (circuit != null) {
+                circuit.recordSuccess();
+            }
+            double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+            // Exponentially weighted, so a few slow connects move it without one outlier dominating
+            connectLatencyMs = connectLatencyMs == 0 ? elapsedMs : connectLatencyMs * 0.8 + elapsedMs * 0.2;
+            return client;
+        } catch (Exception e) {
+            CircuitBreaker circuit = circuitBreaker;
+            if (circuit != null) {
+                circuit.recordFailure();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return recent connect latency (discovery plus handshake), 0 before the first connect
+     */
+    public double connectLatencyMs() {
+        return connectLatencyMs;
+    }
+
+    /**
+     * Report connect results to {@code circuitBreaker}, and stop warming
+     * connections while it is open
+     */
+    public void circuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    /**
+     * Offer {@code permessage-deflate} on connections opened from now on
+     */
+    public void compression(MeteredDeflateExtension compression) {
+        this.compression = compression;
+    }
+
+    private void refillSoon() {
+        if (minIdle > 0 && !closed) {
+            try {
+                maintainer.execute(this::refill);
+            } catch (RejectedExecutionException ignored) {
+                // Shutting down
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            evict();
+            refill();
+        } catch (Exception e) {
+            logger.warning("Browser connection pool maintenance failed: " + e.getMessage());
+        }
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        for (Idle entry : idle) {
+            boolean invalid = !entry.client.isConnected();
+            boolean expired = maxIdleMillis > 0 && now - entry.since >= maxIdleMillis;
+            if ((invalid || expired) && idle.remove(entry)) {
+                if (invalid) {
+                    validationFailures.incrementAndGet();
+                } else {
+                    evicted.incrementAndGet();
+                }
+                entry.client.close();
+            }
+        }
+    }
+
+    private void refill() {
+        CircuitBreaker circuit = circuitBreaker;
+        if (circuit != null && !circuit.allowsTraffic()) {
+            // The health checker decides when the browser is worth trying again
+            return;
+        }
+        while (!closed) {
+            int current = idle.size() + warming.get();
+            if (current >= minIdle || current >= maxSize) {
+                return;
+            }
+            warming.incrementAndGet();
+            connector.submit(this::open).whenComplete((client, error) -> {
+                warming.decrementAndGet();
+                if (error != null) {
+                    connectFailures.incrementAndGet();
+                    // Log once per outage rather than on every maintenance run
+                    if (!lastWarmFailed) {
+                        logger.warning("Could not open a pooled browser connection: " + error.getMessage());
+                    }
+                    lastWarmFailed = true;
+                    return;
+                }
+                lastWarmFailed = false;
+                if (closed) {
+                    client.close();
+                } else {
+                    idle.addLast(new Idle(client));
+                }
+            });
+            if (lastWarmFailed) {
+                // Leave further attempts to the next maintenance run
+                return;
+            }
+        }
+    }
+
+    public BrowserDiscovery discovery() {
+        return discovery;
+    }
+
+    public Stats stats() {
+        return new Stats(idle.size(), warming.get(), minIdle, maxSize, hits.get(), misses.get(), created.get(),
+                evicted.get(), validationFailures.get(), connectFailures.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        maintainer.shutdownNow();
+        Idle entry;
+        while ((entry = idle.pollFirst()) != null) {
+            entry.client.close();
+        }
+    }
+
+    /**
+     * Point-in-time pool counters
+     */
+    public static final class Stats {
+        public final int idle;
+        public final int warming;
+        public final int minIdle;
+        public final int maxSize;
+        public final long hits;
+        public final long misses;
+        public final long created;
+        public final long evicted;
+        public final long validationFailures;
+        public final long connectFailures;
+
+        Stats(int idle, int warming, int minIdle, int maxSize, long hits, long misses, long created, long evicted,
+              long validationFailures, long connectFailures) {
+            this.idle = idle;
+            this.warming = warming;
+            this.minIdle = minIdle;
+            this.maxSize = maxSize;
+            this.hits = hits;
+            this.misses = misses;
+            this.created = created;
+            this.evicted = evicted;
+            this.validationFailures = validationFailures;
+            this.connectFailures = connectFailures;
+        }
+    }
+}
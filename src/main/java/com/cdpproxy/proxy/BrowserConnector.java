@@ -0,0 +1,188 @@
+package com.cdpproxy.proxy;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs browser connection setup (endpoint discovery and the WebSocket
+ * handshake) as tasks on a bounded executor, so a burst of new Playwright
+ * sessions queues up instead of spawning a thread per connect. Callers get a
+ * {@link CompletableFuture} and continue in a completion callback.
+ * <p>
+ * With virtual threads every task gets its own virtual thread and a semaphore
+ * provides the bound; otherwise a fixed pool of platform threads does.
+ */
+public class BrowserConnector implements Closeable {
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor pool;
+    private final Semaphore permits;
+    private final int queueCapacity;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalConnectNanos = new AtomicLong();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    private volatile long maxConnectNanos;
+    private volatile long lastConnectNanos;
+
+    /**
+     * @param maxConcurrent  connects running at the same time
+     * @param queueCapacity  connects waiting for a slot before new ones are rejected
+     * @param virtualThreads run each connect on a virtual thread
+     */
+    public BrowserConnector(int maxConcurrent, int queueCapacity, boolean virtualThreads) {
+        this.queueCapacity = queueCapacity;
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("BrowserConnect-", 1).factory());
+            this.pool = null;
+            this.permits = new Semaphore(maxConcurrent);
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.pool = new ThreadPoolExecutor(maxConcurrent, maxConcurrent, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), r -> {
+                Thread thread = new Thread(r, "BrowserConnect-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.pool.allowCoreThreadTimeOut(true);
+            this.executor = pool;
+            this.permits = null;
+        }
+    }
+
+    public boolean usesVirtualThreads() {
+        return pool == null;
+    }
+
+    /**
+     * Queue a connect task
+     *
+     * @return a future completed with the task's result, or exceptionally when
+     * the task fails or the connector is saturated
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> connect) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        submitted.incrementAndGet();
+        if (permits != null && waiting.get() >= queueCapacity) {
+            return reject(future);
+        }
+        long queuedAt = System.nanoTime();
+        waiting.incrementAndGet();
+        try {
+            executor.execute(() -> run(connect, future, queuedAt));
+        } catch (RejectedExecutionException e) {
+            waiting.decrementAndGet();
+            return reject(future);
+        }
+        return future;
+    }
+
+    private <T> CompletableFuture<T> reject(CompletableFuture<T> future) {
+        rejected.incrementAndGet();
+        future.completeExceptionally(new RejectedExecutionException("Too many browser connections are being set up"));
+        return future;
+    }
+
+    private <T> void run(Callable<T> connect, CompletableFuture<T> future, long queuedAt) {
+        boolean acquired = false;
+        try {
+            if (permits != null) {
+                permits.acquire();
+                acquired = true;
+            }
+        } catch (InterruptedException e) {
+            waiting.decrementAndGet();
+            failed.incrementAndGet();
+            future.completeExceptionally(e);
+            return;
+        }
+        waiting.decrementAndGet();
+        active.incrementAndGet();
+        long start = System.nanoTime();
+        totalQueueNanos.addAndGet(start - queuedAt);
+        T result;
+        try {
+            result = connect.call();
+        } catch (Throwable e) {
+            failed.incrementAndGet();
+            future.completeExceptionally(e);
+            return;
+        } finally {
+            active.decrementAndGet();
+            if (acquired) {
+                permits.release();
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        lastConnectNanos = elapsed;
+        if (elapsed > maxConnectNanos) {
+            maxConnectNanos = elapsed;
+        }
+        totalConnectNanos.addAndGet(elapsed);
+        succeeded.incrementAndGet();
+        future.complete(result);
+    }
+
+    public Stats stats() {
+        int queueDepth = pool != null ? pool.getQueue().size() : Math.max(0, waiting.get());
+        long started = succeeded.get() + failed.get();
+        long connected = succeeded.get();
+        return new Stats(usesVirtualThreads(), submitted.get(), connected, failed.get(), rejected.get(),
+                active.get(), queueDepth,
+                connected == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalConnectNanos.get() / connected),
+                TimeUnit.NANOSECONDS.toMillis(maxConnectNanos),
+                TimeUnit.NANOSECONDS.toMillis(lastConnectNanos),
+                started == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueNanos.get() / started));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Point-in-time connector counters; latencies cover successful connects
+     */
+    public static final class Stats {
+        public final boolean virtualThreads;
+        public final long submitted;
+        public final long succeeded;
+        public final long failed;
+        public final long rejected;
+        public final int active;
+        public final int queueDepth;
+        public final long avgConnectMs;
+        public final long maxConnectMs;
+        public final long lastConnectMs;
+        public final long avgQueueWaitMs;
+
+        Stats(boolean virtualThreads, long submitted, long succeeded, long failed, long rejected, int active,
+              int queueDepth, long avgConnectMs, long maxConnectMs, long lastConnectMs, long avgQueueWaitMs) {
+            this.virtualThreads = virtualThreads;
+            this.submitted = submitted;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.active = active;
+            this.queueDepth = queueDepth;
+            this.avgConnectMs = avgConnectMs;
+            this.maxConnectMs = maxConnectMs;
+            this.lastConnectMs = lastConnectMs;
+            this.avgQueueWaitMs = avgQueueWaitMs;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.cdpproxy.proxy;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Finds the DevTools WebSocket endpoint of the upstream browser through its
+ * HTTP discovery endpoints.
+ * <p>
+ * All lookups share one long-lived {@link HttpClient}. {@code /json/version}
+ * and {@code /json/list} are requested in parallel; the browser endpoint from
+ * {@code /json/version} wins whenever it is usable, and a page target from
+ * {@code /json/list} is the fallback. The resolved URL is cached for a TTL,
+ * concurrent callers share one lookup, and a URL that fails to connect is
+ * {@link #invalidate invalidated}.
+ */
+public class BrowserDiscovery {
+    private static final Logger logger = Logger.getLogger(BrowserDiscovery.class.getName());
+
+    private static final HttpClient HTTP = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .executor(ProxyThreads.perTask("BrowserDiscovery"))
+            .build();
+
+    private final String browserHttpUrl;
+    private final long cacheTtlMillis;
+    private final Duration requestTimeout;
+
+    private CompletableFuture<String> cached;
+    private long resolvedAt;
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private volatile long lastLookupMs;
+
+    public BrowserDiscovery(String browserHttpUrl) {
+        this(browserHttpUrl, 0, 5000);
+    }
+
+    /**
+     * @param cacheTtlMillis how long a resolved URL is reused (0 = resolve every time)
+     */
+    public BrowserDiscovery(String browserHttpUrl, long cacheTtlMillis, long requestTimeoutMillis) {
+        this.browserHttpUrl = browserHttpUrl;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+    }
+
+    public String browserHttpUrl() {
+        return browserHttpUrl;
+    }
+
+    /**
+     * Resolve the browser's DevTools WebSocket URL
+     */
+    public String discoverWebSocketUrl() throws Exception {
+        try {
+            return discoverAsync().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    public synchronized CompletableFuture<String> discoverAsync() {
+        if (cached != null) {
+            if (!cached.isDone()) {
+                // Join the lookup already in flight
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+            if (!cached.isCompletedExceptionally()
+                    && System.currentTimeMillis() - resolvedAt < cacheTtlMillis) {
+                cacheHits.incrementAndGet();
+                return cached;
+            }
+        }
+
+        lookups.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<String> lookup = resolve();
+        cached = lookup;
+        lookup.whenComplete((url, error) -> {
+            lastLookupMs = (System.nanoTime() - start) / 1_000_000L;
+            synchronized (this) {
+                resolvedAt = System.currentTimeMillis();
+                if (error != null) {
+                    failures.incrementAndGet();
+                    if (cached == lookup) {
+                        cached = null;
+                    }
+                }
+            }
+        });
+        return lookup;
+    }
+
+    /**
+     * Forget a cached URL that could not be connected to
+     */
+    public synchronized void invalidate(String webSocketUrl) {
+        if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()
+                && cached.join().equals(webSocketUrl)) {
+            cached = null;
+            invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fetch {@code /json/version} without going through the cache, as a health probe
+     */
+    public CompletableFuture<JSONObject> version() {
+        return get("/json/version").thenApply(response -> {
+            if (response.statusCode() != 200) {
+                throw new CompletionException(new Exception(
+                        "Browser version request failed. Status code: " + response.statusCode()));
+            }
+            return new JSONObject(response.body());
+        });
+    }
+
+    private CompletableFuture<String> resolve() {
+        CompletableFuture<String> version = get("/json/version")
+                .thenApply(BrowserDiscovery::fromVersion)
+                .exceptionally(e -> {
+                    logger.warning("Failed to get browser WebSocket URL from /json/version: " + unwrap(e).getMessage());
+                    return null;
+                });
+        CompletableFuture<String> list = get("/json/list").thenApply(BrowserDiscovery::fromList);
+
+        return version.thenCompose(url -> url != null ? CompletableFuture.completedFuture(url) : list);
+    }
+
+    private CompletableFuture<HttpResponse<String>> get(String path) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(browserHttpUrl + path))
+                .timeout(requestTimeout)
+                .build();
+        return HTTP.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String fromVersion(HttpResponse<String> response) {
+        if (response.statusCode() == 200) {
+            JSONObject json = new JSONObject(response.body());
+            if (json.has("webSocketDebuggerUrl")) {
+                return json.getString("webSocketDebuggerUrl");
+            }
+        }
+        return null;
+    }
+
+    private static String fromList(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            throw new CompletionException(new Exception(
+                    "Failed to get browser targets. Status code: " + response.statusCode()));
+        }
+
+        JSONArray targets = new JSONArray(response.body());
+
+        if (targets.length() == 0) {
+            throw new CompletionException(new Exception("No debugging targets found in Chrome"));
+        }
+
+        // Try to find a page target first
+        for (int i = 0; i < targets.length(); i++) {
+            JSONObject target = targets.getJSONObject(i);
+            if ("page".equals(target.optString("type")) && target.has("webSocketDebuggerUrl")) {
+                return target.getString("webSocketDebuggerUrl");
+            }
+        }
+
+        // If no page target, take the first available
+        for (int i = 0; i < targets.length(); i++) {
+            JSONObject target = targets.getJSONObject(i);
+            if (target.has("webSocketDebuggerUrl")) {
+                return target.getString("webSocketDebuggerUrl");
+            }
+        }
+
+        throw new CompletionException(new Exception("No valid WebSocket URL found in Chrome debugging targets"));
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    public Stats stats() {
+        return new Stats(lookups.get(), cacheHits.get(), failures.get(), invalidations.get(), lastLookupMs);
+    }
+
+    /**
+     * Point-in-time discovery counters
+     */
+    public static final class Stats {
+        public final long lookups;
+        public final long cacheHits;
+        public final long failures;
+        public final long invalidations;
+        public final long lastLookupMs;
+
+        Stats(long lookups, long cacheHits, long failures, long invalidations, long lastLookupMs) {
+            this.lookups = lookups;
+            this.cacheHits = cacheHits;
+            this.failures = failures;
+            this.invalidations = invalidations;
+            this.lastLookupMs = lastLookupMs;
+        }
+    }
+}
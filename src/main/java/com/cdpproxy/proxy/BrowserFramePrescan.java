@@ -0,0 +1,79 @@
+package com.cdpproxy.proxy;
+
+import com.cdpproxy.util.CDPJsonScanner;
+
+/**
+ * Cheap classification of browser-to-client frames. Only the top-level
+ * {@code id}/{@code method} members (and, for responses, the keys of
+ * {@code result}) are looked at, so event payloads such as
+ * {@code Page.screencastFrame} are never turned into a tree.
+ * Instances are reused by a single reader thread and are not thread-safe.
+ */
+final class BrowserFramePrescan {
+
+    enum Kind {
+        /** Event ({@code method} without {@code id}): nothing to inspect */
+        EVENT,
+        /** Response that cannot carry locator evidence (no {@code result.result}) */
+        PLAIN_RESPONSE,
+        /** Response that must go through locator verification */
+        INSPECT,
+        /** Not recognizable; handled by the full analysis path */
+        UNKNOWN
+    }
+
+    private Kind kind;
+    private boolean hasId;
+    private int id;
+    private boolean nestedResult;
+
+    private final CDPJsonScanner.MemberVisitor visitor = this::member;
+    private CharSequence frame;
+
+    /**
+     * Classify a frame; results are available through the accessors until the next call
+     */
+    Kind scan(CharSequence message) {
+        frame = message;
+        kind = Kind.UNKNOWN;
+        hasId = false;
+        nestedResult = false;
+        int end = CDPJsonScanner.scanObject(message, 0, message.length(), visitor);
+        frame = null;
+
+        if (end == CDPJsonScanner.MALFORMED) {
+            kind = Kind.UNKNOWN;
+        } else if (kind != Kind.EVENT && hasId) {
+            kind = nestedResult ? Kind.INSPECT : Kind.PLAIN_RESPONSE;
+        }
+        return kind;
+    }
+
+    private boolean member(int keyStart, int keyEnd, int valueStart, int valueEnd) {
+        if (CDPJsonScanner.regionEquals(frame, keyStart, keyEnd, "method")) {
+            // The browser never sends a method together with an id
+            kind = Kind.EVENT;
+            return false;
+        }
+        if (CDPJsonScanner.regionEquals(frame, keyStart, keyEnd, "id")) {
+            long value = CDPJsonScanner.parseInt(frame, valueStart, valueEnd);
+            if (value == CDPJsonScanner.NOT_AN_INT) {
+                return false;
+            }
+            hasId = true;
+            id = (int) value;
+        } else if (CDPJsonScanner.regionEquals(frame, keyStart, keyEnd, "result")) {
+            nestedResult = frame.charAt(valueStart) == '{'
+                    && CDPJsonScanner.findMember(frame, valueStart, valueEnd, "result") != null;
+        }
+        return true;
+    }
+
+    boolean hasId() {
+        return hasId;
+    }
+
+    int id() {
+        return id;
+    }
+}
@@ -0,0 +1,215 @@
+package com.cdpproxy.proxy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONObject;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Probes every upstream browser in the background: {@code /json/version} over
+ * HTTP, then a {@code Browser.getVersion} round trip over a dedicated DevTools
+ * connection. Results feed each backend's {@link CircuitBreaker}; a probe that
+ * fails, times out or is slower than the degraded threshold counts as a
+ * failure, and a successful one puts an open backend back into routing.
+ */
+public class BrowserHealthChecker implements Closeable {
+    private static final Logger logger = Logger.getLogger(BrowserHealthChecker.class.getName());
+
+    private final long timeoutMillis;
+    private final long degradedLatencyMillis;
+    private final ScheduledExecutorService scheduler;
+    private final Map<BrowserBackend, ProbeConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * @param degradedLatencyMillis probes slower than this count as failures (0 = no limit)
+     */
+    public BrowserHealthChecker(List<BrowserBackend> backends, long intervalMillis, long timeoutMillis,
+                                long degradedLatencyMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.degradedLatencyMillis = degradedLatencyMillis;
+        this.scheduler = Executors.newScheduledThreadPool(Math.max(1, Math.min(backends.size(), 4)),
+                ProxyThreads.numbered("BrowserHealthChecker"));
+        for (BrowserBackend backend : backends) {
+            // Spread the first probes so backends are not all probed at the same moment
+            long initialDelay = ThreadLocalRandom.current().nextLong(Math.max(1, intervalMillis));
+            scheduler.scheduleWithFixedDelay(() -> probeQuietly(backend), initialDelay, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void probeQuietly(BrowserBackend backend) {
+        try {
+            probe(backend);
+        } catch (Exception e) {
+            logger.warning("Health probe of " + backend.httpUrl() + " failed unexpectedly: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Probe one backend now and record the result
+     */
+    void probe(BrowserBackend backend) {
+        long start = System.nanoTime();
+        String webSocketUrl;
+        try {
+            JSONObject version = backend.pool().discovery().version().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            webSocketUrl = version.optString("webSocketDebuggerUrl", null);
+            if (webSocketUrl == null) {
+                failed(backend, "/json/version has no webSocketDebuggerUrl");
+                return;
+            }
+        } catch (Exception e) {
+            failed(backend, "/json/version: " + describe(e));
+            return;
+        }
+        long versionMs = elapsedMillis(start);
+
+        long roundTripMs;
+        try {
+            ProbeConnection connection = connection(backend, webSocketUrl);
+            long roundTripStart = System.nanoTime();
+            connection.browserVersion(timeoutMillis);
+            roundTripMs = elapsedMillis(roundTripStart);
+        } catch (Exception e) {
+            ProbeConnection connection = connections.remove(backend);
+            if (connection != null) {
+                connection.close();
+            }
+            failed(backend, "Browser.getVersion: " + describe(e));
+            return;
+        }
+
+        if (degradedLatencyMillis > 0 && Math.max(versionMs, roundTripMs) > degradedLatencyMillis) {
+            failed(backend, "Degraded: /json/version took " + versionMs + "ms, Browser.getVersion took "
+                    + roundTripMs + "ms");
+            return;
+        }
+        boolean wasOut = backend.circuitBreaker().state() != CircuitBreaker.State.CLOSED;
+        backend.probeSucceeded(versionMs, roundTripMs);
+        if (wasOut) {
+            logger.info("Browser " + backend.httpUrl() + " is healthy again, routing sessions to it");
+        }
+    }
+
+    private void failed(BrowserBackend backend, String error) {
+        boolean wasOpen = backend.circuitBreaker().state() == CircuitBreaker.State.OPEN;
+        backend.probeFailed(error);
+        // Log once per outage rather than on every probe
+        if (!wasOpen && backend.circuitBreaker().state() == CircuitBreaker.State.OPEN) {
+            logger.warning("Taking browser " + backend.httpUrl() + " out of routing: " + error);
+        }
+    }
+
+    /**
+     * The open probe connection of a backend, reopened when it dropped or the
+     * browser now reports a different endpoint
+     */
+    private ProbeConnection connection(BrowserBackend backend, String webSocketUrl) throws Exception {
+        ProbeConnection connection = connections.get(backend);
+        if (connection != null && connection.isOpen() && connection.getURI().toString().equals(webSocketUrl)) {
+            return connection;
+        }
+        if (connection != null) {
+            connection.close();
+            // A new endpoint means the browser restarted; do not hand out the old one
+            backend.pool().discovery().invalidate(connection.getURI().toString());
+        }
+        connection = new ProbeConnection(new URI(webSocketUrl));
+        if (!connection.connectBlocking(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            connection.close();
+            throw new TimeoutException("Timed out opening probe connection");
+        }
+        connections.put(backend, connection);
+        return connection;
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static String describe(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            return "timed out";
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.getClass().getSimpleName();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        for (ProbeConnection connection : connections.values()) {
+            connection.close();
+        }
+        connections.clear();
+    }
+
+    /**
+     * DevTools connection used only for health probes
+     */
+    private static final class ProbeConnection extends WebSocketClient {
+        private final Map<Integer, CompletableFuture<JSONObject>> inflight = new ConcurrentHashMap<>();
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        ProbeConnection(URI serverUri) {
+            super(serverUri);
+        }
+
+        JSONObject browserVersion(long timeoutMillis) throws Exception {
+            int id = nextId.incrementAndGet();
+            CompletableFuture<JSONObject> reply = new CompletableFuture<>();
+            inflight.put(id, reply);
+            try {
+                send(new JSONObject().put("id", id).put("method", "Browser.getVersion").toString());
+                return reply.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } finally {
+                inflight.remove(id);
+            }
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshakedata) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+            JSONObject json = new JSONObject(message);
+            CompletableFuture<JSONObject> reply = inflight.get(json.optInt("id", -1));
+            if (reply == null) {
+                return;
+            }
+            if (json.has("error")) {
+                reply.completeExceptionally(new IOException(json.getJSONObject("error").optString("message")));
+            } else {
+                reply.complete(json.optJSONObject("result"));
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            IOException closed = new IOException("Probe connection closed: " + code + " " + reason);
+            for (CompletableFuture<JSONObject> reply : inflight.values()) {
+                reply.completeExceptionally(closed);
+            }
+        }
+
+        @Override
+        public void onError(Exception ex) {
+        }
+    }
+}
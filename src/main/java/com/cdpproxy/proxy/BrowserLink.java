@@ -0,0 +1,34 @@
+package com.cdpproxy.proxy;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Client-to-browser half of a Playwright session: a dedicated
+ * {@link BrowserWebSocketClient} or a channel of a {@link BrowserMultiplexer}
+ */
+public interface BrowserLink {
+
+    /**
+     * @throws RuntimeException when the link is not connected
+     */
+    void send(String message);
+
+    /**
+     * Send a text message given as its UTF-8 bytes, without decoding it
+     *
+     * @throws RuntimeException when the link is not connected
+     */
+    void sendUtf8(ByteBuffer utf8Message);
+
+    /**
+     * Send one part of a fragmented message. The parts of a message arrive in
+     * order with nothing else sent in between, the last one with {@code last} set.
+     *
+     * @throws RuntimeException when the link is not connected
+     */
+    void sendPart(String part, boolean last);
+
+    boolean isConnected();
+
+    void close();
+}
@@ -0,0 +1,243 @@
+package com.cdpproxy.proxy;
+
+import java.util.logging.Logger;
+import com.cdpproxy.dump.DumpEntry;
+import com.cdpproxy.util.CDPMessageDumper;
+import com.cdpproxy.util.LocatorVerificationTracker;
+import com.cdpproxy.util.PendingSelectors;
+import com.cdpproxy.util.Utf8JsonView;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Browser-to-client pipeline shared by both engines: every browser message of
+ * a Playwright session is dumped, settles the pending selector of the command
+ * it answers, and has its locator evidence followed. Events and plain
+ * responses are classified without building a tree. Instances belong to the
+ * single thread reading the session's browser messages.
+ */
+public class BrowserMessageInspector {
+    private static final Logger logger = Logger.getLogger(BrowserMessageInspector.class.getName());
+
+    private final String sessionId;
+    private final PendingSelectors pendingSelectors;
+    private final BrowserFramePrescan prescan = new BrowserFramePrescan();
+
+    /**
+     * @param pendingSelectors selectors of the session's commands awaiting a response, by command id
+     */
+    public BrowserMessageInspector(String sessionId, PendingSelectors pendingSelectors) {
+        this.sessionId = sessionId;
+        this.pendingSelectors = pendingSelectors;
+    }
+
+    /**
+     * @return true for CDP events, which a slow client may have dropped
+     */
+    public boolean inspect(String message) {
+        CDPMessageDumper.dumpMessage(DumpEntry.FROM_BROWSER, sessionId, message);
+        try {
+            return inspect(message, prescan.scan(message));
+        } catch (Exception e) {
+            logger.warning("Failed to process browser message: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Inspect a frame given as UTF-8 bytes, decoding it only for the dump and
+     * for responses that may carry locator evidence
+     *
+     * @return true for CDP events
+     */
+    boolean inspect(Utf8JsonView frame) {
+        if (CDPMessageDumper.isEnabled()) {
+            CDPMessageDumper.dumpMessage(DumpEntry.FROM_BROWSER, sessionId, frame.toString());
+        }
+        try {
+            BrowserFramePrescan.Kind kind = prescan.scan(frame);
+            return kind == BrowserFramePrescan.Kind.EVENT || kind == BrowserFramePrescan.Kind.PLAIN_RESPONSE
+                    ? inspect(null, kind) : inspect(frame.toString(), kind);
+        } catch (Exception e) {
+            logger.warning("Failed to process browser message: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean inspect(String message, BrowserFramePrescan.Kind kind) {
+        if (kind == BrowserFramePrescan.Kind.EVENT) {
+            return true;
+        }
+        if (kind == BrowserFramePrescan.Kind.PLAIN_RESPONSE) {
+            pendingSelectors.remove(prescan.id());
+            return false;
+        }
+        JSONObject json = new JSONObject(message);
+
+        // Process locator verification
+        verifyLocatorsFromResponse(json);
+
+        // Check for broken locators in responses
+        checkForBrokenLocators(json);
+        return false;
+    }
+
+    /**
+     * Settle a message relayed in parts, of which only a prefix was kept
+     */
+    void inspectStreamed(StreamedMessage message) {
+        CDPMessageDumper.dumpMessage(DumpEntry.FROM_BROWSER, sessionId, message.prefix());
+        message.inspect();
+        if (message.hasId()) {
+            // Too large to go through locator verification, but the command is answered
+            pendingSelectors.remove(message.id());
+        }
+    }
+
+    private void verifyLocatorsFromResponse(JSONObject json) {
+        try {
+            // Check for strict mode violations (working but multiple matches)
+            if (json.has("result") && json.getJSONObject("result").has("result")) {
+                JSONObject result = json.getJSONObject("result");
+
+                // Check for exception details with strict mode violation
+                if (result.has("exceptionDetails") &&
+                        result.getJSONObject("exceptionDetails").has("exception")) {
+
+                    JSONObject exception = result.getJSONObject("exceptionDetails").getJSONObject("exception");
+
+                    if (exception.has("description") && exception.get("description") instanceof String) {
+                        String errorDesc = exception.getString("description");
+
+                        if (errorDesc.contains("strict mode violation") && errorDesc.contains("resolved to")) {
+                            int startIdx = errorDesc.indexOf("locator(") + 9;
+                            int endIdx = errorDesc.indexOf(")", startIdx);
+
+                            if (startIdx > 9 && endIdx > startIdx) {
+                                String selectorWithQuotes = errorDesc.substring(startIdx, endIdx);
+                                String selector = selectorWithQuotes.substring(1, selectorWithQuotes.length() - 1);
+                                LocatorVerificationTracker.verifyLocator(sessionId, selector);
+                            }
+                        }
+                    }
+                }
+
+                // Check for successful locator with visible and attached properties
+                if (json.has("id") && json.getJSONObject("result").has("result")) {
+                    int id = json.getInt("id");
+                    result = json.getJSONObject("result").getJSONObject("result");
+
+                    if (result.has("type") && result.getString("type").equals("object") &&
+                            result.has("value") && result.get("value") instanceof JSONObject) {
+
+                        JSONObject value = result.getJSONObject("value");
+
+                        if (value.has("o") && value.get("o") instanceof JSONArray) {
+                            JSONArray properties = value.getJSONArray("o");
+
+                            boolean isVisible = false;
+                            boolean isAttached = false;
+                            int elementCount = 0;
+                            String logText = "";
+
+                            for (int i = 0; i < properties.length(); i++) {
+                                JSONObject property = properties.getJSONObject(i);
+
+                                if (property.has("k") && property.has("v")) {
+                                    String key = property.getString("k");
+
+                                    if (key.equals("visible") && property.get("v") instanceof Boolean) {
+                                        isVisible = property.getBoolean("v");
+                                    }
+
+                                    if (key.equals("attached") && property.get("v") instanceof Boolean) {
+                                        isAttached = property.getBoolean("v");
+                                    }
+
+                                    if (key.equals("log") && property.get("v") instanceof String) {
+                                        logText = property.getString("v");
+
+                                        if (logText.contains("resolved to ")) {
+                                            try {
+                                                int startIndex = logText.indexOf("resolved to ") + 12;
+                                                int endIndex = logText.indexOf(" element", startIndex);
+                                                if (endIndex > startIndex) {
+                                                    String countStr = logText.substring(startIndex, endIndex).trim();
+                                                    elementCount = Integer.parseInt(countStr);
+                                                }
+                                            } catch (Exception ignored) {}
+                                        }
+                                    }
+                                }
+                            }
+
+                            if ((isVisible && isAttached) || elementCount > 0 || logText.contains("resolved to")) {
+                                String selector = findSelectorForId(id);
+                                if (selector != null) {
+                                    LocatorVerificationTracker.verifyLocator(sessionId, selector);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Error verifying locators: " + e.getMessage());
+        }
+    }
+
+    private void checkForBrokenLocators(JSONObject json) {
+        try {
+            if (json.has("id")) {
+                int id = json.getInt("id");
+
+                // Remove pendingSelectors entry if it exists
+                pendingSelectors.remove(id);
+
+                // Check for success=false in result
+                if (json.has("result") && json.getJSONObject("result").has("result")) {
+                    JSONObject result = json.getJSONObject("result").getJSONObject("result");
+
+                    if (result.has("type") && result.getString("type").equals("object") &&
+                            result.has("value") && result.get("value") instanceof JSONObject) {
+
+                        JSONObject value = result.getJSONObject("value");
+
+                        if (value.has("o") && value.get("o") instanceof JSONArray) {
+                            JSONArray properties = value.getJSONArray("o");
+
+                            boolean foundSuccessProperty = false;
+                            boolean successValue = true;
+
+                            for (int i = 0; i < properties.length(); i++) {
+                                JSONObject property = properties.getJSONObject(i);
+
+                                if (property.has("k") && property.getString("k").equals("success")) {
+                                    foundSuccessProperty = true;
+                                    if (property.has("v") && property.get("v") instanceof Boolean) {
+                                        successValue = property.getBoolean("v");
+                                    }
+                                    break;
+                                }
+                            }
+
+                            if (foundSuccessProperty && !successValue) {
+                                String selector = findSelectorForId(id);
+                                if (selector == null) selector = "unknown";
+
+                                // LoggingUtil call removed
+                                logger.warning("Broken locator detected: " + selector + " (success=false)");
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Error checking for broken locators: " + e.getMessage());
+        }
+    }
+
+    private String findSelectorForId(int id) {
+        return pendingSelectors.get(id);
+    }
+}
@@ -0,0 +1,466 @@
+package com.cdpproxy.proxy;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import com.cdpproxy.util.CDPJsonScanner;
+import com.cdpproxy.util.CDPMessageEnvelope;
+import org.json.JSONObject;
+
+/**
+ * Shares one browser connection between many Playwright sessions.
+ * <p>
+ * Every session gets a {@link Channel} with its own slice of the command id
+ * space: ids it sends are rewritten into that slice and mapped back when the
+ * response comes in, so the response finds its way home by arithmetic alone.
+ * Events are routed by their flattened CDP {@code sessionId}; the proxy learns
+ * which channel owns a session from {@code Target.attachToTarget} responses and
+ * {@code Target.attachedToTarget} events, and which owns a browser context from
+ * {@code Target.createBrowserContext}. Events of a session or context no
+ * channel owns are dropped, and targets auto-attached in such a context, the
+ * default one included, are detached again: sharing them would let clients see
+ * and steal each other's pages. Each client must therefore work in a browser
+ * context of its own. Only events that name neither a session nor a context go
+ * to every channel. When a channel closes, the browser contexts and sessions
+ * it owned are disposed, since the browser will not do it on disconnect as it
+ * would for a dedicated connection.
+ * <p>
+ * Slots are handed out round-robin, so late responses for a closed channel
+ * are dropped instead of reaching the next channel given the same slot.
+ */
+public class BrowserMultiplexer implements Closeable {
+    private static final Logger logger = Logger.getLogger(BrowserMultiplexer.class.getName());
+
+    /** Command ids available to each channel */
+    static final int ID_RANGE = 1 << 20;
+    /** Slot 0 carries the proxy's own cleanup commands */
+    private static final int SLOTS = Integer.MAX_VALUE / ID_RANGE;
+
+    private final BrowserConnectionPool pool;
+    /** Written under the monitor, read lock-free by the upstream reader */
+    private final AtomicReferenceArray<Channel> slots = new AtomicReferenceArray<>(SLOTS);
+    private int nextSlot = 1;
+    private int cleanupIds;
+    private CompletableFuture<BrowserWebSocketClient> upstream;
+    private volatile boolean closed;
+
+    private final Map<String, Channel> sessionOwners = new ConcurrentHashMap<>();
+    private final Map<String, Channel> contextOwners = new ConcurrentHashMap<>();
+
+    private final AtomicInteger channels = new AtomicInteger();
+    private final AtomicLong upstreamConnections = new AtomicLong();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong broadcasts = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public BrowserMultiplexer(BrowserConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Open a channel whose browser frames go to {@code relay}, connecting the
+     * shared upstream first if needed
+     */
+    public synchronized CompletableFuture<BrowserLink> open(Consumer<String> relay) {
+        if (closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Browser multiplexer is closed"));
+        }
+        int slot = allocateSlot();
+        if (slot < 0) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Too many sessions share the browser connection"));
+        }
+        CompletableFuture<BrowserWebSocketClient> connection = upstream();
+        Channel channel = new Channel(slot, relay, connection);
+        slots.set(slot, channel);
+        channels.incrementAndGet();
+        return connection.handle((client, error) -> {
+            if (error != null) {
+                channel.close();
+                throw error instanceof RuntimeException ? (RuntimeException) error : new RuntimeException(error);
+            }
+            return channel;
+        });
+    }
+
+    private int allocateSlot() {
+        for (int i = 0; i < SLOTS - 1; i++) {
+            int slot = nextSlot;
+            nextSlot = nextSlot == SLOTS - 1 ? 1 : nextSlot + 1;
+            if (slots.get(slot) == null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The shared connection, replaced when the previous one failed or dropped
+     */
+    private CompletableFuture<BrowserWebSocketClient> upstream() {
+        CompletableFuture<BrowserWebSocketClient> current = upstream;
+        if (current != null && (!current.isDone()
+                || (!current.isCompletedExceptionally() && current.join().isConnected()))) {
+            return current;
+        }
+        if (current != null && current.isDone() && !current.isCompletedExceptionally()) {
+            current.join().close();
+        }
+        // Sessions and contexts of the old connection died with it
+        sessionOwners.clear();
+        contextOwners.clear();
+        upstream = pool.acquire().thenApply(client -> {
+            upstreamConnections.incrementAndGet();
+            Frame frame = new Frame();
+            client.attach(message -> dispatch(client, frame, message));
+            return client;
+        });
+        return upstream;
+    }
+
+    /**
+     * Route one upstream frame, on the connection's reader thread
+     */
+    private void dispatch(BrowserWebSocketClient source, Frame frame, String message) {
+        if (!frame.scan(message)) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (frame.hasId) {
+            deliverResponse(frame, message);
+        } else {
+            deliverEvent(source, frame, message);
+        }
+    }
+
+    private void deliverResponse(Frame frame, String message) {
+        int slot = frame.id / ID_RANGE;
+        Channel channel = slot > 0 && slot < SLOTS ? slots.get(slot) : null;
+        Pending pending = channel != null ? channel.inflight.remove(frame.id) : null;
+        if (pending == null) {
+            // Cleanup replies, and replies for channels that are gone
+            if (slot != 0) {
+                dropped.incrementAndGet();
+            }
+            return;
+        }
+        responses.incrementAndGet();
+        if (pending.ownership != null) {
+            learnOwnership(channel, pending.ownership, message);
+        }
+        channel.relay.accept(message.substring(0, frame.idStart) + pending.clientId + message.substring(frame.idEnd));
+    }
+
+    private void learnOwnership(Channel channel, String method, String response) {
+        Object result = CDPMessageEnvelope.parse(response).member("result");
+        if (!(result instanceof JSONObject)) {
+            return;
+        }
+        JSONObject json = (JSONObject) result;
+        if ("Target.attachToTarget".equals(method) && json.has("sessionId")) {
+            sessionOwners.put(json.getString("sessionId"), channel);
+        } else if ("Target.createBrowserContext".equals(method) && json.has("browserContextId")) {
+            contextOwners.put(json.getString("browserContextId"), channel);
+        }
+    }
+
+    private void deliverEvent(BrowserWebSocketClient source, Frame frame, String message) {
+        events.incrementAndGet();
+        String sessionId = frame.sessionId;
+        boolean attached = frame.isMethod(message, "Target.attachedToTarget");
+        boolean detached = frame.isMethod(message, "Target.detachedFromTarget");
+        JSONObject params = attached || detached || sessionId == null
+                ? CDPMessageEnvelope.parse(message).params() : null;
+
+        Channel owner;
+        boolean scoped;
+        if (sessionId != null) {
+            owner = sessionOwners.get(sessionId);
+            scoped = true;
+        } else if (detached && params != null && params.has("sessionId")) {
+            owner = sessionOwners.get(params.getString("sessionId"));
+            scoped = true;
+        } else {
+            JSONObject targetInfo = params != null ? params.optJSONObject("targetInfo") : null;
+            String contextId = targetInfo != null ? targetInfo.optString("browserContextId", null)
+                    : params != null ? params.optString("browserContextId", null) : null;
+            owner = contextId != null ? contextOwners.get(contextId) : null;
+            scoped = contextId != null;
+        }
+
+        if (attached && params != null && params.has("sessionId")) {
+            String attachedSession = params.getString("sessionId");
+            if (owner != null) {
+                // Register before delivering, so the client's first command on the new session can be routed
+                sessionOwners.put(attachedSession, owner);
+            } else if (sessionId == null) {
+                // Nobody may drive it; let it go rather than leave it waiting for a debugger
+                sendCleanup(source, "Target.detachFromTarget", new JSONObject().put("sessionId", attachedSession));
+            }
+        }
+
+        if (owner != null) {
+            owner.relay.accept(message);
+        } else if (!scoped) {
+            broadcasts.incrementAndGet();
+            for (Channel channel : snapshot()) {
+                if (channel.connection.getNow(null) == source) {
+                    channel.relay.accept(message);
+                }
+            }
+        } else {
+            dropped.incrementAndGet();
+        }
+
+        if (detached && params != null && params.has("sessionId")) {
+            sessionOwners.remove(params.getString("sessionId"));
+        }
+    }
+
+    private synchronized List<Channel> snapshot() {
+        List<Channel> open = new ArrayList<>();
+        for (int i = 1; i < SLOTS; i++) {
+            Channel channel = slots.get(i);
+            if (channel != null) {
+                open.add(channel);
+            }
+        }
+        return open;
+    }
+
+    private synchronized void release(Channel channel) {
+        if (!slots.compareAndSet(channel.slot, channel, null)) {
+            return;
+        }
+        channels.decrementAndGet();
+
+        BrowserWebSocketClient client = channel.connection.getNow(null);
+        boolean live = client != null && client.isConnected() && !closed;
+        for (Map.Entry<String, Channel> entry : contextOwners.entrySet()) {
+            if (entry.getValue() == channel && contextOwners.remove(entry.getKey(), channel) && live) {
+                sendCleanup(client, "Target.disposeBrowserContext",
+                        new JSONObject().put("browserContextId", entry.getKey()));
+            }
+        }
+        for (Map.Entry<String, Channel> entry : sessionOwners.entrySet()) {
+            if (entry.getValue() == channel && sessionOwners.remove(entry.getKey(), channel) && live) {
+                sendCleanup(client, "Target.detachFromTarget", new JSONObject().put("sessionId", entry.getKey()));
+            }
+        }
+    }
+
+    private synchronized void sendCleanup(BrowserWebSocketClient client, String method, JSONObject params) {
+        cleanupIds = (cleanupIds + 1) % ID_RANGE;
+        try {
+            client.send(new JSONObject().put("id", cleanupIds).put("method", method).put("params", params).toString());
+        } catch (Exception e) {
+            logger.warning("Failed to send " + method + " for a session no client owns: " + e.getMessage());
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(channels.get(), sessionOwners.size(), contextOwners.size(), upstreamConnections.get(),
+                commands.get(), responses.get(), events.get(), broadcasts.get(), dropped.get());
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Channel channel : snapshot()) {
+            channel.close();
+        }
+        if (upstream != null) {
+            upstream.thenAccept(BrowserWebSocketClient::close);
+        }
+    }
+
+    private static final class Pending {
+        final int clientId;
+        /** Method whose response tells who owns a session or context, otherwise null */
+        final String ownership;
+
+        Pending(int clientId, String ownership) {
+            this.clientId = clientId;
+            this.ownership = ownership;
+        }
+    }
+
+    /**
+     * One Playwright session's share of the upstream connection
+     */
+    final class Channel implements BrowserLink {
+        final int slot;
+        final Consumer<String> relay;
+        final CompletableFuture<BrowserWebSocketClient> connection;
+        final Map<Integer, Pending> inflight = new ConcurrentHashMap<>();
+        private final Frame frame = new Frame();
+        private int nextOffset;
+        private StringBuilder assembling;
+        private volatile boolean closed;
+
+        Channel(int slot, Consumer<String> relay, CompletableFuture<BrowserWebSocketClient> connection) {
+            this.slot = slot;
+            this.relay = relay;
+            this.connection = connection;
+        }
+
+        /**
+         * Rewrite the command id into this channel's range and send it upstream.
+         * Callers send one message at a time per channel.
+         */
+        @Override
+        public void send(String message) {
+            BrowserWebSocketClient client = connection.getNow(null);
+            if (closed || client == null || !client.isConnected()) {
+                throw new RuntimeException("Cannot send message because WebSocket is not connected");
+            }
+            if (!frame.scan(message) || !frame.hasId) {
+                // Not a command; let the browser reject it
+                client.send(message);
+                return;
+            }
+            int upstreamId = allocateId();
+            String ownership = frame.isMethod(message, "Target.attachToTarget") ? "Target.attachToTarget"
+                    : frame.isMethod(message, "Target.createBrowserContext") ? "Target.createBrowserContext" : null;
+            inflight.put(upstreamId, new Pending(frame.id, ownership));
+            commands.incrementAndGet();
+            try {
+                client.send(message.substring(0, frame.idStart) + upstreamId + message.substring(frame.idEnd));
+            } catch (RuntimeException e) {
+                inflight.remove(upstreamId);
+                throw e;
+            }
+        }
+
+        /**
+         * Decoded: the id is rewritten in the text
+         */
+        @Override
+        public void sendUtf8(ByteBuffer utf8Message) {
+            send(StandardCharsets.UTF_8.decode(utf8Message).toString());
+        }
+
+        /**
+         * Parts are assembled first: the id must be rewritten, and other
+         * channels' frames must not land between the parts on the shared connection
+         */
+        @Override
+        public void sendPart(String part, boolean last) {
+            if (assembling == null) {
+                assembling = new StringBuilder();
+            }
+            assembling.append(part);
+            if (last) {
+                String message = assembling.toString();
+                assembling = null;
+                send(message);
+            }
+        }
+
+        private int allocateId() {
+            int base = slot * ID_RANGE;
+            for (int i = 0; i < ID_RANGE; i++) {
+                nextOffset = (nextOffset + 1) % ID_RANGE;
+                int id = base + nextOffset;
+                if (!inflight.containsKey(id)) {
+                    return id;
+                }
+            }
+            throw new IllegalStateException("Too many commands in flight");
+        }
+
+        @Override
+        public boolean isConnected() {
+            BrowserWebSocketClient client = connection.getNow(null);
+            return !closed && client != null && client.isConnected();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            release(this);
+        }
+    }
+
+    /**
+     * Top-level {@code id}, {@code method} and {@code sessionId} of a frame,
+     * located without building a tree. Reused by one thread at a time.
+     */
+    private static final class Frame {
+        boolean hasId;
+        int id;
+        int idStart;
+        int idEnd;
+        int methodStart;
+        int methodEnd;
+        String sessionId;
+
+        boolean scan(String message) {
+            hasId = false;
+            methodStart = -1;
+            sessionId = null;
+            int end = CDPJsonScanner.scanObject(message, 0, message.length(), (ks, ke, vs, ve) -> {
+                if (CDPJsonScanner.regionEquals(message, ks, ke, "id")) {
+                    long value = CDPJsonScanner.parseInt(message, vs, ve);
+                    if (value != CDPJsonScanner.NOT_AN_INT) {
+                        hasId = true;
+                        id = (int) value;
+                        idStart = vs;
+                        idEnd = ve;
+                    }
+                } else if (CDPJsonScanner.regionEquals(message, ks, ke, "method") && message.charAt(vs) == '"') {
+                    methodStart = vs + 1;
+                    methodEnd = ve - 1;
+                } else if (CDPJsonScanner.regionEquals(message, ks, ke, "sessionId") && message.charAt(vs) == '"') {
+                    sessionId = message.substring(vs + 1, ve - 1);
+                }
+                return true;
+            });
+            return end != CDPJsonScanner.MALFORMED;
+        }
+
+        boolean isMethod(String message, String method) {
+            return methodStart >= 0 && CDPJsonScanner.regionEquals(message, methodStart, methodEnd, method);
+        }
+    }
+
+    /**
+     * Point-in-time multiplexing counters
+     */
+    public static final class Stats {
+        public final int channels;
+        public final int ownedSessions;
+        public final int ownedContexts;
+        public final long upstreamConnections;
+        public final long commands;
+        public final long responses;
+        public final long events;
+        public final long broadcasts;
+        public final long dropped;
+
+        Stats(int channels, int ownedSessions, int ownedContexts, long upstreamConnections, long commands,
+              long responses, long events, long broadcasts, long dropped) {
+            this.channels = channels;
+            this.ownedSessions = ownedSessions;
+            this.ownedContexts = ownedContexts;
+            this.upstreamConnections = upstreamConnections;
+            this.commands = commands;
+            this.responses = responses;
+            this.events = events;
+            this.broadcasts = broadcasts;
+            this.dropped = dropped;
+        }
+    }
+}
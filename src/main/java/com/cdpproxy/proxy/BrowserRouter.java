@@ -0,0 +1,76 @@
+package com.cdpproxy.proxy;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Spreads Playwright sessions over the configured upstream browsers. Each new
+ * session goes to a healthy backend with the fewest active sessions (or the
+ * lowest recent connect latency); when no backend is healthy, all of them are
+ * candidates again rather than refusing the session.
+ */
+public class BrowserRouter implements Closeable {
+
+    /**
+     * How the backend for a new session is chosen
+     */
+    public enum Strategy {
+        /** Fewest active sessions, lower latency breaking ties */
+        LEAST_SESSIONS,
+        /** Lowest recent connect latency, fewer sessions breaking ties */
+        LEAST_LATENCY
+    }
+
+    private final List<BrowserBackend> backends;
+    private final Comparator<BrowserBackend> order;
+
+    public BrowserRouter(List<BrowserBackend> backends, Strategy strategy) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("At least one upstream browser is required");
+        }
+        this.backends = Collections.unmodifiableList(new ArrayList<>(backends));
+        Comparator<BrowserBackend> bySessions = Comparator.comparingInt(BrowserBackend::activeSessions);
+        Comparator<BrowserBackend> byLatency = Comparator.comparingDouble(BrowserBackend::latencyMs);
+        this.order = strategy == Strategy.LEAST_LATENCY
+                ? byLatency.thenComparing(bySessions)
+                : bySessions.thenComparing(byLatency);
+    }
+
+    /**
+     * Pick the backend for a new session and count the session against it
+     */
+    public synchronized BrowserBackend acquire() {
+        BrowserBackend best = null;
+        for (BrowserBackend backend : backends) {
+            if (backend.isHealthy() && (best == null || order.compare(backend, best) < 0)) {
+                best = backend;
+            }
+        }
+        if (best == null) {
+            best = Collections.min(backends, order);
+        }
+        best.sessionOpened();
+        return best;
+    }
+
+    /**
+     * The session routed to {@code backend} has ended
+     */
+    public void release(BrowserBackend backend) {
+        backend.sessionClosed();
+    }
+
+    public List<BrowserBackend> backends() {
+        return backends;
+    }
+
+    @Override
+    public void close() {
+        for (BrowserBackend backend : backends) {
+            backend.close();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.cdpproxy.proxy;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.handshake.ServerHandshake;
+import com.cdpproxy.util.PendingSelectors;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Upstream connection to the browser for one Playwright session (or, when
+ * multiplexing, for many; see {@link BrowserMultiplexer}). Browser frames go
+ * to the attached receiver, normally a {@link PlaywrightRelay}. A connection
+ * can be opened before its session exists (see {@link BrowserConnectionPool})
+ * and {@link #attach attached} later.
+ * <p>
+ * Fragmented browser messages reach a {@link PartReceiver} part by part (see
+ * {@link StreamingDraft}); other receivers get them assembled. A
+ * {@link ByteReceiver} is offered every other text frame undecoded.
+ * <p>
+ * With a compression extension the connection offers {@code permessage-deflate}
+ * and uses it when the browser agrees. Consecutive frames then share
+ * compressor state, so messages are encoded and queued one at a time.
+ */
+public class BrowserWebSocketClient extends WebSocketClient implements BrowserLink {
+    private static final Logger logger = Logger.getLogger(BrowserWebSocketClient.class.getName());
+
+    /**
+     * Receiver that takes fragmented browser messages part by part instead of assembled
+     */
+    interface PartReceiver {
+        void acceptPart(String part, boolean last);
+    }
+
+    /**
+     * Receiver that can take browser frames as UTF-8 bytes
+     */
+    interface ByteReceiver {
+        /**
+         * @return false to receive this frame as a {@code String} instead
+         */
+        boolean acceptBytes(ByteBuffer frame);
+    }
+
+    private volatile Consumer<String> receiver;
+    private volatile boolean isConnected = false;
+    private final AtomicBoolean readerStarted = new AtomicBoolean();
+
+    // Reader thread only: decoding of the fragmented message in progress
+    private final CharsetDecoder fragmentDecoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private ByteBuffer undecoded;
+    private StringBuilder assembling;
+
+    // Sending side: a high surrogate that ended the previous outgoing part
+    private char pendingHighSurrogate;
+
+    public BrowserWebSocketClient(URI serverUri) {
+        this(serverUri, null);
+    }
+
+    /**
+     * @param compression offered to the browser, or null to send frames uncompressed
+     */
+    public BrowserWebSocketClient(URI serverUri, MeteredDeflateExtension compression) {
+        super(serverUri, new StreamingDraft(compression != null ? List.<IExtension>of(compression) : List.of()));
+        this.setConnectionLostTimeout(30000);
+        ((StreamingDraft) getDraft()).listener(new StreamingDraft.FragmentListener() {
+            @Override
+            public void onTextFragment(ByteBuffer payload, boolean last) {
+                BrowserWebSocketClient.this.onTextFragment(payload, last);
+            }
+
+            @Override
+            public boolean onTextFrame(ByteBuffer payload) {
+                Consumer<String> receiver = BrowserWebSocketClient.this.receiver;
+                return receiver instanceof ByteReceiver && ((ByteReceiver) receiver).acceptBytes(payload);
+            }
+        });
+    }
+
+    /**
+     * Start the connection's reader, on a virtual thread in virtual thread
+     * mode. The library starts a platform thread for it otherwise, and always
+     * for its writer and connection-lost timer.
+     */
+    @Override
+    public void connect() {
+        if (!ProxyThreads.virtual()) {
+            super.connect();
+            return;
+        }
+        if (!readerStarted.compareAndSet(false, true)) {
+            throw new IllegalStateException("WebSocketClient objects are not reuseable");
+        }
+        ProxyThreads.start("BrowserWebSocketReader", this);
+    }
+
+    /**
+     * Hand the connection to the Playwright session whose traffic it carries
+     */
+    public void attach(ClientSendBuffer outbound, PendingSelectors pendingSelectors) {
+        attach(new PlaywrightRelay(outbound, pendingSelectors));
+    }
+
+    /**
+     * Hand every browser frame to {@code receiver}, called on the connection's reader thread
+     */
+    void attach(Consumer<String> receiver) {
+        this.receiver = receiver;
+    }
+
+    public boolean isAttached() {
+        return receiver != null;
+    }
+
+    @Override
+    public void onOpen(ServerHandshake handshakedata) {
+        logger.info("Connected to browser WebSocket");
+        isConnected = true;
+    }
+
+    @Override
+    public void onMessage(String message) {
+        Consumer<String> receiver = this.receiver;
+        if (receiver == null) {
+            // Nothing is listening on an idle pooled connection yet
+            return;
+        }
+        receiver.accept(message);
+    }
+
+    private void onTextFragment(ByteBuffer payload, boolean last) {
+        String part = decodeFragment(payload, last);
+        Consumer<String> receiver = this.receiver;
+        if (receiver instanceof PartReceiver) {
+            ((PartReceiver) receiver).acceptPart(part, last);
+            return;
+        }
+        if (assembling == null) {
+            assembling = new StringBuilder();
+        }
+        assembling.append(part);
+        if (last) {
+            String message = assembling.toString();
+            assembling = null;
+            onMessage(message);
+        }
+    }
+
+    /**
+     * Decode a fragment, carrying the bytes of a character split across
+     * fragments over to the next one
+     */
+    private String decodeFragment(ByteBuffer payload, boolean last) {
+        ByteBuffer in = payload;
+        if (undecoded != null) {
+            in = ByteBuffer.allocate(undecoded.remaining() + payload.remaining()).put(undecoded).put(payload).flip();
+            undecoded = null;
+        }
+        CharBuffer out = CharBuffer.allocate(in.remaining() + 1);
+        fragmentDecoder.decode(in, out, last);
+        if (last) {
+            fragmentDecoder.flush(out);
+            fragmentDecoder.reset();
+        } else if (in.hasRemaining()) {
+            undecoded = ByteBuffer.allocate(in.remaining()).put(in).flip();
+        }
+        return out.flip().toString();
+    }
+
+    @Override
+    public void onClose(int code, String reason, boolean remote) {
+        logger.info("Browser WebSocket connection closed: " + code + " - " + reason);
+        isConnected = false;
+    }
+
+    @Override
+    public void onError(Exception ex) {
+        logger.severe("Error in browser WebSocket connection: " + ex.getMessage());
+    }
+
+    public boolean isConnected() {
+        return isConnected && isOpen();
+    }
+
+    @Override
+    public synchronized void send(String text) {
+        if (isConnected() && isOpen()) {
+            super.send(text);
+        } else {
+            throw new RuntimeException("Cannot send message because WebSocket is not connected");
+        }
+    }
+
+    @Override
+    public synchronized void sendUtf8(ByteBuffer utf8Message) {
+        if (!isConnected()) {
+            throw new RuntimeException("Cannot send message because WebSocket is not connected");
+        }
+        // A single final text frame, written from the bytes as they are
+        sendFragmentedFrame(Opcode.TEXT, utf8Message, true);
+    }
+
+    @Override
+    public synchronized void sendPart(String part, boolean last) {
+        if (!isConnected()) {
+            throw new RuntimeException("Cannot send message because WebSocket is not connected");
+        }
+        String text = part;
+        if (pendingHighSurrogate != 0) {
+            text = pendingHighSurrogate + text;
+            pendingHighSurrogate = 0;
+        }
+        // A surrogate pair split between two parts would not encode on its own
+        if (!last && !text.isEmpty() && Character.isHighSurrogate(text.charAt(text.length() - 1))) {
+            pendingHighSurrogate = text.charAt(text.length() - 1);
+            text = text.substring(0, text.length() - 1);
+        }
+        sendFragmentedFrame(Opcode.TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), last);
+    }
+}
@@ -0,0 +1,82 @@
+package com.cdpproxy.proxy;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes a backend out of routing after repeated failures.
+ * <p>
+ * {@link State#CLOSED}: traffic flows and consecutive failures are counted;
+ * reaching the threshold opens the circuit. {@link State#OPEN}: the backend
+ * gets no new sessions until a jittered cool-down has passed, after which it
+ * is {@link State#HALF_OPEN}: the next result decides, a success closes the
+ * circuit and a failure opens it again with a longer cool-down. A successful
+ * health probe closes the circuit at any time.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final Backoff coolDown;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    /** Times the circuit opened since it was last closed, lengthening the cool-down */
+    private int reopenings;
+    private long openUntil;
+    private final AtomicLong opened = new AtomicLong();
+
+    /**
+     * @param failureThreshold consecutive failures that open the circuit
+     * @param openMillis       cool-down after the first opening, doubled on each reopening up to {@code maxOpenMillis}
+     */
+    public CircuitBreaker(int failureThreshold, long openMillis, long maxOpenMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.coolDown = new Backoff(openMillis, maxOpenMillis);
+    }
+
+    /**
+     * Whether new traffic may go to the backend; moves an expired open circuit to half-open
+     */
+    public synchronized boolean allowsTraffic() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil) {
+            state = State.HALF_OPEN;
+        }
+        return state != State.OPEN;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        reopenings = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntil = System.currentTimeMillis() + coolDown.delayMillis(reopenings++);
+            opened.incrementAndGet();
+        }
+    }
+
+    public synchronized State state() {
+        allowsTraffic();
+        return state;
+    }
+
+    public synchronized int consecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return how often the circuit has opened
+     */
+    public long opened() {
+        return opened.get();
+    }
+}
@@ -0,0 +1,72 @@
+package com.cdpproxy.proxy;
+
+import java.util.logging.Logger;
+import com.cdpproxy.dump.DumpEntry;
+import com.cdpproxy.util.CDPMessageDumper;
+import com.cdpproxy.util.CDPMessageEnvelope;
+import com.cdpproxy.util.LocatorDetector;
+import com.cdpproxy.util.LocatorVerificationTracker;
+import com.cdpproxy.util.PendingSelectors;
+
+/**
+ * Client-to-browser pipeline shared by both engines: every Playwright command
+ * is dumped, searched for locators, and sanitized before it goes upstream
+ */
+public final class ClientCommands {
+    private static final Logger logger = Logger.getLogger(ClientCommands.class.getName());
+
+    private ClientCommands() {
+    }
+
+    /**
+     * Dump a command and track the locators it uses
+     *
+     * @param pendingSelectors selectors of the session's commands awaiting a response, by command id
+     * @return the parsed command, to {@link #sanitize} and to answer with an error if it cannot be relayed
+     */
+    public static CDPMessageEnvelope inspect(String sessionId, String payload, PendingSelectors pendingSelectors) {
+        CDPMessageEnvelope envelope = CDPMessageEnvelope.parse(payload);
+        CDPMessageDumper.dumpMessage(DumpEntry.FROM_PLAYWRIGHT, sessionId, envelope);
+
+        try {
+            // Track CSS selectors
+            if (envelope.hasId() && "DOM.querySelector".equals(envelope.method())) {
+                String selector = envelope.params().getString("selector");
+                pendingSelectors.put(envelope.id(), selector);
+                LocatorVerificationTracker.trackLocator(sessionId, selector, "CSS");
+            }
+            // Enhanced detection for all types of locator operations
+            else if (envelope.method() != null && envelope.hasParams()) {
+                LocatorDetector.SelectorInfo selectorInfo = LocatorDetector.extractSelector(envelope);
+                if (selectorInfo != null) {
+                    LocatorVerificationTracker.trackLocator(sessionId, selectorInfo.selector, selectorInfo.type);
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Failed to analyze message for locator tracking: " + e.getMessage());
+        }
+        return envelope;
+    }
+
+    /**
+     * @return the command with only the members the browser needs
+     */
+    public static String sanitize(CDPMessageEnvelope message) {
+        if (!message.isObject()) {
+            logger.warning("Failed to sanitize message, using original: not a JSON object");
+        }
+        return message.sanitized();
+    }
+
+    /**
+     * Start the locator verification checker, when the first session opens
+     */
+    public static void initLocatorDetection() {
+        try {
+            LocatorVerificationTracker.initialize();
+            logger.info("Locator detection system initialized");
+        } catch (Exception e) {
+            logger.severe("Failed to initialize locator detection: " + e.getMessage());
+        }
+    }
+}
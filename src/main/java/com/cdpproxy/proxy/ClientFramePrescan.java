@@ -0,0 +1,53 @@
+package com.cdpproxy.proxy;
+
+import java.nio.ByteBuffer;
+import com.cdpproxy.util.CDPJsonScanner;
+import com.cdpproxy.util.LocatorDetector;
+import com.cdpproxy.util.Utf8JsonView;
+
+/**
+ * Decides, from its UTF-8 bytes, whether a client frame can go upstream as it
+ * is. It cannot when sanitizing would change it (members other than
+ * {@code id}, {@code method}, {@code params} and a string {@code sessionId})
+ * or when locator tracking needs its params; those frames are decoded and
+ * take the text path. Method names are matched on the bytes, so nothing is
+ * decoded either way. Not thread-safe: each session keeps its own, since its
+ * frames arrive one at a time.
+ */
+final class ClientFramePrescan {
+
+    private static final ByteBuffer NO_FRAME = ByteBuffer.allocate(0);
+
+    private final Utf8JsonView view = new Utf8JsonView();
+    private final CDPJsonScanner.MemberVisitor members = this::member;
+    private boolean needsText;
+
+    /**
+     * @return true when the frame must be decoded before it is relayed
+     */
+    boolean needsText(ByteBuffer frame) {
+        view.wrap(frame);
+        needsText = false;
+        int end = CDPJsonScanner.scanObject(view, 0, view.length(), members);
+        // Let the frame go while the session idles
+        view.wrap(NO_FRAME);
+        return needsText || end == CDPJsonScanner.MALFORMED;
+    }
+
+    private boolean member(int keyStart, int keyEnd, int valueStart, int valueEnd) {
+        if (CDPJsonScanner.regionEquals(view, keyStart, keyEnd, "id")) {
+            return true;
+        }
+        if (CDPJsonScanner.regionEquals(view, keyStart, keyEnd, "method")) {
+            needsText = view.charAt(valueStart) != '"'
+                    || LocatorDetector.isLocatorMethod(view, valueStart + 1, valueEnd - 1);
+        } else if (CDPJsonScanner.regionEquals(view, keyStart, keyEnd, "params")) {
+            needsText = view.charAt(valueStart) != '{';
+        } else if (CDPJsonScanner.regionEquals(view, keyStart, keyEnd, "sessionId")) {
+            needsText = view.charAt(valueStart) != '"';
+        } else {
+            needsText = true;
+        }
+        return !needsText;
+    }
+}
@@ -0,0 +1,64 @@
+package com.cdpproxy.proxy;
+
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+/**
+ * Handshake for the Playwright endpoint with {@code permessage-deflate}
+ * switched on or off. Tomcat negotiates the extension whenever a client
+ * offers it, reading the offer straight from the request, so switching it off
+ * means hiding the offer from the container.
+ */
+public class ClientHandshakeHandler implements HandshakeHandler {
+
+    private static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    private final HandshakeHandler handshake = new DefaultHandshakeHandler();
+    private final boolean compression;
+
+    public ClientHandshakeHandler(boolean compression) {
+        this.compression = compression;
+    }
+
+    @Override
+    public boolean doHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               org.springframework.web.socket.WebSocketHandler wsHandler,
+                               Map<String, Object> attributes) throws HandshakeFailureException {
+        if (!compression && request instanceof ServletServerHttpRequest) {
+            request = new ServletServerHttpRequest(
+                    withoutExtensions(((ServletServerHttpRequest) request).getServletRequest()));
+        }
+        return handshake.doHandshake(request, response, wsHandler, attributes);
+    }
+
+    static HttpServletRequest withoutExtensions(HttpServletRequest request) {
+        return new HttpServletRequestWrapper(request) {
+            @Override
+            public String getHeader(String name) {
+                return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? null : super.getHeader(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaders(String name) {
+                return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? Collections.emptyEnumeration()
+                        : super.getHeaders(name);
+            }
+
+            @Override
+            public Enumeration<String> getHeaderNames() {
+                return Collections.enumeration(Collections.list(super.getHeaderNames()).stream()
+                        .filter(name -> !EXTENSIONS_HEADER.equalsIgnoreCase(name))
+                        .toList());
+            }
+        };
+    }
+}
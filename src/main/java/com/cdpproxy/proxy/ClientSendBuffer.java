@@ -0,0 +1,477 @@
+package com.cdpproxy.proxy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import jakarta.websocket.RemoteEndpoint;
+import jakarta.websocket.Session;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import com.cdpproxy.util.ProxyThreads;
+
+/**
+ * Outbound frames to one Playwright client, decoupled from the thread that
+ * produces them. {@link #send} only appends to a buffer; frames are written
+ * one at a time through the container's asynchronous remote endpoint, each
+ * completion starting the next write, so the browser reader thread never
+ * waits on a slow client socket.
+ * <p>
+ * Like Spring's {@code ConcurrentWebSocketSessionDecorator}, the buffer is
+ * bounded by size and by how long a single write may stay outstanding. When
+ * either limit is exceeded the {@link OverflowPolicy} decides: the session is
+ * closed, or (with {@code DROP_EVENTS}) events are dropped while responses,
+ * which the client is waiting for, still go out or close the session.
+ * <p>
+ * Fragmented browser messages are relayed {@link #sendPart part by part}.
+ * Frames queued while such a message is open are held back until its last
+ * part, so they never land between two fragments. Parts are never dropped;
+ * a client that cannot take them is closed.
+ * <p>
+ * Frames given as bytes ({@link #sendBinary}) are written as binary frames
+ * without being decoded or re-encoded.
+ * <p>
+ * When the session negotiated {@code permessage-deflate}, the container
+ * compresses every frame out of sight. To tell what that costs and saves,
+ * every n-th frame is also compressed here into a {@link CompressionMeter}.
+ * Each sample is compressed on its own, so the ratio slightly understates
+ * the container's, whose compressor keeps its window across frames.
+ */
+public class ClientSendBuffer {
+    private static final Logger logger = Logger.getLogger(ClientSendBuffer.class.getName());
+
+    /** Blocking fallback for sessions without an asynchronous endpoint, and for closing sessions */
+    private static final ExecutorService BLOCKING_SENDS = ProxyThreads.perTask("ClientSender");
+
+    /**
+     * What happens when a client cannot keep up
+     */
+    public enum OverflowPolicy {
+        /** Close the session, as Spring's decorator does */
+        TERMINATE,
+        /** Drop events; close the session only when a response does not fit */
+        DROP_EVENTS
+    }
+
+    /**
+     * Writes one frame and reports completion (null on success) exactly once
+     */
+    interface Transport {
+        void send(String text, Consumer<Throwable> done);
+
+        /**
+         * Write one part of a fragmented message
+         */
+        void sendPart(String text, boolean last, Consumer<Throwable> done);
+
+        void sendBinary(ByteBuffer bytes, Consumer<Throwable> done);
+    }
+
+    private static final class Frame {
+        final String text;
+        final ByteBuffer bytes;
+        final boolean part;
+        final boolean last;
+
+        Frame(String text, boolean part, boolean last) {
+            this.text = text;
+            this.bytes = null;
+            this.part = part;
+            this.last = last;
+        }
+
+        Frame(ByteBuffer bytes) {
+            this.text = null;
+            this.bytes = bytes;
+            this.part = false;
+            this.last = true;
+        }
+
+        int size() {
+            return text != null ? text.length() : bytes.remaining();
+        }
+    }
+
+    private final WebSocketSession session;
+    private final Transport transport;
+    private final long bufferLimit;
+    private final long sendTimeLimitMillis;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ArrayDeque<Frame> buffer = new ArrayDeque<>();
+    /** Whole frames waiting for the fragmented message in progress to end */
+    private final ArrayDeque<Frame> held = new ArrayDeque<>();
+    private boolean partOpen;
+    private long bufferedBytes;
+    private boolean sending;
+    private long sendStartedAt;
+    /** True while {@link #drain} is inside {@link Transport#send} */
+    private boolean dispatching;
+    private boolean completedInline;
+    private boolean terminated;
+    private volatile boolean binaryFrames;
+
+    // Compression sampling, used by one drain at a time
+    private CompressionMeter compressionMeter;
+    private int sampleInterval;
+    private int untilSample;
+    private Deflater sampler;
+    private byte[] sampleOutput;
+
+    private long sent;
+    private long sentParts;
+    private long sentBinary;
+    private long dropped;
+    private long maxBufferedBytes;
+    private long maxSendMillis;
+
+    /**
+     * @param bufferLimit         characters that may wait for the client (0 = unlimited)
+     * @param sendTimeLimitMillis longest a single write may be outstanding (0 = unlimited)
+     */
+    public ClientSendBuffer(WebSocketSession session, long bufferLimit, long sendTimeLimitMillis,
+                            OverflowPolicy overflowPolicy) {
+        this(session, transportFor(session), bufferLimit, sendTimeLimitMillis, overflowPolicy);
+    }
+
+    ClientSendBuffer(WebSocketSession session, Transport transport, long bufferLimit, long sendTimeLimitMillis,
+                     OverflowPolicy overflowPolicy) {
+        this.session = session;
+        this.transport = transport;
+        this.bufferLimit = bufferLimit > 0 ? bufferLimit : Long.MAX_VALUE;
+        this.sendTimeLimitMillis = sendTimeLimitMillis > 0 ? sendTimeLimitMillis : Long.MAX_VALUE;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    private static Transport transportFor(WebSocketSession session) {
+        WebSocketSession unwrapped = WebSocketSessionDecorator.unwrap(session);
+        Session nativeSession = unwrapped instanceof NativeWebSocketSession
+                ? ((NativeWebSocketSession) unwrapped).getNativeSession(Session.class) : null;
+        RemoteEndpoint.Async remote = nativeSession != null ? nativeSession.getAsyncRemote() : null;
+        return new Transport() {
+            @Override
+            public void send(String text, Consumer<Throwable> done) {
+                if (remote != null) {
+                    remote.sendText(text, result -> done.accept(result.getException()));
+                } else {
+                    sendBlocking(session, new TextMessage(text), done);
+                }
+            }
+
+            @Override
+            public void sendPart(String text, boolean last, Consumer<Throwable> done) {
+                // The asynchronous endpoint has no partial writes
+                sendBlocking(session, new TextMessage(text, last), done);
+            }
+
+            @Override
+            public void sendBinary(ByteBuffer bytes, Consumer<Throwable> done) {
+                if (remote != null) {
+                    remote.sendBinary(bytes, result -> done.accept(result.getException()));
+                } else {
+                    sendBlocking(session, new BinaryMessage(bytes), done);
+                }
+            }
+        };
+    }
+
+    private static void sendBlocking(WebSocketSession session, WebSocketMessage<?> message, Consumer<Throwable> done) {
+        BLOCKING_SENDS.execute(() -> {
+            try {
+                session.sendMessage(message);
+                done.accept(null);
+            } catch (Throwable e) {
+                done.accept(e);
+            }
+        });
+    }
+
+    public WebSocketSession session() {
+        return session;
+    }
+
+    /**
+     * Relay browser frames to this client as binary frames of their UTF-8
+     * bytes, so they are never decoded unless the proxy inspects them
+     */
+    public ClientSendBuffer binaryFrames(boolean binaryFrames) {
+        this.binaryFrames = binaryFrames;
+        return this;
+    }
+
+    public boolean binaryFrames() {
+        return binaryFrames;
+    }
+
+    /**
+     * Count the session into {@code meter} if it negotiated {@code permessage-deflate},
+     * and then estimate compression from every {@code sampleInterval}-th frame (0 = never)
+     */
+    public ClientSendBuffer compressionSampling(CompressionMeter meter, int sampleInterval) {
+        if (!negotiatedDeflate(session)) {
+            return this;
+        }
+        meter.negotiated();
+        if (sampleInterval > 0) {
+            synchronized (this) {
+                this.compressionMeter = meter;
+                this.sampleInterval = sampleInterval;
+                this.untilSample = sampleInterval;
+            }
+        }
+        return this;
+    }
+
+    static boolean negotiatedDeflate(WebSocketSession session) {
+        List<WebSocketExtension> extensions = session.getExtensions();
+        if (extensions != null) {
+            for (WebSocketExtension extension : extensions) {
+                if ("permessage-deflate".equals(extension.getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queue a frame for the client without waiting for the socket
+     *
+     * @param event true for CDP events, which {@link OverflowPolicy#DROP_EVENTS} may drop
+     * @return false when the frame was dropped or the session is being closed
+     */
+    public boolean send(String message, boolean event) {
+        return enqueue(new Frame(message, false, true), event);
+    }
+
+    /**
+     * Queue a frame given as UTF-8 bytes, written to the client as a binary frame.
+     * The buffer must not be modified afterwards.
+     *
+     * @param event true for CDP events, which {@link OverflowPolicy#DROP_EVENTS} may drop
+     * @return false when the frame was dropped or the session is being closed
+     */
+    public boolean sendBinary(ByteBuffer message, boolean event) {
+        return enqueue(new Frame(message), event);
+    }
+
+    /**
+     * Queue one part of a fragmented message. Parts come from a single thread,
+     * in order, the last one with {@code last} set.
+     *
+     * @return false when the session is being closed
+     */
+    public boolean sendPart(String part, boolean last) {
+        return enqueue(new Frame(part, true, last), false);
+    }
+
+    private boolean enqueue(Frame frame, boolean event) {
+        synchronized (this) {
+            if (terminated) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            boolean stuck = sending && now - sendStartedAt > sendTimeLimitMillis;
+            boolean full = bufferedBytes + frame.size() > bufferLimit;
+            if (stuck || full) {
+                if (event && overflowPolicy == OverflowPolicy.DROP_EVENTS) {
+                    dropped++;
+                    return false;
+                }
+                terminate(stuck ? "Client did not accept a frame within " + sendTimeLimitMillis + "ms"
+                        : "Client send buffer exceeded " + bufferLimit + " bytes");
+                return false;
+            }
+            bufferedBytes += frame.size();
+            maxBufferedBytes = Math.max(maxBufferedBytes, bufferedBytes);
+            if (frame.part) {
+                buffer.add(frame);
+                partOpen = !frame.last;
+                if (!partOpen) {
+                    buffer.addAll(held);
+                    held.clear();
+                }
+            } else if (partOpen) {
+                held.add(frame);
+                return true;
+            } else {
+                buffer.add(frame);
+            }
+            if (sending) {
+                return true;
+            }
+            sending = true;
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * Write buffered frames until the buffer is empty or a write completes
+     * asynchronously, in which case its completion continues the loop. Writes
+     * that complete inline are looped over rather than recursed into.
+     */
+    private void drain() {
+        while (true) {
+            Frame next;
+            boolean sample = false;
+            synchronized (this) {
+                next = terminated ? null : buffer.poll();
+                if (next == null) {
+                    sending = false;
+                    return;
+                }
+                bufferedBytes -= next.size();
+                if (next.part) {
+                    sentParts++;
+                } else if (next.bytes != null) {
+                    sentBinary++;
+                }
+                if (compressionMeter != null && --untilSample == 0) {
+                    untilSample = sampleInterval;
+                    sample = true;
+                }
+                sendStartedAt = System.currentTimeMillis();
+                dispatching = true;
+                completedInline = false;
+            }
+            if (sample) {
+                sampleCompression(next);
+            }
+            try {
+                if (next.part) {
+                    transport.sendPart(next.text, next.last, this::sendCompleted);
+                } else if (next.bytes != null) {
+                    transport.sendBinary(next.bytes, this::sendCompleted);
+                } else {
+                    transport.send(next.text, this::sendCompleted);
+                }
+            } catch (RuntimeException e) {
+                sendCompleted(e);
+            }
+            synchronized (this) {
+                dispatching = false;
+                if (!completedInline) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compress a frame as {@code permessage-deflate} would, discarding the output
+     */
+    private void sampleCompression(Frame frame) {
+        if (sampler == null) {
+            // The container's compressor settings
+            sampler = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            sampleOutput = new byte[8192];
+        }
+        long start = CompressionMeter.cpuNanos();
+        long uncompressed;
+        if (frame.text != null) {
+            byte[] utf8 = frame.text.getBytes(StandardCharsets.UTF_8);
+            uncompressed = utf8.length;
+            sampler.setInput(utf8);
+        } else {
+            uncompressed = frame.bytes.remaining();
+            sampler.setInput(frame.bytes.duplicate());
+        }
+        long compressed = 0;
+        int written;
+        do {
+            written = sampler.deflate(sampleOutput, 0, sampleOutput.length, Deflater.SYNC_FLUSH);
+            compressed += written;
+        } while (written == sampleOutput.length);
+        sampler.reset();
+        // Less the flush marker, which permessage-deflate leaves off
+        compressionMeter.recordDeflate(uncompressed, Math.max(0, compressed - 4), start);
+    }
+
+    private void sendCompleted(Throwable error) {
+        synchronized (this) {
+            maxSendMillis = Math.max(maxSendMillis, System.currentTimeMillis() - sendStartedAt);
+            if (error != null) {
+                logger.warning("Failed to send to Playwright client " + session.getId() + ": " + error.getMessage());
+                terminated = true;
+                buffer.clear();
+                held.clear();
+                bufferedBytes = 0;
+                sending = false;
+                return;
+            }
+            sent++;
+            if (dispatching) {
+                completedInline = true;
+                return;
+            }
+        }
+        drain();
+    }
+
+    private void terminate(String reason) {
+        logger.warning(reason + ", closing Playwright session " + session.getId());
+        terminated = true;
+        buffer.clear();
+        held.clear();
+        bufferedBytes = 0;
+        // Closing writes a close frame, which must not happen on the caller's thread either
+        BLOCKING_SENDS.execute(() -> {
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason(reason));
+            } catch (IOException e) {
+                logger.warning("Failed to close Playwright session " + session.getId() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    public synchronized Stats stats() {
+        long outstanding = sending ? System.currentTimeMillis() - sendStartedAt : 0;
+        return new Stats(buffer.size() + held.size(), bufferedBytes, maxBufferedBytes, sent, sentParts, sentBinary,
+                dropped, maxSendMillis, outstanding, terminated);
+    }
+
+    /**
+     * Point-in-time send buffer counters
+     */
+    public static final class Stats {
+        public final int buffered;
+        public final long bufferedBytes;
+        public final long maxBufferedBytes;
+        public final long sent;
+        /** Parts of fragmented messages handed to the socket */
+        public final long sentParts;
+        /** Frames relayed as bytes, never decoded */
+        public final long sentBinary;
+        public final long dropped;
+        public final long maxSendMillis;
+        /** Age of the write in progress, 0 when idle */
+        public final long outstandingMillis;
+        public final boolean terminated;
+
+        Stats(int buffered, long bufferedBytes, long maxBufferedBytes, long sent, long sentParts, long sentBinary,
+              long dropped, long maxSendMillis, long outstandingMillis, boolean terminated) {
+            this.buffered = buffered;
+            this.bufferedBytes = bufferedBytes;
+            this.maxBufferedBytes = maxBufferedBytes;
+            this.sent = sent;
+            this.sentParts = sentParts;
+            this.sentBinary = sentBinary;
+            this.dropped = dropped;
+            this.maxSendMillis = maxSendMillis;
+            this.outstandingMillis = outstandingMillis;
+            this.terminated = terminated;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cdpproxy.proxy;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compression counters for one leg of the proxy: how many connections
+ * negotiated {@code permessage-deflate}, the bytes going into and out of the
+ * compressor and decompressor, and the CPU time they took. Timings are the
+ * calling thread's CPU time where the JVM measures it, wall time otherwise.
+ */
+public class CompressionMeter {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean THREAD_CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported()
+            && THREADS.isThreadCpuTimeEnabled();
+
+    private final LongAdder negotiated = new LongAdder();
+    private final LongAdder deflatedFrames = new LongAdder();
+    private final LongAdder deflateInputBytes = new LongAdder();
+    private final LongAdder deflateOutputBytes = new LongAdder();
+    private final LongAdder deflateNanos = new LongAdder();
+    private final LongAdder inflatedFrames = new LongAdder();
+    private final LongAdder inflateInputBytes = new LongAdder();
+    private final LongAdder inflateOutputBytes = new LongAdder();
+    private final LongAdder inflateNanos = new LongAdder();
+
+    /**
+     * @return a timestamp for measuring work done on the current thread
+     */
+    static long cpuNanos() {
+        return THREAD_CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * A connection agreed on {@code permessage-deflate}
+     */
+    void negotiated() {
+        negotiated.increment();
+    }
+
+    /**
+     * @param startNanos {@link #cpuNanos()} taken before compressing
+     */
+    void recordDeflate(long uncompressedBytes, long compressedBytes, long startNanos) {
+        deflateNanos.add(cpuNanos() - startNanos);
+        deflatedFrames.increment();
+        deflateInputBytes.add(uncompressedBytes);
+        deflateOutputBytes.add(compressedBytes);
+    }
+
+    /**
+     * @param startNanos {@link #cpuNanos()} taken before decompressing
+     */
+    void recordInflate(long compressedBytes, long uncompressedBytes, long startNanos) {
+        inflateNanos.add(cpuNanos() - startNanos);
+        inflatedFrames.increment();
+        inflateInputBytes.add(compressedBytes);
+        inflateOutputBytes.add(uncompressedBytes);
+    }
+
+    public Stats stats() {
+        return new Stats(negotiated.sum(), deflatedFrames.sum(), deflateInputBytes.sum(), deflateOutputBytes.sum(),
+                deflateNanos.sum(), inflatedFrames.sum(), inflateInputBytes.sum(), inflateOutputBytes.sum(),
+                inflateNanos.sum());
+    }
+
+    /**
+     * Point-in-time compression counters
+     */
+    public static final class Stats {
+        /** Connections that negotiated compression */
+        public final long negotiated;
+        public final long deflatedFrames;
+        public final long deflateInputBytes;
+        public final long deflateOutputBytes;
+        public final long deflateCpuMicros;
+        public final long inflatedFrames;
+        public final long inflateInputBytes;
+        public final long inflateOutputBytes;
+        public final long inflateCpuMicros;
+
+        Stats(long negotiated, long deflatedFrames, long deflateInputBytes, long deflateOutputBytes,
+              long deflateNanos, long inflatedFrames, long inflateInputBytes, long inflateOutputBytes,
+              long inflateNanos) {
+            this.negotiated = negotiated;
+            this.deflatedFrames = deflatedFrames;
+            this.deflateInputBytes = deflateInputBytes;
+            this.deflateOutputBytes = deflateOutputBytes;
+            this.deflateCpuMicros = deflateNanos / 1000;
+            this.inflatedFrames = inflatedFrames;
+            this.inflateInputBytes = inflateInputBytes;
+            this.inflateOutputBytes = inflateOutputBytes;
+            this.inflateCpuMicros = inflateNanos / 1000;
+        }
+
+        /**
+         * @return uncompressed over compressed size of everything compressed, 0 before the first frame
+         */
+        public double deflateRatio() {
+            return deflateOutputBytes == 0 ? 0 : (double) deflateInputBytes / deflateOutputBytes;
+        }
+
+        /**
+         * @return uncompressed over compressed size of everything decompressed, 0 before the first frame
+         */
+        public double inflateRatio() {
+            return inflateInputBytes == 0 ? 0 : (double) inflateOutputBytes / inflateInputBytes;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.cdpproxy.proxy;
+
+import java.nio.ByteBuffer;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.framing.DataFrame;
+import org.java_websocket.framing.Framedata;
+
+/**
+ * {@code permessage-deflate} for browser connections, counted into a
+ * {@link CompressionMeter}.
+ * <p>
+ * The stock extension decides frame by frame, which breaks fragmented
+ * messages: a message whose first part is below the threshold gets compressed
+ * continuation frames, and the continuation frames of an uncompressed message
+ * are inflated all the same. Here the first frame decides for the whole
+ * message. It also compresses the whole backing array of a payload, so
+ * payloads that are a window of a larger array are copied out first.
+ */
+public class MeteredDeflateExtension extends PerMessageDeflateExtension {
+
+    private final int threshold;
+    private final CompressionMeter meter;
+
+    // One connection's frames in order: every connection works on its own copy
+    private boolean deflating;
+    private boolean inflating;
+
+    /**
+     * @param compressionLevel {@link java.util.zip.Deflater} level
+     * @param threshold        messages smaller than this many bytes are sent uncompressed
+     */
+    public MeteredDeflateExtension(int compressionLevel, int threshold, CompressionMeter meter) {
+        super(compressionLevel);
+        super.setThreshold(0);
+        this.threshold = threshold;
+        this.meter = meter;
+    }
+
+    public CompressionMeter meter() {
+        return meter;
+    }
+
+    @Override
+    public void encodeFrame(Framedata frame) {
+        if (!(frame instanceof DataFrame)) {
+            return;
+        }
+        ByteBuffer payload = frame.getPayloadData();
+        int uncompressed = payload.remaining();
+        boolean compress = frame.getOpcode() == Opcode.CONTINUOUS ? deflating : uncompressed >= threshold;
+        deflating = compress && !frame.isFin();
+        if (!compress) {
+            return;
+        }
+        if (!payload.hasArray() || payload.arrayOffset() != 0 || payload.position() != 0
+                || payload.limit() != payload.array().length) {
+            byte[] copy = new byte[uncompressed];
+            payload.duplicate().get(copy);
+            ((DataFrame) frame).setPayload(ByteBuffer.wrap(copy));
+        }
+        long start = CompressionMeter.cpuNanos();
+        super.encodeFrame(frame);
+        meter.recordDeflate(uncompressed, frame.getPayloadData().remaining(), start);
+    }
+
+    @Override
+    public void decodeFrame(Framedata frame) throws InvalidDataException {
+        if (!(frame instanceof DataFrame)) {
+            return;
+        }
+        boolean compressed = frame.getOpcode() == Opcode.CONTINUOUS ? inflating : frame.isRSV1();
+        inflating = compressed && !frame.isFin();
+        // A continuation frame with RSV1 set is left to the stock extension to reject
+        if (!compressed && !frame.isRSV1()) {
+            return;
+        }
+        int compressedBytes = frame.getPayloadData().remaining();
+        long start = CompressionMeter.cpuNanos();
+        super.decodeFrame(frame);
+        meter.recordInflate(compressedBytes, frame.getPayloadData().remaining(), start);
+    }
+
+    @Override
+    public boolean acceptProvidedExtensionAsClient(String inputExtension) {
+        boolean accepted = super.acceptProvidedExtensionAsClient(inputExtension);
+        if (accepted) {
+            meter.negotiated();
+        }
+        return accepted;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        deflating = false;
+        inflating = false;
+    }
+
+    @Override
+    public IExtension copyInstance() {
+        MeteredDeflateExtension copy = new MeteredDeflateExtension(getCompressionLevel(), threshold, meter);
+        copy.setClientNoContextTakeover(isClientNoContextTakeover());
+        copy.setServerNoContextTakeover(isServerNoContextTakeover());
+        return copy;
+    }
+}
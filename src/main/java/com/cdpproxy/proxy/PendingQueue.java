@@ -0,0 +1,124 @@
+package com.cdpproxy.proxy;
+
+import java.util.ArrayDeque;
+
+/**
+ * Messages of one Playwright session waiting for its browser connection,
+ * bounded by message count and size.
+ * <p>
+ * Reaching either limit (the high-water mark) saturates the queue: offers are
+ * refused until it drains below the low-water mark, so a client that was
+ * pushed back does not flap on every single message. Sizes are counted in
+ * characters, which for the ASCII JSON that CDP sends equals bytes.
+ * Callers synchronize on the queue to make a check-then-act sequence atomic.
+ */
+public class PendingQueue {
+
+    /**
+     * What happens to a client that reaches the high-water mark
+     */
+    public enum OverflowPolicy {
+        /** Stop reading from the client until the queue drains */
+        PAUSE,
+        /** Answer every further command with a CDP error */
+        FAIL_FAST
+    }
+
+    private final ArrayDeque<String> messages = new ArrayDeque<>();
+    private final int maxMessages;
+    private final long maxBytes;
+    private final int lowWaterMessages;
+    private final long lowWaterBytes;
+
+    private long bytes;
+    private boolean saturated;
+    private int maxDepth;
+    private long enqueued;
+    private long rejected;
+    private long saturations;
+
+    /**
+     * @param maxMessages   high-water mark by count (0 = unlimited)
+     * @param maxBytes      high-water mark by size (0 = unlimited)
+     * @param lowWaterRatio fraction of the limits the queue must drain to before accepting again
+     */
+    public PendingQueue(int maxMessages, long maxBytes, double lowWaterRatio) {
+        this.maxMessages = maxMessages > 0 ? maxMessages : Integer.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.lowWaterMessages = (int) (this.maxMessages * lowWaterRatio);
+        this.lowWaterBytes = (long) (this.maxBytes * lowWaterRatio);
+    }
+
+    /**
+     * @return false when the queue is saturated and the message was not added
+     */
+    public synchronized boolean offer(String message) {
+        if (saturated) {
+            rejected++;
+            return false;
+        }
+        messages.add(message);
+        bytes += message.length();
+        enqueued++;
+        maxDepth = Math.max(maxDepth, messages.size());
+        if (messages.size() >= maxMessages || bytes >= maxBytes) {
+            saturated = true;
+            saturations++;
+        }
+        return true;
+    }
+
+    public synchronized String peek() {
+        return messages.peek();
+    }
+
+    public synchronized String poll() {
+        String message = messages.poll();
+        if (message != null) {
+            bytes -= message.length();
+            if (saturated && messages.size() <= lowWaterMessages && bytes <= lowWaterBytes) {
+                saturated = false;
+            }
+        }
+        return message;
+    }
+
+    public synchronized boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    /**
+     * @return true from reaching the high-water mark until draining below the low-water mark
+     */
+    public synchronized boolean isSaturated() {
+        return saturated;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(messages.size(), bytes, maxDepth, enqueued, rejected, saturations, saturated);
+    }
+
+    /**
+     * Point-in-time queue counters
+     */
+    public static final class Stats {
+        public final int depth;
+        public final long bytes;
+        public final int maxDepth;
+        public final long enqueued;
+        public final long rejected;
+        public final long saturations;
+        public final boolean saturated;
+
+        Stats(int depth, long bytes, int maxDepth, long enqueued, long rejected, long saturations,
+              boolean saturated) {
+            this.depth = depth;
+            this.bytes = bytes;
+            this.maxDepth = maxDepth;
+            this.enqueued = enqueued;
+            this.rejected = rejected;
+            this.saturations = saturations;
+            this.saturated = saturated;
+        }
+    }
+}
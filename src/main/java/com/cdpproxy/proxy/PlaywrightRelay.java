@@ -0,0 +1,75 @@
+package com.cdpproxy.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import com.cdpproxy.util.PendingSelectors;
+import com.cdpproxy.util.Utf8JsonView;
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * Browser-to-client half of a Playwright session: relays browser frames to the
+ * session's {@link ClientSendBuffer}, passing each through a {@link BrowserMessageInspector}.
+ * Called by a single reader thread, whether the frames come from a dedicated
+ * browser connection or a shared, multiplexed one.
+ * <p>
+ * Fragmented messages are relayed part by part as they arrive; only a bounded
+ * prefix is kept, to dump and to settle the pending selector of the response.
+ * For clients that take {@link ClientSendBuffer#binaryFrames binary frames},
+ * frames stay UTF-8 bytes end to end and are decoded only for the dump and for
+ * the responses that go through locator verification.
+ */
+class PlaywrightRelay implements Consumer<String>, BrowserWebSocketClient.PartReceiver,
+        BrowserWebSocketClient.ByteReceiver {
+    /** Characters of a fragmented message kept for inspection */
+    static final int INSPECT_PREFIX_CHARS = 64 * 1024;
+
+    private final WebSocketSession playwrightSession;
+    private final ClientSendBuffer outbound;
+    private final BrowserMessageInspector inspector;
+    private final Utf8JsonView frameView = new Utf8JsonView();
+    private StreamedMessage streamed;
+
+    PlaywrightRelay(ClientSendBuffer outbound, PendingSelectors pendingSelectors) {
+        this.playwrightSession = outbound.session();
+        this.outbound = outbound;
+        this.inspector = new BrowserMessageInspector(playwrightSession.getId(), pendingSelectors);
+    }
+
+    @Override
+    public void accept(String message) {
+        boolean event = inspector.inspect(message);
+        // Forward the message back to Playwright
+        if (playwrightSession.isOpen()) {
+            outbound.send(message, event);
+        }
+    }
+
+    @Override
+    public boolean acceptBytes(ByteBuffer frame) {
+        if (!outbound.binaryFrames()) {
+            return false;
+        }
+        boolean event = inspector.inspect(frameView.wrap(frame));
+        if (playwrightSession.isOpen()) {
+            outbound.sendBinary(frame, event);
+        }
+        return true;
+    }
+
+    @Override
+    public void acceptPart(String part, boolean last) {
+        if (streamed == null) {
+            streamed = new StreamedMessage(INSPECT_PREFIX_CHARS);
+        }
+        streamed.append(part);
+        if (playwrightSession.isOpen()) {
+            outbound.sendPart(part, last);
+        }
+        if (!last) {
+            return;
+        }
+        StreamedMessage message = streamed;
+        streamed = null;
+        inspector.inspectStreamed(message);
+    }
+}
@@ -0,0 +1,101 @@
+package com.cdpproxy.proxy;
+
+import com.cdpproxy.util.CDPJsonScanner;
+
+/**
+ * A fragmented message relayed part by part. Only a bounded prefix is kept;
+ * its top-level {@code id}, {@code method} and {@code sessionId} are readable
+ * when they come before the cut, which for CDP's small envelope members ahead
+ * of a large {@code params} or {@code result} is the normal case.
+ * Instances belong to the single thread relaying the message.
+ */
+final class StreamedMessage {
+
+    private final int prefixLimit;
+    private final StringBuilder prefix = new StringBuilder();
+    private long length;
+    private int parts;
+
+    private boolean hasId;
+    private int id;
+    private String method;
+    private String sessionId;
+
+    /**
+     * @param prefixLimit characters kept for inspection and dumping
+     */
+    StreamedMessage(int prefixLimit) {
+        this.prefixLimit = prefixLimit;
+    }
+
+    void append(CharSequence part) {
+        parts++;
+        length += part.length();
+        int room = prefixLimit - prefix.length();
+        if (room > 0) {
+            prefix.append(part, 0, Math.min(room, part.length()));
+        }
+    }
+
+    /**
+     * Read the envelope members of the prefix; members cut off by the limit are not seen
+     */
+    void inspect() {
+        hasId = false;
+        method = null;
+        sessionId = null;
+        CDPJsonScanner.scanObject(prefix, 0, prefix.length(), this::member);
+    }
+
+    private boolean member(int keyStart, int keyEnd, int valueStart, int valueEnd) {
+        if (CDPJsonScanner.regionEquals(prefix, keyStart, keyEnd, "id")) {
+            long value = CDPJsonScanner.parseInt(prefix, valueStart, valueEnd);
+            if (value != CDPJsonScanner.NOT_AN_INT) {
+                hasId = true;
+                id = (int) value;
+            }
+        } else if (CDPJsonScanner.regionEquals(prefix, keyStart, keyEnd, "method")) {
+            method = stringValue(valueStart, valueEnd);
+        } else if (CDPJsonScanner.regionEquals(prefix, keyStart, keyEnd, "sessionId")) {
+            sessionId = stringValue(valueStart, valueEnd);
+        }
+        return true;
+    }
+
+    private String stringValue(int valueStart, int valueEnd) {
+        // Method names and session ids never contain escapes
+        return prefix.charAt(valueStart) == '"' ? prefix.substring(valueStart + 1, valueEnd - 1) : null;
+    }
+
+    String prefix() {
+        return prefix.toString();
+    }
+
+    boolean truncated() {
+        return length > prefix.length();
+    }
+
+    long length() {
+        return length;
+    }
+
+    int parts() {
+        return parts;
+    }
+
+    boolean hasId() {
+        return hasId;
+    }
+
+    int id() {
+        return id;
+    }
+
+    String method() {
+        return method;
+    }
+
+    String sessionId() {
+        return sessionId;
+    }
+}
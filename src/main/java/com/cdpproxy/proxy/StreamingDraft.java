@@ -0,0 +1,92 @@
+package com.cdpproxy.proxy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import org.java_websocket.WebSocketImpl;
+import org.java_websocket.drafts.Draft;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.exceptions.InvalidDataException;
+import org.java_websocket.extensions.IExtension;
+import org.java_websocket.framing.Framedata;
+
+/**
+ * RFC 6455 draft that hands the frames of a fragmented text message to a
+ * {@link FragmentListener} as they arrive. The stock draft collects every
+ * fragment and delivers the assembled message, which holds a complete
+ * multi-megabyte payload (twice, once as bytes and once decoded) before the
+ * first byte can be relayed. Unfragmented text frames are offered to the
+ * listener undecoded first; binary messages, control frames and text frames
+ * the listener declines are processed as usual.
+ */
+class StreamingDraft extends Draft_6455 {
+
+    /**
+     * Receives the payloads of one fragmented text message in order, on the connection's reader thread
+     */
+    interface FragmentListener {
+        void onTextFragment(ByteBuffer payload, boolean last);
+
+        /**
+         * @return false to have the frame decoded and delivered as a {@code String}
+         */
+        boolean onTextFrame(ByteBuffer payload);
+    }
+
+    /** Shared with the copies: the connection works on a copy made before the listener is set */
+    private final AtomicReference<FragmentListener> listener;
+    private boolean streaming;
+
+    StreamingDraft() {
+        this(List.of());
+    }
+
+    /**
+     * @param extensions offered to the server, such as {@link MeteredDeflateExtension}
+     */
+    StreamingDraft(List<IExtension> extensions) {
+        this(extensions, new AtomicReference<>());
+    }
+
+    private StreamingDraft(List<IExtension> extensions, AtomicReference<FragmentListener> listener) {
+        super(extensions);
+        this.listener = listener;
+    }
+
+    void listener(FragmentListener listener) {
+        this.listener.set(listener);
+    }
+
+    @Override
+    public void processFrame(WebSocketImpl webSocket, Framedata frame) throws InvalidDataException {
+        FragmentListener listener = this.listener.get();
+        Opcode opcode = frame.getOpcode();
+        boolean fragment = (opcode == Opcode.TEXT && !frame.isFin()) || (opcode == Opcode.CONTINUOUS && streaming);
+        if (listener != null && opcode == Opcode.TEXT && frame.isFin() && listener.onTextFrame(frame.getPayloadData())) {
+            return;
+        }
+        if (listener == null || !fragment) {
+            super.processFrame(webSocket, frame);
+            return;
+        }
+        streaming = !frame.isFin();
+        listener.onTextFragment(frame.getPayloadData(), frame.isFin());
+    }
+
+    @Override
+    public Draft copyInstance() {
+        List<IExtension> extensions = new ArrayList<>();
+        for (IExtension extension : getKnownExtensions()) {
+            extensions.add(extension.copyInstance());
+        }
+        return new StreamingDraft(extensions, listener);
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        streaming = false;
+    }
+}
@@ -1,493 +1,552 @@
 package com.cdpproxy.proxy;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
-import com.cdpproxy.util.LocatorDetector;
-import com.cdpproxy.util.LocatorVerificationTracker;
-import org.java_websocket.client.WebSocketClient;
-import org.java_websocket.handshake.ServerHandshake;
-import org.json.JSONArray;
+import com.cdpproxy.dump.DumpEntry;
+import com.cdpproxy.util.CDPMessageEnvelope;
+import org.apache.tomcat.websocket.WsSession;
 import org.json.JSONObject;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
 import com.cdpproxy.util.CDPMessageDumper;
+import com.cdpproxy.util.PendingSelectors;
+import com.cdpproxy.util.ProxyThreads;
 
-@Component
-public class WebSocketHandler extends TextWebSocketHandler {
+public class WebSocketHandler extends AbstractWebSocketHandler {
     private static final Logger logger = Logger.getLogger(WebSocketHandler.class.getName());
-    private final Map<String, BrowserWebSocketClient> browserConnections = new HashMap<>();
-    private final Map<String, Queue<String>> pendingMessages = new HashMap<>();
-    private final Map<String, Map<Integer, String>> sessionPendingSelectors = new ConcurrentHashMap<>();
+    private final Map<String, BrowserLink> browserConnections = new ConcurrentHashMap<>();
+    private final Map<String, PendingQueue> pendingMessages = new ConcurrentHashMap<>();
+    private final Map<String, ClientSendBuffer> outbound = new ConcurrentHashMap<>();
+    private final Set<String> paused = ConcurrentHashMap.newKeySet();
+    private final Set<String> connecting = ConcurrentHashMap.newKeySet();
+    private final Map<String, BrowserBackend> sessionBackends = new ConcurrentHashMap<>();
+    private final Map<String, StreamedCommand> streamedCommands = new ConcurrentHashMap<>();
+    private volatile int streamPrefixChars;
+    private volatile boolean binaryFrames;
+    private final Map<String, ByteArrayOutputStream> binaryParts = new ConcurrentHashMap<>();
+    private final Map<String, ClientFramePrescan> framePrescans = new ConcurrentHashMap<>();
+    private final BrowserRouter router;
+    private final Map<String, PendingSelectors> sessionPendingSelectors = new ConcurrentHashMap<>();
+    private final Map<String, Integer> reconnectAttempts = new ConcurrentHashMap<>();
+    private final Backoff reconnectBackoff;
+    private final int maxReconnectAttempts;
+    private final Supplier<PendingQueue> pendingQueues;
+    private final PendingQueue.OverflowPolicy overflowPolicy;
+    private final Function<WebSocketSession, ClientSendBuffer> sendBuffers;
+    private final ScheduledExecutorService reconnects = Executors.newSingleThreadScheduledExecutor(
+            ProxyThreads.named("BrowserReconnect"));
+
+    public WebSocketHandler(BrowserRouter router) {
+        this(router, new Backoff(200, 5000), 5, () -> new PendingQueue(1000, 16 * 1024 * 1024, 0.5),
+                PendingQueue.OverflowPolicy.PAUSE,
+                session -> new ClientSendBuffer(session, 16 * 1024 * 1024, 10000, ClientSendBuffer.OverflowPolicy.TERMINATE));
+    }
+
+    /**
+     * @param maxReconnectAttempts connects retried per session before the client gets an error
+     * @param pendingQueues        creates the bounded queue of each session
+     * @param overflowPolicy       what to do with a client whose queue is saturated
+     * @param sendBuffers          creates the outbound buffer of each session
+     */
+    public WebSocketHandler(BrowserRouter router, Backoff reconnectBackoff, int maxReconnectAttempts,
+                            Supplier<PendingQueue> pendingQueues, PendingQueue.OverflowPolicy overflowPolicy,
+                            Function<WebSocketSession, ClientSendBuffer> sendBuffers) {
+        this.router = router;
+        this.reconnectBackoff = reconnectBackoff;
+        this.maxReconnectAttempts = maxReconnectAttempts;
+        this.pendingQueues = pendingQueues;
+        this.overflowPolicy = overflowPolicy;
+        this.sendBuffers = sendBuffers;
+    }
+
+    /**
+     * Take client messages in the parts the container reads them in, relaying
+     * the ones that span several parts without assembling them. The container's
+     * text buffer then bounds the part size rather than the message size.
+     *
+     * @param inspectPrefixChars characters of a streamed message kept for inspection and dumping
+     */
+    public void streamLargeMessages(int inspectPrefixChars) {
+        this.streamPrefixChars = inspectPrefixChars;
+    }
 
-    @Value("${cdp.browser.http.url:http://localhost:9222}")
-    private String browserHttpUrl;
+    /**
+     * Relay CDP frames as UTF-8 bytes where the proxy does not need their text:
+     * browser frames go to the client as binary frames, and binary client
+     * frames go upstream as text frames, neither decoded nor re-encoded.
+     * Otherwise binary client frames are refused.
+     */
+    public void relayBinaryFrames(boolean binaryFrames) {
+        this.binaryFrames = binaryFrames;
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        return streamPrefixChars > 0;
+    }
+
+    /**
+     * A client message being received in parts
+     */
+    private static final class StreamedCommand {
+        final StreamedMessage message;
+        /** Connection the parts go straight to, or null while they are assembled for the queue */
+        final BrowserLink link;
+        final StringBuilder assembled;
+        boolean failed;
+
+        StreamedCommand(StreamedMessage message, BrowserLink link) {
+            this.message = message;
+            this.link = link;
+            this.assembled = link == null ? new StringBuilder() : null;
+        }
+    }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         logger.info("New connection from Playwright client: " + session.getId());
-        pendingMessages.put(session.getId(), new ConcurrentLinkedQueue<>());
-        sessionPendingSelectors.put(session.getId(), new ConcurrentHashMap<>());
+        outbound.put(session.getId(), sendBuffers.apply(session).binaryFrames(binaryFrames));
+        pendingMessages.put(session.getId(), pendingQueues.get());
+        sessionPendingSelectors.put(session.getId(), new PendingSelectors());
         if (sessionPendingSelectors.size() == 1) {
-            initLocatorDetection();
+            ClientCommands.initLocatorDetection();
         }
+        // Take a pooled connection (or start opening one) before the first message arrives
+        connectToBrowser(session);
     }
 
-    private String sanitizeMessage(String message) {
-        try {
-            JSONObject json = new JSONObject(message);
-            JSONObject sanitized = new JSONObject();
-
-            if (json.has("id")) {
-                sanitized.put("id", json.get("id"));
-            }
-            if (json.has("method")) {
-                sanitized.put("method", json.getString("method"));
-            }
-            if (json.has("params")) {
-                sanitized.put("params", json.getJSONObject("params"));
-            }
-            if (json.has("sessionId") && json.get("sessionId") instanceof String) {
-                sanitized.put("sessionId", json.getString("sessionId"));
-            }
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
+        if (!message.isLast() || streamedCommands.containsKey(session.getId())) {
+            handlePart(session, message.getPayload(), message.isLast());
+            return;
+        }
+        PendingSelectors pendingSelectors = sessionPendingSelectors.get(session.getId());
+        if (pendingSelectors == null) {
+            // The Playwright client is already gone
+            return;
+        }
+        CDPMessageEnvelope envelope = ClientCommands.inspect(session.getId(), message.getPayload(), pendingSelectors);
 
-            return sanitized.toString();
-        } catch (Exception e) {
-            logger.warning("Failed to sanitize message, using original: " + e.getMessage());
-            return message;
+        if (!relayToBrowser(session, ClientCommands.sanitize(envelope))) {
+            // Saturated, and either fail-fast or the client cannot be paused
+            rejectCommand(session, envelope, "Too many messages waiting for the browser connection");
         }
     }
 
+    /**
+     * Relay a binary client frame upstream without decoding it, unless the
+     * dump, sanitizing or locator tracking needs its text or the browser
+     * connection is not ready to take it
+     */
     @Override
-    protected void handleTextMessage(WebSocketSession session, TextMessage message) {
-        String payload = message.getPayload();
-        CDPMessageDumper.dumpMessage("FROM_PLAYWRIGHT", payload);
-        String sanitizedPayload = sanitizeMessage(payload);
-
-        try {
-            JSONObject json = new JSONObject(payload);
-
-            // Track CSS selectors
-            if (json.has("id") && json.has("method") && json.getString("method").equals("DOM.querySelector")) {
-                int id = json.getInt("id");
-                String selector = json.getJSONObject("params").getString("selector");
-                Map<Integer, String> pendingSelectors = sessionPendingSelectors.computeIfAbsent(
-                        session.getId(), k -> new ConcurrentHashMap<>());
-                pendingSelectors.put(id, selector);
-                LocatorVerificationTracker.trackLocator(session.getId(), selector, "CSS");
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        if (!binaryFrames) {
+            try {
+                session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Binary messages not supported"));
+            } catch (IOException e) {
+                logger.warning("Failed to close Playwright session " + session.getId() + ": " + e.getMessage());
             }
-            // Enhanced detection for all types of locator operations
-            else if (json.has("method") && json.has("params")) {
-                LocatorDetector.SelectorInfo selectorInfo = LocatorDetector.extractSelector(json);
-                if (selectorInfo != null) {
-                    LocatorVerificationTracker.trackLocator(
-                            session.getId(), selectorInfo.selector, selectorInfo.type);
-                }
+            return;
+        }
+        String sessionId = session.getId();
+        ByteBuffer frame = message.getPayload();
+        if (!message.isLast() || binaryParts.containsKey(sessionId)) {
+            // Binary messages larger than the container buffer are rare enough to assemble
+            ByteArrayOutputStream parts = binaryParts.computeIfAbsent(sessionId, k -> new ByteArrayOutputStream());
+            byte[] part = new byte[frame.remaining()];
+            frame.get(part);
+            parts.writeBytes(part);
+            if (!message.isLast()) {
+                return;
             }
-        } catch (Exception e) {
-            logger.warning("Failed to analyze message for locator tracking: " + e.getMessage());
+            binaryParts.remove(sessionId);
+            frame = ByteBuffer.wrap(parts.toByteArray());
         }
 
-        // Handle connection to browser
-        BrowserWebSocketClient browserClient = browserConnections.get(session.getId());
-
-        if (browserClient == null || !browserClient.isConnected()) {
-            // Queue message until connection established
-            Queue<String> queue = pendingMessages.get(session.getId());
-            if (queue != null) {
-                queue.add(sanitizedPayload);
+        if (!CDPMessageDumper.isEnabled()
+                && !framePrescans.computeIfAbsent(sessionId, k -> new ClientFramePrescan()).needsText(frame)) {
+            BrowserLink browserClient = browserConnections.get(sessionId);
+            PendingQueue queue = pendingMessages.get(sessionId);
+            if (queue == null) {
+                return;
             }
-
-            if (browserClient == null) {
-                try {
-                    String browserWsUrl = discoverBrowserWebSocketUrl();
-                    Map<Integer, String> pendingSelectors = sessionPendingSelectors.computeIfAbsent(
-                            session.getId(), k -> new ConcurrentHashMap<>());
-                    final BrowserWebSocketClient newBrowserClient = new BrowserWebSocketClient(
-                            new URI(browserWsUrl), session, pendingSelectors);
-                    browserConnections.put(session.getId(), newBrowserClient);
-                    newBrowserClient.connect();
-
-                    new Thread(() -> {
-                        try {
-                            if (newBrowserClient.waitForConnection(10, TimeUnit.SECONDS)) {
-                                processPendingMessages(session.getId());
-                            } else {
-                                try {
-                                    JSONObject errorMsg = new JSONObject();
-                                    errorMsg.put("error", "Timed out waiting for browser connection");
-                                    session.sendMessage(new TextMessage(errorMsg.toString()));
-                                } catch (IOException ex) {
-                                    logger.severe("Failed to send error to client: " + ex.getMessage());
-                                }
-                            }
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }).start();
-                } catch (Exception e) {
-                    logger.severe("Failed to connect to browser: " + e.getMessage());
+            synchronized (queue) {
+                if (browserClient != null && browserClient.isConnected() && queue.isEmpty()) {
                     try {
-                        JSONObject errorMsg = new JSONObject();
-                        errorMsg.put("error", "Failed to connect to browser: " + e.getMessage());
-                        session.sendMessage(new TextMessage(errorMsg.toString()));
-                    } catch (IOException ex) {
-                        logger.severe("Failed to send error to client: " + ex.getMessage());
+                        browserClient.sendUtf8(frame);
+                        return;
+                    } catch (Exception e) {
+                        logger.severe("Failed to send message to browser: " + e.getMessage());
                     }
                 }
             }
-        } else {
-            // Connection is already established, send the message right away
-            try {
-                browserClient.send(sanitizedPayload);
-            } catch (Exception e) {
-                logger.severe("Failed to send message to browser: " + e.getMessage());
-                Queue<String> queue = pendingMessages.get(session.getId());
-                if (queue != null) {
-                    queue.add(sanitizedPayload);
-                }
-
-                try {
-                    browserClient.reconnect();
-                } catch (Exception ex) {
-                    logger.severe("Failed to reconnect to browser: " + ex.getMessage());
-                }
-            }
         }
+        handleTextMessage(session, new TextMessage(StandardCharsets.UTF_8.decode(frame)));
     }
 
-    private void processPendingMessages(String sessionId) {
-        Queue<String> queue = pendingMessages.get(sessionId);
-        BrowserWebSocketClient browserClient = browserConnections.get(sessionId);
-
-        if (queue == null || browserClient == null) {
-            return;
+    /**
+     * Relay a message the container delivers in several parts. While the
+     * browser connection is ready the parts go straight upstream; otherwise the
+     * message is assembled and queued like any other. Streamed messages are
+     * neither sanitized nor searched for locators: only a bounded prefix is
+     * kept, for the dump and for the envelope members an error reply needs.
+     */
+    private void handlePart(WebSocketSession session, String part, boolean last) {
+        String sessionId = session.getId();
+        StreamedCommand command = streamedCommands.get(sessionId);
+        if (command == null) {
+            PendingQueue queue = pendingMessages.get(sessionId);
+            if (queue == null) {
+                return;
+            }
+            BrowserLink browserClient = browserConnections.get(sessionId);
+            BrowserLink link = null;
+            synchronized (queue) {
+                if (browserClient != null && browserClient.isConnected() && queue.isEmpty()) {
+                    link = browserClient;
+                }
+            }
+            command = new StreamedCommand(new StreamedMessage(streamPrefixChars), link);
+            streamedCommands.put(sessionId, command);
         }
 
-        String message;
-        while ((message = queue.poll()) != null) {
+        command.message.append(part);
+        if (command.assembled != null) {
+            command.assembled.append(part);
+        } else if (!command.failed) {
             try {
-                browserClient.send(message);
+                command.link.sendPart(part, last);
             } catch (Exception e) {
-                logger.severe("Failed to send queued message: " + e.getMessage());
-                queue.add(message);
-                break;
+                logger.severe("Failed to stream message to browser: " + e.getMessage());
+                command.failed = true;
             }
         }
-    }
-
-    @Override
-    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        logger.info("Connection closed from Playwright client: " + session.getId());
-        pendingMessages.remove(session.getId());
-        sessionPendingSelectors.remove(session.getId());
+        if (!last) {
+            return;
+        }
 
-        BrowserWebSocketClient browserClient = browserConnections.remove(session.getId());
-        if (browserClient != null) {
-            browserClient.close();
+        streamedCommands.remove(sessionId);
+        StreamedMessage message = command.message;
+        CDPMessageDumper.dumpMessage(DumpEntry.FROM_PLAYWRIGHT, sessionId, message.prefix());
+        message.inspect();
+        if (command.failed) {
+            rejectCommand(session, message.hasId(), message.id(), message.sessionId(),
+                    "Browser connection lost while streaming the message");
+            connectionLost(session, command.link);
+        } else if (command.assembled != null && !relayToBrowser(session, command.assembled.toString())) {
+            rejectCommand(session, message.hasId(), message.id(), message.sessionId(),
+                    "Too many messages waiting for the browser connection");
         }
     }
 
-    private String discoverBrowserWebSocketUrl() throws Exception {
-        // Try /json/version endpoint first
-        try {
-            HttpClient client = HttpClient.newHttpClient();
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(browserHttpUrl + "/json/version"))
-                    .build();
-
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Send a message to the browser, or queue it until the connection is ready
+     *
+     * @return false when the queue is saturated and the message was not accepted
+     */
+    private boolean relayToBrowser(WebSocketSession session, String payload) {
+        BrowserLink browserClient = browserConnections.get(session.getId());
+        PendingQueue queue = pendingMessages.get(session.getId());
+        if (queue == null) {
+            return true;
+        }
 
-            if (response.statusCode() == 200) {
-                JSONObject json = new JSONObject(response.body());
-                if (json.has("webSocketDebuggerUrl")) {
-                    return json.getString("webSocketDebuggerUrl");
+        boolean queued;
+        synchronized (queue) {
+            // Messages queued during the connect go first, so they are never overtaken
+            if (browserClient != null && browserClient.isConnected() && queue.isEmpty()) {
+                try {
+                    browserClient.send(payload);
+                    return true;
+                } catch (Exception e) {
+                    logger.severe("Failed to send message to browser: " + e.getMessage());
                 }
             }
-        } catch (Exception e) {
-            logger.warning("Failed to get browser WebSocket URL from /json/version: " + e.getMessage());
+            // Queue message until connection established
+            queued = queue.offer(payload);
+            if (queued && queue.isSaturated() && overflowPolicy == PendingQueue.OverflowPolicy.PAUSE) {
+                pause(session);
+            }
         }
 
-        // Fall back to targets list
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(browserHttpUrl + "/json/list"))
-                .build();
-
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-
-        if (response.statusCode() != 200) {
-            throw new Exception("Failed to get browser targets. Status code: " + response.statusCode());
+        if (browserClient == null) {
+            connectToBrowser(session);
+        } else if (browserClient.isConnected()) {
+            processPendingMessages(session);
+        } else {
+            connectionLost(session, browserClient);
         }
+        return queued;
+    }
 
-        JSONArray targets = new JSONArray(response.body());
-
-        if (targets.length() == 0) {
-            throw new Exception("No debugging targets found in Chrome");
+    /**
+     * Drop a browser connection that went away and reconnect later, off the
+     * thread handling client messages
+     */
+    private void connectionLost(WebSocketSession session, BrowserLink browserClient) {
+        String sessionId = session.getId();
+        // Only the first caller to notice the dead connection schedules the reconnect
+        if (!browserConnections.remove(sessionId, browserClient)) {
+            return;
         }
-
-        // Try to find a page target first
-        for (int i = 0; i < targets.length(); i++) {
-            JSONObject target = targets.getJSONObject(i);
-            if ("page".equals(target.optString("type")) && target.has("webSocketDebuggerUrl")) {
-                return target.getString("webSocketDebuggerUrl");
-            }
+        browserClient.close();
+        BrowserBackend backend = sessionBackends.remove(sessionId);
+        if (backend != null) {
+            router.release(backend);
         }
+        retryOrFail(session, "Browser connection lost");
+    }
 
-        // If no page target, take the first available
-        for (int i = 0; i < targets.length(); i++) {
-            JSONObject target = targets.getJSONObject(i);
-            if (target.has("webSocketDebuggerUrl")) {
-                return target.getString("webSocketDebuggerUrl");
-            }
+    /**
+     * Schedule another connect after a jittered backoff, or report {@code reason}
+     * to the client once the attempts are used up
+     */
+    private void retryOrFail(WebSocketSession session, String reason) {
+        String sessionId = session.getId();
+        if (!pendingMessages.containsKey(sessionId)) {
+            return;
+        }
+        int attempt = reconnectAttempts.merge(sessionId, 1, Integer::sum);
+        if (attempt > maxReconnectAttempts) {
+            reconnectAttempts.remove(sessionId);
+            logger.severe(reason);
+            sendError(session, reason);
+            // Let the client be answered (with errors while the queue stays saturated) instead of hanging
+            resume(session);
+            return;
+        }
+        long delay = reconnectBackoff.delayMillis(attempt - 1);
+        logger.warning(reason + ", reconnecting in " + delay + "ms (attempt " + attempt + " of "
+                + maxReconnectAttempts + ")");
+        try {
+            reconnects.schedule(() -> {
+                if (pendingMessages.containsKey(sessionId)) {
+                    connectToBrowser(session);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down
         }
-
-        throw new Exception("No valid WebSocket URL found in Chrome debugging targets");
     }
 
-    private static class BrowserWebSocketClient extends WebSocketClient {
-        private final WebSocketSession playwrightSession;
-        private volatile boolean isConnected = false;
-        private final CountDownLatch connectionLatch = new CountDownLatch(1);
-        private final Map<Integer, String> pendingSelectors;
-
-        public BrowserWebSocketClient(URI serverUri, WebSocketSession playwrightSession, Map<Integer, String> pendingSelectors) {
-            super(serverUri);
-            this.playwrightSession = playwrightSession;
-            this.pendingSelectors = pendingSelectors;
-            this.setConnectionLostTimeout(30000);
+    /**
+     * Route the session to a backend and acquire its browser connection from
+     * that backend's pool; queued messages are flushed from the completion callback
+     */
+    private void connectToBrowser(WebSocketSession session) {
+        String sessionId = session.getId();
+        if (!connecting.add(sessionId)) {
+            return;
         }
-
-        @Override
-        public void onOpen(ServerHandshake handshakedata) {
-            logger.info("Connected to browser WebSocket");
-            isConnected = true;
-            connectionLatch.countDown();
+        ClientSendBuffer sendBuffer = outbound.get(sessionId);
+        PendingSelectors pendingSelectors = sessionPendingSelectors.get(sessionId);
+        if (sendBuffer == null || pendingSelectors == null) {
+            // The Playwright client is already gone
+            connecting.remove(sessionId);
+            return;
         }
 
-        @Override
-        public void onMessage(String message) {
-            CDPMessageDumper.dumpMessage("FROM_BROWSER", message);
-
-            try {
-                JSONObject json = new JSONObject(message);
-
-                // Process locator verification
-                verifyLocatorsFromResponse(json);
-
-                // Check for broken locators in responses
-                checkForBrokenLocators(json);
-
-                // Forward the message back to Playwright
-                if (playwrightSession.isOpen()) {
-                    playwrightSession.sendMessage(new TextMessage(message));
-                }
-            } catch (Exception e) {
-                logger.warning("Failed to process browser message: " + e.getMessage());
+        BrowserBackend backend = sessionBackends.computeIfAbsent(sessionId, k -> router.acquire());
+        if (!pendingMessages.containsKey(sessionId)) {
+            // Closed meanwhile, possibly before the backend was recorded for afterConnectionClosed to release
+            connecting.remove(sessionId);
+            if (sessionBackends.remove(sessionId, backend)) {
+                router.release(backend);
             }
+            return;
         }
 
-        private void verifyLocatorsFromResponse(JSONObject json) {
-            try {
-                // Check for strict mode violations (working but multiple matches)
-                if (json.has("result") && json.getJSONObject("result").has("result")) {
-                    JSONObject result = json.getJSONObject("result");
-
-                    // Check for exception details with strict mode violation
-                    if (result.has("exceptionDetails") &&
-                            result.getJSONObject("exceptionDetails").has("exception")) {
-
-                        JSONObject exception = result.getJSONObject("exceptionDetails").getJSONObject("exception");
-
-                        if (exception.has("description") && exception.get("description") instanceof String) {
-                            String errorDesc = exception.getString("description");
-
-                            if (errorDesc.contains("strict mode violation") && errorDesc.contains("resolved to")) {
-                                int startIdx = errorDesc.indexOf("locator(") + 9;
-                                int endIdx = errorDesc.indexOf(")", startIdx);
-
-                                if (startIdx > 9 && endIdx > startIdx) {
-                                    String selectorWithQuotes = errorDesc.substring(startIdx, endIdx);
-                                    String selector = selectorWithQuotes.substring(1, selectorWithQuotes.length() - 1);
-                                    LocatorVerificationTracker.verifyLocator(playwrightSession.getId(), selector);
-                                }
-                            }
-                        }
-                    }
-
-                    // Check for successful locator with visible and attached properties
-                    if (json.has("id") && json.getJSONObject("result").has("result")) {
-                        int id = json.getInt("id");
-                        result = json.getJSONObject("result").getJSONObject("result");
-
-                        if (result.has("type") && result.getString("type").equals("object") &&
-                                result.has("value") && result.get("value") instanceof JSONObject) {
-
-                            JSONObject value = result.getJSONObject("value");
-
-                            if (value.has("o") && value.get("o") instanceof JSONArray) {
-                                JSONArray properties = value.getJSONArray("o");
-
-                                boolean isVisible = false;
-                                boolean isAttached = false;
-                                int elementCount = 0;
-                                String logText = "";
-
-                                for (int i = 0; i < properties.length(); i++) {
-                                    JSONObject property = properties.getJSONObject(i);
-
-                                    if (property.has("k") && property.has("v")) {
-                                        String key = property.getString("k");
-
-                                        if (key.equals("visible") && property.get("v") instanceof Boolean) {
-                                            isVisible = property.getBoolean("v");
-                                        }
-
-                                        if (key.equals("attached") && property.get("v") instanceof Boolean) {
-                                            isAttached = property.getBoolean("v");
-                                        }
-
-                                        if (key.equals("log") && property.get("v") instanceof String) {
-                                            logText = property.getString("v");
-
-                                            if (logText.contains("resolved to ")) {
-                                                try {
-                                                    int startIndex = logText.indexOf("resolved to ") + 12;
-                                                    int endIndex = logText.indexOf(" element", startIndex);
-                                                    if (endIndex > startIndex) {
-                                                        String countStr = logText.substring(startIndex, endIndex).trim();
-                                                        elementCount = Integer.parseInt(countStr);
-                                                    }
-                                                } catch (Exception ignored) {}
-                                            }
-                                        }
-                                    }
-                                }
-
-                                if ((isVisible && isAttached) || elementCount > 0 || logText.contains("resolved to")) {
-                                    String selector = findSelectorForId(id);
-                                    if (selector != null) {
-                                        LocatorVerificationTracker.verifyLocator(playwrightSession.getId(), selector);
-                                    }
-                                }
-                            }
-                        }
-                    }
+        backend.connect(sendBuffer, pendingSelectors).whenComplete((client, error) -> {
+            connecting.remove(sessionId);
+            if (error != null) {
+                // Route again on the next attempt, possibly to another backend
+                if (sessionBackends.remove(sessionId, backend)) {
+                    router.release(backend);
                 }
-            } catch (Exception e) {
-                logger.warning("Error verifying locators: " + e.getMessage());
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                String reason = cause instanceof TimeoutException
+                        ? cause.getMessage() : "Failed to connect to browser: " + cause.getMessage();
+                retryOrFail(session, reason);
+                return;
             }
-        }
-
-        private void checkForBrokenLocators(JSONObject json) {
-            try {
-                if (json.has("id")) {
-                    int id = json.getInt("id");
+            reconnectAttempts.remove(sessionId);
+            // Publish first, then look again: whichever of this and afterConnectionClosed removes it closes it
+            browserConnections.put(sessionId, client);
+            if (!pendingMessages.containsKey(sessionId)) {
+                // The Playwright client went away while we were connecting
+                if (browserConnections.remove(sessionId, client)) {
+                    client.close();
+                }
+                return;
+            }
+            processPendingMessages(session);
+        });
+    }
 
-                    // Remove pendingSelectors entry if it exists
-                    if (pendingSelectors.containsKey(id)) {
-                        pendingSelectors.remove(id);
-                    }
+    private void sendError(WebSocketSession session, String error) {
+        JSONObject errorMsg = new JSONObject();
+        errorMsg.put("error", error);
+        sendToClient(session, errorMsg.toString());
+    }
 
-                    // Check for success=false in result
-                    if (json.has("result") && json.getJSONObject("result").has("result")) {
-                        JSONObject result = json.getJSONObject("result").getJSONObject("result");
+    /**
+     * Queue a proxy-generated frame behind the browser frames already on their way to the client
+     */
+    private void sendToClient(WebSocketSession session, String message) {
+        ClientSendBuffer buffer = outbound.get(session.getId());
+        if (buffer != null) {
+            buffer.send(message, false);
+        }
+    }
 
-                        if (result.has("type") && result.getString("type").equals("object") &&
-                                result.has("value") && result.get("value") instanceof JSONObject) {
+    /**
+     * Answer a command that could not be queued with a CDP error, so the client fails fast
+     */
+    private void rejectCommand(WebSocketSession session, CDPMessageEnvelope envelope, String reason) {
+        rejectCommand(session, envelope.hasId(), envelope.id(), envelope.sessionId(), reason);
+    }
 
-                            JSONObject value = result.getJSONObject("value");
+    private void rejectCommand(WebSocketSession session, boolean hasId, int id, String cdpSessionId, String reason) {
+        if (!hasId) {
+            logger.warning(reason + ", dropping message without an id");
+            return;
+        }
+        JSONObject error = new JSONObject()
+                .put("id", id)
+                .put("error", new JSONObject().put("code", -32000).put("message", reason));
+        if (cdpSessionId != null) {
+            error.put("sessionId", cdpSessionId);
+        }
+        sendToClient(session, error.toString());
+    }
 
-                            if (value.has("o") && value.get("o") instanceof JSONArray) {
-                                JSONArray properties = value.getJSONArray("o");
+    /**
+     * Stop reading frames from the client, where the container supports it
+     */
+    private void pause(WebSocketSession session) {
+        WsSession wsSession = tomcatSession(session);
+        if (wsSession != null && paused.add(session.getId())) {
+            logger.info("Pausing client " + session.getId() + " until its pending messages drain");
+            wsSession.suspend();
+        }
+    }
 
-                                boolean foundSuccessProperty = false;
-                                boolean successValue = true;
+    private void resume(WebSocketSession session) {
+        WsSession wsSession = tomcatSession(session);
+        if (wsSession != null && paused.remove(session.getId())) {
+            wsSession.resume();
+        }
+    }
 
-                                for (int i = 0; i < properties.length(); i++) {
-                                    JSONObject property = properties.getJSONObject(i);
+    private static WsSession tomcatSession(WebSocketSession session) {
+        WebSocketSession unwrapped = WebSocketSessionDecorator.unwrap(session);
+        return unwrapped instanceof NativeWebSocketSession
+                ? ((NativeWebSocketSession) unwrapped).getNativeSession(WsSession.class) : null;
+    }
 
-                                    if (property.has("k") && property.getString("k").equals("success")) {
-                                        foundSuccessProperty = true;
-                                        if (property.has("v") && property.get("v") instanceof Boolean) {
-                                            successValue = property.getBoolean("v");
-                                        }
-                                        break;
-                                    }
-                                }
+    private void processPendingMessages(WebSocketSession session) {
+        String sessionId = session.getId();
+        PendingQueue queue = pendingMessages.get(sessionId);
+        BrowserLink browserClient = browserConnections.get(sessionId);
 
-                                if (foundSuccessProperty && !successValue) {
-                                    String selector = findSelectorForId(id);
-                                    if (selector == null) selector = "unknown";
+        if (queue == null || browserClient == null) {
+            return;
+        }
 
-                                    // LoggingUtil call removed
-                                    logger.warning("Broken locator detected: " + selector + " (success=false)");
-                                }
-                            }
-                        }
-                    }
+        synchronized (queue) {
+            String message;
+            while ((message = queue.peek()) != null) {
+                try {
+                    browserClient.send(message);
+                    queue.poll();
+                } catch (Exception e) {
+                    logger.severe("Failed to send queued message: " + e.getMessage());
+                    break;
                 }
-            } catch (Exception e) {
-                logger.warning("Error checking for broken locators: " + e.getMessage());
             }
-        }
-
-        private String findSelectorForId(int id) {
-            if (pendingSelectors.containsKey(id)) {
-                return pendingSelectors.get(id);
+            if (!queue.isSaturated()) {
+                resume(session);
             }
-            return null;
         }
+    }
 
-        @Override
-        public void onClose(int code, String reason, boolean remote) {
-            logger.info("Browser WebSocket connection closed: " + code + " - " + reason);
-            isConnected = false;
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        logger.info("Connection closed from Playwright client: " + session.getId());
+        pendingMessages.remove(session.getId());
+        outbound.remove(session.getId());
+        streamedCommands.remove(session.getId());
+        binaryParts.remove(session.getId());
+        framePrescans.remove(session.getId());
+        paused.remove(session.getId());
+        PendingSelectors pendingSelectors = sessionPendingSelectors.remove(session.getId());
+        if (pendingSelectors != null) {
+            pendingSelectors.close();
         }
+        reconnectAttempts.remove(session.getId());
 
-        @Override
-        public void onError(Exception ex) {
-            logger.severe("Error in browser WebSocket connection: " + ex.getMessage());
+        BrowserLink browserClient = browserConnections.remove(session.getId());
+        if (browserClient != null) {
+            browserClient.close();
         }
-
-        public boolean waitForConnection(long timeout, TimeUnit unit) throws InterruptedException {
-            return connectionLatch.await(timeout, unit);
+        BrowserBackend backend = sessionBackends.remove(session.getId());
+        if (backend != null) {
+            router.release(backend);
         }
+    }
 
-        public boolean isConnected() {
-            return isConnected && isOpen();
-        }
+    /**
+     * @return pending queue counters of every open client session, by session id
+     */
+    public Map<String, PendingQueue.Stats> pendingStats() {
+        Map<String, PendingQueue.Stats> stats = new LinkedHashMap<>();
+        pendingMessages.forEach((sessionId, queue) -> stats.put(sessionId, queue.stats()));
+        return stats;
+    }
 
-        @Override
-        public void send(String text) {
-            if (isConnected() && isOpen()) {
-                super.send(text);
-            } else {
-                throw new RuntimeException("Cannot send message because WebSocket is not connected");
-            }
-        }
+    /**
+     * @return outbound buffer counters of every open client session, by session id
+     */
+    public Map<String, ClientSendBuffer.Stats> outboundStats() {
+        Map<String, ClientSendBuffer.Stats> stats = new LinkedHashMap<>();
+        outbound.forEach((sessionId, buffer) -> stats.put(sessionId, buffer.stats()));
+        return stats;
     }
 
-    private void initLocatorDetection() {
-        try {
-            LocatorVerificationTracker.initialize();
-            logger.info("Locator detection system initialized");
-        } catch (Exception e) {
-            logger.severe("Failed to initialize locator detection: " + e.getMessage());
-        }
+    public boolean isPaused(String sessionId) {
+        return paused.contains(sessionId);
+    }
+
+    /**
+     * @return the browser the session is routed to, or null before routing
+     */
+    public BrowserBackend backendOf(String sessionId) {
+        return sessionBackends.get(sessionId);
+    }
+
+    public void close() {
+        reconnects.shutdownNow();
     }
 }
\ No newline at end of file
@@ -0,0 +1,220 @@
+package com.cdpproxy.reactive;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import org.json.JSONObject;
+import org.springframework.web.reactive.socket.WebSocketHandler;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import com.cdpproxy.proxy.Backoff;
+import com.cdpproxy.proxy.BrowserBackend;
+import com.cdpproxy.proxy.BrowserDiscovery;
+import com.cdpproxy.proxy.BrowserMessageInspector;
+import com.cdpproxy.proxy.BrowserRouter;
+import com.cdpproxy.proxy.ClientCommands;
+import com.cdpproxy.util.PendingSelectors;
+
+/**
+ * Reactive engine (cdp.engine=reactive): each Playwright session is relayed to
+ * a browser connection of its own, both legs on Reactor Netty's event loops,
+ * so sessions cost no threads. Messages go through the same pipeline as in the
+ * servlet engine: {@link ClientCommands} on the way up, a
+ * {@link BrowserMessageInspector} on the way down.
+ * <p>
+ * Flow control is Reactive Streams demand: a client is read only as fast as
+ * its browser connection takes the commands, and the browser only as fast as
+ * the client takes its messages. There are no pending queues or send buffers
+ * to bound, and the sockets push back on whichever side is faster.
+ * <p>
+ * Connecting is retried with backoff. A browser connection lost after that
+ * ends the session, with an error frame to the client, since the browser's
+ * CDP sessions do not survive it anyway. Connection pooling, multiplexing,
+ * streaming of oversized messages and binary relay are servlet engine
+ * features; messages here are assembled up to the configured frame size.
+ */
+public class ReactiveProxyHandler implements WebSocketHandler {
+    private static final Logger logger = Logger.getLogger(ReactiveProxyHandler.class.getName());
+
+    private final BrowserRouter router;
+    private final WebSocketClient browsers;
+    private final Backoff connectBackoff;
+    private final int maxConnectRetries;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * One relayed Playwright session
+     */
+    private static final class Session {
+        final BrowserBackend backend;
+        final PendingSelectors pendingSelectors = new PendingSelectors();
+        final AtomicLong commands = new AtomicLong();
+        final AtomicLong responses = new AtomicLong();
+        final AtomicLong events = new AtomicLong();
+        volatile boolean connected;
+
+        Session(BrowserBackend backend) {
+            this.backend = backend;
+        }
+    }
+
+    /**
+     * @param browsers          non-blocking WebSocket client for the browser leg
+     * @param maxConnectRetries connects retried per session before the client gets an error
+     */
+    public ReactiveProxyHandler(BrowserRouter router, WebSocketClient browsers, Backoff connectBackoff,
+                                int maxConnectRetries) {
+        this.router = router;
+        this.browsers = browsers;
+        this.connectBackoff = connectBackoff;
+        this.maxConnectRetries = maxConnectRetries;
+    }
+
+    @Override
+    public Mono<Void> handle(WebSocketSession client) {
+        String sessionId = client.getId();
+        logger.info("New connection from Playwright client: " + sessionId);
+        Session session = new Session(router.acquire());
+        sessions.put(sessionId, session);
+        if (sessions.size() == 1) {
+            ClientCommands.initLocatorDetection();
+        }
+        return connect(client, session)
+                .onErrorResume(error -> {
+                    String reason = (session.connected ? "Browser connection lost: "
+                            : "Failed to connect to browser: ") + error.getMessage();
+                    logger.severe(reason);
+                    return client.send(Mono.just(client.textMessage(errorFrame(reason))));
+                })
+                .doFinally(signal -> {
+                    logger.info("Connection closed from Playwright client: " + sessionId);
+                    sessions.remove(sessionId);
+                    session.pendingSelectors.close();
+                    router.release(session.backend);
+                });
+    }
+
+    /**
+     * Discover the browser endpoint and relay over a new connection to it,
+     * retrying until the handshake succeeds or the attempts are used up
+     */
+    private Mono<Void> connect(WebSocketSession client, Session session) {
+        BrowserDiscovery discovery = session.backend.pool().discovery();
+        return Mono.defer(() -> Mono.fromFuture(discovery.discoverAsync()))
+                .flatMap(url -> browsers.execute(URI.create(url), browser -> relay(client, browser, session))
+                        .doOnError(error -> {
+                            if (!session.connected) {
+                                // The browser may have restarted with a new endpoint
+                                discovery.invalidate(url);
+                            }
+                        }))
+                .doOnError(error -> {
+                    if (!session.connected) {
+                        session.backend.circuitBreaker().recordFailure();
+                    }
+                })
+                .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                    // Once relaying, the client's messages have been taken and cannot be replayed
+                    if (session.connected || signal.totalRetries() >= maxConnectRetries) {
+                        return Mono.error(signal.failure());
+                    }
+                    long delay = connectBackoff.delayMillis((int) signal.totalRetries());
+                    logger.warning("Failed to connect to browser: " + signal.failure().getMessage()
+                            + ", reconnecting in " + delay + "ms (attempt " + (signal.totalRetries() + 1) + " of "
+                            + maxConnectRetries + ")");
+                    return Mono.delay(Duration.ofMillis(delay));
+                })));
+    }
+
+    /**
+     * Relay in both directions until either side closes
+     */
+    private Mono<Void> relay(WebSocketSession client, WebSocketSession browser, Session session) {
+        session.connected = true;
+        session.backend.circuitBreaker().recordSuccess();
+        String sessionId = client.getId();
+        BrowserMessageInspector inspector = new BrowserMessageInspector(sessionId, session.pendingSelectors);
+
+        // Sending to the browser cancels its source when the browser goes, and cancelling a
+        // receive closes that connection: published, the client stays open for the error frame
+        AtomicBoolean clientClosed = new AtomicBoolean();
+        Mono<Void> commands = browser.send(client.receive()
+                .doOnComplete(() -> clientClosed.set(true))
+                .publish()
+                .autoConnect()
+                .filter(ReactiveProxyHandler::isData)
+                .map(message -> {
+                    session.commands.incrementAndGet();
+                    String payload = message.getPayloadAsText();
+                    return browser.textMessage(ClientCommands.sanitize(
+                            ClientCommands.inspect(sessionId, payload, session.pendingSelectors)));
+                }))
+                // Ended by the browser going, the session ends once the error frame below is sent
+                .then(Mono.defer(() -> clientClosed.get() ? Mono.empty() : Mono.never()));
+
+        Mono<Void> messages = client.send(browser.receive()
+                .filter(ReactiveProxyHandler::isData)
+                .map(message -> {
+                    String payload = message.getPayloadAsText();
+                    if (inspector.inspect(payload)) {
+                        session.events.incrementAndGet();
+                    } else {
+                        session.responses.incrementAndGet();
+                    }
+                    return client.textMessage(payload);
+                })
+                .concatWith(Mono.fromSupplier(() -> {
+                    logger.severe("Browser connection lost");
+                    return client.textMessage(errorFrame("Browser connection lost"));
+                })));
+
+        // Whichever side closes first ends the session; cancelling the other closes it too
+        return Mono.firstWithSignal(commands, messages);
+    }
+
+    private static boolean isData(WebSocketMessage message) {
+        return message.getType() == WebSocketMessage.Type.TEXT || message.getType() == WebSocketMessage.Type.BINARY;
+    }
+
+    private static String errorFrame(String reason) {
+        return new JSONObject().put("error", reason).toString();
+    }
+
+    /**
+     * @return counters of every open client session, by session id
+     */
+    public Map<String, Stats> sessionStats() {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        sessions.forEach((sessionId, session) -> stats.put(sessionId, new Stats(session.backend.httpUrl(),
+                session.connected, session.commands.get(), session.responses.get(), session.events.get())));
+        return stats;
+    }
+
+    /**
+     * Point-in-time counters of one session
+     */
+    public static final class Stats {
+        public final String backend;
+        public final boolean connected;
+        public final long commands;
+        public final long responses;
+        public final long events;
+
+        Stats(String backend, boolean connected, long commands, long responses, long events) {
+            this.backend = backend;
+            this.connected = connected;
+            this.commands = commands;
+            this.responses = responses;
+            this.events = events;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.cdpproxy.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Broken-locator output for robotframework-heal. Detections are appended as
+ * one JSON line each to a journal ({@code broken-locators-for-healing.jsonl}),
+ * which costs the same no matter how many entries exist. A background task
+ * periodically folds the journal into the JSON array file the healing tools
+ * read, writing a temporary file and renaming it over the old one, so readers
+ * never see a half-written array.
+ */
+public class BrokenLocatorStore {
+    private static final Logger logger = Logger.getLogger(BrokenLocatorStore.class.getName());
+
+    private final Path jsonFile;
+    private final Path journal;
+    /** Journal taken over by a compaction that has not finished yet */
+    private final Path compacting;
+    private final Object appendLock = new Object();
+    private final Object compactLock = new Object();
+    private ScheduledExecutorService compactor;
+
+    public BrokenLocatorStore(Path jsonFile) {
+        this.jsonFile = jsonFile.toAbsolutePath();
+        this.journal = this.jsonFile.resolveSibling(this.jsonFile.getFileName() + "l");
+        this.compacting = this.jsonFile.resolveSibling(this.jsonFile.getFileName() + "l.compacting");
+    }
+
+    public Path jsonFile() {
+        return jsonFile;
+    }
+
+    public Path journal() {
+        return journal;
+    }
+
+    /**
+     * Append one entry to the journal
+     */
+    public void append(JSONObject entry) throws IOException {
+        byte[] line = (entry.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (appendLock) {
+            Files.write(journal, line, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+    }
+
+    /**
+     * Fold journaled entries into the JSON array file
+     *
+     * @return the number of entries moved out of the journal
+     */
+    public int compact() throws IOException {
+        synchronized (compactLock) {
+            // A journal left over from an interrupted compaction goes first
+            if (!Files.exists(compacting)) {
+                synchronized (appendLock) {
+                    if (!Files.exists(journal) || Files.size(journal) == 0) {
+                        return 0;
+                    }
+                    Files.move(journal, compacting, StandardCopyOption.ATOMIC_MOVE);
+                }
+            }
+
+            JSONArray entries = readArray();
+            int added = 0;
+            try (BufferedReader reader = Files.newBufferedReader(compacting, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        entries.put(new JSONObject(line));
+                        added++;
+                    } catch (Exception e) {
+                        // A line torn by a crash mid-append
+                        logger.warning("Skipping unreadable broken locator journal line: " + e.getMessage());
+                    }
+                }
+            }
+
+            Path temp = jsonFile.resolveSibling(jsonFile.getFileName() + ".tmp");
+            Files.writeString(temp, entries.toString(2), StandardCharsets.UTF_8);
+            Files.move(temp, jsonFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(compacting);
+            return added;
+        }
+    }
+
+    private JSONArray readArray() {
+        try {
+            if (Files.exists(jsonFile)) {
+                String content = Files.readString(jsonFile, StandardCharsets.UTF_8);
+                if (!content.trim().isEmpty()) {
+                    return new JSONArray(content);
+                }
+            }
+        } catch (Exception e) {
+            logger.warning("Could not read existing shared JSON file: " + e.getMessage());
+        }
+        return new JSONArray();
+    }
+
+    /**
+     * Compact every {@code intervalMillis} on a background thread, and once more at shutdown
+     */
+    public synchronized void startCompaction(long intervalMillis) {
+        if (compactor != null) {
+            return;
+        }
+        compactor = Executors.newSingleThreadScheduledExecutor(
+                ProxyThreads.named("BrokenLocatorCompactor", Thread.MIN_PRIORITY));
+        compactor.scheduleWithFixedDelay(this::compactQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::compactQuietly, "BrokenLocatorCompactorShutdown"));
+    }
+
+    private void compactQuietly() {
+        try {
+            int added = compact();
+            if (added > 0) {
+                logger.info("Compacted " + added + " broken locators into " + jsonFile);
+            }
+        } catch (Exception e) {
+            logger.warning("Failed to compact broken locator journal: " + e.getMessage());
+        }
+    }
+}
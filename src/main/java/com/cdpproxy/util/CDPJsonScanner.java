@@ -0,0 +1,227 @@
+package com.cdpproxy.util;
+
+/**
+ * Allocation-free scanner for the top level of a JSON object.
+ * It only locates value boundaries and never builds a tree, so callers can
+ * decide which parts of a CDP message are worth parsing.
+ */
+public final class CDPJsonScanner {
+
+    /** Returned by the scan methods when the input is not well formed */
+    public static final int MALFORMED = -1;
+
+    /** Returned by {@link #parseInt} when the token is not an int */
+    public static final long NOT_AN_INT = Long.MIN_VALUE;
+
+    private CDPJsonScanner() {
+    }
+
+    /**
+     * Callback invoked for every top-level member of an object
+     */
+    public interface MemberVisitor {
+        /**
+         * @return false to stop scanning early
+         */
+        boolean member(int keyStart, int keyEnd, int valueStart, int valueEnd);
+    }
+
+    /**
+     * Walk the members of the object starting at {@code start}.
+     * Key bounds exclude the quotes; value bounds cover the raw value text.
+     *
+     * @return the index just after the closing brace, or {@link #MALFORMED}
+     */
+    public static int scanObject(CharSequence s, int start, int end, MemberVisitor visitor) {
+        int i = skipWhitespace(s, start, end);
+        if (i >= end || s.charAt(i) != '{') {
+            return MALFORMED;
+        }
+        i = skipWhitespace(s, i + 1, end);
+        if (i < end && s.charAt(i) == '}') {
+            return i + 1;
+        }
+
+        while (i < end) {
+            if (s.charAt(i) != '"') {
+                return MALFORMED;
+            }
+            int keyStart = i + 1;
+            int keyEnd = skipString(s, i, end);
+            if (keyEnd == MALFORMED) {
+                return MALFORMED;
+            }
+            i = skipWhitespace(s, keyEnd, end);
+            if (i >= end || s.charAt(i) != ':') {
+                return MALFORMED;
+            }
+            int valueStart = skipWhitespace(s, i + 1, end);
+            int valueEnd = skipValue(s, valueStart, end);
+            if (valueEnd == MALFORMED) {
+                return MALFORMED;
+            }
+            if (!visitor.member(keyStart, keyEnd - 1, valueStart, valueEnd)) {
+                return valueEnd;
+            }
+            i = skipWhitespace(s, valueEnd, end);
+            if (i >= end) {
+                return MALFORMED;
+            }
+            char c = s.charAt(i);
+            if (c == '}') {
+                return i + 1;
+            }
+            if (c != ',') {
+                return MALFORMED;
+            }
+            i = skipWhitespace(s, i + 1, end);
+        }
+        return MALFORMED;
+    }
+
+    /**
+     * Find the raw bounds of a top-level member value.
+     *
+     * @return {@code {valueStart, valueEnd}} or null when the key is absent
+     */
+    public static int[] findMember(CharSequence s, int start, int end, String key) {
+        int[] found = new int[2];
+        boolean[] hit = new boolean[1];
+        scanObject(s, start, end, (ks, ke, vs, ve) -> {
+            if (regionEquals(s, ks, ke, key)) {
+                found[0] = vs;
+                found[1] = ve;
+                hit[0] = true;
+                return false;
+            }
+            return true;
+        });
+        return hit[0] ? found : null;
+    }
+
+    /**
+     * @return the index just after the value starting at {@code i}, or {@link #MALFORMED}
+     */
+    public static int skipValue(CharSequence s, int i, int end) {
+        if (i >= end) {
+            return MALFORMED;
+        }
+        char c = s.charAt(i);
+        if (c == '"') {
+            return skipString(s, i, end);
+        }
+        if (c == '{' || c == '[') {
+            return skipContainer(s, i, end);
+        }
+        // Number or literal: runs until a structural character or whitespace
+        int j = i;
+        while (j < end) {
+            char d = s.charAt(j);
+            if (d == ',' || d == '}' || d == ']' || d <= ' ') {
+                break;
+            }
+            j++;
+        }
+        return j == i ? MALFORMED : j;
+    }
+
+    /**
+     * @return the index just after the closing quote of the string starting at {@code i}
+     */
+    public static int skipString(CharSequence s, int i, int end) {
+        int j = i + 1;
+        while (j < end) {
+            char c = s.charAt(j);
+            if (c == '\\') {
+                j += 2;
+                continue;
+            }
+            if (c == '"') {
+                return j + 1;
+            }
+            j++;
+        }
+        return MALFORMED;
+    }
+
+    private static int skipContainer(CharSequence s, int i, int end) {
+        int depth = 0;
+        int j = i;
+        while (j < end) {
+            char c = s.charAt(j);
+            if (c == '"') {
+                j = skipString(s, j, end);
+                if (j == MALFORMED) {
+                    return MALFORMED;
+                }
+                continue;
+            }
+            if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+                if (depth == 0) {
+                    return j + 1;
+                }
+            }
+            j++;
+        }
+        return MALFORMED;
+    }
+
+    public static int skipWhitespace(CharSequence s, int i, int end) {
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Compare a region of {@code s} with {@code expected} without allocating
+     */
+    public static boolean regionEquals(CharSequence s, int start, int end, String expected) {
+        int length = end - start;
+        if (length != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse an integer token without allocating.
+     *
+     * @return the value, or {@link #NOT_AN_INT} when the region is not a plain integer that fits an int
+     */
+    public static long parseInt(CharSequence s, int start, int end) {
+        if (start >= end) {
+            return NOT_AN_INT;
+        }
+        boolean negative = s.charAt(start) == '-';
+        int i = negative ? start + 1 : start;
+        if (i >= end || end - i > 10) {
+            return NOT_AN_INT;
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_AN_INT;
+            }
+            value = value * 10 + (c - '0');
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            return NOT_AN_INT;
+        }
+        return value;
+    }
+}
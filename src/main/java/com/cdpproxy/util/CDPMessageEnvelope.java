@@ -0,0 +1,286 @@
+package com.cdpproxy.util;
+
+import java.util.Arrays;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * A CDP message scanned once and shared by every consumer on the proxy path.
+ * The top-level {@code id}, {@code method} and {@code sessionId} are decoded
+ * eagerly; every other member (including {@code params}) is only parsed when
+ * somebody asks for it, and then cached.
+ */
+public final class CDPMessageEnvelope {
+    private static final Object NOT_PARSED = new Object();
+    private static final String[] COMMON_KEYS = {"id", "method", "params", "sessionId", "result", "error"};
+
+    private final String raw;
+    private final boolean object;
+
+    private int memberCount;
+    private String[] keys = new String[4];
+    private int[] bounds = new int[8];
+    private Object[] values = new Object[4];
+
+    private boolean hasId;
+    private int id;
+    private String method;
+    private boolean methodIsString;
+    private String sessionId;
+    private boolean sessionIdIsString;
+
+    private JSONObject json;
+
+    private CDPMessageEnvelope(String raw) {
+        this.raw = raw;
+        int end = CDPJsonScanner.scanObject(raw, 0, raw.length(), (ks, ke, vs, ve) -> {
+            addMember(key(raw, ks, ke), vs, ve);
+            return true;
+        });
+        this.object = end != CDPJsonScanner.MALFORMED
+                && CDPJsonScanner.skipWhitespace(raw, end, raw.length()) == raw.length();
+        if (object) {
+            decodeEnvelopeFields();
+        }
+    }
+
+    /**
+     * Scan a raw CDP frame. Never throws; malformed input yields an envelope
+     * for which {@link #isObject()} is false.
+     */
+    public static CDPMessageEnvelope parse(String raw) {
+        return new CDPMessageEnvelope(raw);
+    }
+
+    private static String key(String raw, int start, int end) {
+        for (String common : COMMON_KEYS) {
+            if (CDPJsonScanner.regionEquals(raw, start, end, common)) {
+                return common;
+            }
+        }
+        return raw.substring(start, end);
+    }
+
+    private void addMember(String key, int valueStart, int valueEnd) {
+        if (memberCount == keys.length) {
+            keys = Arrays.copyOf(keys, memberCount * 2);
+            values = Arrays.copyOf(values, memberCount * 2);
+            bounds = Arrays.copyOf(bounds, memberCount * 4);
+        }
+        keys[memberCount] = key;
+        bounds[memberCount * 2] = valueStart;
+        bounds[memberCount * 2 + 1] = valueEnd;
+        values[memberCount] = NOT_PARSED;
+        memberCount++;
+    }
+
+    private void decodeEnvelopeFields() {
+        int idIndex = indexOf("id");
+        if (idIndex >= 0) {
+            long value = CDPJsonScanner.parseInt(raw, bounds[idIndex * 2], bounds[idIndex * 2 + 1]);
+            if (value != CDPJsonScanner.NOT_AN_INT) {
+                hasId = true;
+                id = (int) value;
+            }
+        }
+        int methodIndex = indexOf("method");
+        if (methodIndex >= 0 && raw.charAt(bounds[methodIndex * 2]) == '"') {
+            method = decodeString(methodIndex);
+            methodIsString = method != null;
+        }
+        int sessionIndex = indexOf("sessionId");
+        if (sessionIndex >= 0 && raw.charAt(bounds[sessionIndex * 2]) == '"') {
+            sessionId = decodeString(sessionIndex);
+            sessionIdIsString = sessionId != null;
+        }
+    }
+
+    private String decodeString(int index) {
+        int start = bounds[index * 2];
+        int end = bounds[index * 2 + 1];
+        boolean escaped = false;
+        for (int i = start + 1; i < end - 1 && !escaped; i++) {
+            escaped = raw.charAt(i) == '\\';
+        }
+        if (!escaped) {
+            return raw.substring(start + 1, end - 1);
+        }
+        Object value = value(index);
+        return value instanceof String ? (String) value : null;
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < memberCount; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object value(int index) {
+        Object value = values[index];
+        if (value == NOT_PARSED) {
+            value = new JSONTokener(rawValue(index)).nextValue();
+            values[index] = value;
+        }
+        return value;
+    }
+
+    private String rawValue(int index) {
+        return raw.substring(bounds[index * 2], bounds[index * 2 + 1]);
+    }
+
+    public String raw() {
+        return raw;
+    }
+
+    /**
+     * @return true when the frame is a well-formed JSON object
+     */
+    public boolean isObject() {
+        return object;
+    }
+
+    public boolean has(String key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * @return true when the message carries an integer command id
+     */
+    public boolean hasId() {
+        return hasId;
+    }
+
+    public int id() {
+        return id;
+    }
+
+    /**
+     * @return the method name, or null when absent or not a string
+     */
+    public String method() {
+        return method;
+    }
+
+    /**
+     * @return the flattened-session id, or null when absent or not a string
+     */
+    public String sessionId() {
+        return sessionId;
+    }
+
+    public boolean hasParams() {
+        return has("params");
+    }
+
+    /**
+     * @return the parsed params object, or null when absent or not an object
+     */
+    public JSONObject params() {
+        Object value = member("params");
+        return value instanceof JSONObject ? (JSONObject) value : null;
+    }
+
+    /**
+     * Parse (once) and return a top-level member.
+     *
+     * @return the parsed value or null when the key is absent
+     */
+    public Object member(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : value(index);
+    }
+
+    /**
+     * @return the raw JSON text of a top-level member, or null when absent
+     */
+    public String rawMember(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : rawValue(index);
+    }
+
+    /**
+     * @return {@code {valueStart, valueEnd}} of a top-level member within {@link #raw()}, or null when absent
+     */
+    public int[] rawBounds(String key) {
+        int index = indexOf(key);
+        return index < 0 ? null : new int[] {bounds[index * 2], bounds[index * 2 + 1]};
+    }
+
+    /**
+     * Full message tree, assembled from the per-member parse cache so that
+     * nothing already parsed is parsed again.
+     */
+    public JSONObject json() {
+        if (json == null) {
+            if (!object) {
+                throw new IllegalStateException("Message is not a JSON object");
+            }
+            JSONObject result = new JSONObject();
+            for (int i = 0; i < memberCount; i++) {
+                result.put(keys[i], value(i));
+            }
+            json = result;
+        }
+        return json;
+    }
+
+    /**
+     * Build the sanitized form sent upstream: only {@code id}, {@code method},
+     * {@code params} and a string {@code sessionId} are kept. Raw member text
+     * is spliced, so nothing is re-serialized, and the original frame is
+     * returned untouched when nothing would be dropped.
+     */
+    public String sanitized() {
+        if (!object) {
+            return raw;
+        }
+        int idIndex = indexOf("id");
+        int methodIndex = indexOf("method");
+        int paramsIndex = indexOf("params");
+        int sessionIndex = indexOf("sessionId");
+
+        // Same failure modes as the tree-based sanitizer: fall back to the original
+        if (methodIndex >= 0 && !methodIsString) {
+            return raw;
+        }
+        if (paramsIndex >= 0 && raw.charAt(bounds[paramsIndex * 2]) != '{') {
+            return raw;
+        }
+
+        int kept = (idIndex >= 0 ? 1 : 0) + (methodIndex >= 0 ? 1 : 0)
+                + (paramsIndex >= 0 ? 1 : 0) + (sessionIndex >= 0 && sessionIdIsString ? 1 : 0);
+        if (kept == memberCount) {
+            return raw;
+        }
+
+        StringBuilder sanitized = new StringBuilder(raw.length());
+        sanitized.append('{');
+        appendMember(sanitized, "id", idIndex);
+        appendMember(sanitized, "method", methodIndex);
+        appendMember(sanitized, "params", paramsIndex);
+        if (sessionIdIsString) {
+            appendMember(sanitized, "sessionId", sessionIndex);
+        }
+        sanitized.append('}');
+        return sanitized.toString();
+    }
+
+    private void appendMember(StringBuilder out, String key, int index) {
+        if (index < 0) {
+            return;
+        }
+        if (out.length() > 1) {
+            out.append(',');
+        }
+        out.append('"').append(key).append("\":");
+        out.append(raw, bounds[index * 2], bounds[index * 2 + 1]);
+    }
+
+    @Override
+    public String toString() {
+        return raw;
+    }
+}
@@ -0,0 +1,60 @@
+package com.cdpproxy.util;
+
+import org.json.JSONObject;
+
+/**
+ * Human-readable rendering of CDP messages, as written to cdp-messages-dump.log
+ */
+public final class CDPMessageFormatter {
+
+    private CDPMessageFormatter() {
+    }
+
+    /**
+     * Format a dump entry, reusing whatever the envelope has already parsed
+     */
+    public static String formatEntry(String timestamp, String direction, CDPMessageEnvelope message) {
+        if (!message.isObject()) {
+            // If not valid JSON, just dump the raw message
+            return timestamp + " | " + direction + " | " + message.raw() + "\n\n";
+        }
+
+        try {
+            // Format the entry
+            StringBuilder entry = new StringBuilder();
+            entry.append("=== ").append(timestamp).append(" | ").append(direction).append(" ===\n");
+
+            // Add message ID if present
+            if (message.has("id")) {
+                entry.append("ID: ").append(message.member("id")).append("\n");
+            }
+
+            // Add method if present
+            if (message.has("method")) {
+                entry.append("Method: ").append((String) message.member("method")).append("\n");
+            }
+
+            // Add params if present
+            appendSection(entry, "Params", message, "params");
+
+            // Add result if present
+            appendSection(entry, "Result", message, "result");
+
+            // Add error if present
+            appendSection(entry, "Error", message, "error");
+
+            // Add full message for reference
+            entry.append("Full: ").append(message.json().toString(2)).append("\n");
+            entry.append("\n"); // Add separator
+            return entry.toString();
+        } catch (Exception e) {
+            return timestamp + " | " + direction + " | " + message.raw() + "\n\n";
+        }
+    }
+
+    private static void appendSection(StringBuilder entry, String label, CDPMessageEnvelope message, String key) {
+        if (message.has(key)) {
+            entry.append(label).append(": ").append(((JSONObject) message.member(key)).toString(2)).append("\n");
+        }
+    }
+}
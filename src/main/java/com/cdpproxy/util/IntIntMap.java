@@ -0,0 +1,136 @@
+package com.cdpproxy.util;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Map of int keys to int values in two flat arrays: open addressing with
+ * linear probing, and backward-shift deletion so no tombstones pile up. It
+ * boxes nothing and allocates only when it grows. Values must be non-zero;
+ * 0 stands for an absent key. Not thread-safe.
+ */
+public final class IntIntMap {
+    private static final int MIN_CAPACITY = 8;
+
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public IntIntMap() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * @return the value of the key, or 0 when absent
+     */
+    public int get(int key) {
+        for (int i = slot(key); values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param value non-zero
+     * @return the previous value, or 0 when the key was absent
+     */
+    public int put(int key, int value) {
+        if (value == 0) {
+            throw new IllegalArgumentException("0 is not a valid value");
+        }
+        int i = slot(key);
+        for (; values[i] != 0; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                int previous = values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > (mask + 1) * 3 / 4) {
+            resize((mask + 1) * 2);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the removed value, or 0 when the key was absent
+     */
+    public int remove(int key) {
+        int i = slot(key);
+        while (values[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        int removed = values[i];
+        if (removed == 0) {
+            return 0;
+        }
+        size--;
+        // Pull back later entries of the probe run that the hole would cut off from their slot
+        int hole = i;
+        for (int j = (hole + 1) & mask; values[j] != 0; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            boolean reachable = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+            if (!reachable) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = 0;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Pass every value to {@code action}, in no particular order
+     */
+    public void forEachValue(IntConsumer action) {
+        for (int value : values) {
+            if (value != 0) {
+                action.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Remove every entry and go back to the initial capacity
+     */
+    public void clear() {
+        allocate(MIN_CAPACITY);
+        size = 0;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int j = slot(oldKeys[i]);
+                while (values[j] != 0) {
+                    j = (j + 1) & mask;
+                }
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
@@ -2,13 +2,23 @@ package com.cdpproxy.util;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.json.JSONException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Utility class for extracting locator information from various CDP messages
+ * Utility class for extracting locator information from various CDP messages.
+ * <p>
+ * Each method that can carry a locator has its extractor in a dispatch table;
+ * any other method is rejected on the table lookup, before its params are
+ * looked at. Whether a {@code Runtime.callFunctionOn} declaration is
+ * Playwright's utility script call is remembered by the hash the extraction
+ * cache key already takes of the declaration, since Playwright sends the same
+ * few declarations over and over. Selectors
+ * are found in the serialized arguments by a {@link SerializedValueMatcher}
+ * compiled once for the paths Playwright puts them at.
  */
 public class LocatorDetector {
     private static final Logger logger = Logger.getLogger(LocatorDetector.class.getName());
@@ -17,43 +27,116 @@ public class LocatorDetector {
     private static final Pattern SELECTOR_PATTERN = Pattern.compile("querySelector\\(['\"]([^'\"]+)['\"]\\)");
     private static final Pattern XPATH_PATTERN = Pattern.compile("xpath=(.+?)(?:\"|}|\\s|$)");
 
+    /**
+     * Locator extraction for the params of one CDP method
+     */
+    @FunctionalInterface
+    private interface Extractor {
+        SelectorInfo extract(JSONObject params);
+    }
+
+    private static final String CALL_FUNCTION_ON = "Runtime.callFunctionOn";
+    /** Declaration hash meaning none was taken, so the declaration is scanned */
+    public static final long UNHASHED = 0;
+
+    private static final Map<String, Extractor> EXTRACTORS = Map.of(
+            "DOM.querySelector", LocatorDetector::extractFromQuery,
+            "DOM.querySelectorAll", LocatorDetector::extractFromQuery,
+            CALL_FUNCTION_ON, params -> extractSelectorFromFunction(params, UNHASHED),
+            "Runtime.evaluate", LocatorDetector::extractFromExpression);
+    private static final String[] LOCATOR_METHODS = EXTRACTORS.keySet().toArray(new String[0]);
+
+    private static final String UTILITY_SCRIPT_CALL = "utilityScript.evaluate";
+    /** Slots of {@link #utilityDeclarations}, a power of two */
+    private static final int UTILITY_DECLARATION_SLOTS = 256;
+    /**
+     * Whether declarations call the utility script, by declaration hash. A slot
+     * holds the hash with bit 1 set and bit 0 replaced by the answer, 0 when empty.
+     */
+    private static final AtomicLongArray utilityDeclarations = new AtomicLongArray(UTILITY_DECLARATION_SLOTS);
+
+    /** Where Playwright's serialized locator arguments keep the selector, by precedence */
+    private static final SerializedValueMatcher SELECTOR_PATHS = new SerializedValueMatcher()
+            .typedBy("info.parsed.parts[*].source", "name")
+            .typedBy("info.source", "engine")
+            .typed("source", "UNKNOWN")
+            .typed("css", "CSS");
+
+    /** Returned by {@link #callKey} for params it cannot hash */
+    private static final long UNCACHEABLE = 0;
+    /** Only the arguments up to this index are searched for a selector */
+    private static final int MAX_SELECTOR_ARGUMENT = 7;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Results of Runtime.callFunctionOn extraction, null when not cached */
+    private static volatile SelectorCache cache;
+
+    /**
+     * Install the cache of Runtime.callFunctionOn extraction results (null disables caching)
+     */
+    public static void installCache(SelectorCache selectorCache) {
+        cache = selectorCache;
+        logger.info(selectorCache == null ? "Selector extraction cache disabled"
+                : "Selector extraction cache enabled (" + selectorCache.stats().capacity + " entries)");
+    }
+
+    /**
+     * @return extraction cache counters, or null when caching is disabled
+     */
+    public static SelectorCache.Stats cacheStats() {
+        SelectorCache current = cache;
+        return current == null ? null : current.stats();
+    }
+
     /**
      * Extract selector information from a Playwright CDP message
      */
     public static SelectorInfo extractSelector(JSONObject message) {
         try {
-            if (!message.has("method") || !message.has("params")) {
+            Extractor extractor = EXTRACTORS.get(message.optString("method"));
+            if (extractor == null || !message.has("params")) {
                 return null;
             }
 
-            String method = message.getString("method");
-            JSONObject params = message.getJSONObject("params");
+            return extract(extractor, message.getJSONObject("params"));
+        } catch (Exception e) {
+            logger.fine("Error extracting selector: " + e.getMessage());
+        }
 
-            // Different methods require different extraction strategies
-            if (method.equals("DOM.querySelector") || method.equals("DOM.querySelectorAll")) {
-                // Direct DOM queries - easy to extract
-                if (params.has("selector")) {
-                    return new SelectorInfo(params.getString("selector"), "CSS");
-                }
-            } else if (method.equals("Runtime.callFunctionOn")) {
-                // Complex method used by Playwright for most operations
-                return extractSelectorFromFunction(params);
-            } else if (method.equals("Runtime.evaluate")) {
-                // Sometimes used for simple evaluations
-                if (params.has("expression")) {
-                    String expression = params.getString("expression");
-                    Matcher matcher = SELECTOR_PATTERN.matcher(expression);
-                    if (matcher.find()) {
-                        return new SelectorInfo(matcher.group(1), "CSS");
-                    }
+        return null;
+    }
 
-                    // Try XPath pattern
-                    matcher = XPATH_PATTERN.matcher(expression);
-                    if (matcher.find()) {
-                        return new SelectorInfo(matcher.group(1), "XPATH");
-                    }
-                }
+    /**
+     * Extract selector information from an already scanned message.
+     * Params are only parsed for methods that can carry a locator, and for
+     * Runtime.callFunctionOn only the first time its arguments are seen:
+     * Playwright repeats the same call while it waits for an element.
+     */
+    public static SelectorInfo extractSelector(CDPMessageEnvelope message) {
+        String method = message.method();
+        Extractor extractor = method == null ? null : EXTRACTORS.get(method);
+        if (extractor == null || !message.hasParams()) {
+            return null;
+        }
+
+        try {
+            SelectorCache current = cache;
+            if (current == null || !method.equals(CALL_FUNCTION_ON)) {
+                return extractFromParams(extractor, message);
+            }
+            long[] declarationHash = {UNHASHED};
+            long key = callKey(message, declarationHash);
+            if (key == UNCACHEABLE) {
+                return extractFromParams(extractor, message);
             }
+            SelectorInfo cached = current.get(key);
+            if (cached != null) {
+                return cached == SelectorCache.NO_SELECTOR ? null : cached;
+            }
+            long hash = declarationHash[0];
+            SelectorInfo info = extractFromParams(params -> extractSelectorFromFunction(params, hash), message);
+            current.put(key, info);
+            return info;
         } catch (Exception e) {
             logger.fine("Error extracting selector: " + e.getMessage());
         }
@@ -61,203 +144,245 @@ public class LocatorDetector {
         return null;
     }
 
+    private static SelectorInfo extractFromParams(Extractor extractor, CDPMessageEnvelope message) {
+        JSONObject params = message.params();
+        return params == null ? null : extract(extractor, params);
+    }
+
     /**
-     * Extract selector from complex Runtime.callFunctionOn structure
+     * Hash of everything a Runtime.callFunctionOn extraction depends on: the
+     * whole declaration and the serialized values of the arguments a
+     * selector is looked for in. It is taken from the raw frame without parsing
+     * the params, skipping insignificant whitespace, so equal structures hash
+     * alike however they are formatted.
+     *
+     * @param declarationHash receives the hash of the raw declaration, when it is a string
+     * @return the key, or {@link #UNCACHEABLE} when the params are not a well-formed object
      */
-    private static SelectorInfo extractSelectorFromFunction(JSONObject params) {
-        try {
-            // Check if this is a utilityScript.evaluate call (Playwright pattern)
-            if (params.has("functionDeclaration") &&
-                    params.getString("functionDeclaration").contains("utilityScript.evaluate")) {
+    static long callKey(CDPMessageEnvelope message, long[] declarationHash) {
+        String raw = message.raw();
+        int[] params = message.rawBounds("params");
+        if (params == null || raw.charAt(params[0]) != '{') {
+            return UNCACHEABLE;
+        }
+        // Value bounds of functionDeclaration, then of arguments
+        int[] members = {-1, -1, -1, -1};
+        int scanned = CDPJsonScanner.scanObject(raw, params[0], params[1], (ks, ke, vs, ve) -> {
+            if (members[0] < 0 && CDPJsonScanner.regionEquals(raw, ks, ke, "functionDeclaration")) {
+                members[0] = vs;
+                members[1] = ve;
+            } else if (members[2] < 0 && CDPJsonScanner.regionEquals(raw, ks, ke, "arguments")) {
+                members[2] = vs;
+                members[3] = ve;
+            }
+            return members[0] < 0 || members[2] < 0;
+        });
+        if (scanned == CDPJsonScanner.MALFORMED) {
+            return UNCACHEABLE;
+        }
 
-                if (!params.has("arguments") || params.getJSONArray("arguments").length() < 7) {
-                    return null;
+        long hash = FNV_OFFSET;
+        if (members[0] >= 0) {
+            hash = mix(hash, members[1] - members[0]);
+            for (int i = members[0]; i < members[1]; i++) {
+                hash = mix(hash, raw.charAt(i));
+            }
+            if (raw.charAt(members[0]) == '"') {
+                long declaration = spread(hash);
+                declarationHash[0] = declaration == UNHASHED ? 1 : declaration;
+            }
+        }
+        int count = 0;
+        if (members[2] >= 0 && raw.charAt(members[2]) == '[') {
+            int end = members[3] - 1;
+            int i = CDPJsonScanner.skipWhitespace(raw, members[2] + 1, end);
+            while (i < end && count <= MAX_SELECTOR_ARGUMENT) {
+                int elementEnd = CDPJsonScanner.skipValue(raw, i, end);
+                if (elementEnd == CDPJsonScanner.MALFORMED) {
+                    return UNCACHEABLE;
                 }
-
-                JSONArray arguments = params.getJSONArray("arguments");
-
-                // The 7th argument (index 6) often contains info about the selector
-                for (int i = 5; i < Math.min(8, arguments.length()); i++) {
-                    JSONObject arg = arguments.getJSONObject(i);
-                    if (!arg.has("value") || !(arg.get("value") instanceof JSONObject)) {
-                        continue;
+                if (count >= 5 && raw.charAt(i) == '{') {
+                    int[] value = CDPJsonScanner.findMember(raw, i, elementEnd, "value");
+                    hash = mix(hash, count);
+                    if (value != null) {
+                        hash = hashStructure(hash, raw, value[0], value[1]);
                     }
+                }
+                count++;
+                i = CDPJsonScanner.skipWhitespace(raw, elementEnd, end);
+                if (i < end && raw.charAt(i) == ',') {
+                    i = CDPJsonScanner.skipWhitespace(raw, i + 1, end);
+                }
+            }
+        }
+        hash = spread(mix(hash, count));
+        return hash == UNCACHEABLE ? 1 : hash;
+    }
 
-                    JSONObject value = arg.getJSONObject("value");
+    /**
+     * Spread the bits of an FNV hash for the slot index of a table
+     */
+    private static long spread(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
 
-                    // Extract from nested structure
-                    SelectorInfo info = extractFromNestedStructure(value);
-                    if (info != null) {
-                        return info;
-                    }
+    /**
+     * Hash raw JSON text, leaving out whitespace between tokens
+     */
+    private static long hashStructure(long hash, String raw, int start, int end) {
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = start; i < end; i++) {
+            char c = raw.charAt(i);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
                 }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                continue;
             }
-        } catch (Exception e) {
-            logger.fine("Error extracting selector from function: " + e.getMessage());
+            hash = mix(hash, c);
         }
+        return hash;
+    }
 
-        return null;
+    private static long mix(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
     }
 
     /**
-     * Extract selector from deeply nested JSON structure
+     * @return true for the methods whose params can carry a locator
      */
-    private static SelectorInfo extractFromNestedStructure(JSONObject obj) {
-        try {
-            // Handle structures with 'o' array (common in Playwright CDP messages)
-            if (obj.has("o") && obj.get("o") instanceof JSONArray) {
-                JSONArray properties = obj.getJSONArray("o");
-
-                // Look for the info property which contains selector details
-                for (int i = 0; i < properties.length(); i++) {
-                    JSONObject prop = properties.getJSONObject(i);
-
-                    // Direct 'source' or 'css' property (easier case)
-                    if (prop.has("k") && prop.has("v")) {
-                        String key = prop.getString("k");
-                        if ((key.equals("source") || key.equals("css")) && prop.get("v") instanceof String) {
-                            String type = key.equals("css") ? "CSS" : "UNKNOWN";
-                            return new SelectorInfo(prop.getString("v"), type);
-                        }
-                    }
-
-                    // Deeper 'info' object that contains all selector details
-                    if (prop.has("k") && prop.getString("k").equals("info") &&
-                            prop.has("v") && prop.get("v") instanceof JSONObject) {
+    public static boolean isLocatorMethod(String method) {
+        return EXTRACTORS.containsKey(method);
+    }
 
-                        SelectorInfo info = extractFromInfoObject(prop.getJSONObject("v"));
-                        if (info != null) {
-                            return info;
-                        }
-                    }
-                }
+    /**
+     * {@link #isLocatorMethod(String)} for a method name held in a region of
+     * {@code text}, compared in place so that a frame's bytes need no decoding
+     */
+    public static boolean isLocatorMethod(CharSequence text, int start, int end) {
+        for (String method : LOCATOR_METHODS) {
+            if (CDPJsonScanner.regionEquals(text, start, end, method)) {
+                return true;
             }
+        }
+        return false;
+    }
 
-            // Handle direct value property
-            if (obj.has("v") && obj.get("v") instanceof String && obj.has("k")) {
-                String key = obj.getString("k");
-                if (key.equals("source") || key.equals("css") || key.equals("selector")) {
-                    String type = key.equals("css") ? "CSS" : "UNKNOWN";
-                    return new SelectorInfo(obj.getString("v"), type);
-                }
-            }
+    private static SelectorInfo extract(Extractor extractor, JSONObject params) {
+        try {
+            return extractor.extract(params);
         } catch (Exception e) {
-            logger.fine("Error in extractFromNestedStructure: " + e.getMessage());
+            logger.fine("Error extracting selector: " + e.getMessage());
         }
 
         return null;
     }
 
     /**
-     * Extract selector from the 'info' object
+     * Direct DOM queries - easy to extract
      */
-    private static SelectorInfo extractFromInfoObject(JSONObject infoObj) {
-        try {
-            // Handle structures with 'o' array (common in Playwright CDP messages)
-            if (infoObj.has("o") && infoObj.get("o") instanceof JSONArray) {
-                JSONArray properties = infoObj.getJSONArray("o");
-
-                String selector = null;
-                String type = "UNKNOWN";
-
-                // Look through all properties for selector info
-                for (int i = 0; i < properties.length(); i++) {
-                    JSONObject prop = properties.getJSONObject(i);
+    private static SelectorInfo extractFromQuery(JSONObject params) {
+        if (params.has("selector")) {
+            return new SelectorInfo(params.getString("selector"), "CSS");
+        }
+        return null;
+    }
 
-                    // Direct 'source' property
-                    if (prop.has("k") && prop.getString("k").equals("source") &&
-                            prop.has("v") && prop.get("v") instanceof String) {
-                        selector = prop.getString("v");
-                    }
+    /**
+     * Runtime.evaluate is sometimes used for simple evaluations
+     */
+    private static SelectorInfo extractFromExpression(JSONObject params) {
+        if (params.has("expression")) {
+            String expression = params.getString("expression");
+            Matcher matcher = SELECTOR_PATTERN.matcher(expression);
+            if (matcher.find()) {
+                return new SelectorInfo(matcher.group(1), "CSS");
+            }
 
-                    // Engine type
-                    if (prop.has("k") && prop.getString("k").equals("engine") &&
-                            prop.has("v") && prop.get("v") instanceof String) {
-                        type = prop.getString("v").toUpperCase();
-                    }
+            // Try XPath pattern
+            matcher = XPATH_PATTERN.matcher(expression);
+            if (matcher.find()) {
+                return new SelectorInfo(matcher.group(1), "XPATH");
+            }
+        }
+        return null;
+    }
 
-                    // Look for parsed object with more details
-                    if (prop.has("k") && prop.getString("k").equals("parsed") &&
-                            prop.has("v") && prop.get("v") instanceof JSONObject) {
+    /**
+     * Extract selector from complex Runtime.callFunctionOn structure
+     */
+    private static SelectorInfo extractSelectorFromFunction(JSONObject params, long declarationHash) {
+        // Check if this is a utilityScript.evaluate call (Playwright pattern)
+        if (!(params.opt("functionDeclaration") instanceof String declaration)
+                || !callsUtilityScript(declaration, declarationHash)) {
+            return null;
+        }
 
-                        SelectorInfo parsedInfo = extractFromParsedObject(prop.getJSONObject("v"));
-                        if (parsedInfo != null) {
-                            return parsedInfo;
-                        }
-                    }
-                }
+        JSONArray arguments = params.optJSONArray("arguments");
+        if (arguments == null || arguments.length() < 7) {
+            return null;
+        }
 
-                // If we found a selector, return it
-                if (selector != null) {
-                    return new SelectorInfo(selector, type);
+        // The 7th argument (index 6) often contains info about the selector
+        for (int i = 5; i < Math.min(8, arguments.length()); i++) {
+            if (arguments.opt(i) instanceof JSONObject arg && arg.opt("value") instanceof JSONObject value) {
+                SelectorInfo info = extractFromSerializedValue(value);
+                if (info != null) {
+                    return info;
                 }
             }
-        } catch (Exception e) {
-            logger.fine("Error in extractFromInfoObject: " + e.getMessage());
         }
-
         return null;
     }
 
     /**
-     * Extract selector from the parsed object structure
+     * A declaration hash is taken from its raw text, which stands for the
+     * declaration exactly, so a hit is answered without looking at the
+     * declaration at all. Declarations whose hashes share a slot take turns.
+     *
+     * @param declarationHash hash of the declaration from {@link #callKey}, or
+     *                        {@link #UNHASHED} to scan the declaration
+     * @return whether the declaration contains the utility script call
      */
-    private static SelectorInfo extractFromParsedObject(JSONObject parsedObj) {
-        try {
-            if (parsedObj.has("o") && parsedObj.get("o") instanceof JSONArray) {
-                JSONArray properties = parsedObj.getJSONArray("o");
-
-                // Look for parts property
-                for (int i = 0; i < properties.length(); i++) {
-                    JSONObject prop = properties.getJSONObject(i);
-
-                    if (prop.has("k") && prop.getString("k").equals("parts") &&
-                            prop.has("v") && prop.get("v") instanceof JSONObject) {
-
-                        JSONObject parts = prop.getJSONObject("v");
-
-                        if (parts.has("a") && parts.get("a") instanceof JSONArray) {
-                            JSONArray partsArray = parts.getJSONArray("a");
-
-                            // Process each part
-                            for (int j = 0; j < partsArray.length(); j++) {
-                                JSONObject part = partsArray.getJSONObject(j);
-
-                                if (part.has("o") && part.get("o") instanceof JSONArray) {
-                                    JSONArray partProps = part.getJSONArray("o");
-
-                                    String selector = null;
-                                    String type = "UNKNOWN";
-
-                                    // Look for source and name properties
-                                    for (int k = 0; k < partProps.length(); k++) {
-                                        JSONObject partProp = partProps.getJSONObject(k);
-
-                                        if (partProp.has("k") && partProp.getString("k").equals("source") &&
-                                                partProp.has("v") && partProp.get("v") instanceof String) {
-                                            selector = partProp.getString("v");
-                                        }
-
-                                        if (partProp.has("k") && partProp.getString("k").equals("name") &&
-                                                partProp.has("v") && partProp.get("v") instanceof String) {
-                                            type = partProp.getString("v").toUpperCase();
-                                        }
-                                    }
+    public static boolean callsUtilityScript(String declaration, long declarationHash) {
+        if (declarationHash == UNHASHED) {
+            return declaration.contains(UTILITY_SCRIPT_CALL);
+        }
+        long tag = (declarationHash | 2) & ~1L;
+        int slot = (int) (declarationHash >>> 2) & (UTILITY_DECLARATION_SLOTS - 1);
+        long entry = utilityDeclarations.get(slot);
+        if ((entry & ~1L) == tag) {
+            return (entry & 1) != 0;
+        }
+        boolean utility = declaration.contains(UTILITY_SCRIPT_CALL);
+        utilityDeclarations.set(slot, utility ? tag | 1 : tag);
+        return utility;
+    }
 
-                                    // If we found a selector, return it
-                                    if (selector != null) {
-                                        return new SelectorInfo(selector, type);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        } catch (Exception e) {
-            logger.fine("Error in extractFromParsedObject: " + e.getMessage());
+    /**
+     * Extract selector from a serialized argument value, or from a lone
+     * serialized property
+     */
+    private static SelectorInfo extractFromSerializedValue(JSONObject value) {
+        SelectorInfo info = SELECTOR_PATHS.match(value);
+        if (info != null) {
+            return info;
         }
 
+        if (value.opt("k") instanceof String key && value.opt("v") instanceof String selector
+                && (key.equals("source") || key.equals("css") || key.equals("selector"))) {
+            return new SelectorInfo(selector, key.equals("css") ? "CSS" : "UNKNOWN");
+        }
         return null;
     }
 
@@ -4,13 +4,18 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import org.json.JSONObject;
-import org.json.JSONArray;
 
 public class LocatorVerificationTracker {
     private static final Logger logger = Logger.getLogger(LocatorVerificationTracker.class.getName());
@@ -18,10 +23,16 @@ public class LocatorVerificationTracker {
     // Log file configuration
     private static final String LOG_FILE = "broken-locators-detected.log";
     private static final String SHARED_JSON_FILE = "broken-locators-for-healing.json";
+    // Compact the healing journal into the JSON array this often
+    private static final long COMPACTION_INTERVAL_MS = 5000;
     private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
 
-    // Maps to track locator verification status
-    private static final Map<String, Map<String, LocatorStatus>> sessionLocators = new ConcurrentHashMap<>();
+    private static final BrokenLocatorStore healingStore = new BrokenLocatorStore(Paths.get(SHARED_JSON_FILE));
+
+    private static final SelectorDictionary DICTIONARY = SelectorDictionary.SHARED;
+
+    // Locator verification status, by session
+    private static final Map<String, SessionLocators> sessionLocators = new ConcurrentHashMap<>();
 
     // Time to wait before confirming a locator is broken
     private static final long CONFIRMATION_DELAY_MS = 5000; // 5 seconds
@@ -46,30 +57,173 @@ public class LocatorVerificationTracker {
     }
 
     /**
-     * Class to track the status of a locator
+     * Locator statuses of one session, a row per selector in parallel arrays:
+     * interned selector and type ids, first-seen and last-attempt times, and
+     * the attempt count with the verified and reported flags packed in one
+     * int. Rows are found by selector id through an {@link IntIntMap}; a
+     * removed row is filled with the last one, so the arrays stay dense.
      */
-    private static class LocatorStatus {
+    private static final class SessionLocators {
+        private static final int VERIFIED = 1 << 30;
+        private static final int REPORTED = 1 << 29;
+        private static final int ATTEMPTS = REPORTED - 1;
+
+        /** Row + 1 by selector id */
+        private final IntIntMap rows = new IntIntMap();
+        private int count;
+        private int[] selectors = new int[4];
+        private int[] types = new int[4];
+        private long[] firstSeen = new long[4];
+        private long[] lastAttempt = new long[4];
+        private int[] states = new int[4];
+
+        /**
+         * Register a new locator or record another attempt at a known one
+         */
+        synchronized void track(String selector, String type, long now) {
+            int row = row(selector);
+            if (row >= 0) {
+                int attempts = states[row] & ATTEMPTS;
+                if (attempts < ATTEMPTS) {
+                    states[row]++;
+                }
+                lastAttempt[row] = now;
+                return;
+            }
+            if (count == selectors.length) {
+                int capacity = count * 2;
+                selectors = Arrays.copyOf(selectors, capacity);
+                types = Arrays.copyOf(types, capacity);
+                firstSeen = Arrays.copyOf(firstSeen, capacity);
+                lastAttempt = Arrays.copyOf(lastAttempt, capacity);
+                states = Arrays.copyOf(states, capacity);
+            }
+            row = count++;
+            selectors[row] = DICTIONARY.acquire(selector);
+            types[row] = type == null ? 0 : DICTIONARY.acquire(type);
+            firstSeen[row] = now;
+            lastAttempt[row] = now;
+            states[row] = 1;
+            rows.put(selectors[row], row + 1);
+        }
+
+        synchronized void verify(String selector) {
+            int row = row(selector);
+            if (row >= 0) {
+                states[row] |= VERIFIED;
+            }
+        }
+
+        synchronized boolean isVerified(String selector) {
+            int row = row(selector);
+            return row >= 0 && (states[row] & VERIFIED) != 0;
+        }
+
+        synchronized boolean isEmpty() {
+            return count == 0;
+        }
+
+        synchronized int size() {
+            return count;
+        }
+
+        /**
+         * @return the row of the selector, or -1
+         */
+        private int row(String selector) {
+            // A selector with a row holds a reference, so its id stays valid while we hold the lock
+            int selectorId = DICTIONARY.find(selector);
+            return selectorId == 0 ? -1 : rows.get(selectorId) - 1;
+        }
+
+        /**
+         * Mark locators likely broken as reported, and drop the ones settled a while ago
+         *
+         * @param broken receives the locators to report
+         */
+        synchronized void check(long now, List<BrokenLocator> broken) {
+            // Find locators that are unverified and have been so for a while
+            for (int row = 0; row < count; row++) {
+                int state = states[row];
+                if ((state & (VERIFIED | REPORTED)) != 0) {
+                    continue;
+                }
+                // Calculate time since first seen
+                long duration = lastAttempt[row] - firstSeen[row];
+                int attempts = state & ATTEMPTS;
+                String selector = DICTIONARY.get(selectors[row]);
+
+                // Skip common selectors that might be legitimate but don't always
+                // trigger verification due to how they're used
+                if (selector.equals(":scope > LEGEND") ||
+                        selector.equals("body") ||
+                        selector.equals("html")) {
+                    states[row] |= VERIFIED; // Mark as verified to avoid reporting
+                    continue;
+                }
+
+                // For quick attempts with minimal duration, only report if we've seen multiple attempts
+                if (duration < 100 && attempts < 2) {
+                    continue; // Skip reporting elements that were seen only briefly
+                }
+
+                // Require more evidence for potentially broken locators
+                boolean likelyBroken =
+                        // Has been attempted multiple times
+                        (attempts >= 3 ||
+                                // OR took significant time trying to resolve
+                                duration >= 1000) &&
+                                // AND enough time has passed since the last attempt
+                                (now - lastAttempt[row]) > CONFIRMATION_DELAY_MS;
+
+                if (likelyBroken) {
+                    // This locator is likely broken - report it
+                    broken.add(new BrokenLocator(selector, types[row] == 0 ? null : DICTIONARY.get(types[row]),
+                            attempts, duration));
+                    states[row] |= REPORTED;
+                }
+            }
+
+            // Clean up old entries: verified or reported locators after a while (to prevent memory leaks)
+            for (int row = count - 1; row >= 0; row--) {
+                if ((states[row] & (VERIFIED | REPORTED)) != 0 && now - lastAttempt[row] > 60000) {
+                    remove(row);
+                }
+            }
+        }
+
+        private void remove(int row) {
+            rows.remove(selectors[row]);
+            DICTIONARY.release(selectors[row]);
+            if (types[row] != 0) {
+                DICTIONARY.release(types[row]);
+            }
+            int last = --count;
+            if (row != last) {
+                selectors[row] = selectors[last];
+                types[row] = types[last];
+                firstSeen[row] = firstSeen[last];
+                lastAttempt[row] = lastAttempt[last];
+                states[row] = states[last];
+                rows.put(selectors[row], row + 1);
+            }
+        }
+    }
+
+    /**
+     * A locator to report, taken out of its session's table
+     */
+    private static final class BrokenLocator {
         final String selector;
         final String type;
-        final long firstSeenTime;
-        long lastVerificationAttempt;
-        boolean verified;
-        boolean reported;
-        int attempts;
+        final int attempts;
+        final long duration;
 
-        public LocatorStatus(String selector, String type) {
+        BrokenLocator(String selector, String type, int attempts, long duration) {
             this.selector = selector;
             this.type = type;
-            this.firstSeenTime = System.currentTimeMillis();
-            this.lastVerificationAttempt = this.firstSeenTime;
-            this.verified = false;
-            this.reported = false;
-            this.attempts = 1;
-        }
-
-        public void recordAttempt() {
-            this.attempts++;
-            this.lastVerificationAttempt = System.currentTimeMillis();
+            this.attempts = attempts;
+            this.duration = duration;
         }
     }
 
@@ -81,21 +235,15 @@ public class LocatorVerificationTracker {
             return;
         }
 
-        // Get or create session map
-        Map<String, LocatorStatus> sessionMap = sessionLocators.computeIfAbsent(
-                sessionId, id -> new ConcurrentHashMap<>());
-
-        // Get or create status for this selector
-        LocatorStatus status = sessionMap.get(selector);
-
-        if (status == null) {
-            // First time seeing this locator
-            status = new LocatorStatus(selector, type);
-            sessionMap.put(selector, status);
-        } else {
-            // We've seen this locator before, record the attempt
-            status.recordAttempt();
-        }
+        long now = System.currentTimeMillis();
+        // Tracked inside compute, so the checker cannot drop the session's table as empty meanwhile
+        sessionLocators.compute(sessionId, (id, locators) -> {
+            if (locators == null) {
+                locators = new SessionLocators();
+            }
+            locators.track(selector, type, now);
+            return locators;
+        });
     }
 
     /**
@@ -106,14 +254,9 @@ public class LocatorVerificationTracker {
             return;
         }
 
-        Map<String, LocatorStatus> sessionMap = sessionLocators.get(sessionId);
-        if (sessionMap == null) {
-            return;
-        }
-
-        LocatorStatus status = sessionMap.get(selector);
-        if (status != null && !status.verified) {
-            status.verified = true;
+        SessionLocators locators = sessionLocators.get(sessionId);
+        if (locators != null) {
+            locators.verify(selector);
         }
     }
 
@@ -123,67 +266,27 @@ public class LocatorVerificationTracker {
      */
     public static void checkForBrokenLocators() {
         long now = System.currentTimeMillis();
+        List<BrokenLocator> broken = new ArrayList<>();
 
         // Check each session
-        for (Map.Entry<String, Map<String, LocatorStatus>> sessionEntry : sessionLocators.entrySet()) {
-            String sessionId = sessionEntry.getKey();
-            Map<String, LocatorStatus> locators = sessionEntry.getValue();
-
-            // Find locators that are unverified and have been so for a while
-            for (LocatorStatus status : locators.values()) {
-                if (!status.verified && !status.reported) {
-                    // Calculate time since first seen
-                    long duration = status.lastVerificationAttempt - status.firstSeenTime;
-
-                    // Skip common selectors that might be legitimate but don't always
-                    // trigger verification due to how they're used
-                    if (status.selector.equals(":scope > LEGEND") ||
-                            status.selector.equals("body") ||
-                            status.selector.equals("html")) {
-                        status.verified = true; // Mark as verified to avoid reporting
-                        continue;
-                    }
-
-                    // For quick attempts with minimal duration, only report if we've seen multiple attempts
-                    if (duration < 100 && status.attempts < 2) {
-                        continue; // Skip reporting elements that were seen only briefly
-                    }
-
-                    // Require more evidence for potentially broken locators
-                    boolean likelyBroken =
-                            // Has been attempted multiple times
-                            (status.attempts >= 3 ||
-                                    // OR took significant time trying to resolve
-                                    duration >= 1000) &&
-                                    // AND enough time has passed since the last attempt
-                                    (now - status.lastVerificationAttempt) > CONFIRMATION_DELAY_MS;
-
-                    if (likelyBroken) {
-                        // This locator is likely broken - report it
-                        logBrokenLocator(sessionId, status);
-                        status.reported = true;
-                    }
-                }
+        for (Map.Entry<String, SessionLocators> sessionEntry : sessionLocators.entrySet()) {
+            sessionEntry.getValue().check(now, broken);
+            // Reported outside the session's lock, which the proxy threads take per command
+            for (BrokenLocator locator : broken) {
+                logBrokenLocator(sessionEntry.getKey(), locator);
             }
+            broken.clear();
 
-            // Clean up old entries
-            locators.entrySet().removeIf(entry -> {
-                LocatorStatus status = entry.getValue();
-                // Remove verified locators after a while (to prevent memory leaks)
-                return (status.verified && (now - status.lastVerificationAttempt > 60000)) ||
-                        // Remove reported broken locators after a while
-                        (status.reported && (now - status.lastVerificationAttempt > 60000));
-            });
+            // Remove the session's table once empty
+            sessionLocators.computeIfPresent(sessionEntry.getKey(),
+                    (id, locators) -> locators.isEmpty() ? null : locators);
         }
-
-        // Remove empty session maps
-        sessionLocators.entrySet().removeIf(entry -> entry.getValue().isEmpty());
     }
 
     /**
      * Log a broken locator with details
      */
-    private static void logBrokenLocator(String sessionId, LocatorStatus status) {
+    private static void logBrokenLocator(String sessionId, BrokenLocator status) {
         try {
             // Skip ":scope > LEGEND" selectors
             if (status.selector.equals(":scope > LEGEND")) {
@@ -191,7 +294,7 @@ public class LocatorVerificationTracker {
             }
 
             String timestamp = DATE_FORMAT.format(new Date());
-            long duration = status.lastVerificationAttempt - status.firstSeenTime;
+            long duration = status.duration;
 
             // Create reason - ONLY for unverified locators
             String reason = "UNVERIFIED_LOCATOR after " + status.attempts +
@@ -228,7 +331,7 @@ public class LocatorVerificationTracker {
     /**
      * Write broken locator info to a shared JSON file for integration with robotframework-heal
      */
-    private static void writeToSharedJsonFile(String sessionId, LocatorStatus status, String reason, long duration) {
+    private static void writeToSharedJsonFile(String sessionId, BrokenLocator status, String reason, long duration) {
         try {
             // Create a JSON object with all necessary information
             JSONObject locatorInfo = new JSONObject();
@@ -240,33 +343,10 @@ public class LocatorVerificationTracker {
             locatorInfo.put("attempts", status.attempts);
             locatorInfo.put("duration", duration);
 
-            // Read existing file if it exists
-            JSONArray existingData = new JSONArray();
-            try {
-                java.nio.file.Path path = java.nio.file.Paths.get(SHARED_JSON_FILE);
-                if (java.nio.file.Files.exists(path)) {
-                    String content = new String(java.nio.file.Files.readAllBytes(path));
-                    if (!content.trim().isEmpty()) {
-                        existingData = new JSONArray(content);
-                    }
-                }
-            } catch (Exception e) {
-                logger.warning("Could not read existing shared JSON file: " + e.getMessage());
-                // Continue with empty array if file doesn't exist or is invalid
-            }
+            // Appended to the journal; the background compaction folds it into the JSON array
+            healingStore.append(locatorInfo);
 
-            // Add new locator info
-            existingData.put(locatorInfo);
-
-            // Write back to file
-            synchronized (LocatorVerificationTracker.class) {
-                try (BufferedWriter writer = new BufferedWriter(new FileWriter(SHARED_JSON_FILE))) {
-                    writer.write(existingData.toString(2));
-                    writer.flush();
-                }
-            }
-
-            logger.info("Added broken locator to shared JSON file for healing: " + status.selector);
+            logger.info("Queued broken locator for the shared healing JSON file: " + status.selector);
 
         } catch (Exception e) {
             logger.severe("Failed to write to shared JSON file: " + e.getMessage());
@@ -278,13 +358,35 @@ public class LocatorVerificationTracker {
      * Get the current verification status of a locator
      */
     public static boolean isLocatorVerified(String sessionId, String selector) {
-        Map<String, LocatorStatus> sessionMap = sessionLocators.get(sessionId);
-        if (sessionMap == null) {
-            return false;
+        SessionLocators locators = sessionLocators.get(sessionId);
+        return locators != null && locators.isVerified(selector);
+    }
+
+    /**
+     * @return counts of the sessions and locators being tracked
+     */
+    public static Stats stats() {
+        int locators = 0;
+        for (SessionLocators session : sessionLocators.values()) {
+            locators += session.size();
         }
+        return new Stats(sessionLocators.size(), locators, DICTIONARY.size());
+    }
 
-        LocatorStatus status = sessionMap.get(selector);
-        return status != null && status.verified;
+    /**
+     * Point-in-time tracker counters
+     */
+    public static final class Stats {
+        public final int sessions;
+        public final int locators;
+        /** Distinct selector and type strings held for the tracker and the pending commands */
+        public final int internedStrings;
+
+        Stats(int sessions, int locators, int internedStrings) {
+            this.sessions = sessions;
+            this.locators = locators;
+            this.internedStrings = internedStrings;
+        }
     }
 
     /**
@@ -293,18 +395,19 @@ public class LocatorVerificationTracker {
     public static void initialize() {
         // Create empty shared JSON file if it doesn't exist
         try {
-            java.nio.file.Path path = java.nio.file.Paths.get(SHARED_JSON_FILE);
-            if (!java.nio.file.Files.exists(path)) {
-                java.nio.file.Files.createFile(path);
-                java.nio.file.Files.write(path, "[]".getBytes());
+            Path path = healingStore.jsonFile();
+            if (!Files.exists(path)) {
+                Files.createFile(path);
+                Files.write(path, "[]".getBytes());
                 logger.info("Created shared JSON file for integration with robotframework-heal: " + path.toAbsolutePath());
             }
         } catch (Exception e) {
             logger.warning("Could not create shared JSON file: " + e.getMessage());
         }
+        healingStore.startCompaction(COMPACTION_INTERVAL_MS);
 
         // Start a thread to periodically check for broken locators
-        Thread checkerThread = new Thread(() -> {
+        ProxyThreads.start("LocatorVerificationChecker", () -> {
             while (!Thread.currentThread().isInterrupted()) {
                 try {
                     checkForBrokenLocators();
@@ -319,10 +422,6 @@ public class LocatorVerificationTracker {
             }
         });
 
-        checkerThread.setDaemon(true);
-        checkerThread.setName("LocatorVerificationChecker");
-        checkerThread.start();
-
         logger.info("Locator verification tracker initialized");
     }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.cdpproxy.util;
+
+/**
+ * Selectors of a session's commands awaiting their response, by command id.
+ * Command ids key an {@link IntIntMap} of interned selector ids, so a tracked
+ * command boxes no id and copies no string. The session's client side adds
+ * commands while its browser side settles them, so access is synchronized.
+ * {@link #close()} when the session ends, to release the selectors; commands
+ * put after that are ignored, as nothing would release them.
+ */
+public final class PendingSelectors {
+    private final SelectorDictionary dictionary;
+    private final IntIntMap selectorIds = new IntIntMap();
+    private boolean closed;
+
+    public PendingSelectors() {
+        this(SelectorDictionary.SHARED);
+    }
+
+    PendingSelectors(SelectorDictionary dictionary) {
+        this.dictionary = dictionary;
+    }
+
+    public void put(int commandId, String selector) {
+        int selectorId = dictionary.acquire(selector);
+        int previous;
+        synchronized (this) {
+            previous = closed ? selectorId : selectorIds.put(commandId, selectorId);
+        }
+        if (previous != 0) {
+            dictionary.release(previous);
+        }
+    }
+
+    /**
+     * @return the selector of the command, or null when none is pending
+     */
+    public String get(int commandId) {
+        synchronized (this) {
+            int selectorId = selectorIds.get(commandId);
+            // Held by this table, the id cannot be released meanwhile
+            return selectorId == 0 ? null : dictionary.get(selectorId);
+        }
+    }
+
+    public synchronized boolean contains(int commandId) {
+        return selectorIds.get(commandId) != 0;
+    }
+
+    /**
+     * Settle a command
+     */
+    public void remove(int commandId) {
+        int selectorId;
+        synchronized (this) {
+            selectorId = selectorIds.remove(commandId);
+        }
+        if (selectorId != 0) {
+            dictionary.release(selectorId);
+        }
+    }
+
+    public synchronized int size() {
+        return selectorIds.size();
+    }
+
+    /**
+     * Drop every pending command and stop taking new ones
+     */
+    public synchronized void close() {
+        closed = true;
+        selectorIds.forEachValue(dictionary::release);
+        selectorIds.clear();
+    }
+}
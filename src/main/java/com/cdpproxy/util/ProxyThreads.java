@@ -0,0 +1,88 @@
+package com.cdpproxy.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Threads for the proxy's blocking work: connects, discovery, reconnects,
+ * locator checks, dump and store writes. In virtual thread mode
+ * (spring.threads.virtual.enabled) they are all virtual threads, which give
+ * their carrier back while they block; otherwise they are daemon platform
+ * threads. The mode is set once at startup, before any component creates
+ * threads.
+ */
+public final class ProxyThreads {
+    private static final Logger logger = Logger.getLogger(ProxyThreads.class.getName());
+
+    private static volatile boolean virtual;
+
+    private ProxyThreads() {
+    }
+
+    public static void useVirtualThreads(boolean virtualThreads) {
+        virtual = virtualThreads;
+        logger.info("Blocking proxy work runs on " + (virtualThreads ? "virtual" : "platform") + " threads");
+    }
+
+    public static boolean virtual() {
+        return virtual;
+    }
+
+    /**
+     * @return a factory of threads all named {@code name}
+     */
+    public static ThreadFactory named(String name) {
+        return named(name, Thread.NORM_PRIORITY);
+    }
+
+    /**
+     * @param priority priority of platform threads; virtual threads ignore it
+     */
+    public static ThreadFactory named(String name, int priority) {
+        if (virtual) {
+            return Thread.ofVirtual().name(name).factory();
+        }
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            return thread;
+        };
+    }
+
+    /**
+     * @return a factory of threads named {@code prefix-1}, {@code prefix-2}, ...
+     */
+    public static ThreadFactory numbered(String prefix) {
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix + "-", 1).factory();
+        }
+        AtomicInteger number = new AtomicInteger();
+        return task -> {
+            Thread thread = new Thread(task, prefix + "-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Start a long-running task on a thread of its own
+     */
+    public static Thread start(String name, Runnable task) {
+        Thread thread = named(name).newThread(task);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * @return an unbounded executor for short blocking tasks: a thread per
+     * task when virtual, reused platform threads otherwise
+     */
+    public static ExecutorService perTask(String prefix) {
+        return virtual ? Executors.newThreadPerTaskExecutor(numbered(prefix))
+                : Executors.newCachedThreadPool(numbered(prefix));
+    }
+}
@@ -0,0 +1,112 @@
+package com.cdpproxy.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Extraction results by a 64-bit hash of the message parts they were taken
+ * from, so that a locator Playwright polls for again and again is extracted
+ * once. The cache is a fixed table of {@code capacity} slots, direct-mapped:
+ * a new key evicts whatever was in its slot. Slots hold immutable entries, so
+ * lookups take no lock.
+ */
+public final class SelectorCache {
+    /** Cached for keys that yielded no selector */
+    static final LocatorDetector.SelectorInfo NO_SELECTOR = new LocatorDetector.SelectorInfo(null, null);
+
+    private final Entry[] slots;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final long key;
+        final LocatorDetector.SelectorInfo info;
+
+        Entry(long key, LocatorDetector.SelectorInfo info) {
+            this.key = key;
+            this.info = info;
+        }
+    }
+
+    /**
+     * @param capacity slots, rounded up to a power of two
+     */
+    public SelectorCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        int slotCount = Integer.highestOneBit(Math.min(capacity, 1 << 30));
+        if (slotCount < capacity) {
+            slotCount <<= 1;
+        }
+        slots = new Entry[slotCount];
+        mask = slotCount - 1;
+    }
+
+    /**
+     * Look a key up, counting the hit or miss
+     *
+     * @return the cached selector, {@link #NO_SELECTOR} when the key yielded none, or null when not cached
+     */
+    LocatorDetector.SelectorInfo get(long key) {
+        Entry entry = slots[slot(key)];
+        if (entry == null || entry.key != key) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.info;
+    }
+
+    /**
+     * @param info the selector extracted for the key, or null when there was none
+     */
+    void put(long key, LocatorDetector.SelectorInfo info) {
+        int slot = slot(key);
+        Entry previous = slots[slot];
+        slots[slot] = new Entry(key, info == null ? NO_SELECTOR : info);
+        if (previous == null) {
+            size.incrementAndGet();
+        } else if (previous.key != key) {
+            evictions.increment();
+        }
+    }
+
+    private int slot(long key) {
+        return (int) (key ^ (key >>> 32)) & mask;
+    }
+
+    public Stats stats() {
+        return new Stats(slots.length, size.get(), hits.sum(), misses.sum(), evictions.sum());
+    }
+
+    /**
+     * Point-in-time cache counters
+     */
+    public static final class Stats {
+        public final int capacity;
+        public final int size;
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+
+        Stats(int capacity, int size, long hits, long misses, long evictions) {
+            this.capacity = capacity;
+            this.size = size;
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return share of lookups answered from the cache, 0 before the first lookup
+         */
+        public double hitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+    }
+}
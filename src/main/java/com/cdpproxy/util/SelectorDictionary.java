@@ -0,0 +1,189 @@
+package com.cdpproxy.util;
+
+import java.util.Arrays;
+
+/**
+ * Selector and locator type strings by small int ids, so the pending command
+ * tables and locator statuses of every session refer to one copy of each
+ * string however often it is used. Ids are reference counted: an id whose
+ * last reference is released is handed out again for the next new string.
+ * Ids are never 0, leaving 0 to mean none.
+ * <p>
+ * Strings are spread by hash over stripes that each have their own lock and
+ * their own open-addressing table of ids, so sessions interning different
+ * strings rarely wait for each other and nothing is boxed. An id carries its
+ * stripe in its low bits.
+ */
+public final class SelectorDictionary {
+    /** The dictionary shared by all sessions */
+    public static final SelectorDictionary SHARED = new SelectorDictionary();
+
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPE_MASK = (1 << STRIPE_BITS) - 1;
+    /** Ids per stripe, so that shifted ids stay positive */
+    private static final int MAX_STRIPE_IDS = 1 << (31 - STRIPE_BITS);
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_BITS];
+
+    public SelectorDictionary() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    private static int hash(String string) {
+        int hash = string.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Intern a string, taking a reference to its id
+     */
+    public int acquire(String string) {
+        int hash = hash(string);
+        return (stripes[hash & STRIPE_MASK].acquire(string) << STRIPE_BITS) | (hash & STRIPE_MASK);
+    }
+
+    /**
+     * Drop a reference taken by {@link #acquire}
+     */
+    public void release(int id) {
+        stripes[id & STRIPE_MASK].release(id >>> STRIPE_BITS);
+    }
+
+    /**
+     * @return the id of an interned string without taking a reference, or 0 when not interned
+     */
+    public int find(String string) {
+        int hash = hash(string);
+        int local = stripes[hash & STRIPE_MASK].find(string);
+        return local == 0 ? 0 : (local << STRIPE_BITS) | (hash & STRIPE_MASK);
+    }
+
+    /**
+     * @return the string of an id someone holds a reference to
+     */
+    public String get(int id) {
+        return stripes[id & STRIPE_MASK].get(id >>> STRIPE_BITS);
+    }
+
+    /**
+     * @return distinct strings interned
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    /**
+     * One lock's share of the strings. Ids are local to the stripe and start
+     * at 1; {@code slots} holds them by hash with linear probing, and the key
+     * of an id is {@code strings[id]}.
+     */
+    private static final class Stripe {
+        private int[] slots = new int[16];
+        private String[] strings = new String[16];
+        private int[] references = new int[16];
+        private int[] freeIds = new int[8];
+        private int freeCount;
+        private int nextId = 1;
+        private int size;
+
+        private int home(String string) {
+            return (hash(string) >>> STRIPE_BITS) & (slots.length - 1);
+        }
+
+        synchronized int acquire(String string) {
+            int mask = slots.length - 1;
+            int i = home(string);
+            for (int id; (id = slots[i]) != 0; i = (i + 1) & mask) {
+                if (strings[id].equals(string)) {
+                    references[id]++;
+                    return id;
+                }
+            }
+            int id;
+            if (freeCount > 0) {
+                id = freeIds[--freeCount];
+            } else if (nextId < MAX_STRIPE_IDS) {
+                id = nextId++;
+            } else {
+                throw new IllegalStateException("Too many distinct selectors");
+            }
+            if (id == strings.length) {
+                strings = Arrays.copyOf(strings, id * 2);
+                references = Arrays.copyOf(references, id * 2);
+            }
+            strings[id] = string;
+            references[id] = 1;
+            slots[i] = id;
+            if (++size > slots.length * 3 / 4) {
+                rehash(slots.length * 2);
+            }
+            return id;
+        }
+
+        synchronized void release(int id) {
+            if (--references[id] > 0) {
+                return;
+            }
+            int mask = slots.length - 1;
+            int hole = home(strings[id]);
+            while (slots[hole] != id) {
+                hole = (hole + 1) & mask;
+            }
+            // Pull back later ids of the probe run that the hole would cut off from their slot
+            for (int j = (hole + 1) & mask; slots[j] != 0; j = (j + 1) & mask) {
+                int home = home(strings[slots[j]]);
+                boolean reachable = hole <= j ? hole < home && home <= j : hole < home || home <= j;
+                if (!reachable) {
+                    slots[hole] = slots[j];
+                    hole = j;
+                }
+            }
+            slots[hole] = 0;
+            strings[id] = null;
+            size--;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = id;
+        }
+
+        synchronized int find(String string) {
+            int mask = slots.length - 1;
+            for (int i = home(string), id; (id = slots[i]) != 0; i = (i + 1) & mask) {
+                if (strings[id].equals(string)) {
+                    return id;
+                }
+            }
+            return 0;
+        }
+
+        synchronized String get(int id) {
+            return strings[id];
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        private void rehash(int capacity) {
+            int[] old = slots;
+            slots = new int[capacity];
+            int mask = capacity - 1;
+            for (int id : old) {
+                if (id != 0) {
+                    int i = home(strings[id]);
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = id;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.cdpproxy.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Finds a selector in a Playwright serialized value, where objects are
+ * {@code {"o": [{"k": key, "v": value}, ...]}} and arrays {@code {"a": [...]}}.
+ * <p>
+ * Selector paths such as {@code info.parsed.parts[*].source} are compiled into
+ * a tree of keys, so a value is matched in one walk: each {@code o} and
+ * {@code a} array is read once, branches that cannot beat the best match so
+ * far are not entered, unexpected shapes are skipped rather than thrown on,
+ * and nothing is allocated but the selector returned. Paths take precedence
+ * in the order they were added.
+ */
+final class SerializedValueMatcher {
+    private static final String ANY_ELEMENT = "[*]";
+    private static final String DEFAULT_TYPE = "UNKNOWN";
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final Node root = new Node();
+    /** Fixed type of each path, null when typed by a sibling key */
+    private final List<String> fixedTypes = new ArrayList<>();
+
+    /**
+     * A position in the compiled paths
+     */
+    private static final class Node {
+        final Map<String, Node> members = new HashMap<>();
+        /** Node of every element, when the value here is an array */
+        Node elements;
+        /** Sibling key whose string value types the selectors found here */
+        String typeKey;
+        /** Path whose selector is the string value here, or NONE */
+        int path = NONE;
+        /** Best path that can be matched at or below this node */
+        int rank = NONE;
+    }
+
+    /**
+     * A selector with the path it was found at
+     */
+    private static final class Found extends LocatorDetector.SelectorInfo {
+        final int path;
+
+        Found(String selector, String type, int path) {
+            super(selector, type);
+            this.path = path;
+        }
+    }
+
+    /**
+     * Add a path whose selector is typed by the upper-cased value of a sibling
+     * key, {@value #DEFAULT_TYPE} when that key is absent
+     */
+    SerializedValueMatcher typedBy(String path, String typeKey) {
+        Node parent = add(path, null);
+        if (parent.typeKey != null && !parent.typeKey.equals(typeKey)) {
+            throw new IllegalArgumentException("Conflicting type keys at " + path + ": " + parent.typeKey
+                    + ", " + typeKey);
+        }
+        parent.typeKey = typeKey;
+        return this;
+    }
+
+    /**
+     * Add a path whose selector always has the given type
+     */
+    SerializedValueMatcher typed(String path, String type) {
+        add(path, type);
+        return this;
+    }
+
+    /**
+     * @return the parent of the path's selector node
+     */
+    private Node add(String path, String fixedType) {
+        int index = fixedTypes.size();
+        fixedTypes.add(fixedType);
+        Node node = root;
+        Node parent = root;
+        node.rank = Math.min(node.rank, index);
+        for (String segment : path.split("\\.")) {
+            boolean array = segment.endsWith(ANY_ELEMENT);
+            String key = array ? segment.substring(0, segment.length() - ANY_ELEMENT.length()) : segment;
+            parent = node;
+            node = node.members.computeIfAbsent(key, k -> new Node());
+            node.rank = Math.min(node.rank, index);
+            if (array) {
+                if (node.elements == null) {
+                    node.elements = new Node();
+                }
+                node = node.elements;
+                node.rank = Math.min(node.rank, index);
+            }
+        }
+        if (node.elements != null || !node.members.isEmpty() || node.path != NONE) {
+            throw new IllegalArgumentException("Selector path " + path + " must end at a new leaf");
+        }
+        node.path = index;
+        return parent;
+    }
+
+    /**
+     * @return the selector of the first path found in precedence order, or null
+     */
+    LocatorDetector.SelectorInfo match(JSONObject value) {
+        return walk(value, root, NONE);
+    }
+
+    /**
+     * @param bound only paths before this one are looked for
+     * @return the best selector at or below {@code node}, or null
+     */
+    private Found walk(JSONObject value, Node node, int bound) {
+        Found best = null;
+        if (node.elements != null) {
+            JSONArray elements = value.optJSONArray("a");
+            for (int i = 0; elements != null && i < elements.length() && bound > node.elements.rank; i++) {
+                if (elements.opt(i) instanceof JSONObject element) {
+                    Found found = walk(element, node.elements, bound);
+                    if (found != null) {
+                        best = found;
+                        bound = found.path;
+                    }
+                }
+            }
+            return best;
+        }
+
+        JSONArray properties = value.optJSONArray("o");
+        if (properties == null) {
+            return null;
+        }
+        // A selector found here may take its type from a sibling that comes after it
+        int leafPath = NONE;
+        String selector = null;
+        String type = null;
+        for (int i = 0; i < properties.length()
+                && (bound > node.rank || (bound == leafPath && node.typeKey != null && type == null)); i++) {
+            if (!(properties.opt(i) instanceof JSONObject property) || !(property.opt("k") instanceof String key)) {
+                continue;
+            }
+            Object v = property.opt("v");
+            if (key.equals(node.typeKey)) {
+                if (v instanceof String string) {
+                    type = string;
+                }
+                continue;
+            }
+            Node member = node.members.get(key);
+            if (member == null || member.rank >= bound) {
+                continue;
+            }
+            if (member.path != NONE) {
+                if (v instanceof String string) {
+                    leafPath = member.path;
+                    selector = string;
+                    bound = leafPath;
+                }
+            } else if (v instanceof JSONObject child) {
+                Found found = walk(child, member, bound);
+                if (found != null) {
+                    best = found;
+                    bound = found.path;
+                }
+            }
+        }
+        if (leafPath == NONE || bound != leafPath) {
+            return best;
+        }
+        String fixedType = fixedTypes.get(leafPath);
+        return new Found(selector, fixedType != null ? fixedType : type != null ? type.toUpperCase() : DEFAULT_TYPE,
+                leafPath);
+    }
+}
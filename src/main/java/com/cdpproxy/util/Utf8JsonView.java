@@ -0,0 +1,61 @@
+package com.cdpproxy.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link CharSequence} over the UTF-8 bytes of a JSON frame, one char per
+ * byte, so {@link CDPJsonScanner} can walk a frame without decoding it.
+ * Every structural JSON character is ASCII and no byte of a multi-byte UTF-8
+ * sequence is, so member and value bounds come out exact. Only ASCII regions
+ * (keys, numbers, CDP method names) read back as the text they encode.
+ * The view does not copy the buffer and does not move its position.
+ */
+public final class Utf8JsonView implements CharSequence {
+
+    private ByteBuffer bytes;
+    private int offset;
+    private int length;
+
+    /**
+     * View the remaining bytes of {@code frame}; the previous frame is released
+     */
+    public Utf8JsonView wrap(ByteBuffer frame) {
+        this.bytes = frame;
+        this.offset = frame.position();
+        this.length = frame.remaining();
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(offset + index) & 0xFF);
+    }
+
+    /**
+     * @return the region as text, decoded
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decode(start, end);
+    }
+
+    public String decode(int start, int end) {
+        ByteBuffer region = bytes.duplicate();
+        region.limit(offset + end).position(offset + start);
+        return StandardCharsets.UTF_8.decode(region).toString();
+    }
+
+    /**
+     * @return the whole frame, decoded
+     */
+    @Override
+    public String toString() {
+        return decode(0, length);
+    }
+}
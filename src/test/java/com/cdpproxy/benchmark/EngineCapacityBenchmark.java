@@ -0,0 +1,58 @@
+package com.cdpproxy.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent-session capacity of the two proxy engines, with the given number
+ * of Playwright sessions open at once against the whole proxy (see
+ * {@link ProxyHarness}). Each invocation sends one command on every session
+ * and waits for all the responses. The threads and heap in use are printed at
+ * the end of each trial.
+ * <p>
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="EngineCapacity"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EngineCapacityBenchmark {
+
+    @Param({"servlet", "reactive"})
+    public String engine;
+
+    @Param({"100", "1000"})
+    public int sessions;
+
+    private ProxyHarness proxy;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        proxy = new ProxyHarness(sessions, "cdp.engine=" + engine);
+    }
+
+    @Benchmark
+    public void roundTrip() throws Exception {
+        proxy.roundTrip();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        proxy.report(engine + " engine");
+        proxy.close();
+    }
+}
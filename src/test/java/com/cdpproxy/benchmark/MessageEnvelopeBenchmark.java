@@ -0,0 +1,129 @@
+package com.cdpproxy.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.cdpproxy.util.CDPMessageEnvelope;
+import com.cdpproxy.util.CDPMessageFormatter;
+import com.cdpproxy.util.LocatorDetector;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Client-to-browser analysis cost per frame: the previous triple parse
+ * (sanitize, locator tracking, dump formatting) against one shared envelope.
+ * File I/O is excluded from both sides.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MessageEnvelopeBenchmark {
+    private static final String TIMESTAMP = "2025-05-07 14:49:32.843";
+
+    private List<String> messages;
+
+    @Setup
+    public void load() {
+        messages = SampleMessages.load(SampleMessages.FROM_PLAYWRIGHT);
+    }
+
+    @Benchmark
+    public void tripleParse(Blackhole blackhole) {
+        for (String payload : messages) {
+            blackhole.consume(legacyDumpEntry(payload));
+            blackhole.consume(legacySanitize(payload));
+            try {
+                JSONObject json = new JSONObject(payload);
+                if (json.has("id") && json.has("method") && json.getString("method").equals("DOM.querySelector")) {
+                    blackhole.consume(json.getJSONObject("params").getString("selector"));
+                } else if (json.has("method") && json.has("params")) {
+                    blackhole.consume(LocatorDetector.extractSelector(json));
+                }
+            } catch (Exception e) {
+                blackhole.consume(e);
+            }
+        }
+    }
+
+    @Benchmark
+    public void sharedEnvelope(Blackhole blackhole) {
+        for (String payload : messages) {
+            CDPMessageEnvelope envelope = CDPMessageEnvelope.parse(payload);
+            blackhole.consume(CDPMessageFormatter.formatEntry(TIMESTAMP, "FROM_PLAYWRIGHT", envelope));
+            blackhole.consume(envelope.sanitized());
+            if (envelope.hasId() && "DOM.querySelector".equals(envelope.method())) {
+                blackhole.consume(envelope.params().getString("selector"));
+            } else if (envelope.method() != null && envelope.hasParams()) {
+                blackhole.consume(LocatorDetector.extractSelector(envelope));
+            }
+        }
+    }
+
+    @Benchmark
+    public void sharedEnvelopeWithoutDump(Blackhole blackhole) {
+        for (String payload : messages) {
+            CDPMessageEnvelope envelope = CDPMessageEnvelope.parse(payload);
+            blackhole.consume(envelope.sanitized());
+            if (envelope.method() != null && envelope.hasParams()) {
+                blackhole.consume(LocatorDetector.extractSelector(envelope));
+            }
+        }
+    }
+
+    /** The sanitizer as it was before the envelope was introduced */
+    private static String legacySanitize(String message) {
+        try {
+            JSONObject json = new JSONObject(message);
+            JSONObject sanitized = new JSONObject();
+            if (json.has("id")) {
+                sanitized.put("id", json.get("id"));
+            }
+            if (json.has("method")) {
+                sanitized.put("method", json.getString("method"));
+            }
+            if (json.has("params")) {
+                sanitized.put("params", json.getJSONObject("params"));
+            }
+            if (json.has("sessionId") && json.get("sessionId") instanceof String) {
+                sanitized.put("sessionId", json.getString("sessionId"));
+            }
+            return sanitized.toString();
+        } catch (Exception e) {
+            return message;
+        }
+    }
+
+    /** The dump formatting as it was before the envelope was introduced */
+    private static String legacyDumpEntry(String message) {
+        try {
+            JSONObject json = new JSONObject(message);
+            StringBuilder entry = new StringBuilder();
+            entry.append("=== ").append(TIMESTAMP).append(" | FROM_PLAYWRIGHT ===\n");
+            if (json.has("id")) {
+                entry.append("ID: ").append(json.get("id")).append("\n");
+            }
+            if (json.has("method")) {
+                entry.append("Method: ").append(json.getString("method")).append("\n");
+            }
+            if (json.has("params")) {
+                entry.append("Params: ").append(json.getJSONObject("params").toString(2)).append("\n");
+            }
+            entry.append("Full: ").append(json.toString(2)).append("\n\n");
+            return entry.toString();
+        } catch (Exception e) {
+            return TIMESTAMP + " | FROM_PLAYWRIGHT | " + message + "\n\n";
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.cdpproxy.benchmark;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import com.cdpproxy.ProxyApplication;
+import com.sun.net.httpserver.HttpServer;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * The whole proxy in-process for the capacity benchmarks: a minimal browser
+ * that answers every command, the application on a random port, and a number
+ * of concurrent Playwright sessions on a non-blocking client. The message dump
+ * is off.
+ * <p>
+ * Tomcat allocates each session's text and binary message buffers up front,
+ * about 15MB per session at the default 5MB buffer size, which alone caps the
+ * servlet engine at a few hundred sessions per GB of heap. The proxy runs here
+ * with 64KB buffers, larger messages being streamed by the servlet engine, so
+ * the benchmarks measure the relaying rather than that setting.
+ */
+final class ProxyHarness implements AutoCloseable {
+
+    private final Browser browser;
+    private final ConfigurableApplicationContext proxy;
+    private final ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+    private final List<Client> clients = new ArrayList<>();
+    private int nextId;
+
+    /**
+     * Answers every command with an empty result, and serves the endpoint's
+     * discovery document
+     */
+    private static final class Browser extends WebSocketServer {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private HttpServer http;
+
+        Browser() {
+            super(new InetSocketAddress("127.0.0.1", 0));
+            setReuseAddr(true);
+        }
+
+        void open() throws Exception {
+            start();
+            started.await(5, TimeUnit.SECONDS);
+            http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            http.createContext("/json/version", exchange -> {
+                byte[] body = new JSONObject().put("webSocketDebuggerUrl",
+                        "ws://127.0.0.1:" + getPort() + "/devtools/browser/bench").toString()
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            http.start();
+        }
+
+        String httpUrl() {
+            return "http://127.0.0.1:" + http.getAddress().getPort();
+        }
+
+        void close() throws InterruptedException {
+            http.stop(0);
+            stop(1000);
+        }
+
+        @Override
+        public void onOpen(org.java_websocket.WebSocket conn, ClientHandshake handshake) {
+        }
+
+        @Override
+        public void onClose(org.java_websocket.WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onMessage(org.java_websocket.WebSocket conn, String message) {
+            JSONObject command = new JSONObject(message);
+            conn.send(new JSONObject().put("id", command.getInt("id")).put("result", new JSONObject()).toString());
+        }
+
+        @Override
+        public void onError(org.java_websocket.WebSocket conn, Exception ex) {
+        }
+
+        @Override
+        public void onStart() {
+            started.countDown();
+        }
+    }
+
+    /**
+     * One Playwright session, expecting one response at a time
+     */
+    private static final class Client implements WebSocket.Listener {
+        private final AtomicReference<CompletableFuture<Void>> response = new AtomicReference<>();
+        WebSocket socket;
+
+        CompletableFuture<Void> send(int id) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            response.set(done);
+            socket.sendText("{\"id\":" + id + ",\"method\":\"Runtime.evaluate\",\"params\":{\"expression\":\"1\"}}",
+                    true);
+            return done;
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            if (last) {
+                CompletableFuture<Void> done = response.getAndSet(null);
+                if (done != null) {
+                    done.complete(null);
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+    }
+
+    /**
+     * Start the browser and the proxy, and open the sessions
+     *
+     * @param properties application properties on top of the harness's own, as {@code name=value}
+     */
+    ProxyHarness(int sessions, String... properties) throws Exception {
+        browser = new Browser();
+        browser.open();
+
+        List<String> args = new ArrayList<>(List.of(
+                "--server.port=0",
+                "--cdp.browser.http.url=" + browser.httpUrl(),
+                "--cdp.health.interval-ms=0",
+                "--cdp.dump.enabled=false",
+                "--websocket.max.text.buffer.size=65536",
+                "--websocket.max.binary.buffer.size=65536",
+                "--logging.level.root=WARN",
+                "--logging.level.com.cdpproxy=WARN"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        proxy = new SpringApplication(ProxyApplication.class).run(args.toArray(String[]::new));
+        int port = ((WebServerApplicationContext) proxy).getWebServer().getPort();
+
+        HttpClient http = HttpClient.newBuilder().executor(clientExecutor).build();
+        List<CompletableFuture<WebSocket>> opening = new ArrayList<>();
+        for (int i = 0; i < sessions; i++) {
+            Client client = new Client();
+            clients.add(client);
+            opening.add(http.newWebSocketBuilder().buildAsync(URI.create("ws://127.0.0.1:" + port + "/cdp"), client)
+                    .thenApply(socket -> client.socket = socket));
+        }
+        CompletableFuture.allOf(opening.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+        // The first round trip waits for every browser connection to be established
+        roundTrip();
+    }
+
+    /**
+     * Send one command on every session and wait for all the responses
+     */
+    void roundTrip() throws Exception {
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[clients.size()];
+        for (int i = 0; i < responses.length; i++) {
+            responses[i] = clients.get(i).send(++nextId);
+        }
+        CompletableFuture.allOf(responses).get(60, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Print the platform threads and heap in use with the sessions open
+     */
+    void report(String label) {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        System.out.printf("%n%s, %d sessions: %d live platform threads, %d MB heap used%n", label, clients.size(),
+                ManagementFactory.getThreadMXBean().getThreadCount(),
+                (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024));
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (Client client : clients) {
+            client.socket.abort();
+        }
+        proxy.close();
+        browser.close();
+        clientExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package com.cdpproxy.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+
+/**
+ * Real CDP traffic captured from cdp-messages-dump.log, used as benchmark input
+ */
+final class SampleMessages {
+    static final String FROM_PLAYWRIGHT = "FROM_PLAYWRIGHT";
+    static final String FROM_BROWSER = "FROM_BROWSER";
+
+    private static final String RESOURCE = "/cdp-sample-messages.jsonl";
+
+    private SampleMessages() {
+    }
+
+    /**
+     * @return raw messages for the given direction, in capture order
+     */
+    static List<String> load(String direction) {
+        List<String> messages = new ArrayList<>();
+        try (InputStream in = SampleMessages.class.getResourceAsStream(RESOURCE)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing benchmark resource " + RESOURCE);
+            }
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JSONObject entry = new JSONObject(line);
+                if (direction.equals(entry.getString("direction"))) {
+                    messages.add(entry.getString("message"));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return messages;
+    }
+}
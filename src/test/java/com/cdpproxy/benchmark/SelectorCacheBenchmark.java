@@ -0,0 +1,71 @@
+package com.cdpproxy.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.cdpproxy.util.CDPMessageEnvelope;
+import com.cdpproxy.util.LocatorDetector;
+import com.cdpproxy.util.SelectorCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Selector extraction for every Runtime.callFunctionOn in the captured
+ * traffic, as the proxy runs it on each command, with the extraction cache
+ * off (0 entries) and on. The captured test polls a handful of locators over
+ * and over, so all but the first round are cache hits. The cache counters are
+ * printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectorCacheBenchmark {
+
+    @Param({"0", "1024"})
+    public int entries;
+
+    private List<String> calls;
+
+    @Setup(Level.Trial)
+    public void load() {
+        calls = new ArrayList<>();
+        for (String payload : SampleMessages.load(SampleMessages.FROM_PLAYWRIGHT)) {
+            if ("Runtime.callFunctionOn".equals(CDPMessageEnvelope.parse(payload).method())) {
+                calls.add(payload);
+            }
+        }
+        LocatorDetector.installCache(entries > 0 ? new SelectorCache(entries) : null);
+    }
+
+    @Benchmark
+    public void extract(Blackhole blackhole) {
+        for (String payload : calls) {
+            blackhole.consume(LocatorDetector.extractSelector(CDPMessageEnvelope.parse(payload)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        SelectorCache.Stats stats = LocatorDetector.cacheStats();
+        if (stats != null) {
+            System.out.printf("%n%d calls per op; cache: %d entries, %d hits, %d misses, %d evictions, hit rate %.4f%n",
+                    calls.size(), stats.size, stats.hits, stats.misses, stats.evictions, stats.hitRate());
+        }
+        LocatorDetector.installCache(null);
+    }
+}
@@ -0,0 +1,209 @@
+package com.cdpproxy.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import com.cdpproxy.util.LocatorDetector;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Selector extraction from the serialized arguments of Playwright's
+ * utility-script calls in the captured traffic: the previous has/get chain,
+ * with a try/catch per level, against the compiled path matcher. Messages are
+ * parsed up front, so only the extraction is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializedValueBenchmark {
+
+    private List<JSONObject> calls;
+
+    @Setup
+    public void load() {
+        calls = new ArrayList<>();
+        for (String payload : SampleMessages.load(SampleMessages.FROM_PLAYWRIGHT)) {
+            JSONObject message = new JSONObject(payload);
+            if ("Runtime.callFunctionOn".equals(message.optString("method"))
+                    && message.getJSONObject("params").optString("functionDeclaration")
+                    .contains("utilityScript.evaluate")) {
+                calls.add(message);
+            }
+        }
+        for (JSONObject call : calls) {
+            String legacy = Objects.toString(legacyExtractSelectorFromFunction(call.getJSONObject("params")));
+            String compiled = Objects.toString(LocatorDetector.extractSelector(call));
+            if (!legacy.equals(compiled)) {
+                throw new IllegalStateException("Extractions differ: " + legacy + " / " + compiled);
+            }
+        }
+    }
+
+    @Benchmark
+    public void nestedChain(Blackhole blackhole) {
+        for (JSONObject call : calls) {
+            blackhole.consume(legacyExtractSelectorFromFunction(call.getJSONObject("params")));
+        }
+    }
+
+    @Benchmark
+    public void compiledPaths(Blackhole blackhole) {
+        for (JSONObject call : calls) {
+            blackhole.consume(LocatorDetector.extractSelector(call));
+        }
+    }
+
+    /** Runtime.callFunctionOn extraction as it was before the paths were compiled */
+    private static LocatorDetector.SelectorInfo legacyExtractSelectorFromFunction(JSONObject params) {
+        try {
+            if (params.has("functionDeclaration")
+                    && params.getString("functionDeclaration").contains("utilityScript.evaluate")) {
+                if (!params.has("arguments") || params.getJSONArray("arguments").length() < 7) {
+                    return null;
+                }
+                JSONArray arguments = params.getJSONArray("arguments");
+                for (int i = 5; i < Math.min(8, arguments.length()); i++) {
+                    JSONObject arg = arguments.getJSONObject(i);
+                    if (!arg.has("value") || !(arg.get("value") instanceof JSONObject)) {
+                        continue;
+                    }
+                    LocatorDetector.SelectorInfo info = legacyNestedStructure(arg.getJSONObject("value"));
+                    if (info != null) {
+                        return info;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static LocatorDetector.SelectorInfo legacyNestedStructure(JSONObject obj) {
+        try {
+            if (obj.has("o") && obj.get("o") instanceof JSONArray) {
+                JSONArray properties = obj.getJSONArray("o");
+                for (int i = 0; i < properties.length(); i++) {
+                    JSONObject prop = properties.getJSONObject(i);
+                    if (prop.has("k") && prop.has("v")) {
+                        String key = prop.getString("k");
+                        if ((key.equals("source") || key.equals("css")) && prop.get("v") instanceof String) {
+                            String type = key.equals("css") ? "CSS" : "UNKNOWN";
+                            return new LocatorDetector.SelectorInfo(prop.getString("v"), type);
+                        }
+                    }
+                    if (prop.has("k") && prop.getString("k").equals("info")
+                            && prop.has("v") && prop.get("v") instanceof JSONObject) {
+                        LocatorDetector.SelectorInfo info = legacyInfoObject(prop.getJSONObject("v"));
+                        if (info != null) {
+                            return info;
+                        }
+                    }
+                }
+            }
+            if (obj.has("v") && obj.get("v") instanceof String && obj.has("k")) {
+                String key = obj.getString("k");
+                if (key.equals("source") || key.equals("css") || key.equals("selector")) {
+                    String type = key.equals("css") ? "CSS" : "UNKNOWN";
+                    return new LocatorDetector.SelectorInfo(obj.getString("v"), type);
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static LocatorDetector.SelectorInfo legacyInfoObject(JSONObject infoObj) {
+        try {
+            if (infoObj.has("o") && infoObj.get("o") instanceof JSONArray) {
+                JSONArray properties = infoObj.getJSONArray("o");
+                String selector = null;
+                String type = "UNKNOWN";
+                for (int i = 0; i < properties.length(); i++) {
+                    JSONObject prop = properties.getJSONObject(i);
+                    if (prop.has("k") && prop.getString("k").equals("source")
+                            && prop.has("v") && prop.get("v") instanceof String) {
+                        selector = prop.getString("v");
+                    }
+                    if (prop.has("k") && prop.getString("k").equals("engine")
+                            && prop.has("v") && prop.get("v") instanceof String) {
+                        type = prop.getString("v").toUpperCase();
+                    }
+                    if (prop.has("k") && prop.getString("k").equals("parsed")
+                            && prop.has("v") && prop.get("v") instanceof JSONObject) {
+                        LocatorDetector.SelectorInfo parsedInfo = legacyParsedObject(prop.getJSONObject("v"));
+                        if (parsedInfo != null) {
+                            return parsedInfo;
+                        }
+                    }
+                }
+                if (selector != null) {
+                    return new LocatorDetector.SelectorInfo(selector, type);
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return null;
+    }
+
+    private static LocatorDetector.SelectorInfo legacyParsedObject(JSONObject parsedObj) {
+        try {
+            if (parsedObj.has("o") && parsedObj.get("o") instanceof JSONArray) {
+                JSONArray properties = parsedObj.getJSONArray("o");
+                for (int i = 0; i < properties.length(); i++) {
+                    JSONObject prop = properties.getJSONObject(i);
+                    if (prop.has("k") && prop.getString("k").equals("parts")
+                            && prop.has("v") && prop.get("v") instanceof JSONObject) {
+                        JSONObject parts = prop.getJSONObject("v");
+                        if (parts.has("a") && parts.get("a") instanceof JSONArray) {
+                            JSONArray partsArray = parts.getJSONArray("a");
+                            for (int j = 0; j < partsArray.length(); j++) {
+                                JSONObject part = partsArray.getJSONObject(j);
+                                if (part.has("o") && part.get("o") instanceof JSONArray) {
+                                    JSONArray partProps = part.getJSONArray("o");
+                                    String selector = null;
+                                    String type = "UNKNOWN";
+                                    for (int k = 0; k < partProps.length(); k++) {
+                                        JSONObject partProp = partProps.getJSONObject(k);
+                                        if (partProp.has("k") && partProp.getString("k").equals("source")
+                                                && partProp.has("v") && partProp.get("v") instanceof String) {
+                                            selector = partProp.getString("v");
+                                        }
+                                        if (partProp.has("k") && partProp.getString("k").equals("name")
+                                                && partProp.has("v") && partProp.get("v") instanceof String) {
+                                            type = partProp.getString("v").toUpperCase();
+                                        }
+                                    }
+                                    if (selector != null) {
+                                        return new LocatorDetector.SelectorInfo(selector, type);
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            return null;
+        }
+        return null;
+    }
+}
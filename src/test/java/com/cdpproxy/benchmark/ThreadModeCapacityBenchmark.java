@@ -0,0 +1,59 @@
+package com.cdpproxy.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Concurrent-session capacity of the servlet engine in each thread mode, as
+ * {@link EngineCapacityBenchmark} measures it for the engines. Platform mode
+ * keeps the default cap of 200 Tomcat threads; virtual mode has none. Each
+ * upstream connection holds two platform threads in virtual mode, for its
+ * writer and connection-lost timer, and a third for its reader otherwise.
+ * <p>
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args="ThreadModeCapacity"}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThreadModeCapacityBenchmark {
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"100", "1000"})
+    public int sessions;
+
+    private ProxyHarness proxy;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        proxy = new ProxyHarness(sessions, "cdp.engine=servlet",
+                "spring.threads.virtual.enabled=" + "virtual".equals(threads));
+    }
+
+    @Benchmark
+    public void roundTrip() throws Exception {
+        proxy.roundTrip();
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() throws Exception {
+        proxy.report(threads + " threads");
+        proxy.close();
+    }
+}
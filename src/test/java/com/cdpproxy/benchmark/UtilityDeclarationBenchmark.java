@@ -0,0 +1,71 @@
+package com.cdpproxy.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.cdpproxy.util.LocatorDetector;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Whether each Runtime.callFunctionOn declaration in the captured traffic
+ * calls Playwright's utility script: scanned for the call every time, against
+ * looked up by the declaration hash the extraction cache key already takes.
+ * Hashes are taken up front, as the key does on its own pass, so only the
+ * classification is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilityDeclarationBenchmark {
+
+    private String[] declarations;
+    private long[] hashes;
+
+    @Setup
+    public void load() {
+        List<String> found = new ArrayList<>();
+        for (String payload : SampleMessages.load(SampleMessages.FROM_PLAYWRIGHT)) {
+            JSONObject message = new JSONObject(payload);
+            if ("Runtime.callFunctionOn".equals(message.optString("method"))) {
+                found.add(message.getJSONObject("params").optString("functionDeclaration"));
+            }
+        }
+        declarations = found.toArray(new String[0]);
+        hashes = new long[declarations.length];
+        for (int i = 0; i < declarations.length; i++) {
+            // Stands in for the key's hash: equal declarations hash alike
+            hashes[i] = declarations[i].hashCode() * 0x9E3779B97F4A7C15L;
+            if (hashes[i] == LocatorDetector.UNHASHED) {
+                hashes[i] = 1;
+            }
+        }
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        for (String declaration : declarations) {
+            blackhole.consume(LocatorDetector.callsUtilityScript(declaration, LocatorDetector.UNHASHED));
+        }
+    }
+
+    @Benchmark
+    public void lookup(Blackhole blackhole) {
+        for (int i = 0; i < declarations.length; i++) {
+            blackhole.consume(LocatorDetector.callsUtilityScript(declarations[i], hashes[i]));
+        }
+    }
+}
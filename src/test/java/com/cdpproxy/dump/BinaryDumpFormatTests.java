@@ -0,0 +1,82 @@
+package com.cdpproxy.dump;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BinaryDumpFormatTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void recordsRoundTripAndFilter() throws Exception {
+		Path file = dir.resolve("dump.bin");
+		try (DumpWriter writer = new DumpWriter(new DumpSegments(file, new BinaryDumpFormat(), 0, 0, 0, false), 16, 4,
+				DumpWriter.OverflowPolicy.BLOCK, 1000, false)) {
+			writer.submit(new DumpEntry(DumpEntry.FROM_PLAYWRIGHT, "s1", "{\"id\":1,\"method\":\"Page.enable\"}"));
+			writer.submit(new DumpEntry(DumpEntry.FROM_BROWSER, "s1", "{\"id\":1,\"result\":{}}"));
+			writer.submit(new DumpEntry(DumpEntry.FROM_PLAYWRIGHT, "s2", "{\"id\":1,\"method\":\"Runtime.enable\"}"));
+		}
+
+		try (DumpReader reader = new DumpReader(file)) {
+			DumpRecord record = reader.next(DumpFilter.all().sessionId("s1").direction(DumpEntry.FROM_BROWSER));
+			assertEquals("{\"id\":1,\"result\":{}}", record.payload());
+			// The first record is prefix + "s1" + 31 payload bytes
+			assertEquals(BinaryDumpFormat.HEADER_SIZE + BinaryDumpFormat.RECORD_PREFIX + 2 + 31, record.offset);
+			assertEquals("Runtime.enable", reader.next(DumpFilter.all().method("Runtime.enable")).message().method());
+			assertNull(reader.next());
+		}
+
+		StringWriter text = new StringWriter();
+		try (DumpReader reader = new DumpReader(file)) {
+			assertEquals(3, reader.writeText(text, DumpFilter.all()));
+		}
+		assertTrue(text.toString().contains("| FROM_BROWSER ===\nID: 1\nResult: {}\n"));
+	}
+
+	@Test
+	void dictionaryCompressedRecordsRoundTrip() throws Exception {
+		List<String> messages = new ArrayList<>();
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(
+				getClass().getResourceAsStream("/cdp-sample-messages.jsonl"), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				messages.add(new JSONObject(line).getString("message"));
+			}
+		}
+		byte[] dictionary = DumpDictionaryBuilder.build(messages.subList(0, 300), DumpDictionaryBuilder.MAX_DICTIONARY_SIZE);
+		assertTrue(dictionary.length > 0);
+
+		Path file = dir.resolve("dump.bin");
+		BinaryDumpFormat format = new BinaryDumpFormat(new RecordCodec(dictionary, 6));
+		try (DumpWriter writer = new DumpWriter(new DumpSegments(file, format, 0, 0, 0, false), 1024, 64,
+				DumpWriter.OverflowPolicy.BLOCK, 1000, false)) {
+			for (String message : messages) {
+				writer.submit(new DumpEntry(DumpEntry.FROM_BROWSER, "s1", message));
+			}
+		}
+		assertTrue(format.storedPayloadBytes() < format.payloadBytes() / 3);
+
+		try (DumpReader reader = new DumpReader(file, dictionary)) {
+			for (String message : messages) {
+				assertEquals(message, reader.next().payload());
+			}
+			assertNull(reader.next());
+		}
+		assertThrows(IOException.class, () -> new DumpReader(file));
+	}
+}
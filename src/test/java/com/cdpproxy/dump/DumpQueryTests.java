@@ -0,0 +1,68 @@
+package com.cdpproxy.dump;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DumpQueryTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void findsRecordsThroughSegmentIndexes() throws Exception {
+		DumpSegments segments = new DumpSegments(dir.resolve("dump.bin"), new BinaryDumpFormat(), 2000, 0, 0, true, true);
+		try (DumpWriter writer = new DumpWriter(segments, 256, 8, DumpWriter.OverflowPolicy.BLOCK, 1000, false)) {
+			for (int i = 0; i < 100; i++) {
+				String session = i % 2 == 0 ? "even" : "odd";
+				writer.submit(new DumpEntry(DumpEntry.FROM_PLAYWRIGHT, session,
+						"{\"id\":" + i + ",\"method\":\"" + (i % 10 == 0 ? "Page.navigate" : "Runtime.evaluate") + "\"}"));
+				writer.submit(new DumpEntry(DumpEntry.FROM_BROWSER, session, "{\"id\":" + i + ",\"result\":{}}"));
+			}
+		}
+		assertTrue(segments.segments().size() > 2);
+		for (DumpSegments.SegmentInfo segment : segments.segments()) {
+			assertTrue(Files.exists(DumpIndex.pathFor(segment.path)), segment.path.toString());
+		}
+
+		DumpQuery query = new DumpQuery(segments, null);
+		List<DumpQuery.Match> exchange = query.find(DumpFilter.all().id(42).sessionId("even"), 10);
+		assertEquals(2, exchange.size());
+		assertEquals(DumpEntry.FROM_PLAYWRIGHT, exchange.get(0).record.direction);
+		assertEquals("{\"id\":42,\"result\":{}}", exchange.get(1).record.payload());
+
+		assertEquals(10, query.find(DumpFilter.all().method("Page.navigate"), 100).size());
+		assertEquals(3, query.find(DumpFilter.all().method("Page.navigate"), 3).size());
+		assertTrue(query.find(DumpFilter.all().id(42).sessionId("odd"), 10).isEmpty());
+	}
+
+	@Test
+	void indexMatchesRecordOffsets() throws Exception {
+		Path file = dir.resolve("dump.bin");
+		try (DumpWriter writer = new DumpWriter(new DumpSegments(file, new BinaryDumpFormat(), 0, 0, 0, false, true),
+				64, 3, DumpWriter.OverflowPolicy.BLOCK, 1000, false)) {
+			for (int i = 0; i < 20; i++) {
+				writer.submit(new DumpEntry(DumpEntry.FROM_BROWSER, "s", "{\"method\":\"Page.frameNavigated\",\"params\":{\"n\":" + i + "}}"));
+			}
+		}
+
+		long[] indexed = DumpIndex.open(DumpIndex.pathFor(file)).candidates(DumpFilter.all());
+		assertEquals(20, indexed.length);
+		try (DumpReader reader = new DumpReader(file)) {
+			int i = 0;
+			for (DumpRecord record : reader) {
+				assertEquals(record.offset, indexed[i++]);
+			}
+		}
+
+		// A rebuilt index is identical to the one written incrementally
+		byte[] written = Files.readAllBytes(DumpIndex.pathFor(file));
+		assertEquals(20, DumpIndex.rebuild(file, null));
+		assertEquals(written.length, Files.readAllBytes(DumpIndex.pathFor(file)).length);
+	}
+}
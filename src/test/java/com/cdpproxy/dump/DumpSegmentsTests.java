@@ -0,0 +1,52 @@
+package com.cdpproxy.dump;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DumpSegmentsTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void rollsBySizeCompressesAndKeepsRetention() throws Exception {
+		DumpSegments segments = new DumpSegments(dir.resolve("dump.bin"), new BinaryDumpFormat(), 200, 0, 3, true);
+		try (DumpWriter writer = new DumpWriter(segments, 64, 1, DumpWriter.OverflowPolicy.BLOCK, 1000, false)) {
+			for (int i = 0; i < 20; i++) {
+				writer.submit(new DumpEntry(DumpEntry.FROM_PLAYWRIGHT, "s", "{\"id\":" + i + ",\"method\":\"Page.enable\"}"));
+			}
+		}
+
+		List<DumpSegments.SegmentInfo> retained = segments.segments();
+		assertEquals(3, retained.size());
+		for (DumpSegments.SegmentInfo segment : retained) {
+			assertTrue(segment.compressed, segment.path.toString());
+			assertTrue(Files.exists(segment.path));
+		}
+		assertFalse(Files.exists(dir.resolve("dump.000001.bin")));
+		assertFalse(Files.exists(dir.resolve("dump.000001.bin.gz")));
+		assertTrue(Files.exists(dir.resolve("dump.segments.json")));
+
+		try (DumpReader reader = new DumpReader(retained.get(retained.size() - 1).path)) {
+			DumpRecord last = null;
+			DumpRecord record;
+			while ((record = reader.next()) != null) {
+				last = record;
+			}
+			assertNotNull(last);
+			assertEquals(19, last.message().id());
+		}
+
+		long now = System.currentTimeMillis();
+		assertEquals(3, segments.covering(now - 60_000, now).size());
+		assertTrue(segments.covering(now + 60_000, now + 120_000).isEmpty());
+	}
+}
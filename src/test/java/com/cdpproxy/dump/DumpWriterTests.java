@@ -0,0 +1,176 @@
+package com.cdpproxy.dump;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class DumpWriterTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void dropNewestRejectsTheEntryThatDoesNotFit() throws Exception {
+		GatedFormat format = new GatedFormat();
+		DumpWriter writer = stalledWithFullQueue(format, DumpWriter.OverflowPolicy.DROP_NEWEST);
+		assertFalse(writer.submit(entry(3)));
+		format.open.countDown();
+		writer.close();
+
+		assertEquals(List.of(0, 1, 2), writtenIds());
+		assertCounts(writer, 4, 3, 1);
+	}
+
+	@Test
+	void dropOldestEvictsTheLongestQueuedEntry() throws Exception {
+		GatedFormat format = new GatedFormat();
+		DumpWriter writer = stalledWithFullQueue(format, DumpWriter.OverflowPolicy.DROP_OLDEST);
+		assertTrue(writer.submit(entry(3)));
+		format.open.countDown();
+		writer.close();
+
+		assertEquals(List.of(0, 2, 3), writtenIds());
+		assertCounts(writer, 4, 3, 1);
+	}
+
+	@Test
+	void blockWaitsForRoomAndLosesNothing() throws Exception {
+		GatedFormat format = new GatedFormat();
+		DumpWriter writer = stalledWithFullQueue(format, DumpWriter.OverflowPolicy.BLOCK);
+		Thread producer = new Thread(() -> writer.submit(entry(3)));
+		producer.start();
+		awaitState(producer, Thread.State.WAITING);
+		format.open.countDown();
+		producer.join(5000);
+		assertFalse(producer.isAlive());
+		writer.close();
+
+		assertEquals(List.of(0, 1, 2, 3), writtenIds());
+		assertCounts(writer, 4, 4, 0);
+	}
+
+	@Test
+	void closeWritesOutEverythingQueued() throws Exception {
+		GatedFormat format = new GatedFormat();
+		DumpWriter writer = stalledWithFullQueue(format, DumpWriter.OverflowPolicy.BLOCK);
+		Thread closer = new Thread(() -> {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		closer.start();
+		// Waiting for the writer thread: no longer accepting, but still holding two queued entries
+		awaitState(closer, Thread.State.TIMED_WAITING);
+		assertFalse(writer.submit(entry(3)));
+		format.open.countDown();
+		closer.join(5000);
+
+		assertEquals(List.of(0, 1, 2), writtenIds());
+		assertCounts(writer, 3, 3, 1);
+	}
+
+	@Test
+	void countsBatchesThatFailToWriteAsDropped() throws Exception {
+		GatedFormat format = new GatedFormat();
+		format.open.countDown();
+		format.failing = true;
+		DumpWriter writer = new DumpWriter(segments(format), 8, 4, DumpWriter.OverflowPolicy.BLOCK, 1000, false);
+		for (int i = 0; i < 3; i++) {
+			writer.submit(entry(i));
+		}
+		writer.close();
+
+		DumpWriter.Stats stats = writer.stats();
+		assertEquals(0, stats.written);
+		assertEquals(3, stats.dropped);
+	}
+
+	/**
+	 * A writer whose thread is stuck writing entry 0, with entries 1 and 2 filling its queue
+	 */
+	private DumpWriter stalledWithFullQueue(GatedFormat format, DumpWriter.OverflowPolicy policy) throws Exception {
+		DumpWriter writer = new DumpWriter(segments(format), 2, 1, policy, 1000, false);
+		assertTrue(writer.submit(entry(0)));
+		assertTrue(format.writing.await(5, TimeUnit.SECONDS));
+		assertTrue(writer.submit(entry(1)));
+		assertTrue(writer.submit(entry(2)));
+		return writer;
+	}
+
+	private DumpSegments segments(DumpFormat format) {
+		return new DumpSegments(dir.resolve("dump.bin"), format, 0, 0, 0, false);
+	}
+
+	private static DumpEntry entry(int id) {
+		return new DumpEntry(DumpEntry.FROM_PLAYWRIGHT, "s", "{\"id\":" + id + ",\"method\":\"Page.enable\"}");
+	}
+
+	private List<Integer> writtenIds() throws IOException {
+		List<Integer> ids = new ArrayList<>();
+		try (DumpReader reader = new DumpReader(dir.resolve("dump.bin"))) {
+			DumpRecord record;
+			while ((record = reader.next()) != null) {
+				ids.add(record.message().id());
+			}
+		}
+		return ids;
+	}
+
+	private static void assertCounts(DumpWriter writer, long submitted, long written, long dropped) {
+		DumpWriter.Stats stats = writer.stats();
+		assertEquals(submitted, stats.submitted);
+		assertEquals(written, stats.written);
+		assertEquals(dropped, stats.dropped);
+		assertEquals(0, stats.queueDepth);
+	}
+
+	private static void awaitState(Thread thread, Thread.State state) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (thread.getState() != state) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError(thread.getName() + " never reached " + state);
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Binary format that holds the writer thread in its first record until opened
+	 */
+	private static final class GatedFormat implements DumpFormat {
+		private final BinaryDumpFormat binary = new BinaryDumpFormat();
+		final CountDownLatch writing = new CountDownLatch(1);
+		final CountDownLatch open = new CountDownLatch(1);
+		volatile boolean failing;
+
+		@Override
+		public void writeHeader(DumpBuffer out, long startMillis, long startNanos) throws IOException {
+			binary.writeHeader(out, startMillis, startNanos);
+		}
+
+		@Override
+		public void writeRecord(DumpBuffer out, DumpEntry entry) throws IOException {
+			writing.countDown();
+			try {
+				open.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (failing) {
+				throw new IOException("Disk full");
+			}
+			binary.writeRecord(out, entry);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+class BrowserConnectionPoolTests {
+
+	@Test
+	void handsOutWarmConnectionsAndRefills() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(4, 16, false);
+			 BrowserConnectionPool pool = new BrowserConnectionPool(connector, new BrowserDiscovery(browser.httpUrl()),
+					 5000, 2, 4, 0, 50)) {
+			awaitTrue(() -> pool.stats().idle == 2);
+
+			BrowserWebSocketClient client = pool.acquire().get(5, TimeUnit.SECONDS);
+			assertTrue(client.isConnected());
+			assertEquals(1, pool.stats().hits);
+			awaitTrue(() -> pool.stats().idle == 2);
+			// The browser side may register a connection after the client sees it open
+			awaitTrue(() -> browser.connections.get() == 3);
+
+			// Dead idle connections are dropped by validation and replaced
+			browser.disconnectAll();
+			awaitTrue(() -> pool.stats().validationFailures >= 2 && pool.stats().idle == 2);
+			assertTrue(pool.acquire().get(5, TimeUnit.SECONDS).isConnected());
+		}
+	}
+
+	@Test
+	void opensOnDemandWhenWarmingIsOff() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(4, 16, false);
+			 BrowserConnectionPool pool = new BrowserConnectionPool(connector, new BrowserDiscovery(browser.httpUrl()),
+					 5000, 0, 4, 0, 50)) {
+			assertTrue(pool.acquire().get(5, TimeUnit.SECONDS).isConnected());
+			assertEquals(1, pool.stats().misses);
+			assertEquals(0, pool.stats().idle);
+		}
+	}
+
+	static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Condition not met in time");
+			}
+			Thread.sleep(10);
+		}
+	}
+}
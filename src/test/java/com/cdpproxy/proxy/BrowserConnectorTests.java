@@ -0,0 +1,95 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class BrowserConnectorTests {
+
+	@Test
+	void boundsConcurrentConnectsAndRejectsBeyondTheQueue() throws Exception {
+		BrowserConnector connector = new BrowserConnector(2, 3, false);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		List<CompletableFuture<Integer>> futures = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			int n = i;
+			futures.add(connector.submit(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				release.await();
+				running.decrementAndGet();
+				return n;
+			}));
+		}
+
+		// Two running, three queued, the sixth refused
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (running.get() < 2 && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		ExecutionException refused = assertThrows(ExecutionException.class, () -> futures.get(5).get(1, TimeUnit.SECONDS));
+		assertTrue(refused.getCause() instanceof RejectedExecutionException);
+		assertEquals(3, connector.stats().queueDepth);
+
+		release.countDown();
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, futures.get(i).get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(2, maxRunning.get());
+
+		BrowserConnector.Stats stats = connector.stats();
+		assertEquals(6, stats.submitted);
+		assertEquals(5, stats.succeeded);
+		assertEquals(1, stats.rejected);
+		assertEquals(0, stats.active);
+		connector.close();
+	}
+
+	@Test
+	void runsConnectsOnVirtualThreadsWithinTheBound() throws Exception {
+		BrowserConnector connector = new BrowserConnector(2, 16, true);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+
+		List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			futures.add(connector.submit(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				Thread.sleep(20);
+				running.decrementAndGet();
+				return Thread.currentThread().isVirtual();
+			}));
+		}
+		for (CompletableFuture<Boolean> future : futures) {
+			assertTrue(future.get(5, TimeUnit.SECONDS));
+		}
+		assertTrue(connector.usesVirtualThreads());
+		assertEquals(2, maxRunning.get());
+		assertEquals(8, connector.stats().succeeded);
+		connector.close();
+	}
+
+	@Test
+	void failedConnectsCompleteExceptionally() {
+		BrowserConnector connector = new BrowserConnector(1, 1, true);
+		CompletableFuture<Object> future = connector.submit(() -> {
+			throw new IllegalStateException("no browser");
+		});
+		ExecutionException failure = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+		assertEquals("no browser", failure.getCause().getMessage());
+		assertEquals(1, connector.stats().failed);
+		connector.close();
+	}
+}
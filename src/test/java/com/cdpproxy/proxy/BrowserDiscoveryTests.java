@@ -0,0 +1,48 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class BrowserDiscoveryTests {
+
+	@Test
+	void cachesTheEndpointUntilInvalidated() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser()) {
+			BrowserDiscovery discovery = new BrowserDiscovery(browser.httpUrl(), 60_000, 2000);
+			assertEquals(browser.webSocketUrl(), discovery.discoverWebSocketUrl());
+			assertEquals(browser.webSocketUrl(), discovery.discoverWebSocketUrl());
+			assertEquals(1, browser.versionRequests.get());
+			assertEquals(1, discovery.stats().cacheHits);
+
+			discovery.invalidate("ws://somewhere-else");
+			discovery.discoverWebSocketUrl();
+			assertEquals(1, browser.versionRequests.get());
+
+			discovery.invalidate(browser.webSocketUrl());
+			discovery.discoverWebSocketUrl();
+			assertEquals(2, browser.versionRequests.get());
+		}
+	}
+
+	@Test
+	void fallsBackToThePageTargetList() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser()) {
+			browser.failVersion = true;
+			BrowserDiscovery discovery = new BrowserDiscovery(browser.httpUrl(), 0, 2000);
+			assertEquals(browser.webSocketUrl(), discovery.discoverWebSocketUrl());
+			// Both endpoints were asked up front
+			assertEquals(1, browser.versionRequests.get());
+			assertEquals(1, browser.listRequests.get());
+		}
+	}
+
+	@Test
+	void failedLookupsAreNotCached() throws Exception {
+		BrowserDiscovery discovery = new BrowserDiscovery("http://127.0.0.1:9", 60_000, 500);
+		assertThrows(Exception.class, discovery::discoverWebSocketUrl);
+		assertThrows(Exception.class, discovery::discoverWebSocketUrl);
+		assertEquals(2, discovery.stats().lookups);
+	}
+}
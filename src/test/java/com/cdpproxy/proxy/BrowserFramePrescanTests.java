@@ -0,0 +1,37 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class BrowserFramePrescanTests {
+
+	private final BrowserFramePrescan prescan = new BrowserFramePrescan();
+
+	@Test
+	void eventsAreRelayedWithoutInspection() {
+		assertEquals(BrowserFramePrescan.Kind.EVENT, prescan.scan(
+				"{\"method\":\"Page.screencastFrame\",\"params\":{\"data\":\"AAAA\",\"result\":{\"result\":1}}}"));
+	}
+
+	@Test
+	void responsesAreInspectedOnlyWithNestedResult() {
+		assertEquals(BrowserFramePrescan.Kind.PLAIN_RESPONSE,
+				prescan.scan("{\"id\":12,\"result\":{\"data\":\"iVBOR\\\"result\\\"\"}}"));
+		assertEquals(12, prescan.id());
+
+		assertEquals(BrowserFramePrescan.Kind.PLAIN_RESPONSE,
+				prescan.scan("{\"id\":13,\"error\":{\"code\":-32000,\"message\":\"No node\"}}"));
+
+		assertEquals(BrowserFramePrescan.Kind.INSPECT, prescan.scan(
+				"{\"result\":{\"result\":{\"type\":\"object\",\"value\":{\"o\":[]}}},\"id\":14,\"sessionId\":\"S\"}"));
+		assertEquals(14, prescan.id());
+	}
+
+	@Test
+	void unrecognizedFramesFallBackToFullAnalysis() {
+		assertEquals(BrowserFramePrescan.Kind.UNKNOWN, prescan.scan("not json"));
+		assertEquals(BrowserFramePrescan.Kind.UNKNOWN, prescan.scan("{\"id\":\"x\",\"result\":{}}"));
+		assertEquals(BrowserFramePrescan.Kind.UNKNOWN, prescan.scan("{\"result\":{}"));
+	}
+}
@@ -0,0 +1,70 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class BrowserHealthCheckerTests {
+
+	@Test
+	void measuresLatencyAndOpensCircuitOnStalledBrowser() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(2, 8, false)) {
+			BrowserBackend backend = backend(connector, browser.httpUrl());
+			// Only the stalled probes need to give up quickly
+			try (BrowserHealthChecker checker = new BrowserHealthChecker(List.of(), 1000, 5000, 0);
+				 BrowserHealthChecker impatient = new BrowserHealthChecker(List.of(), 1000, 200, 0)) {
+				checker.probe(backend);
+				BrowserBackend.HealthStats healthy = backend.healthStats();
+				assertEquals(1, healthy.probes);
+				assertEquals(0, healthy.probeFailures);
+				assertTrue(healthy.roundTripLatencyMs > 0);
+				assertEquals(CircuitBreaker.State.CLOSED, healthy.circuit);
+
+				browser.stallCommands = true;
+				for (int i = 0; i < 2; i++) {
+					impatient.probe(backend);
+				}
+				assertTrue(backend.isHealthy());
+				impatient.probe(backend);
+				assertFalse(backend.isHealthy());
+				assertNotNull(backend.healthStats().lastProbeError);
+
+				// A good probe puts the backend straight back into routing
+				browser.stallCommands = false;
+				checker.probe(backend);
+				assertTrue(backend.isHealthy());
+				assertEquals(CircuitBreaker.State.CLOSED, backend.healthStats().circuit);
+			}
+			backend.close();
+		}
+	}
+
+	@Test
+	void routerAvoidsBackendWithFailingProbes() throws Exception {
+		try (FakeBrowser good = new FakeBrowser();
+			 FakeBrowser bad = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(2, 8, false)) {
+			bad.failVersion = true;
+			BrowserBackend up = backend(connector, good.httpUrl());
+			BrowserBackend down = backend(connector, bad.httpUrl());
+			try (BrowserRouter router = new BrowserRouter(List.of(down, up), BrowserRouter.Strategy.LEAST_SESSIONS);
+				 BrowserHealthChecker checker = new BrowserHealthChecker(router.backends(), 20, 500, 0)) {
+				BrowserConnectionPoolTests.awaitTrue(() -> !down.isHealthy() && up.healthStats().probes > 0);
+				for (int i = 0; i < 3; i++) {
+					assertSame(up, router.acquire());
+				}
+			}
+		}
+	}
+
+	private static BrowserBackend backend(BrowserConnector connector, String httpUrl) {
+		return new BrowserBackend(httpUrl, new BrowserConnectionPool(connector,
+				new BrowserDiscovery(httpUrl), 5000, 0, 4, 0, 50), new CircuitBreaker(3, 60000, 60000));
+	}
+}
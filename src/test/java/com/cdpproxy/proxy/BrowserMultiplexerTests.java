@@ -0,0 +1,113 @@
+package com.cdpproxy.proxy;
+
+import static com.cdpproxy.proxy.BrowserConnectionPoolTests.awaitTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class BrowserMultiplexerTests {
+
+	@Test
+	void mapsCommandIdsBackPerChannel() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(2, 8, false);
+			 BrowserMultiplexer multiplexer = new BrowserMultiplexer(pool(connector, browser))) {
+			List<String> first = new CopyOnWriteArrayList<>();
+			List<String> second = new CopyOnWriteArrayList<>();
+			BrowserLink a = multiplexer.open(first::add).get(5, TimeUnit.SECONDS);
+			BrowserLink b = multiplexer.open(second::add).get(5, TimeUnit.SECONDS);
+
+			a.send("{\"id\":1,\"method\":\"Browser.getVersion\"}");
+			b.send("{\"id\":1,\"method\":\"Browser.getVersion\"}");
+			b.send("{\"id\":2,\"method\":\"Page.enable\"}");
+			awaitTrue(() -> first.size() == 1 && second.size() == 2);
+
+			assertEquals(1, new JSONObject(first.get(0)).getInt("id"));
+			assertEquals(1, new JSONObject(second.get(0)).getInt("id"));
+			assertEquals(2, new JSONObject(second.get(1)).getInt("id"));
+			assertEquals(1, browser.connections.get());
+			// Upstream ids never collide
+			assertEquals(3, browser.commands.stream().map(c -> c.getInt("id")).distinct().count());
+		}
+	}
+
+	@Test
+	void routesEventsBySessionAndDisposesOwnedState() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(2, 8, false);
+			 BrowserMultiplexer multiplexer = new BrowserMultiplexer(pool(connector, browser))) {
+			List<String> first = new CopyOnWriteArrayList<>();
+			List<String> second = new CopyOnWriteArrayList<>();
+			BrowserLink a = multiplexer.open(first::add).get(5, TimeUnit.SECONDS);
+			multiplexer.open(second::add).get(5, TimeUnit.SECONDS);
+
+			a.send("{\"id\":7,\"method\":\"Target.createBrowserContext\",\"params\":{}}");
+			a.send("{\"id\":8,\"method\":\"Target.attachToTarget\",\"params\":{\"targetId\":\"t1\",\"flatten\":true}}");
+			awaitTrue(() -> first.size() == 2);
+			String contextId = new JSONObject(first.get(0)).getJSONObject("result").getString("browserContextId");
+
+			browser.emit(new JSONObject().put("method", "Runtime.consoleAPICalled")
+					.put("sessionId", "session-t1").put("params", new JSONObject()));
+			// A page created in the first client's context, auto-attached at browser level
+			browser.emit(new JSONObject().put("method", "Target.attachedToTarget").put("params", new JSONObject()
+					.put("sessionId", "session-t2")
+					.put("targetInfo", new JSONObject().put("targetId", "t2").put("browserContextId", contextId))));
+			browser.emit(new JSONObject().put("method", "Page.loadEventFired")
+					.put("sessionId", "session-t2").put("params", new JSONObject()));
+			// Not tied to any client or context
+			browser.emit(new JSONObject().put("method", "Target.targetCreated").put("params", new JSONObject()
+					.put("targetInfo", new JSONObject().put("targetId", "browser").put("type", "browser"))));
+			awaitTrue(() -> first.size() == 6 && second.size() == 1);
+			assertTrue(second.get(0).contains("Target.targetCreated"));
+			assertEquals(2, multiplexer.stats().ownedSessions);
+
+			a.close();
+			awaitTrue(() -> browser.commands.stream().anyMatch(c -> "Target.disposeBrowserContext".equals(c.getString("method")))
+					&& browser.commands.stream().filter(c -> "Target.detachFromTarget".equals(c.getString("method"))).count() == 2);
+			assertEquals(1, multiplexer.stats().channels);
+			assertEquals(0, multiplexer.stats().ownedSessions);
+		}
+	}
+
+	@Test
+	void detachesTargetsOfContextsNoChannelOwns() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(2, 8, false);
+			 BrowserMultiplexer multiplexer = new BrowserMultiplexer(pool(connector, browser))) {
+			List<String> first = new CopyOnWriteArrayList<>();
+			List<String> second = new CopyOnWriteArrayList<>();
+			BrowserLink a = multiplexer.open(first::add).get(5, TimeUnit.SECONDS);
+			multiplexer.open(second::add).get(5, TimeUnit.SECONDS);
+
+			awaitTrue(() -> browser.connections.get() == 1);
+			// A page auto-attached in the default context, which no channel created
+			browser.emit(new JSONObject().put("method", "Target.attachedToTarget").put("params", new JSONObject()
+					.put("sessionId", "session-d")
+					.put("targetInfo", new JSONObject().put("targetId", "d").put("browserContextId", "default"))));
+			browser.emit(new JSONObject().put("method", "Runtime.executionContextCreated")
+					.put("sessionId", "session-d").put("params", new JSONObject()));
+			awaitTrue(() -> browser.commands.stream().anyMatch(c -> "Target.detachFromTarget".equals(
+					c.getString("method")) && "session-d".equals(c.getJSONObject("params").getString("sessionId"))));
+
+			// Sending on it claims nothing
+			a.send("{\"id\":3,\"method\":\"Runtime.runIfWaitingForDebugger\",\"sessionId\":\"session-d\"}");
+			awaitTrue(() -> first.size() == 1);
+			browser.emit(new JSONObject().put("method", "Page.loadEventFired")
+					.put("sessionId", "session-d").put("params", new JSONObject()));
+			awaitTrue(() -> multiplexer.stats().dropped == 3);
+			assertEquals(3, new JSONObject(first.get(0)).getInt("id"));
+			assertEquals(1, first.size());
+			assertTrue(second.isEmpty());
+			assertEquals(0, multiplexer.stats().ownedSessions);
+		}
+	}
+
+	private static BrowserConnectionPool pool(BrowserConnector connector, FakeBrowser browser) {
+		return new BrowserConnectionPool(connector, new BrowserDiscovery(browser.httpUrl()), 5000, 0, 4, 0, 50);
+	}
+}
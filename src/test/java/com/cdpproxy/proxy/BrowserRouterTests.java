@@ -0,0 +1,66 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class BrowserRouterTests {
+
+	@Test
+	void routesToBackendWithFewestSessions() throws Exception {
+		try (FakeBrowser first = new FakeBrowser();
+			 FakeBrowser second = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(4, 16, false);
+			 BrowserRouter router = new BrowserRouter(List.of(backend(connector, first.httpUrl()),
+					 backend(connector, second.httpUrl())), BrowserRouter.Strategy.LEAST_SESSIONS)) {
+			BrowserBackend a = router.acquire();
+			BrowserBackend b = router.acquire();
+			assertNotSame(a, b);
+			assertEquals(1, a.activeSessions());
+			assertEquals(1, b.activeSessions());
+
+			// The backend that was just emptied takes the next session
+			router.release(a);
+			assertSame(a, router.acquire());
+			router.acquire();
+			assertEquals(3, a.activeSessions() + b.activeSessions());
+			assertEquals(4, a.totalSessions() + b.totalSessions());
+		}
+	}
+
+	@Test
+	void skipsBackendAfterRepeatedConnectFailures() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(4, 16, false)) {
+			BrowserBackend down = backend(connector, "http://127.0.0.1:1");
+			BrowserBackend up = backend(connector, browser.httpUrl());
+			try (BrowserRouter router = new BrowserRouter(List.of(down, up), BrowserRouter.Strategy.LEAST_SESSIONS)) {
+				for (int i = 0; i < BrowserBackend.FAILURE_THRESHOLD; i++) {
+					assertThrows(ExecutionException.class, () -> down.pool().acquire().get(5, TimeUnit.SECONDS));
+				}
+				assertFalse(down.isHealthy());
+				assertTrue(up.isHealthy());
+
+				for (int i = 0; i < 3; i++) {
+					BrowserBackend chosen = router.acquire();
+					assertSame(up, chosen);
+					assertTrue(chosen.pool().acquire().get(5, TimeUnit.SECONDS).isConnected());
+				}
+				assertEquals(0, down.activeSessions());
+			}
+		}
+	}
+
+	private static BrowserBackend backend(BrowserConnector connector, String httpUrl) {
+		return new BrowserBackend(httpUrl, new BrowserConnectionPool(connector,
+				new BrowserDiscovery(httpUrl), 5000, 0, 4, 0, 50));
+	}
+}
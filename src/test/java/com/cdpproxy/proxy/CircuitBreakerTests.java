@@ -0,0 +1,47 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTests {
+
+	@Test
+	void opensAfterThresholdAndHalfOpensAfterCoolDown() throws Exception {
+		CircuitBreaker circuit = new CircuitBreaker(3, 40, 40);
+		circuit.recordFailure();
+		circuit.recordFailure();
+		assertTrue(circuit.allowsTraffic());
+		circuit.recordFailure();
+		assertFalse(circuit.allowsTraffic());
+		assertEquals(CircuitBreaker.State.OPEN, circuit.state());
+
+		Thread.sleep(60);
+		assertTrue(circuit.allowsTraffic());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, circuit.state());
+
+		// One failed trial is enough to open it again
+		circuit.recordFailure();
+		assertEquals(CircuitBreaker.State.OPEN, circuit.state());
+		assertEquals(2, circuit.opened());
+
+		circuit.recordSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, circuit.state());
+		assertEquals(0, circuit.consecutiveFailures());
+	}
+
+	@Test
+	void backoffStaysWithinJitteredBounds() {
+		Backoff backoff = new Backoff(100, 1000);
+		for (int i = 0; i < 100; i++) {
+			long first = backoff.delayMillis(0);
+			assertTrue(first >= 50 && first <= 100, Long.toString(first));
+			long third = backoff.delayMillis(2);
+			assertTrue(third >= 200 && third <= 400, Long.toString(third));
+			long capped = backoff.delayMillis(40);
+			assertTrue(capped >= 500 && capped <= 1000, Long.toString(capped));
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import com.cdpproxy.util.CDPJsonScanner;
+import com.cdpproxy.util.Utf8JsonView;
+import org.junit.jupiter.api.Test;
+
+class ClientFramePrescanTests {
+
+	private final ClientFramePrescan prescan = new ClientFramePrescan();
+
+	@Test
+	void sanitizedFramesWithoutLocatorsStayBytes() {
+		assertFalse(prescan.needsText(utf8(
+				"{\"id\":1,\"method\":\"Input.insertText\",\"params\":{\"text\":\"naïve \\\"😀\\\"\"},\"sessionId\":\"S\"}")));
+		assertFalse(prescan.needsText(utf8("{\"id\":2,\"method\":\"Page.enable\"}")));
+		// Same length as a locator method, matched byte for byte
+		assertFalse(prescan.needsText(utf8("{\"id\":3,\"method\":\"DOM.querySelectoR\"}")));
+	}
+
+	@Test
+	void framesThatSanitizingOrTrackingNeedAreDecoded() {
+		// Dropped by sanitizing
+		assertTrue(prescan.needsText(utf8("{\"id\":1,\"method\":\"Page.enable\",\"extra\":true}")));
+		assertTrue(prescan.needsText(utf8("{\"id\":1,\"method\":\"Page.enable\",\"sessionId\":7}")));
+		// Locator tracking reads the params
+		assertTrue(prescan.needsText(utf8("{\"id\":1,\"method\":\"DOM.querySelector\",\"params\":{\"selector\":\"a\"}}")));
+		assertTrue(prescan.needsText(utf8("not json")));
+	}
+
+	@Test
+	void viewBoundsMatchTheDecodedText() {
+		String json = "{\"params\":{\"text\":\"über 😀\"},\"id\":42}";
+		Utf8JsonView view = new Utf8JsonView().wrap(utf8(json));
+		int[] id = CDPJsonScanner.findMember(view, 0, view.length(), "id");
+		assertEquals(42, CDPJsonScanner.parseInt(view, id[0], id[1]));
+		int[] params = CDPJsonScanner.findMember(view, 0, view.length(), "params");
+		assertEquals("{\"text\":\"über 😀\"}", view.decode(params[0], params[1]));
+		assertEquals(json, view.toString());
+	}
+
+	private static ByteBuffer utf8(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,168 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+
+class ClientSendBufferTests {
+
+	/** Transport whose writes complete only when the test says so */
+	static class ManualTransport implements ClientSendBuffer.Transport {
+		final List<String> written = new ArrayList<>();
+		final List<Consumer<Throwable>> outstanding = new ArrayList<>();
+
+		@Override
+		public synchronized void send(String text, Consumer<Throwable> done) {
+			written.add(text);
+			outstanding.add(done);
+		}
+
+		@Override
+		public synchronized void sendPart(String text, boolean last, Consumer<Throwable> done) {
+			written.add(last ? text + "|last" : text + "|more");
+			outstanding.add(done);
+		}
+
+		@Override
+		public synchronized void sendBinary(ByteBuffer bytes, Consumer<Throwable> done) {
+			written.add(StandardCharsets.UTF_8.decode(bytes) + "|binary");
+			outstanding.add(done);
+		}
+
+		void completeNext() {
+			Consumer<Throwable> done;
+			synchronized (this) {
+				done = outstanding.remove(0);
+			}
+			done.accept(null);
+		}
+	}
+
+	@Test
+	void writesOneFrameAtATimeInOrder() {
+		ManualTransport transport = new ManualTransport();
+		ClientSendBuffer buffer = new ClientSendBuffer(session(), transport, 0, 0,
+				ClientSendBuffer.OverflowPolicy.TERMINATE);
+		assertTrue(buffer.send("a", false));
+		assertTrue(buffer.send("b", true));
+		assertTrue(buffer.send("c", false));
+		assertEquals(List.of("a"), transport.written);
+		assertEquals(2, buffer.stats().buffered);
+
+		transport.completeNext();
+		transport.completeNext();
+		assertEquals(List.of("a", "b", "c"), transport.written);
+		transport.completeNext();
+		assertEquals(3, buffer.stats().sent);
+		assertEquals(0, buffer.stats().bufferedBytes);
+	}
+
+	@Test
+	void loopsOverWritesThatCompleteInline() {
+		List<String> written = new ArrayList<>();
+		ClientSendBuffer buffer = new ClientSendBuffer(session(), new ClientSendBuffer.Transport() {
+			@Override
+			public void send(String text, Consumer<Throwable> done) {
+				written.add(text);
+				done.accept(null);
+			}
+
+			@Override
+			public void sendPart(String text, boolean last, Consumer<Throwable> done) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public void sendBinary(ByteBuffer bytes, Consumer<Throwable> done) {
+				throw new UnsupportedOperationException();
+			}
+		}, 0, 0, ClientSendBuffer.OverflowPolicy.TERMINATE);
+		for (int i = 0; i < 100_000; i++) {
+			buffer.send("m" + i, false);
+		}
+		assertEquals(100_000, written.size());
+		assertEquals(100_000, buffer.stats().sent);
+	}
+
+	@Test
+	void holdsFramesBackUntilTheFragmentedMessageEnds() {
+		ManualTransport transport = new ManualTransport();
+		ClientSendBuffer buffer = new ClientSendBuffer(session(), transport, 0, 0,
+				ClientSendBuffer.OverflowPolicy.TERMINATE);
+		assertTrue(buffer.sendPart("{\"id\":1,", false));
+		assertTrue(buffer.send("error", false));
+		assertTrue(buffer.sendPart("\"result\":{}", false));
+		assertTrue(buffer.sendPart("}", true));
+		assertTrue(buffer.send("event", true));
+		for (int i = 0; i < 4; i++) {
+			transport.completeNext();
+		}
+		assertEquals(List.of("{\"id\":1,|more", "\"result\":{}|more", "}|last", "error", "event"), transport.written);
+		transport.completeNext();
+		assertEquals(5, buffer.stats().sent);
+		assertEquals(3, buffer.stats().sentParts);
+	}
+
+	@Test
+	void writesBytesAsBinaryFramesInOrder() {
+		ManualTransport transport = new ManualTransport();
+		ClientSendBuffer buffer = new ClientSendBuffer(session(), transport, 0, 0,
+				ClientSendBuffer.OverflowPolicy.TERMINATE);
+		assertTrue(buffer.sendBinary(ByteBuffer.wrap("{\"id\":1}".getBytes(StandardCharsets.UTF_8)), false));
+		assertTrue(buffer.send("text", false));
+		assertEquals(4, buffer.stats().bufferedBytes);
+		transport.completeNext();
+		transport.completeNext();
+		assertEquals(List.of("{\"id\":1}|binary", "text"), transport.written);
+		assertEquals(1, buffer.stats().sentBinary);
+	}
+
+	@Test
+	void dropsEventsWhenFullAndClosesOnResponses() throws Exception {
+		WebSocketSession session = session();
+		ClientSendBuffer buffer = new ClientSendBuffer(session, new ManualTransport(), 10, 0,
+				ClientSendBuffer.OverflowPolicy.DROP_EVENTS);
+		assertTrue(buffer.send("first", false));
+		assertTrue(buffer.send("12345", true));
+		assertTrue(buffer.send("12345", true));
+		assertFalse(buffer.send("event", true));
+		assertEquals(1, buffer.stats().dropped);
+		assertFalse(buffer.stats().terminated);
+
+		assertFalse(buffer.send("response", false));
+		assertTrue(buffer.stats().terminated);
+		verify(session, timeout(5000)).close(any(CloseStatus.class));
+	}
+
+	@Test
+	void closesClientThatStopsReading() throws Exception {
+		WebSocketSession session = session();
+		ClientSendBuffer buffer = new ClientSendBuffer(session, new ManualTransport(), 0, 20,
+				ClientSendBuffer.OverflowPolicy.TERMINATE);
+		assertTrue(buffer.send("stuck", false));
+		Thread.sleep(50);
+		assertFalse(buffer.send("next", true));
+		assertTrue(buffer.stats().terminated);
+		verify(session, timeout(5000)).close(any(CloseStatus.class));
+	}
+
+	private static WebSocketSession session() {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn("client-1");
+		return session;
+	}
+}
@@ -0,0 +1,142 @@
+package com.cdpproxy.proxy;
+
+import static com.cdpproxy.proxy.BrowserConnectionPoolTests.awaitTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import jakarta.servlet.http.HttpServletRequest;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketSession;
+
+class CompressionTests {
+
+	private static final String PAYLOAD = "<div class=\"row\">déjà vu 😀</div>".repeat(2000);
+
+	@Test
+	void compressesBothDirectionsWhenTheBrowserAgrees() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser(true)) {
+			CompressionMeter meter = new CompressionMeter();
+			BrowserWebSocketClient client = connect(browser, meter);
+			List<String> received = new CopyOnWriteArrayList<>();
+			client.attach(received::add);
+
+			client.send(new JSONObject().put("id", 1).put("method", "Runtime.evaluate")
+					.put("params", new JSONObject().put("expression", PAYLOAD)).toString());
+			awaitTrue(() -> received.size() == 1);
+			String event = new JSONObject().put("method", "DOM.setChildNodes")
+					.put("params", new JSONObject().put("html", PAYLOAD)).toString();
+			browser.emitFragmented(event, 4099);
+			awaitTrue(() -> received.size() == 2);
+
+			assertEquals(PAYLOAD, browser.commands.get(0).getJSONObject("params").getString("expression"));
+			assertEquals(event, received.get(1));
+			CompressionMeter.Stats stats = meter.stats();
+			assertEquals(1, stats.negotiated);
+			assertEquals(1, stats.deflatedFrames);
+			assertTrue(stats.deflateRatio() > 10);
+			assertTrue(stats.inflatedFrames > 2);
+			assertTrue(stats.inflateRatio() > 10);
+			client.close();
+		}
+	}
+
+	@Test
+	void decidesOnCompressionOncePerFragmentedMessage() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser(true)) {
+			CompressionMeter meter = new CompressionMeter();
+			BrowserWebSocketClient client = connect(browser, meter);
+			String command = new JSONObject().put("id", 2).put("method", "Runtime.evaluate")
+					.put("params", new JSONObject().put("expression", PAYLOAD)).toString();
+			// The last part is below the threshold, but belongs to a compressed message
+			client.sendPart(command.substring(0, 5000), false);
+			client.sendPart(command.substring(5000, command.length() - 10), false);
+			client.sendPart(command.substring(command.length() - 10), true);
+			awaitTrue(() -> browser.commands.size() == 1);
+
+			assertEquals(PAYLOAD, browser.commands.get(0).getJSONObject("params").getString("expression"));
+			assertEquals(3, meter.stats().deflatedFrames);
+			client.close();
+		}
+	}
+
+	@Test
+	void connectsUncompressedWhenTheBrowserDeclines() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser()) {
+			CompressionMeter meter = new CompressionMeter();
+			BrowserWebSocketClient client = connect(browser, meter);
+			List<String> received = new CopyOnWriteArrayList<>();
+			client.attach(received::add);
+			client.send(new JSONObject().put("id", 1).put("params", new JSONObject().put("x", PAYLOAD)).toString());
+			awaitTrue(() -> received.size() == 1);
+
+			assertEquals(0, meter.stats().negotiated);
+			assertEquals(0, meter.stats().deflatedFrames);
+			client.close();
+		}
+	}
+
+	@Test
+	void samplesEveryNthClientFrameWhenTheSessionNegotiatedDeflate() {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn("client-1");
+		when(session.getExtensions()).thenReturn(List.of(new WebSocketExtension("permessage-deflate")));
+		CompressionMeter meter = new CompressionMeter();
+		ClientSendBuffer buffer = new ClientSendBuffer(session, new ClientSendBufferTests.ManualTransport() {
+			@Override
+			public synchronized void send(String text, java.util.function.Consumer<Throwable> done) {
+				done.accept(null);
+			}
+		}, 0, 0, ClientSendBuffer.OverflowPolicy.TERMINATE).compressionSampling(meter, 3);
+
+		for (int i = 0; i < 7; i++) {
+			buffer.send(PAYLOAD, true);
+		}
+
+		CompressionMeter.Stats stats = meter.stats();
+		assertEquals(1, stats.negotiated);
+		assertEquals(2, stats.deflatedFrames);
+		assertEquals(2L * PAYLOAD.getBytes(java.nio.charset.StandardCharsets.UTF_8).length, stats.deflateInputBytes);
+		assertTrue(stats.deflateRatio() > 10);
+	}
+
+	@Test
+	void leavesUncompressedClientSessionsOutOfTheMeter() {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getExtensions()).thenReturn(Collections.emptyList());
+		CompressionMeter meter = new CompressionMeter();
+		new ClientSendBuffer(session, 0, 0, ClientSendBuffer.OverflowPolicy.TERMINATE).compressionSampling(meter, 1);
+
+		assertEquals(0, meter.stats().negotiated);
+	}
+
+	@Test
+	void hidesTheExtensionOfferWhenClientCompressionIsOff() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader("Sec-WebSocket-Extensions", "permessage-deflate; client_max_window_bits");
+		request.addHeader("Sec-WebSocket-Version", "13");
+		HttpServletRequest filtered = ClientHandshakeHandler.withoutExtensions(request);
+
+		assertNull(filtered.getHeader("sec-websocket-extensions"));
+		assertTrue(!filtered.getHeaders("Sec-WebSocket-Extensions").hasMoreElements());
+		assertEquals(List.of("Sec-WebSocket-Version"), Collections.list(filtered.getHeaderNames()));
+	}
+
+	private static BrowserWebSocketClient connect(FakeBrowser browser, CompressionMeter meter) throws Exception {
+		BrowserWebSocketClient client = new BrowserWebSocketClient(new URI(browser.webSocketUrl()),
+				new MeteredDeflateExtension(Deflater.DEFAULT_COMPRESSION, 1024, meter));
+		assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+		return client;
+	}
+}
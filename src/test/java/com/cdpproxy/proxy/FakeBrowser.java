@@ -0,0 +1,169 @@
+package com.cdpproxy.proxy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.sun.net.httpserver.HttpServer;
+import org.java_websocket.WebSocket;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.enums.Opcode;
+import org.java_websocket.extensions.permessage_deflate.PerMessageDeflateExtension;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONObject;
+
+/**
+ * Minimal stand-in for a Chrome DevTools endpoint: HTTP discovery plus a
+ * WebSocket that answers every command with an empty result. Public for the
+ * tests of the reactive engine.
+ */
+public class FakeBrowser implements AutoCloseable {
+	final AtomicInteger versionRequests = new AtomicInteger();
+	final AtomicInteger listRequests = new AtomicInteger();
+	final AtomicInteger connections = new AtomicInteger();
+	/** Answer /json/version with a server error */
+	volatile boolean failVersion;
+	/** Every command received over WebSocket, in arrival order */
+	public final List<JSONObject> commands = new CopyOnWriteArrayList<>();
+	/** Leave WebSocket commands unanswered, as a hung browser would */
+	volatile boolean stallCommands;
+	private final HttpServer http;
+	private final WebSocketServer ws;
+
+	public FakeBrowser() throws Exception {
+		this(false);
+	}
+
+	/**
+	 * @param compression accept permessage-deflate, compressing every data frame
+	 */
+	FakeBrowser(boolean compression) throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		PerMessageDeflateExtension deflate = new PerMessageDeflateExtension();
+		deflate.setThreshold(0);
+		Draft_6455 draft = compression ? new Draft_6455(deflate) : new Draft_6455();
+		ws = new WebSocketServer(new InetSocketAddress("127.0.0.1", 0), List.of(draft)) {
+			@Override
+			public void onOpen(WebSocket conn, ClientHandshake handshake) {
+				connections.incrementAndGet();
+			}
+
+			@Override
+			public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+			}
+
+			@Override
+			public void onMessage(WebSocket conn, String message) {
+				if (stallCommands) {
+					return;
+				}
+				JSONObject command = new JSONObject(message);
+				JSONObject response = new JSONObject().put("id", command.getInt("id"));
+				if (command.has("sessionId")) {
+					response.put("sessionId", command.getString("sessionId"));
+				}
+				commands.add(command);
+				JSONObject result = new JSONObject();
+				String method = command.optString("method");
+				if ("Browser.getVersion".equals(method)) {
+					result.put("product", "FakeChrome/1.0");
+				} else if ("Target.attachToTarget".equals(method)) {
+					result.put("sessionId", "session-" + command.getJSONObject("params").getString("targetId"));
+				} else if ("Target.createBrowserContext".equals(method)) {
+					result.put("browserContextId", "context-" + command.getInt("id"));
+				}
+				conn.send(response.put("result", result).toString());
+			}
+
+			@Override
+			public void onError(WebSocket conn, Exception ex) {
+			}
+
+			@Override
+			public void onStart() {
+				started.countDown();
+			}
+		};
+		ws.setReuseAddr(true);
+		ws.start();
+		started.await(5, TimeUnit.SECONDS);
+
+		http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		http.createContext("/json/version", exchange -> {
+			versionRequests.incrementAndGet();
+			if (failVersion) {
+				exchange.sendResponseHeaders(500, -1);
+				exchange.close();
+				return;
+			}
+			respond(exchange, new JSONObject().put("webSocketDebuggerUrl", webSocketUrl()).toString());
+		});
+		http.createContext("/json/list", exchange -> {
+			listRequests.incrementAndGet();
+			respond(exchange, "[{\"type\":\"page\",\"webSocketDebuggerUrl\":\"" + webSocketUrl() + "\"}]");
+		});
+		http.start();
+	}
+
+	private static void respond(com.sun.net.httpserver.HttpExchange exchange, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(200, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+	public String httpUrl() {
+		return "http://127.0.0.1:" + http.getAddress().getPort();
+	}
+
+	String webSocketUrl() {
+		return "ws://127.0.0.1:" + ws.getPort() + "/devtools/browser/fake";
+	}
+
+	/**
+	 * Send an event to every open WebSocket connection
+	 */
+	public void emit(JSONObject event) {
+		ws.broadcast(event.toString());
+	}
+
+	/**
+	 * Send a message to every open WebSocket connection as a fragmented
+	 * message of {@code partBytes}-byte frames, splitting characters freely
+	 */
+	void emitFragmented(String message, int partBytes) {
+		byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+		for (WebSocket conn : ws.getConnections()) {
+			for (int offset = 0; offset < bytes.length; offset += partBytes) {
+				int length = Math.min(partBytes, bytes.length - offset);
+				// Copied out: the stock deflate extension compresses the whole backing array
+				ByteBuffer part = ByteBuffer.wrap(Arrays.copyOfRange(bytes, offset, offset + length));
+				conn.sendFragmentedFrame(Opcode.TEXT, part, offset + length == bytes.length);
+			}
+		}
+	}
+
+	/**
+	 * Drop every open WebSocket connection, as a browser restart would
+	 */
+	public void disconnectAll() {
+		for (WebSocket conn : ws.getConnections()) {
+			conn.close();
+		}
+	}
+
+	@Override
+	public void close() throws Exception {
+		http.stop(0);
+		ws.stop(1000);
+	}
+}
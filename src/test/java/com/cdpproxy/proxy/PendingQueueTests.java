@@ -0,0 +1,50 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PendingQueueTests {
+
+	@Test
+	void refusesFromHighWaterUntilLowWater() {
+		PendingQueue queue = new PendingQueue(4, 0, 0.5);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer("{\"id\":" + i + "}"));
+		}
+		assertTrue(queue.isSaturated());
+		assertFalse(queue.offer("{\"id\":4}"));
+
+		queue.poll();
+		// Still above the low-water mark of two messages
+		assertFalse(queue.offer("{\"id\":5}"));
+		queue.poll();
+		assertFalse(queue.isSaturated());
+		assertTrue(queue.offer("{\"id\":6}"));
+
+		PendingQueue.Stats stats = queue.stats();
+		assertEquals(3, stats.depth);
+		assertEquals(4, stats.maxDepth);
+		assertEquals(2, stats.rejected);
+		assertEquals(1, stats.saturations);
+	}
+
+	@Test
+	void limitsBySize() {
+		PendingQueue queue = new PendingQueue(0, 100, 0.5);
+		String message = "x".repeat(40);
+		assertTrue(queue.offer(message));
+		assertTrue(queue.offer(message));
+		assertFalse(queue.isSaturated());
+		assertTrue(queue.offer(message));
+		assertTrue(queue.isSaturated());
+		assertEquals(120, queue.stats().bytes);
+
+		queue.poll();
+		queue.poll();
+		assertEquals(40, queue.stats().bytes);
+		assertFalse(queue.isSaturated());
+	}
+}
@@ -0,0 +1,85 @@
+package com.cdpproxy.proxy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.cdpproxy.util.PendingSelectors;
+
+class PlaywrightRelayTests {
+
+	/** Records what reaches the client, completing every write inline */
+	static class RecordingTransport implements ClientSendBuffer.Transport {
+		final List<Object> written = new ArrayList<>();
+
+		@Override
+		public void send(String text, Consumer<Throwable> done) {
+			written.add(text);
+			done.accept(null);
+		}
+
+		@Override
+		public void sendPart(String text, boolean last, Consumer<Throwable> done) {
+			written.add(text);
+			done.accept(null);
+		}
+
+		@Override
+		public void sendBinary(ByteBuffer bytes, Consumer<Throwable> done) {
+			written.add(bytes);
+			done.accept(null);
+		}
+	}
+
+	@Test
+	void relaysFramesAsTheBytesTheyArrivedIn() {
+		RecordingTransport transport = new RecordingTransport();
+		PendingSelectors pendingSelectors = new PendingSelectors();
+		pendingSelectors.put(5, "#done");
+		PlaywrightRelay relay = new PlaywrightRelay(buffer(transport).binaryFrames(true), pendingSelectors);
+
+		ByteBuffer event = utf8("{\"method\":\"Page.screencastFrame\",\"params\":{\"data\":\"ü\"}}");
+		ByteBuffer response = utf8("{\"id\":5,\"result\":{}}");
+		ByteBuffer inspected = utf8("{\"id\":6,\"result\":{\"result\":{\"type\":\"undefined\"}}}");
+		assertTrue(relay.acceptBytes(event));
+		assertTrue(relay.acceptBytes(response));
+		assertTrue(relay.acceptBytes(inspected));
+
+		assertEquals(3, transport.written.size());
+		assertSame(event, transport.written.get(0));
+		assertSame(response, transport.written.get(1));
+		assertSame(inspected, transport.written.get(2));
+		assertFalse(pendingSelectors.contains(5));
+	}
+
+	@Test
+	void leavesDecodingToTheConnectionForTextClients() {
+		RecordingTransport transport = new RecordingTransport();
+		PlaywrightRelay relay = new PlaywrightRelay(buffer(transport), new PendingSelectors());
+
+		assertFalse(relay.acceptBytes(utf8("{\"id\":1,\"result\":{}}")));
+		assertTrue(transport.written.isEmpty());
+	}
+
+	private static ClientSendBuffer buffer(ClientSendBuffer.Transport transport) {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn("client-1");
+		when(session.isOpen()).thenReturn(true);
+		return new ClientSendBuffer(session, transport, 0, 0, ClientSendBuffer.OverflowPolicy.TERMINATE);
+	}
+
+	private static ByteBuffer utf8(String text) {
+		return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+	}
+}
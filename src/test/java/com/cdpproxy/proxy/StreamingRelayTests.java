@@ -0,0 +1,132 @@
+package com.cdpproxy.proxy;
+
+import static com.cdpproxy.proxy.BrowserConnectionPoolTests.awaitTrue;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import com.cdpproxy.util.PendingSelectors;
+
+class StreamingRelayTests {
+
+	/** Non-ASCII text, so fragment boundaries fall inside characters and surrogate pairs */
+	private static final String PAYLOAD = "déjà vu 😀 ".repeat(2000);
+
+	@Test
+	void relaysBrowserFragmentsToTheClientAsTheyArrive() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser()) {
+			BrowserWebSocketClient client = connect(browser);
+			List<String> parts = new CopyOnWriteArrayList<>();
+			PendingSelectors pendingSelectors = new PendingSelectors();
+			pendingSelectors.put(42, "#large");
+			client.attach(new ClientSendBuffer(openSession(), new ClientSendBuffer.Transport() {
+				@Override
+				public void send(String text, Consumer<Throwable> done) {
+					parts.add(text);
+					done.accept(null);
+				}
+
+				@Override
+				public void sendPart(String text, boolean last, Consumer<Throwable> done) {
+					parts.add(last ? text + "\u0000" : text);
+					done.accept(null);
+				}
+
+				@Override
+				public void sendBinary(ByteBuffer bytes, Consumer<Throwable> done) {
+					throw new UnsupportedOperationException();
+				}
+			}, 0, 0, ClientSendBuffer.OverflowPolicy.TERMINATE), pendingSelectors);
+
+			String message = new JSONObject().put("id", 42)
+					.put("result", new JSONObject().put("data", PAYLOAD)).toString();
+			// The browser side may register the connection after the client sees it open
+			awaitTrue(() -> browser.connections.get() == 1);
+			browser.emitFragmented(message, 4099);
+			awaitTrue(() -> !parts.isEmpty() && parts.get(parts.size() - 1).endsWith("\u0000"));
+
+			assertTrue(parts.size() > 1);
+			String relayed = String.join("", parts);
+			assertEquals(message, relayed.substring(0, relayed.length() - 1));
+			awaitTrue(() -> !pendingSelectors.contains(42));
+			client.close();
+		}
+	}
+
+	@Test
+	void assemblesFragmentsForReceiversThatTakeWholeMessages() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser()) {
+			BrowserWebSocketClient client = connect(browser);
+			List<String> received = new CopyOnWriteArrayList<>();
+			client.attach(received::add);
+
+			String event = new JSONObject().put("method", "Page.screencastFrame")
+					.put("params", new JSONObject().put("data", PAYLOAD)).toString();
+			awaitTrue(() -> browser.connections.get() == 1);
+			browser.emitFragmented(event, 1000);
+			awaitTrue(() -> received.size() == 1);
+
+			assertEquals(event, received.get(0));
+			client.close();
+		}
+	}
+
+	@Test
+	void streamsClientPartsUpstreamAsOneMessage() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser()) {
+			BrowserWebSocketClient client = connect(browser);
+			String command = new JSONObject().put("id", 3).put("method", "Runtime.evaluate")
+					.put("params", new JSONObject().put("expression", PAYLOAD)).toString();
+			// Cut inside a surrogate pair
+			int cut = command.indexOf('\ud83d') + 1;
+			client.sendPart(command.substring(0, cut), false);
+			client.sendPart(command.substring(cut, cut + 5000), false);
+			client.sendPart(command.substring(cut + 5000), true);
+			awaitTrue(() -> browser.commands.size() == 1);
+
+			assertEquals(PAYLOAD, browser.commands.get(0).getJSONObject("params").getString("expression"));
+			client.close();
+		}
+	}
+
+	@Test
+	void inspectsOnlyTheEnvelopeInThePrefix() {
+		StreamedMessage message = new StreamedMessage(64);
+		message.append("{\"id\":5,\"method\":\"DOM.setFileInputFiles\",\"sessionId\":\"S1\",\"params\":{\"files\":[\"");
+		message.append("x".repeat(1000));
+		message.append("\"]}}");
+		message.inspect();
+
+		assertTrue(message.hasId());
+		assertEquals(5, message.id());
+		assertEquals("DOM.setFileInputFiles", message.method());
+		assertEquals("S1", message.sessionId());
+		assertEquals(64, message.prefix().length());
+		assertTrue(message.truncated());
+		assertEquals(3, message.parts());
+	}
+
+	private static BrowserWebSocketClient connect(FakeBrowser browser) throws Exception {
+		BrowserWebSocketClient client = new BrowserWebSocketClient(new URI(browser.webSocketUrl()));
+		assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+		return client;
+	}
+
+	private static WebSocketSession openSession() {
+		WebSocketSession session = mock(WebSocketSession.class);
+		when(session.getId()).thenReturn("client-1");
+		when(session.isOpen()).thenReturn(true);
+		return session;
+	}
+}
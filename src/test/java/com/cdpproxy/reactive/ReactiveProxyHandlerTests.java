@@ -0,0 +1,169 @@
+package com.cdpproxy.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import io.netty.buffer.ByteBufAllocator;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.socket.HandshakeInfo;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.adapter.ReactorNettyWebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import com.cdpproxy.proxy.Backoff;
+import com.cdpproxy.proxy.BrowserBackend;
+import com.cdpproxy.proxy.BrowserConnectionPool;
+import com.cdpproxy.proxy.BrowserConnector;
+import com.cdpproxy.proxy.BrowserDiscovery;
+import com.cdpproxy.proxy.BrowserRouter;
+import com.cdpproxy.proxy.FakeBrowser;
+
+class ReactiveProxyHandlerTests {
+
+	@Test
+	void relaysSanitizedCommandsAndBrowserMessages() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(4, 16, false);
+			 BrowserRouter router = router(connector, browser.httpUrl())) {
+			ReactiveProxyHandler handler = handler(router, 3);
+			DisposableServer server = serve(handler);
+			Client client = new Client(server);
+
+			client.send(new JSONObject().put("id", 1).put("method", "DOM.querySelector")
+					.put("params", new JSONObject().put("nodeId", 1).put("selector", "#login"))
+					.put("playwrightOnly", true).toString());
+			JSONObject response = new JSONObject(client.next());
+			assertEquals(1, response.getInt("id"));
+			assertEquals(1, browser.commands.size());
+			assertFalse(browser.commands.get(0).has("playwrightOnly"));
+
+			browser.emit(new JSONObject().put("method", "Page.loadEventFired").put("params", new JSONObject()));
+			assertEquals("Page.loadEventFired", new JSONObject(client.next()).getString("method"));
+
+			ReactiveProxyHandler.Stats stats = handler.sessionStats().values().iterator().next();
+			assertTrue(stats.connected);
+			assertEquals(browser.httpUrl(), stats.backend);
+			assertEquals(1, stats.commands);
+			assertEquals(1, stats.responses);
+			assertEquals(1, stats.events);
+
+			client.close();
+			server.disposeNow();
+		}
+	}
+
+	@Test
+	void endsSessionWithErrorWhenBrowserConnectionIsLost() throws Exception {
+		try (FakeBrowser browser = new FakeBrowser();
+			 BrowserConnector connector = new BrowserConnector(4, 16, false);
+			 BrowserRouter router = router(connector, browser.httpUrl())) {
+			ReactiveProxyHandler handler = handler(router, 3);
+			DisposableServer server = serve(handler);
+			Client client = new Client(server);
+			client.send(new JSONObject().put("id", 1).put("method", "Runtime.enable").toString());
+			client.next();
+
+			browser.disconnectAll();
+			assertEquals("Browser connection lost", new JSONObject(client.next()).getString("error"));
+			awaitEmpty(handler);
+			assertEquals(0, router.backends().get(0).activeSessions());
+
+			client.close();
+			server.disposeNow();
+		}
+	}
+
+	@Test
+	void answersWithErrorWhenBrowserIsUnreachable() throws Exception {
+		try (BrowserConnector connector = new BrowserConnector(4, 16, false);
+			 BrowserRouter router = router(connector, "http://127.0.0.1:1")) {
+			ReactiveProxyHandler handler = handler(router, 1);
+			DisposableServer server = serve(handler);
+			Client client = new Client(server);
+
+			String error = new JSONObject(client.next()).getString("error");
+			assertTrue(error.startsWith("Failed to connect to browser"), error);
+			awaitEmpty(handler);
+
+			client.close();
+			server.disposeNow();
+		}
+	}
+
+	private static BrowserRouter router(BrowserConnector connector, String httpUrl) {
+		return new BrowserRouter(List.of(new BrowserBackend(httpUrl, new BrowserConnectionPool(connector,
+				new BrowserDiscovery(httpUrl), 5000, 0, 4, 0, 50))), BrowserRouter.Strategy.LEAST_SESSIONS);
+	}
+
+	private static ReactiveProxyHandler handler(BrowserRouter router, int maxConnectRetries) {
+		return new ReactiveProxyHandler(router, new ReactorNettyWebSocketClient(), new Backoff(10, 50),
+				maxConnectRetries);
+	}
+
+	/**
+	 * The handler behind a bare Reactor Netty server, as the reactive engine mounts it on /cdp
+	 */
+	private static DisposableServer serve(ReactiveProxyHandler handler) {
+		NettyDataBufferFactory buffers = new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+		return HttpServer.create().host("127.0.0.1").port(0)
+				.route(routes -> routes.ws("/cdp", (in, out) -> handler.handle(new ReactorNettyWebSocketSession(in,
+						out, new HandshakeInfo(URI.create("ws://127.0.0.1/cdp"), new HttpHeaders(), Mono.empty(),
+						null), buffers))))
+				.bindNow();
+	}
+
+	private static void awaitEmpty(ReactiveProxyHandler handler) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!handler.sessionStats().isEmpty() && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(handler.sessionStats().isEmpty());
+	}
+
+	/**
+	 * Playwright side of a session
+	 */
+	private static final class Client {
+		private final Sinks.Many<String> outbound = Sinks.many().unicast().onBackpressureBuffer();
+		private final BlockingQueue<String> received = new LinkedBlockingQueue<>();
+		private final Disposable connection;
+
+		Client(DisposableServer server) {
+			connection = new ReactorNettyWebSocketClient()
+					.execute(URI.create("ws://127.0.0.1:" + server.port() + "/cdp"), session -> session
+							.send(outbound.asFlux().map(session::textMessage))
+							.and(session.receive().map(WebSocketMessage::getPayloadAsText)
+									.doOnNext(received::add)))
+					.subscribe();
+		}
+
+		void send(String message) {
+			outbound.tryEmitNext(message);
+		}
+
+		String next() throws InterruptedException {
+			String message = received.poll(10, TimeUnit.SECONDS);
+			assertNotNull(message, "no message within 10s");
+			return message;
+		}
+
+		void close() {
+			connection.dispose();
+		}
+	}
+}
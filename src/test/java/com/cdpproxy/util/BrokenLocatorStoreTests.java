@@ -0,0 +1,67 @@
+package com.cdpproxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BrokenLocatorStoreTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void concurrentAppendsAreCompactedIntoTheExistingArray() throws Exception {
+		Path json = dir.resolve("broken-locators-for-healing.json");
+		Files.writeString(json, "[{\"selector\":\"#existing\"}]");
+		BrokenLocatorStore store = new BrokenLocatorStore(json);
+
+		List<Thread> writers = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			int writer = t;
+			Thread thread = new Thread(() -> {
+				for (int i = 0; i < 50; i++) {
+					try {
+						store.append(new JSONObject().put("selector", "#w" + writer + "-" + i));
+						if (i % 10 == 0) {
+							store.compact();
+						}
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			writers.add(thread);
+			thread.start();
+		}
+		for (Thread thread : writers) {
+			thread.join();
+		}
+		store.compact();
+
+		JSONArray entries = new JSONArray(Files.readString(json));
+		assertEquals(201, entries.length());
+		assertEquals("#existing", entries.getJSONObject(0).getString("selector"));
+		assertFalse(Files.exists(store.journal()));
+		assertEquals(0, store.compact());
+	}
+
+	@Test
+	void resumesAnInterruptedCompaction() throws Exception {
+		Path json = dir.resolve("healing.json");
+		BrokenLocatorStore store = new BrokenLocatorStore(json);
+		Files.writeString(dir.resolve("healing.jsonl.compacting"), "{\"selector\":\"a\"}\n{\"selec");
+		store.append(new JSONObject().put("selector", "b"));
+
+		assertEquals(1, store.compact());
+		assertEquals(1, store.compact());
+		assertEquals(2, new JSONArray(Files.readString(json)).length());
+	}
+}
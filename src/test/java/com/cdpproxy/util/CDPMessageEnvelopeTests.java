@@ -0,0 +1,56 @@
+package com.cdpproxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class CDPMessageEnvelopeTests {
+
+	@Test
+	void decodesEnvelopeFieldsWithoutParsingParams() {
+		CDPMessageEnvelope envelope = CDPMessageEnvelope.parse(
+				"{\"id\":74,\"method\":\"DOM.querySelector\",\"sessionId\":\"S1\",\"params\":{\"selector\":\"#a\"}}");
+
+		assertTrue(envelope.isObject());
+		assertTrue(envelope.hasId());
+		assertEquals(74, envelope.id());
+		assertEquals("DOM.querySelector", envelope.method());
+		assertEquals("S1", envelope.sessionId());
+		assertEquals("#a", envelope.params().getString("selector"));
+		assertSame(envelope.params(), envelope.json().getJSONObject("params"));
+	}
+
+	@Test
+	void sanitizedDropsUnknownMembersAndKeepsOriginalOtherwise() {
+		String clean = "{\"id\":1,\"method\":\"Page.enable\",\"params\":{}}";
+		assertSame(clean, CDPMessageEnvelope.parse(clean).sanitized());
+
+		CDPMessageEnvelope noisy = CDPMessageEnvelope.parse(
+				"{\"id\":2,\"method\":\"Page.enable\",\"extra\":[1,{\"x\":\"}\"}],\"sessionId\":7}");
+		JSONObject sanitized = new JSONObject(noisy.sanitized());
+		assertEquals(2, sanitized.length());
+		assertEquals(2, sanitized.getInt("id"));
+		assertEquals("Page.enable", sanitized.getString("method"));
+	}
+
+	@Test
+	void malformedInputIsPassedThrough() {
+		CDPMessageEnvelope envelope = CDPMessageEnvelope.parse("{\"id\":1,");
+		assertFalse(envelope.isObject());
+		assertFalse(envelope.hasId());
+		assertNull(envelope.method());
+		assertEquals("{\"id\":1,", envelope.sanitized());
+	}
+
+	@Test
+	void escapedStringsAreDecoded() {
+		CDPMessageEnvelope envelope = CDPMessageEnvelope.parse("{\"method\":\"A\\\"B\",\"id\":-3}");
+		assertEquals("A\"B", envelope.method());
+		assertEquals(-3, envelope.id());
+	}
+}
@@ -0,0 +1,41 @@
+package com.cdpproxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class IntIntMapTests {
+
+	@Test
+	void agreesWithHashMapThroughGrowthAndRemovals() {
+		IntIntMap map = new IntIntMap();
+		Map<Integer, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 200_000; i++) {
+			// Few distinct keys, so probe runs collide, wrap around and get removed from
+			int key = random.nextInt(2000) - 1000;
+			if (random.nextInt(3) == 0) {
+				assertEquals(expected.getOrDefault(key, 0), map.remove(key));
+				expected.remove(key);
+			} else {
+				int value = random.nextInt(1000) + 1;
+				assertEquals(expected.getOrDefault(key, 0), map.put(key, value));
+				expected.put(key, value);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		for (int key = -1000; key < 1000; key++) {
+			assertEquals(expected.getOrDefault(key, 0), map.get(key));
+		}
+		long[] sum = new long[1];
+		map.forEachValue(value -> sum[0] += value);
+		assertEquals(expected.values().stream().mapToLong(Integer::longValue).sum(), sum[0]);
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertEquals(0, map.get(expected.keySet().iterator().next()));
+	}
+}
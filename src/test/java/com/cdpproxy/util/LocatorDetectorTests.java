@@ -0,0 +1,197 @@
+package com.cdpproxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+class LocatorDetectorTests {
+
+	private static final String UTILITY_DECLARATION =
+			"(utilityScript, ...args) => utilityScript.evaluate(...args)";
+
+	@Test
+	void dispatchesEachLocatorMethodToItsExtractor() {
+		LocatorDetector.SelectorInfo query = LocatorDetector.extractSelector(new JSONObject()
+				.put("method", "DOM.querySelectorAll").put("params", new JSONObject().put("selector", ".row")));
+		assertEquals("CSS: .row", query.toString());
+
+		LocatorDetector.SelectorInfo evaluate = LocatorDetector.extractSelector(CDPMessageEnvelope.parse(
+				"{\"id\":3,\"method\":\"Runtime.evaluate\",\"params\":{\"expression\":\"document.querySelector('#a')\"}}"));
+		assertEquals("CSS: #a", evaluate.toString());
+
+		LocatorDetector.SelectorInfo function = LocatorDetector.extractSelector(callFunctionOn(UTILITY_DECLARATION));
+		assertEquals("CSS: #login", function.toString());
+	}
+
+	@Test
+	void rejectsOtherMethodsWithoutTouchingParams() {
+		JSONObject message = new JSONObject() {
+			@Override
+			public JSONObject getJSONObject(String key) {
+				throw new AssertionError("params read for " + optString("method"));
+			}
+		};
+		message.put("method", "Page.navigate").put("params", new JSONObject().put("url", "about:blank"));
+		assertNull(LocatorDetector.extractSelector(message));
+		assertFalse(LocatorDetector.isLocatorMethod("Page.navigate"));
+		assertTrue(LocatorDetector.isLocatorMethod("Runtime.callFunctionOn"));
+	}
+
+	@Test
+	void classifiesDeclarationsOncePerHash() {
+		String padding = "/* " + "x".repeat(4000) + " */";
+		String utility = "(utilityScript, ...args) => {" + padding + " return utilityScript.evaluate(...args); }";
+		String other = "(element) => {" + padding + " return element.isConnected; }";
+
+		assertTrue(LocatorDetector.callsUtilityScript(utility, 0x5a17L << 4));
+		assertFalse(LocatorDetector.callsUtilityScript(other, 0x3c29L << 4));
+		// Hits are answered by hash alone
+		assertTrue(LocatorDetector.callsUtilityScript(other, 0x5a17L << 4));
+		assertFalse(LocatorDetector.callsUtilityScript(utility, 0x3c29L << 4));
+		assertFalse(LocatorDetector.callsUtilityScript(other, LocatorDetector.UNHASHED));
+		assertEquals("CSS: #login", LocatorDetector.extractSelector(callFunctionOn(utility)).toString());
+		assertNull(LocatorDetector.extractSelector(callFunctionOn(other)));
+	}
+
+	@Test
+	void findsSelectorOfFirstParsedPartBeforeInfoSource() {
+		JSONObject part = object("name", "css", "body", array(object("simples", array())), "source", "h1");
+		JSONObject info = object("source", "#fallback", "engine", "xpath",
+				"parsed", object("parts", array(part, object("name", "text", "source", "Sign in"))),
+				"world", "utility", "strict", true);
+		assertEquals("CSS: h1", extract(object("info", info, "root", object("v", "undefined"))));
+		assertEquals("XPATH: #fallback", extract(object("info", object("source", "#fallback", "engine", "xpath"))));
+		assertEquals("XPATH: //a", extract(object("info", object("engine", "xpath", "source", "//a"))));
+		assertEquals("CSS: .row", extract(object("css", ".row")));
+	}
+
+	@Test
+	void skipsMalformedMembersWithoutGivingUp() {
+		JSONObject parsed = object("parts", new JSONObject().put("a", new JSONArray().put("junk")
+				.put(object("name", 7, "source", new JSONObject())).put(object("name", "css", "source", "#ok"))));
+		JSONArray properties = new JSONArray().put("junk").put(new JSONObject().put("k", 5).put("v", "x"))
+				.put(new JSONObject().put("k", "info")).put(new JSONObject().put("k", "info").put("v", "text"))
+				.put(new JSONObject().put("k", "info").put("v", object("parsed", parsed)));
+		assertEquals("CSS: #ok", extract(new JSONObject().put("o", properties)));
+		assertNull(extract(new JSONObject().put("o", "not properties")));
+		assertNull(extract(object("info", object("parsed", object("parts", object("a", "b"))))));
+		assertEquals("UNKNOWN: #direct", extract(new JSONObject().put("k", "selector").put("v", "#direct")));
+	}
+
+	@Test
+	void answersRepeatedCallsFromTheCache() {
+		LocatorDetector.installCache(new SelectorCache(64));
+		try {
+			JSONObject poll = callFunctionOn(UTILITY_DECLARATION);
+			poll.getJSONObject("params").getJSONArray("arguments").put(new JSONObject().put("objectId", "1.4.1"));
+			LocatorDetector.SelectorInfo first = LocatorDetector.extractSelector(
+					CDPMessageEnvelope.parse(poll.toString()));
+			assertEquals("CSS: #login", first.toString());
+
+			// Another poll: new id and target object, formatted differently
+			poll.put("id", 10).getJSONObject("params").getJSONArray("arguments").getJSONObject(7)
+					.put("objectId", "1.4.3");
+			assertSame(first, LocatorDetector.extractSelector(CDPMessageEnvelope.parse(poll.toString(2))));
+
+			JSONObject other = callFunctionOn(UTILITY_DECLARATION, object("info", object("source", "#logout")));
+			assertEquals("UNKNOWN: #logout", LocatorDetector.extractSelector(
+					CDPMessageEnvelope.parse(other.toString())).toString());
+			for (int i = 0; i < 2; i++) {
+				assertNull(LocatorDetector.extractSelector(CDPMessageEnvelope.parse(
+						callFunctionOn("(element) => element.isConnected").toString())));
+			}
+
+			SelectorCache.Stats stats = LocatorDetector.cacheStats();
+			assertEquals(2, stats.hits);
+			assertEquals(3, stats.misses);
+			assertEquals(3, stats.size);
+			assertEquals(0.4, stats.hitRate());
+		} finally {
+			LocatorDetector.installCache(null);
+		}
+	}
+
+	@Test
+	void keysTheCacheByTheWholeDeclaration() {
+		String padding = "x".repeat(4128);
+		int gap = 64 + (padding.length() - 128) / 64;
+		String utility = padding.substring(0, gap) + "utilityScript.evaluate" + padding.substring(gap + 22);
+		String other = padding.substring(0, gap) + "utilityScript_evaluate" + padding.substring(gap + 22);
+		LocatorDetector.installCache(new SelectorCache(64));
+		try {
+			assertEquals("CSS: #login", LocatorDetector.extractSelector(
+					CDPMessageEnvelope.parse(callFunctionOn(utility).toString())).toString());
+			assertNull(LocatorDetector.extractSelector(CDPMessageEnvelope.parse(callFunctionOn(other).toString())));
+			assertEquals(0, LocatorDetector.cacheStats().hits);
+			// New arguments miss the cache but not the declaration's classification
+			assertEquals("CSS: #next", LocatorDetector.extractSelector(CDPMessageEnvelope.parse(
+					callFunctionOn(utility, object("css", "#next")).toString())).toString());
+			assertNull(LocatorDetector.extractSelector(CDPMessageEnvelope.parse(
+					callFunctionOn(other, object("css", "#next")).toString())));
+		} finally {
+			LocatorDetector.installCache(null);
+		}
+	}
+
+	@Test
+	void evictsWhateverHoldsTheSlotOfANewKey() {
+		assertEquals(1024, new SelectorCache(1000).stats().capacity);
+
+		SelectorCache cache = new SelectorCache(1);
+		LocatorDetector.SelectorInfo info = new LocatorDetector.SelectorInfo("#a", "CSS");
+		cache.put(1, info);
+		assertSame(info, cache.get(1));
+		cache.put(2, null);
+		assertNull(cache.get(1));
+		assertSame(SelectorCache.NO_SELECTOR, cache.get(2));
+
+		SelectorCache.Stats stats = cache.stats();
+		assertEquals(1, stats.size);
+		assertEquals(1, stats.evictions);
+		assertEquals(2, stats.hits);
+		assertEquals(1, stats.misses);
+	}
+
+	private static String extract(JSONObject value) {
+		LocatorDetector.SelectorInfo info = LocatorDetector.extractSelector(callFunctionOn(UTILITY_DECLARATION, value));
+		return info == null ? null : info.toString();
+	}
+
+	/**
+	 * A Playwright locator call, its selector in the serialized 7th argument
+	 */
+	private static JSONObject callFunctionOn(String declaration) {
+		return callFunctionOn(declaration, object("info", object("source", "#login", "engine", "css")));
+	}
+
+	private static JSONObject callFunctionOn(String declaration, JSONObject value) {
+		JSONArray arguments = new JSONArray();
+		for (int i = 0; i < 6; i++) {
+			arguments.put(new JSONObject().put("value", i));
+		}
+		arguments.put(new JSONObject().put("value", value));
+		return new JSONObject().put("id", 9).put("method", "Runtime.callFunctionOn").put("params",
+				new JSONObject().put("functionDeclaration", declaration).put("arguments", arguments));
+	}
+
+	/**
+	 * A serialized object of the given keys and values
+	 */
+	private static JSONObject object(Object... keysAndValues) {
+		JSONArray properties = new JSONArray();
+		for (int i = 0; i < keysAndValues.length; i += 2) {
+			properties.put(new JSONObject().put("k", keysAndValues[i]).put("v", keysAndValues[i + 1]));
+		}
+		return new JSONObject().put("o", properties);
+	}
+
+	private static JSONObject array(JSONObject... elements) {
+		return new JSONObject().put("a", new JSONArray(elements));
+	}
+}
@@ -0,0 +1,33 @@
+package com.cdpproxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LocatorVerificationTrackerTests {
+
+	@Test
+	void tracksAttemptsAndVerificationPerSession() {
+		LocatorVerificationTracker.Stats before = LocatorVerificationTracker.stats();
+		for (int i = 0; i < 3; i++) {
+			LocatorVerificationTracker.trackLocator("tracker-a", "#login", "CSS");
+		}
+		LocatorVerificationTracker.trackLocator("tracker-a", "#submit", "CSS");
+		LocatorVerificationTracker.trackLocator("tracker-b", "#login", "XPATH");
+
+		LocatorVerificationTracker.verifyLocator("tracker-a", "#login");
+		assertTrue(LocatorVerificationTracker.isLocatorVerified("tracker-a", "#login"));
+		assertFalse(LocatorVerificationTracker.isLocatorVerified("tracker-a", "#submit"));
+		assertFalse(LocatorVerificationTracker.isLocatorVerified("tracker-b", "#login"));
+		assertFalse(LocatorVerificationTracker.isLocatorVerified("tracker-c", "#login"));
+
+		// Nothing is due for reporting or cleanup yet
+		LocatorVerificationTracker.checkForBrokenLocators();
+		LocatorVerificationTracker.Stats stats = LocatorVerificationTracker.stats();
+		assertEquals(before.sessions + 2, stats.sessions);
+		assertEquals(before.locators + 3, stats.locators);
+		assertTrue(LocatorVerificationTracker.isLocatorVerified("tracker-a", "#login"));
+	}
+}
@@ -0,0 +1,81 @@
+package com.cdpproxy.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class PendingSelectorsTests {
+
+	@Test
+	void sessionsShareOneCopyOfEachSelector() {
+		SelectorDictionary dictionary = new SelectorDictionary();
+		PendingSelectors first = new PendingSelectors(dictionary);
+		PendingSelectors second = new PendingSelectors(dictionary);
+
+		first.put(1, "#login");
+		first.put(2, new String("#login"));
+		second.put(1, "#login");
+		second.put(7, ".row");
+		assertEquals(2, dictionary.size());
+		assertEquals("#login", first.get(2));
+		assertTrue(second.contains(7));
+
+		first.remove(1);
+		first.remove(2);
+		assertNull(first.get(1));
+		assertEquals(0, first.size());
+		assertEquals(2, dictionary.size());
+
+		// Replacing a command's selector releases the old one
+		second.put(1, ".row");
+		assertEquals(1, dictionary.size());
+		assertEquals(0, dictionary.find("#login"));
+
+		second.close();
+		assertFalse(second.contains(7));
+		assertEquals(0, dictionary.size());
+
+		// A command of a closed session must not pin its selector
+		second.put(8, "#late");
+		assertFalse(second.contains(8));
+		assertEquals(0, dictionary.size());
+	}
+
+	@Test
+	void reusesIdsOfReleasedStrings() {
+		SelectorDictionary dictionary = new SelectorDictionary();
+		int login = dictionary.acquire("#login");
+		int row = dictionary.acquire(".row");
+		assertEquals(login, dictionary.acquire("#login"));
+
+		dictionary.release(login);
+		assertEquals("#login", dictionary.get(login));
+		dictionary.release(login);
+		assertEquals(0, dictionary.find("#login"));
+		assertEquals(1, dictionary.size());
+		assertEquals(login, dictionary.acquire("#login"));
+		assertEquals(".row", dictionary.get(row));
+	}
+
+	@Test
+	void keepsEveryStringFindableThroughGrowthAndReleases() {
+		SelectorDictionary dictionary = new SelectorDictionary();
+		int[] ids = new int[5000];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = dictionary.acquire("#item-" + i);
+		}
+		for (int i = 0; i < ids.length; i += 2) {
+			dictionary.release(ids[i]);
+		}
+		assertEquals(ids.length / 2, dictionary.size());
+		for (int i = 0; i < ids.length; i++) {
+			assertEquals(i % 2 == 0 ? 0 : ids[i], dictionary.find("#item-" + i));
+		}
+		for (int i = 1; i < ids.length; i += 2) {
+			assertEquals("#item-" + i, dictionary.get(ids[i]));
+		}
+	}
+}